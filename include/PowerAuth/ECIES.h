@@ -17,6 +17,11 @@
 #pragma once
 
 #include <PowerAuth/PublicTypes.h>
+#include <memory>
+#include <mutex>
+#include <condition_variable>
+#include <thread>
+#include <deque>
 
 /*
  The ECIES.h header file contains a set of interfaces prepared for ECIES data
@@ -190,6 +195,11 @@ namespace powerAuth
 		/// The method also stores a newly created ephemeral public key to the |out_ephemeralKey| reference.
 		static ECIESEnvelopeKey fromPublicKey(const cc7::ByteRange & public_key, const cc7::ByteRange & shared_info1, cc7::ByteArray & out_ephemeral_key);
 		
+		/// Creates a new instance of ECIESEnvelopeKey from previously calculated ECDH |shared_secret|, |ephemeral_key|
+		/// and optional |shared_info1|. For optional |shared_info1| you can provide an empty range, if you have no such
+		/// information available.
+		static ECIESEnvelopeKey fromSharedSecret(const cc7::ByteRange & shared_secret, const cc7::ByteRange & ephemeral_key, const cc7::ByteRange & shared_info1);
+		
 		/// Creates a new instance of ECIESEnvelopeKey from EC |privateKey|, |ephemeralKey| key-pair and optional |shared_info1|.
 		/// For optional |shared_info1| you can provide an empty range, if you have no such information available.
 		static ECIESEnvelopeKey fromPrivateKey(const cc7::ByteArray & private_key, const cc7::ByteRange & ephemeral_key, const cc7::ByteRange & shared_info1);
@@ -217,6 +227,101 @@ namespace powerAuth
 	};
 
 	
+	/// The ECIESEphemeralKey structure represents one pre-computed ephemeral key, prepared
+	/// in ECIESEphemeralKeyPool for a request encryption.
+	struct ECIESEphemeralKey
+	{
+		/// Exported ephemeral EC public key.
+		cc7::ByteArray publicKey;
+		/// Shared secret, calculated in ECDH key agreement between the ephemeral key and the server's public key.
+		cc7::ByteArray sharedSecret;
+	};
+	
+	/// The ECIESEphemeralKeyPoolConfig structure defines how many keys ECIESEphemeralKeyPool
+	/// keeps prepared and when the pool is refilled.
+	struct ECIESEphemeralKeyPoolConfig
+	{
+		/// Maximum number of pre-computed keys kept in the pool.
+		size_t depth;
+		/// The background refill starts once the number of available keys drops to this value.
+		/// If the value is equal to |depth| - 1, then the pool is refilled after each acquired key.
+		size_t refillThreshold;
+		
+		ECIESEphemeralKeyPoolConfig(size_t depth = 4, size_t refill_threshold = 1) :
+			depth(depth),
+			refillThreshold(refill_threshold)
+		{
+		}
+	};
+	
+	/// The ECIESEphemeralKeyPool class pre-computes ephemeral key pairs and ECDH shared secrets
+	/// for one server's public key on a background thread. The ECIESEncryptor using the pool then
+	/// performs only symmetric cryptography on the calling thread. Each pre-computed key is moved
+	/// out from the pool when acquired, so it's never used for more than one request. The private
+	/// part of the ephemeral key pair is not kept in the pool at all. The class is thread safe.
+	class ECIESEphemeralKeyPool
+	{
+	public:
+		
+		/// Constructs a pool for server's |public_key| and starts the background thread,
+		/// which immediately fills the pool up to the configured depth.
+		ECIESEphemeralKeyPool(const cc7::ByteRange & public_key, const ECIESEphemeralKeyPoolConfig & config = ECIESEphemeralKeyPoolConfig());
+		
+		/// Stops the background thread and wipes all keys prepared in the pool.
+		~ECIESEphemeralKeyPool();
+		
+		ECIESEphemeralKeyPool(const ECIESEphemeralKeyPool &) = delete;
+		ECIESEphemeralKeyPool & operator=(const ECIESEphemeralKeyPool &) = delete;
+		
+		/// Returns a reference to public key.
+		const cc7::ByteArray & publicKey() const;
+		
+		/// Returns a reference to pool's configuration.
+		const ECIESEphemeralKeyPoolConfig & config() const;
+		
+		/// Returns number of keys currently available in the pool.
+		size_t availableKeys() const;
+		
+		/// Moves one pre-computed key from the pool to |out_key|. Returns false if the pool is empty.
+		/// In this case, the caller should calculate the key on its own. The method also wakes up
+		/// the background thread, when the number of available keys drops to the refill threshold.
+		bool acquireKey(ECIESEphemeralKey & out_key);
+		
+		/// Blocks the calling thread until the pool is filled up to its depth, or until the background
+		/// thread fails to calculate a key. Returns true if the pool is full.
+		bool waitUntilFilled();
+		
+		/// Calculates a new ephemeral key for server's |public_key|. Returns false in case of failure.
+		static bool calculateKey(const cc7::ByteRange & public_key, ECIESEphemeralKey & out_key);
+		
+	private:
+		
+		/// Background thread's loop.
+		void refillLoop();
+		
+		/// Server's public key.
+		const cc7::ByteArray _public_key;
+		/// Pool's configuration.
+		const ECIESEphemeralKeyPoolConfig _config;
+		/// Lock guarding all following members.
+		mutable std::mutex _lock;
+		/// Condition signaled when the background thread should refill the pool.
+		std::condition_variable _refill_condition;
+		/// Condition signaled when the background thread finishes the refill.
+		std::condition_variable _filled_condition;
+		/// Pre-computed keys.
+		std::deque<ECIESEphemeralKey> _keys;
+		/// True when the background thread should refill the pool.
+		bool _refill_requested;
+		/// True when the background thread failed to calculate a key.
+		bool _failed;
+		/// True when the pool is being destroyed.
+		bool _stopped;
+		/// Background thread.
+		std::thread _thread;
+	};
+	
+	
 	/// The ECIESEncryptor class implements a request encryption and response decryption for our custom ECIES scheme.
 	class ECIESEncryptor
 	{
@@ -257,6 +362,13 @@ namespace powerAuth
 		/// Returns reference to internal |iv_for_decryption| property.
 		const cc7::ByteArray & ivForDecryption() const;
 		
+		/// Returns a pool of pre-computed ephemeral keys, or nullptr if the pool is not set.
+		const std::shared_ptr<ECIESEphemeralKeyPool> & ephemeralKeyPool() const;
+		
+		/// Sets a pool of pre-computed ephemeral keys. The pool is used only if it's created for the same
+		/// public key as this encryptor. Copies of the encryptor share the same pool.
+		void setEphemeralKeyPool(const std::shared_ptr<ECIESEphemeralKeyPool> & pool);
+		
 		/// Returns true if this instance can encrypt request data.
 		/// This is met only when the encryptor is constructed with public key.
 		bool canEncryptRequest() const;
@@ -294,6 +406,8 @@ namespace powerAuth
 		ECIESEnvelopeKey _envelope_key;
 		/// IV for response decryption
 		cc7::ByteArray _iv_for_decryption;
+		/// Optional pool of pre-computed ephemeral keys
+		std::shared_ptr<ECIESEphemeralKeyPool> _ephemeral_key_pool;
 	};
 	
 	
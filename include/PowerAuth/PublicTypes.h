@@ -249,6 +249,38 @@ namespace powerAuth
 		 Constants.h and MINIMAL_PASSWORD_LENGTH constant for details)
 		 */
 		cc7::ByteArray userPassword;
+		/**
+		 Optional time in milliseconds, for which the Session may keep signature keys unlocked
+		 with this structure in the memory. If both, `cacheTimeToLive` and `cacheMaxUseCount`
+		 are greater than zero, then the next signature calculation with the same unlock keys
+		 and factor skips the keys unlocking. This is useful, when the application needs to sign
+		 several requests in a row with the knowledge factor, because each password based
+		 unlock requires an expensive key derivation.
+		 
+		 The value is used only in `Session::signHTTPRequestData()`. The default value is 0,
+		 so the caching is disabled.
+		 */
+		cc7::U32 cacheTimeToLive;
+		/**
+		 Optional maximum number of signatures, which can be calculated with signature keys
+		 unlocked with this structure, including the first one. Check `cacheTimeToLive` for
+		 details. The default value is 0, so the caching is disabled.
+		 */
+		cc7::U32 cacheMaxUseCount;
+		
+		SignatureUnlockKeys() :
+			cacheTimeToLive(0),
+			cacheMaxUseCount(0)
+		{
+		}
+		
+		/**
+		 Returns true if the structure allows to keep the unlocked keys in the memory.
+		 */
+		bool isCacheEnabled() const
+		{
+			return cacheTimeToLive > 0 && cacheMaxUseCount > 1;
+		}
 	};
 	
 	
@@ -38,6 +38,8 @@ namespace powerAuth
 	{
 		struct PersistentData;
 		struct ActivationData;
+		struct UnlockedSignatureKeys;
+		struct SignatureKeys;
 	}
 	
 	/**
@@ -147,6 +149,38 @@ namespace powerAuth
 		 */
 		ErrorCode loadSessionState(const cc7::ByteRange & serialized_state);
 		
+		/**
+		 Saves only the signature counter into the small sequence of bytes. The counter changes
+		 after each calculated signature, so the application can persist this record instead
+		 of the whole state returned from saveSessionState().
+		 
+		 Returns an empty array if there's no valid activation.
+		 */
+		cc7::ByteArray saveCounterState() const;
+		
+		/**
+		 Loads the signature counter from previously saved sequence of bytes and applies it to
+		 the state loaded by loadSessionState(). The counter record is ignored and EC_WrongParam
+		 is returned, if it belongs to a different activation or protocol version. Returns
+		 EC_WrongState if there's no valid activation.
+		 
+		 Both the record and the full state contain a sequence number of the counter, so the record
+		 is applied only if it's not older than the counter stored in the full state. The older record,
+		 for example restored from a backup, is ignored and EC_Ok is returned.
+		 
+		 The application should always save the counter record before the full state, so the record
+		 is never older than the counter stored in the full state.
+		 */
+		ErrorCode loadCounterState(const cc7::ByteRange & counter_state);
+		
+		/**
+		 Returns true if the state was loaded by loadSessionState() from data saved by an older
+		 version of the library, which doesn't contain the sequence number of the counter. In this
+		 case, the application should save the full state returned from saveSessionState() before
+		 it saves the next counter record. The function returns false once saveSessionState() is called.
+		 */
+		bool hasOutdatedSessionState() const;
+		
 		
 		// MARK: - Activation -
 		
@@ -179,6 +213,33 @@ namespace powerAuth
 		 */
 		ErrorCode startActivation(const ActivationStep1Param & param, ActivationStep1Result & result);
 		
+		/**
+		 Prepares cryptographic material for the next activation in advance. The method generates
+		 device's key pair and imports master server public key, so the subsequent call to
+		 'startActivation' doesn't need to do this work. The heavy computation is performed outside
+		 of the session's lock, so it's safe to call this method from a background thread while
+		 the application is waiting for the activation code.
+		 
+		 The prepared material is consumed by the next 'startActivation' call and is used only once.
+		 If you don't start the activation, then call 'discardPreparedActivation' to release it.
+		 The prepared material is also discarded in 'resetSession'.
+		 
+		 Returns EC_Ok,         if operation succeeded, or if material is already prepared
+				 EC_Encryption, if master server public key is invalid or key pair generation failed
+				 EC_WrongState, if session has no valid setup or activation can't be started
+		 */
+		ErrorCode prepareActivation();
+		
+		/**
+		 Returns true if cryptographic material for the next activation is prepared.
+		 */
+		bool hasPreparedActivation() const;
+		
+		/**
+		 Discards cryptographic material prepared in 'prepareActivation'.
+		 */
+		void discardPreparedActivation();
+		
 		/**
 		 Validates activation respose received from the server. The session expects that the activation
 		 process was previously started with using 'startActivation' method. You have to provide
@@ -290,6 +351,27 @@ namespace powerAuth
 									  const SignatureUnlockKeys & keys, SignatureFactor signature_factor,
 									  HTTPRequestDataSignature & out_signature);
 		
+		/**
+		 Returns true if the session keeps signature keys unlocked in the previous call
+		 to `signHTTPRequestData()` and these keys can still be used. Check `SignatureUnlockKeys.cacheTimeToLive`
+		 for details.
+		 */
+		bool hasCachedSignatureKeys() const;
+		
+		/**
+		 Clears the signature keys unlocked in the previous call to `signHTTPRequestData()`, if such
+		 keys are no longer usable. You can call this method when the cache's time to live elapses,
+		 to remove the sensitive data from the memory as soon as possible.
+		 */
+		void purgeExpiredSignatureKeys();
+		
+		/**
+		 Clears the signature keys unlocked in the previous call to `signHTTPRequestData()`.
+		 The keys are also cleared in `resetSession()`, when the session is destroyed, or when
+		 the factor keys are changed.
+		 */
+		void clearCachedSignatureKeys();
+		
 		/**
 		 Returns name of authorization header. The value is constant and is equal to "X-PowerAuth-Authorization".
 		 You can calculate appropriate value with using signHTTPRequest() method.
@@ -670,6 +752,31 @@ namespace powerAuth
 		 */
 		protocol::ActivationData * _ad;
 		
+		/**
+		 Pointer to activation data prepared in advance for the next activation, or nullptr
+		 if no such data is prepared.
+		 */
+		protocol::ActivationData * _prepared_ad;
+		
+		/**
+		 Pointer to signature keys unlocked in the previous signature calculation, or nullptr
+		 if the keys are not cached.
+		 */
+		protocol::UnlockedSignatureKeys * _cached_keys;
+		
+		/**
+		 Unlocks signature keys for the signature calculation. If |keys| allows caching, then
+		 reuses keys unlocked in the previous calculation, or keeps the newly unlocked keys
+		 for the next calculation. The session must have a valid activation.
+		 */
+		bool unlockSignatureKeysForSigning(protocol::SignatureKeys & out_keys, const SignatureUnlockKeys & keys, SignatureFactor signature_factor);
+		
+		/**
+		 Imports |master_server_public_key| and generates device's key pair into |ad| structure.
+		 The method doesn't access session's state, so it can be called without holding the lock.
+		 */
+		ErrorCode prepareActivationData(const std::string & master_server_public_key, protocol::ActivationData * ad) const;
+		
 		/**
 		 Commits a |new_pd| and |new_state| as a new valid session state.
 		 Check documentation in method's implementation for details.
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.integration.tests;
+
+import android.content.Context;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.getlime.security.powerauth.exception.PowerAuthErrorCodes;
+import io.getlime.security.powerauth.exception.PowerAuthErrorException;
+import io.getlime.security.powerauth.integration.support.AsyncHelper;
+import io.getlime.security.powerauth.integration.support.Logger;
+import io.getlime.security.powerauth.integration.support.PowerAuthTestHelper;
+import io.getlime.security.powerauth.integration.support.model.SignatureData;
+import io.getlime.security.powerauth.integration.support.model.SignatureInfo;
+import io.getlime.security.powerauth.integration.support.model.SignatureType;
+import io.getlime.security.powerauth.networking.response.IOfflineSignatureListener;
+import io.getlime.security.powerauth.networking.response.IRequestSignatureListener;
+import io.getlime.security.powerauth.sdk.PowerAuthAuthentication;
+import io.getlime.security.powerauth.sdk.PowerAuthAuthorizationHttpHeader;
+import io.getlime.security.powerauth.sdk.PowerAuthSDK;
+import io.getlime.security.powerauth.sdk.PowerAuthStatePersistenceMetrics;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class AsyncSignatureTest {
+
+    private static final int THROUGHPUT_ITERATIONS = 20;
+
+    private PowerAuthTestHelper testHelper;
+    private PowerAuthSDK powerAuthSDK;
+    private ActivationHelper activationHelper;
+    private SignatureHelper signatureHelper;
+
+    @Before
+    public void setUp() throws Exception {
+        testHelper = new PowerAuthTestHelper.Builder().build();
+        powerAuthSDK = testHelper.getSharedSdk();
+        activationHelper = new ActivationHelper(testHelper);
+        signatureHelper = new SignatureHelper();
+    }
+
+    @After
+    public void tearDown() {
+        if (activationHelper != null) {
+            activationHelper.cleanupAfterTest();
+        }
+    }
+
+    @Test
+    public void testOnlineSignatureDoesNotBlockMainThread() throws Exception {
+        final Context context = testHelper.getContext();
+
+        activationHelper.createStandardActivation(true, null);
+
+        final PowerAuthAuthentication authentication = activationHelper.getValidAuthentication();
+        final byte[] dataToSign = "ASYNC signature test".getBytes(Charset.defaultCharset());
+
+        // Measure the synchronous variant first. The password requires the key derivation.
+        final long syncStart = System.nanoTime();
+        final PowerAuthAuthorizationHttpHeader syncHeader = powerAuthSDK.requestSignatureWithAuthentication(context, authentication, "POST", "/test/async", dataToSign);
+        final long syncDuration = System.nanoTime() - syncStart;
+        assertEquals(PowerAuthErrorCodes.SUCCEED, syncHeader.powerAuthErrorCode);
+
+        // Now call the asynchronous variant from the main thread.
+        final long[] asyncCallDuration = new long[1];
+        final boolean[] callbackOnMainThread = new boolean[1];
+        final PowerAuthAuthorizationHttpHeader asyncHeader = AsyncHelper.await(new AsyncHelper.Execution<PowerAuthAuthorizationHttpHeader>() {
+            @Override
+            public void execute(@NonNull final AsyncHelper.ResultCatcher<PowerAuthAuthorizationHttpHeader> resultCatcher) throws Exception {
+                InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                    @Override
+                    public void run() {
+                        final long asyncStart = System.nanoTime();
+                        powerAuthSDK.requestSignatureWithAuthentication(context, authentication, "POST", "/test/async", dataToSign, new IRequestSignatureListener() {
+                            @Override
+                            public void onRequestSignatureSucceeded(@NonNull PowerAuthAuthorizationHttpHeader header) {
+                                callbackOnMainThread[0] = Looper.myLooper() == Looper.getMainLooper();
+                                resultCatcher.completeWithResult(header);
+                            }
+
+                            @Override
+                            public void onRequestSignatureFailed(@NonNull Throwable t) {
+                                resultCatcher.completeWithError(t);
+                            }
+                        });
+                        asyncCallDuration[0] = System.nanoTime() - asyncStart;
+                    }
+                });
+            }
+        });
+        assertNotNull(asyncHeader);
+        assertEquals(PowerAuthErrorCodes.SUCCEED, asyncHeader.powerAuthErrorCode);
+        assertTrue(callbackOnMainThread[0]);
+
+        // Timing depends on the device, so it's only reported.
+        Logger.d("AsyncSignatureTest: synchronous signature: %d us, main thread blocked by asynchronous call: %d us",
+                syncDuration / 1000, asyncCallDuration[0] / 1000);
+
+        verifyOnlineSignature(asyncHeader, dataToSign, "POST", "/test/async", SignatureType.POSSESSION_KNOWLEDGE);
+    }
+
+    @Test
+    public void testOnlineSignatureOrdering() throws Exception {
+        final Context context = testHelper.getContext();
+
+        activationHelper.createStandardActivation(true, null);
+
+        // Schedule all signatures at once and collect results in order of delivery.
+        final PowerAuthAuthentication authentication = activationHelper.getPossessionAuthentication();
+        final List<byte[]> requestData = new ArrayList<>();
+        final List<Integer> deliveryOrder = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<PowerAuthAuthorizationHttpHeader> headers = Collections.synchronizedList(new ArrayList<PowerAuthAuthorizationHttpHeader>());
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CountDownLatch latch = new CountDownLatch(THROUGHPUT_ITERATIONS);
+        for (int iteration = 0; iteration < THROUGHPUT_ITERATIONS; iteration++) {
+            final int index = iteration;
+            final byte[] dataToSign = ("ORDERED signature test\n" + testHelper.getRandomGenerator().generateRandomString(10, 32)).getBytes(Charset.defaultCharset());
+            requestData.add(dataToSign);
+            powerAuthSDK.requestSignatureWithAuthentication(context, authentication, "POST", "/test/ordered", dataToSign, new IRequestSignatureListener() {
+                @Override
+                public void onRequestSignatureSucceeded(@NonNull PowerAuthAuthorizationHttpHeader header) {
+                    deliveryOrder.add(index);
+                    headers.add(header);
+                    latch.countDown();
+                }
+
+                @Override
+                public void onRequestSignatureFailed(@NonNull Throwable t) {
+                    // Callback is called on the main thread, so the failure is reported after the wait.
+                    failures.add(t);
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertTrue("Signature failed: " + failures, failures.isEmpty());
+
+        // Results must be delivered in the same order as requested, so the counter matches the order on the server.
+        for (int iteration = 0; iteration < THROUGHPUT_ITERATIONS; iteration++) {
+            assertEquals(iteration, (int) deliveryOrder.get(iteration));
+            verifyOnlineSignature(headers.get(iteration), requestData.get(iteration), "POST", "/test/ordered", SignatureType.POSSESSION);
+        }
+    }
+
+    @Test
+    public void testOfflineSignature() throws Exception {
+        final Context context = testHelper.getContext();
+
+        activationHelper.createStandardActivation(true, null);
+
+        final PowerAuthAuthentication authentication = activationHelper.getValidAuthentication();
+        final String testString = "OFFLINE async signature test\n" + testHelper.getRandomGenerator().generateRandomString(10, 32);
+        final byte[] dataToSign = testString.getBytes(Charset.defaultCharset());
+
+        // Missing nonce
+        final Throwable failure = AsyncHelper.await(new AsyncHelper.Execution<Throwable>() {
+            @Override
+            public void execute(@NonNull final AsyncHelper.ResultCatcher<Throwable> resultCatcher) throws Exception {
+                powerAuthSDK.offlineSignatureWithAuthentication(context, authentication, "/offline/test", dataToSign, null, new IOfflineSignatureListener() {
+                    @Override
+                    public void onOfflineSignatureSucceeded(@NonNull String signature) {
+                        resultCatcher.completeWithError(new Exception("Signature must not be calculated without nonce."));
+                    }
+
+                    @Override
+                    public void onOfflineSignatureFailed(@NonNull Throwable t) {
+                        resultCatcher.completeWithResult(t);
+                    }
+                });
+            }
+        });
+        assertTrue(failure instanceof PowerAuthErrorException);
+        assertEquals(PowerAuthErrorCodes.WRONG_PARAMETER, ((PowerAuthErrorException) failure).getPowerAuthErrorCode());
+
+        // Valid signature
+        final String nonce = testHelper.getRandomGenerator().generateBase64Bytes(16);
+        final String offlineSignature = AsyncHelper.await(new AsyncHelper.Execution<String>() {
+            @Override
+            public void execute(@NonNull final AsyncHelper.ResultCatcher<String> resultCatcher) throws Exception {
+                powerAuthSDK.offlineSignatureWithAuthentication(context, authentication, "/offline/test", dataToSign, nonce, new IOfflineSignatureListener() {
+                    @Override
+                    public void onOfflineSignatureSucceeded(@NonNull String signature) {
+                        resultCatcher.completeWithResult(signature);
+                    }
+
+                    @Override
+                    public void onOfflineSignatureFailed(@NonNull Throwable t) {
+                        resultCatcher.completeWithError(t);
+                    }
+                });
+            }
+        });
+        assertNotNull(offlineSignature);
+
+        final SignatureData signatureData = new SignatureData();
+        signatureData.setActivationId(powerAuthSDK.getActivationIdentifier());
+        signatureData.setData(signatureHelper.normalizeOfflineData(testString, "/offline/test", nonce));
+        signatureData.setSignature(offlineSignature);
+        signatureData.setAllowBiometry(false);
+        final SignatureInfo verifyResult = testHelper.getServerApi().verifyOfflineSignature(signatureData);
+        assertNotNull(verifyResult);
+        assertTrue(verifyResult.isSignatureValid());
+        assertEquals(SignatureType.POSSESSION_KNOWLEDGE, verifyResult.getSignatureType());
+    }
+
+    @Test
+    public void testSignatureThroughput() throws Exception {
+        final Context context = testHelper.getContext();
+
+        activationHelper.createStandardActivation(true, null);
+
+        final PowerAuthAuthentication authentication = activationHelper.getValidAuthentication();
+        final byte[] dataToSign = "THROUGHPUT signature test".getBytes(Charset.defaultCharset());
+
+        final long syncStart = System.nanoTime();
+        for (int iteration = 0; iteration < THROUGHPUT_ITERATIONS; iteration++) {
+            final PowerAuthAuthorizationHttpHeader header = powerAuthSDK.requestSignatureWithAuthentication(context, authentication, "POST", "/test/throughput", dataToSign);
+            assertEquals(PowerAuthErrorCodes.SUCCEED, header.powerAuthErrorCode);
+        }
+        final long syncDuration = System.nanoTime() - syncStart;
+
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CountDownLatch latch = new CountDownLatch(THROUGHPUT_ITERATIONS);
+        final long asyncStart = System.nanoTime();
+        for (int iteration = 0; iteration < THROUGHPUT_ITERATIONS; iteration++) {
+            powerAuthSDK.requestSignatureWithAuthentication(context, authentication, "POST", "/test/throughput", dataToSign, new IRequestSignatureListener() {
+                @Override
+                public void onRequestSignatureSucceeded(@NonNull PowerAuthAuthorizationHttpHeader header) {
+                    latch.countDown();
+                }
+
+                @Override
+                public void onRequestSignatureFailed(@NonNull Throwable t) {
+                    // Callback is called on the main thread, so the failure is reported after the wait.
+                    failures.add(t);
+                    latch.countDown();
+                }
+            });
+        }
+        final long asyncScheduleDuration = System.nanoTime() - asyncStart;
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        final long asyncDuration = System.nanoTime() - asyncStart;
+        assertTrue("Signature failed: " + failures, failures.isEmpty());
+
+        Logger.d("AsyncSignatureTest: %d signatures, synchronous: %d ms, asynchronous: %d ms (caller blocked for %d us)",
+                THROUGHPUT_ITERATIONS, syncDuration / 1000000, asyncDuration / 1000000, asyncScheduleDuration / 1000);
+
+        final PowerAuthStatePersistenceMetrics metrics = powerAuthSDK.getStatePersistenceMetrics();
+        assertTrue(metrics.commits <= metrics.stateChanges);
+        Logger.d("AsyncSignatureTest: %d state changes, %d commits, %.3f commits per change",
+                metrics.stateChanges, metrics.commits, metrics.getCommitsPerChange());
+    }
+
+    /**
+     * Verify online signature on the server.
+     */
+    private void verifyOnlineSignature(@NonNull PowerAuthAuthorizationHttpHeader header, @NonNull byte[] dataToSign, @NonNull String method, @NonNull String uriId, @NonNull SignatureType expectedSignatureType) throws Exception {
+        final Map<String, String> sigComponents = signatureHelper.parseAuthorizationHeader(header);
+        final String sigVersion = sigComponents.get("pa_version");
+        final String sigType = sigComponents.get("pa_signature_type");
+        assertNotNull(sigType);
+
+        final SignatureData signatureData = new SignatureData();
+        signatureData.setActivationId(sigComponents.get("pa_activation_id"));
+        signatureData.setData(signatureHelper.normalizeOnlineData(dataToSign, method, uriId, sigComponents.get("pa_nonce")));
+        signatureData.setSignature(sigComponents.get("pa_signature"));
+        signatureData.setSignatureType(SignatureType.valueOf(sigType.toUpperCase()));
+        signatureData.setSignatureVersion(sigVersion);
+        signatureData.setApplicationKey(sigComponents.get("pa_application_key"));
+
+        final SignatureInfo verifyResult = testHelper.getServerApi().verifyOnlineSignature(signatureData);
+        assertNotNull(verifyResult);
+        assertTrue(verifyResult.isSignatureValid());
+        assertEquals(expectedSignatureType, verifyResult.getSignatureType());
+    }
+}
@@ -26,8 +26,14 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import io.getlime.security.powerauth.exception.PowerAuthErrorException;
 import io.getlime.security.powerauth.integration.support.AsyncHelper;
@@ -35,6 +41,7 @@ import io.getlime.security.powerauth.integration.support.PowerAuthTestHelper;
 import io.getlime.security.powerauth.integration.support.model.SignatureType;
 import io.getlime.security.powerauth.integration.support.model.TokenInfo;
 import io.getlime.security.powerauth.networking.exceptions.ErrorResponseApiException;
+import io.getlime.security.powerauth.networking.interfaces.ICancelable;
 import io.getlime.security.powerauth.networking.response.IGetTokenListener;
 import io.getlime.security.powerauth.networking.response.IRemoveTokenListener;
 import io.getlime.security.powerauth.sdk.PowerAuthAuthentication;
@@ -42,6 +49,7 @@ import io.getlime.security.powerauth.sdk.PowerAuthAuthorizationHttpHeader;
 import io.getlime.security.powerauth.sdk.PowerAuthSDK;
 import io.getlime.security.powerauth.sdk.PowerAuthToken;
 import io.getlime.security.powerauth.sdk.PowerAuthTokenStore;
+import io.getlime.security.powerauth.sdk.impl.PowerAuthPrivateTokenData;
 
 import static org.junit.Assert.*;
 
@@ -57,6 +65,7 @@ public class TokenStoreTest {
     private static final String TOKEN_NAME_POSSESSION = "TestToken_POSSESSION";
     private static final String TOKEN_NAME_POSSESSION_KNOWLEDGE = "TestToken_POSSESSION_KNOWLEDGE";
     private static final String TOKEN_NAME_OTHER = "TestToken_OTHER";
+    private static final int BULK_TOKENS_COUNT = 300;
 
     @Before
     public void setUp() throws Exception {
@@ -141,6 +150,94 @@ public class TokenStoreTest {
     }
 
 
+    @Test
+    public void testOverlappingTokenRequests() throws Exception {
+
+        final Context context = testHelper.getContext();
+
+        activationHelper.createStandardActivation(true, null);
+
+        // Issue multiple requests for the same token before the first one is completed.
+        final int requestsCount = 5;
+        final CountDownLatch latch = new CountDownLatch(requestsCount);
+        final List<PowerAuthToken> tokens = Collections.synchronizedList(new ArrayList<PowerAuthToken>());
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        final List<ICancelable> tasks = new ArrayList<>();
+        for (int i = 0; i < requestsCount; i++) {
+            final ICancelable task = tokenStore.requestAccessToken(context, TOKEN_NAME_POSSESSION, activationHelper.getPossessionAuthentication(), new IGetTokenListener() {
+                @Override
+                public void onGetTokenSucceeded(@NonNull PowerAuthToken token) {
+                    tokens.add(token);
+                    latch.countDown();
+                }
+
+                @Override
+                public void onGetTokenFailed(@NonNull Throwable t) {
+                    errors.add(t);
+                    latch.countDown();
+                }
+            });
+            assertNotNull(task);
+            tasks.add(task);
+        }
+        // Each caller has its own cancelable object.
+        assertEquals(requestsCount, new HashSet<>(tasks).size());
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+
+        assertTrue(errors.isEmpty());
+        assertEquals(requestsCount, tokens.size());
+        final PowerAuthToken firstToken = tokens.get(0);
+        for (PowerAuthToken token : tokens) {
+            assertEquals(firstToken, token);
+            assertEquals(firstToken.getTokenIdentifier(), token.getTokenIdentifier());
+        }
+        assertTrue(tokenStore.hasLocalToken(context, TOKEN_NAME_POSSESSION));
+        assertTrue(calculateAndValidateTokenDigest(firstToken, SignatureType.POSSESSION));
+
+        removeAccessToken(TOKEN_NAME_POSSESSION);
+        assertFalse(tokenStore.hasLocalToken(context, TOKEN_NAME_POSSESSION));
+    }
+
+    @Test
+    public void testBulkStoreAndRemove() throws Exception {
+
+        final Context context = testHelper.getContext();
+
+        activationHelper.createStandardActivation(true, null);
+
+        // Store hundreds of tokens at once.
+        final List<PowerAuthToken> tokens = new ArrayList<>(BULK_TOKENS_COUNT);
+        final List<String> tokenNames = new ArrayList<>(BULK_TOKENS_COUNT);
+        for (int i = 0; i < BULK_TOKENS_COUNT; i++) {
+            final String tokenName = "BulkToken_" + i;
+            final byte[] secret = new byte[16];
+            secret[0] = (byte) i;
+            tokens.add(new PowerAuthToken(tokenStore, new PowerAuthPrivateTokenData(tokenName, "token-id-" + i, secret)));
+            tokenNames.add(tokenName);
+        }
+        tokenStore.storeLocalTokens(context, tokens);
+        for (PowerAuthToken token : tokens) {
+            assertEquals(token, tokenStore.getLocalToken(context, token.getTokenName()));
+        }
+
+        // Remove half of them at once.
+        tokenStore.removeLocalTokens(context, tokenNames.subList(0, BULK_TOKENS_COUNT / 2));
+        for (int i = 0; i < BULK_TOKENS_COUNT; i++) {
+            assertEquals(i >= BULK_TOKENS_COUNT / 2, tokenStore.hasLocalToken(context, tokenNames.get(i)));
+        }
+
+        // Remove the rest, the index must contain all stored tokens.
+        tokenStore.removeAllLocalTokens(context);
+        for (String tokenName : tokenNames) {
+            assertFalse(tokenStore.hasLocalToken(context, tokenName));
+        }
+
+        // Tokens are not stored without activation.
+        powerAuthSDK.removeActivationLocal(context);
+        tokenStore.storeLocalTokens(context, tokens);
+        assertFalse(tokenStore.hasLocalToken(context, tokenNames.get(0)));
+    }
+
     /**
      * Request access token with using PowerAuthTokenStore.
      * @param tokenName Name of token.
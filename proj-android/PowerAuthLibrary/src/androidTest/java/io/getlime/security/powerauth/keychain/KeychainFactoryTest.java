@@ -17,16 +17,21 @@
 package io.getlime.security.powerauth.keychain;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 
 import androidx.test.platform.app.InstrumentationRegistry;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.File;
+
 import io.getlime.security.powerauth.exception.PowerAuthErrorCodes;
 import io.getlime.security.powerauth.exception.PowerAuthErrorException;
+import io.getlime.security.powerauth.keychain.impl.FileKeychain;
 
 import static org.junit.Assert.*;
 
@@ -46,6 +51,13 @@ public class KeychainFactoryTest {
         eraseAllKeychainData(KEYCHAIN_2_NAME);
     }
 
+    @After
+    public void tearDown() throws Exception {
+        // Reset factory after test.
+        KeychainFactory.setKeychainProtectionSupport(null);
+        KeychainFactory.setFileStorageEnabled(false);
+    }
+
     @Test
     public void testCachedKeychains() throws Exception {
         final Keychain keychain1_a = KeychainFactory.getKeychain(androidContext, KEYCHAIN_1_NAME, KeychainProtection.NONE);
@@ -71,6 +83,40 @@ public class KeychainFactoryTest {
         }
     }
 
+    @Test
+    public void testMigrationToFileStorage() throws Exception {
+        final SharedPreferences preferences = androidContext.getSharedPreferences(KEYCHAIN_1_NAME, Context.MODE_PRIVATE);
+        // Make sure that factory doesn't keep keychains created in other tests.
+        KeychainFactory.setKeychainProtectionSupport(null);
+
+        // Fill keychain based on SharedPreferences.
+        Keychain keychain = KeychainFactory.getKeychain(androidContext, KEYCHAIN_1_NAME, KeychainProtection.NONE);
+        assertFalse(keychain instanceof FileKeychain);
+        keychain.putString("Test value", "test.string");
+        keychain.putData(new byte[] { 1, 2, 3 }, "test.data");
+        keychain.putLong(123, "test.long");
+        assertFalse(preferences.getAll().isEmpty());
+
+        // Enable the file storage. The factory must be reset, because it already created some keychains.
+        KeychainFactory.setKeychainProtectionSupport(null);
+        KeychainFactory.setFileStorageEnabled(true);
+        keychain = KeychainFactory.getKeychain(androidContext, KEYCHAIN_1_NAME, KeychainProtection.NONE);
+        assertTrue(keychain instanceof FileKeychain);
+        assertEquals("Test value", keychain.getString("test.string"));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, keychain.getData("test.data"));
+        assertEquals(123, keychain.getLong("test.long", 0));
+        assertTrue(preferences.getAll().isEmpty());
+        assertEquals(KeychainFactory.getKeychainProtectionSupportedOnDevice(androidContext) != KeychainProtection.NONE, keychain.isEncrypted());
+
+        // Content is kept in the file.
+        keychain.putString("Newer value", "test.string");
+        KeychainFactory.setKeychainProtectionSupport(null);
+        keychain = KeychainFactory.getKeychain(androidContext, KEYCHAIN_1_NAME, KeychainProtection.NONE);
+        assertTrue(keychain instanceof FileKeychain);
+        assertEquals("Newer value", keychain.getString("test.string"));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, keychain.getData("test.data"));
+    }
+
     /**
      * Erase all data (including version markers) for given keychain.
      * @param identifier Keychain identifier.
@@ -79,6 +125,10 @@ public class KeychainFactoryTest {
         androidContext.getSharedPreferences(identifier, Context.MODE_PRIVATE)
                 .edit()
                 .clear()
-                .apply();
+                .commit();
+        final File file = FileKeychain.getKeychainFile(androidContext, identifier);
+        if (file.exists()) {
+            assertTrue(file.delete());
+        }
     }
 }
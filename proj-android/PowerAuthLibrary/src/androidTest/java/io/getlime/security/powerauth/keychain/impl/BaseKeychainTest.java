@@ -23,6 +23,8 @@ import java.util.HashSet;
 import java.util.Set;
 
 import io.getlime.security.powerauth.keychain.Keychain;
+import io.getlime.security.powerauth.keychain.KeychainFactory;
+import io.getlime.security.powerauth.keychain.KeychainTransaction;
 import io.getlime.security.powerauth.system.PowerAuthLog;
 
 import static org.junit.Assert.*;
@@ -71,6 +73,7 @@ public abstract class BaseKeychainTest {
         testDefaultValues(keychain);
         testNullValueToRemoveKey(keychain);
         testUpdateData(keychain);
+        testTransaction(keychain);
     }
 
     /**
@@ -171,4 +174,62 @@ public abstract class BaseKeychainTest {
         assertFalse(receivedSet.contains("test"));
         assertFalse(receivedSet.contains("wultra.com"));
     }
+
+    public void testTransaction(@NonNull Keychain keychain) throws Exception {
+        testTransaction(keychain, false);
+    }
+
+    public void testTransaction(@NonNull Keychain keychain, boolean sequential) throws Exception {
+        fillTestValues(keychain);
+
+        final KeychainTransaction transaction = beginTransaction(keychain, sequential)
+                .putBoolean(false, "test.true")
+                .putData(TEST_DATA_NOT_EMPTY_2, "test.data_NotEmpty")
+                .putString(TEST_STRING_NOT_EMPTY_2, "test.string_NotEmpty")
+                .putStringSet(TEST_SET_NOT_EMPTY_2, "test.set_NotEmpty")
+                .putFloat(1.f, "test.zeroFloat")
+                .putLong(1, "test.zeroLong")
+                .putString("temporary", "test.string_Empty")
+                .remove("test.string_Empty")
+                .putData(null, "test.string_BadBase64");
+
+        // Nothing is changed before commit
+        testFilledValues(keychain, false);
+
+        assertTrue(transaction.commit());
+        assertFalse(keychain.getBoolean("test.true", true));
+        assertArrayEquals(TEST_DATA_NOT_EMPTY_2, keychain.getData("test.data_NotEmpty"));
+        assertEquals(TEST_STRING_NOT_EMPTY_2, keychain.getString("test.string_NotEmpty"));
+        assertEquals(TEST_SET_NOT_EMPTY_2, keychain.getStringSet("test.set_NotEmpty"));
+        assertEquals(1.f, keychain.getFloat("test.zeroFloat", 0.f), 0.0);
+        assertEquals(1, keychain.getLong("test.zeroLong", 0));
+        assertFalse(keychain.contains("test.string_Empty"));
+        assertFalse(keychain.contains("test.string_BadBase64"));
+        // Untouched values
+        assertFalse(keychain.getBoolean("test.false", true));
+        assertEquals(7710177, keychain.getLong("test.long", 0));
+        assertEquals(TEST_SET_EMPTY, keychain.getStringSet("test.set_Empty"));
+
+        // Transaction can be committed only once
+        try {
+            transaction.commit();
+            fail();
+        } catch (IllegalStateException e) {
+            // Success
+        }
+        // Empty transaction
+        assertTrue(beginTransaction(keychain, sequential).commit());
+        // Reserved key
+        try {
+            beginTransaction(keychain, sequential).putLong(1, EncryptedKeychain.ENCRYPTED_KEYCHAIN_VERSION_KEY);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+    }
+
+    @NonNull
+    private static KeychainTransaction beginTransaction(@NonNull Keychain keychain, boolean sequential) {
+        return sequential ? new SequentialKeychainTransaction(keychain) : KeychainFactory.beginTransaction(keychain);
+    }
 }
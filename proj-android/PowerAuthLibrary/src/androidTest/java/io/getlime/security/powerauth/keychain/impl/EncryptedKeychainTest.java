@@ -25,6 +25,13 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import io.getlime.security.powerauth.keychain.Keychain;
 import io.getlime.security.powerauth.keychain.KeychainFactory;
 import io.getlime.security.powerauth.keychain.KeychainProtection;
@@ -39,6 +46,7 @@ public class EncryptedKeychainTest extends BaseKeychainTest {
 
     private static final String KEYCHAIN_NAME = "com.wultra.test.encryptedKeychain";
 
+    private SymmetricKeyProvider symmetricKeyProvider;
     private Keychain keychain;
     private @KeychainProtection int currentProtectionLevel;
 
@@ -56,7 +64,7 @@ public class EncryptedKeychainTest extends BaseKeychainTest {
         }
 
         KeychainProtectionSupport keychainProtectionSupport = FakeKeychainProtectionSupport.NO_STRONGBOX;
-        SymmetricKeyProvider symmetricKeyProvider = SymmetricKeyProvider.getAesGcmKeyProvider("com.wultra.test.symmetricAesGcmKey", true, keychainProtectionSupport,256, true, null);
+        symmetricKeyProvider = SymmetricKeyProvider.getAesGcmKeyProvider("com.wultra.test.symmetricAesGcmKey", true, keychainProtectionSupport,256, true, null);
         assertNotNull(symmetricKeyProvider);
         symmetricKeyProvider.deleteSecretKey();
 
@@ -75,4 +83,153 @@ public class EncryptedKeychainTest extends BaseKeychainTest {
             runAllStandardTests(keychain);
         }
     }
+
+    @Test
+    public void testSecretKeyCache() throws Exception {
+
+        // Do not run this test, in case that device doesn't support enough protection level.
+        if (currentProtectionLevel == KeychainProtection.NONE) {
+            return;
+        }
+
+        // The first access resolves the key from KeyStore.
+        keychain.putString("value", "key");
+        final SymmetricKeyProvider.KeyStoreStatistics stats1 = symmetricKeyProvider.getKeyStoreStatistics();
+
+        // Following operations must not touch the KeyStore.
+        for (int i = 0; i < 10; i++) {
+            keychain.putString("value" + i, "key" + i);
+            assertEquals("value" + i, keychain.getString("key" + i));
+            assertTrue(keychain.contains("key" + i));
+        }
+        final SymmetricKeyProvider.KeyStoreStatistics stats2 = symmetricKeyProvider.getKeyStoreStatistics();
+        assertEquals(stats1.getTotalCount(), stats2.getTotalCount());
+
+        // After invalidation, the key is resolved again, exactly once.
+        symmetricKeyProvider.invalidateCachedSecretKey();
+        assertEquals("value", keychain.getString("key"));
+        assertEquals("value", keychain.getString("key"));
+        final SymmetricKeyProvider.KeyStoreStatistics stats3 = symmetricKeyProvider.getKeyStoreStatistics();
+        assertEquals(stats2.containsAliasCount + 1, stats3.containsAliasCount);
+        assertEquals(stats2.getKeyCount + 1, stats3.getKeyCount);
+        assertEquals(stats2.generateKeyCount, stats3.generateKeyCount);
+
+        // After the key removal, the new key is generated and the old content is no longer available.
+        symmetricKeyProvider.deleteSecretKey();
+        assertNull(keychain.getString("key"));
+        final SymmetricKeyProvider.KeyStoreStatistics stats4 = symmetricKeyProvider.getKeyStoreStatistics();
+        assertEquals(stats3.generateKeyCount + 1, stats4.generateKeyCount);
+        keychain.putString("newValue", "key");
+        assertEquals("newValue", keychain.getString("key"));
+        assertEquals(stats4.getTotalCount(), symmetricKeyProvider.getKeyStoreStatistics().getTotalCount());
+    }
+
+    @Test
+    public void testValueCache() throws Exception {
+
+        // Do not run this test, in case that device doesn't support enough protection level.
+        if (currentProtectionLevel == KeychainProtection.NONE) {
+            return;
+        }
+
+        final EncryptedKeychain encryptedKeychain = (EncryptedKeychain) keychain;
+        encryptedKeychain.setValueCacheSize(1024);
+        // The cache must not change the keychain behavior.
+        runAllStandardTests(encryptedKeychain);
+
+        encryptedKeychain.removeAll();
+        assertEquals(0, encryptedKeychain.getValueCacheStatistics().entryCount);
+
+        // Written values are available without decryption.
+        fillTestValues(encryptedKeychain);
+        final KeychainValueCache.Statistics stats1 = encryptedKeychain.getValueCacheStatistics();
+        testFilledValues(encryptedKeychain, false);
+        final KeychainValueCache.Statistics stats2 = encryptedKeychain.getValueCacheStatistics();
+        assertEquals(stats1.missCount + 1, stats2.missCount);   // Empty data is not stored, so it is not cached
+        assertTrue(stats2.hitCount > stats1.hitCount);
+
+        // After trim, values are decrypted again.
+        encryptedKeychain.trimValueCache();
+        assertEquals(0, encryptedKeychain.getValueCacheStatistics().size);
+        testFilledValues(encryptedKeychain, false);
+        final KeychainValueCache.Statistics stats3 = encryptedKeychain.getValueCacheStatistics();
+        assertTrue(stats3.missCount > stats2.missCount);
+        assertTrue(stats3.entryCount > 0);
+
+        // Cached values are not exposed to the application.
+        final byte[] cachedData = encryptedKeychain.getData("test.data_NotEmpty");
+        assertNotNull(cachedData);
+        final byte[] cachedDataCopy = cachedData.clone();
+        Arrays.fill(cachedData, (byte) 0);
+        assertArrayEquals(cachedDataCopy, encryptedKeychain.getData("test.data_NotEmpty"));
+
+        // Removed values are no longer cached.
+        encryptedKeychain.remove("test.string_NotEmpty");
+        assertNull(encryptedKeychain.getString("test.string_NotEmpty"));
+        encryptedKeychain.putString("Cached", "test.string_NotEmpty");
+        assertEquals("Cached", encryptedKeychain.getString("test.string_NotEmpty"));
+        encryptedKeychain.setValueCacheSize(0);
+        assertEquals("Cached", encryptedKeychain.getString("test.string_NotEmpty"));
+
+        // Cached values are removed together with the encryption key.
+        encryptedKeychain.setValueCacheSize(1024);
+        assertEquals("Cached", encryptedKeychain.getString("test.string_NotEmpty"));
+        assertTrue(encryptedKeychain.getValueCacheStatistics().entryCount > 0);
+        symmetricKeyProvider.deleteSecretKey();
+        assertNull(encryptedKeychain.getString("test.string_NotEmpty"));
+        assertEquals(0, encryptedKeychain.getValueCacheStatistics().entryCount);
+    }
+
+    @Test
+    public void testValueCacheConcurrentAccess() throws Exception {
+
+        // Do not run this test, in case that device doesn't support enough protection level.
+        if (currentProtectionLevel == KeychainProtection.NONE) {
+            return;
+        }
+
+        final EncryptedKeychain encryptedKeychain = (EncryptedKeychain) keychain;
+        // Small cache, so values are evicted while other threads read them.
+        encryptedKeychain.setValueCacheSize(64);
+
+        final int threadsCount = 8;
+        final int iterations = 50;
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CountDownLatch latch = new CountDownLatch(threadsCount);
+        for (int t = 0; t < threadsCount; t++) {
+            final int threadIndex = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < iterations; i++) {
+                            final String floatKey = "test.float_" + threadIndex + "_" + (i % 4);
+                            final String stringKey = "test.string_" + threadIndex + "_" + (i % 4);
+                            final float floatValue = threadIndex * 1000 + i;
+                            encryptedKeychain.putFloat(floatValue, floatKey);
+                            encryptedKeychain.putString("Value " + floatValue, stringKey);
+                            assertEquals(floatValue, encryptedKeychain.getFloat(floatKey, -1.f), 0.f);
+                            assertEquals("Value " + floatValue, encryptedKeychain.getString(stringKey));
+                        }
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }).start();
+        }
+        assertTrue(latch.await(60, TimeUnit.SECONDS));
+        assertTrue(failures.isEmpty());
+
+        final KeychainValueCache.Statistics stats = encryptedKeychain.getValueCacheStatistics();
+        assertTrue(stats.size <= 64);
+        assertTrue(stats.hitCount + stats.missCount >= threadsCount * iterations * 2);
+        // All values are still readable, also without the cache.
+        encryptedKeychain.trimValueCache();
+        for (int t = 0; t < threadsCount; t++) {
+            final float lastValue = t * 1000 + iterations - 1;
+            assertEquals(lastValue, encryptedKeychain.getFloat("test.float_" + t + "_" + ((iterations - 1) % 4), -1.f), 0.f);
+        }
+    }
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.keychain.impl;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.crypto.SecretKey;
+
+import io.getlime.security.powerauth.integration.support.Logger;
+import io.getlime.security.powerauth.keychain.Keychain;
+import io.getlime.security.powerauth.keychain.KeychainFactory;
+import io.getlime.security.powerauth.keychain.KeychainProtection;
+import io.getlime.security.powerauth.keychain.SymmetricKeyProvider;
+import io.getlime.security.powerauth.keychain.FakeKeychainProtectionSupport;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class EnvelopeEncryptionTest extends BaseKeychainTest {
+
+    private static final String KEYCHAIN_NAME = "com.wultra.test.envelopeKeychain";
+    private static final int BENCHMARK_ITERATIONS = 200;
+
+    private Context androidContext;
+    private SymmetricKeyProvider symmetricKeyProvider;
+    private SharedPreferences backingSharedPreferences;
+    private @KeychainProtection int currentProtectionLevel;
+
+    @Before
+    public void setUp() throws Exception {
+        androidContext = InstrumentationRegistry.getInstrumentation().getContext();
+        assertNotNull(androidContext);
+
+        // Do not prepare KeyStore in case that device doesn't support enough protection level.
+        currentProtectionLevel = KeychainFactory.getKeychainProtectionSupportedOnDevice(androidContext);
+        if (currentProtectionLevel == KeychainProtection.NONE) {
+            return;
+        }
+
+        symmetricKeyProvider = SymmetricKeyProvider.getAesGcmKeyProvider("com.wultra.test.symmetricAesGcmKey", true, FakeKeychainProtectionSupport.NO_STRONGBOX, 256, true, null);
+        assertNotNull(symmetricKeyProvider);
+        symmetricKeyProvider.deleteSecretKey();
+
+        backingSharedPreferences = androidContext.getSharedPreferences(KEYCHAIN_NAME, Context.MODE_PRIVATE);
+        backingSharedPreferences.edit().clear().apply();
+
+        setupTestData();
+    }
+
+    @Test
+    public void testKeychainUsage() throws Exception {
+        // Do not run this test, in case that device doesn't support enough protection level.
+        if (currentProtectionLevel == KeychainProtection.NONE) {
+            return;
+        }
+        final EncryptedKeychain keychain = new EncryptedKeychain(androidContext, KEYCHAIN_NAME, symmetricKeyProvider, null, true);
+        assertTrue(keychain.isEnvelopeEncryptionEnabled());
+        keychain.removeAll();
+        runAllStandardTests(keychain);
+
+        // Values are still available after the data key is wiped.
+        fillTestValues(keychain);
+        assertTrue(backingSharedPreferences.contains(EncryptedKeychain.ENCRYPTED_KEYCHAIN_DATA_KEY));
+        keychain.wipeDataKey();
+        testFilledValues(keychain, false);
+        // Values are available in the new instance.
+        final EncryptedKeychain keychain2 = new EncryptedKeychain(androidContext, KEYCHAIN_NAME, symmetricKeyProvider, null, true);
+        assertTrue(keychain2.updateEncryptionSupport(backingSharedPreferences));
+        testFilledValues(keychain2, false);
+
+        // Values are not decrypted with the KeyStore key directly.
+        final SymmetricKeyProvider.KeyStoreStatistics stats1 = symmetricKeyProvider.getKeyStoreStatistics();
+        symmetricKeyProvider.invalidateCachedSecretKey();
+        testFilledValues(keychain2, false);
+        final SymmetricKeyProvider.KeyStoreStatistics stats2 = symmetricKeyProvider.getKeyStoreStatistics();
+        assertEquals(stats1.getTotalCount(), stats2.getTotalCount());
+    }
+
+    @Test
+    public void testEnvelopeEncryptionMigration() throws Exception {
+        // Do not run this test, in case that device doesn't support enough protection level.
+        if (currentProtectionLevel == KeychainProtection.NONE) {
+            return;
+        }
+        // Regular keychain with content.
+        final EncryptedKeychain regularKeychain = new EncryptedKeychain(androidContext, KEYCHAIN_NAME, symmetricKeyProvider, null, false);
+        regularKeychain.removeAll();
+        fillTestValues(regularKeychain);
+        assertFalse(backingSharedPreferences.contains(EncryptedKeychain.ENCRYPTED_KEYCHAIN_DATA_KEY));
+
+        // Turn envelope encryption on.
+        final EncryptedKeychain envelopeKeychain = new EncryptedKeychain(androidContext, KEYCHAIN_NAME, symmetricKeyProvider, null, true);
+        assertTrue(envelopeKeychain.updateEncryptionSupport(backingSharedPreferences));
+        assertTrue(backingSharedPreferences.contains(EncryptedKeychain.ENCRYPTED_KEYCHAIN_DATA_KEY));
+        testFilledValues(envelopeKeychain, false);
+        // Content is no longer encrypted with the KeyStore key.
+        assertNull(regularKeychain.getString("test.string_NotEmpty"));
+
+        // Turn envelope encryption off.
+        final EncryptedKeychain regularKeychain2 = new EncryptedKeychain(androidContext, KEYCHAIN_NAME, symmetricKeyProvider, null, false);
+        assertTrue(regularKeychain2.updateEncryptionSupport(backingSharedPreferences));
+        assertFalse(backingSharedPreferences.contains(EncryptedKeychain.ENCRYPTED_KEYCHAIN_DATA_KEY));
+        testFilledValues(regularKeychain2, false);
+    }
+
+    @Test
+    public void testBenchmarkWithKeyStoreKey() throws Exception {
+        // Do not run this test, in case that device doesn't support enough protection level.
+        if (currentProtectionLevel == KeychainProtection.NONE) {
+            return;
+        }
+        final SecretKey secretKey = symmetricKeyProvider.getOrCreateSecretKey(androidContext, false);
+        assertNotNull(secretKey);
+        EnvelopeKeyImplTest.runBenchmark("KeyStore key", secretKey);
+
+        final Keychain regularKeychain = new EncryptedKeychain(androidContext, KEYCHAIN_NAME, symmetricKeyProvider, null, false);
+        regularKeychain.removeAll();
+        final long regularTime = runKeychainBenchmark(regularKeychain);
+
+        final Keychain envelopeKeychain = new EncryptedKeychain(androidContext, KEYCHAIN_NAME + ".envelope", symmetricKeyProvider, null, true);
+        envelopeKeychain.removeAll();
+        final long envelopeTime = runKeychainBenchmark(envelopeKeychain);
+
+        Logger.d("EncryptedKeychain: %d iterations, regular: %d us, envelope: %d us", BENCHMARK_ITERATIONS, regularTime / 1000, envelopeTime / 1000);
+    }
+
+    /**
+     * Write and read values to the keychain.
+     * @param keychain Keychain to test.
+     * @return Elapsed time in nanoseconds.
+     */
+    private long runKeychainBenchmark(@NonNull Keychain keychain) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            keychain.putString(TEST_STRING_NOT_EMPTY_1, "test.string");
+            assertEquals(TEST_STRING_NOT_EMPTY_1, keychain.getString("test.string"));
+        }
+        return System.nanoTime() - start;
+    }
+}
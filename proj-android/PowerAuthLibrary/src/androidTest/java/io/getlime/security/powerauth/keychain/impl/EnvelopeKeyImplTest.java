@@ -0,0 +1,136 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.keychain.impl;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.getlime.security.powerauth.integration.support.Logger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link EnvelopeKeyImpl}. The tests use software key as a stand-in for the KeyStore key,
+ * so they don't depend on Android KeyStore.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EnvelopeKeyImplTest {
+
+    private static final String IDENTIFIER = "com.wultra.test.envelope";
+    private static final int BENCHMARK_ITERATIONS = 200;
+    private static final byte[] TEST_DATA = BaseKeychainTest.TEST_DATA_NOT_EMPTY_1;
+
+    @Test
+    public void testDataKeyWrapping() throws Exception {
+        final SecretKey wrappingKey = createSoftwareKey();
+        final EnvelopeKeyImpl.DataKey dataKey = EnvelopeKeyImpl.generateDataKey();
+        assertEquals(EnvelopeKeyImpl.DATA_KEY_SIZE_IN_BYTES, dataKey.getEncoded().length);
+
+        final byte[] wrappedDataKey = EnvelopeKeyImpl.wrapDataKey(dataKey, wrappingKey, IDENTIFIER, null);
+        assertNotNull(wrappedDataKey);
+        final EnvelopeKeyImpl.DataKey unwrappedDataKey = EnvelopeKeyImpl.unwrapDataKey(wrappedDataKey, wrappingKey, IDENTIFIER, null);
+        assertNotNull(unwrappedDataKey);
+        assertArrayEquals(dataKey.getEncoded(), unwrappedDataKey.getEncoded());
+
+        // Different keychain, or different wrapping key
+        assertNull(EnvelopeKeyImpl.unwrapDataKey(wrappedDataKey, wrappingKey, IDENTIFIER + ".other", null));
+        assertNull(EnvelopeKeyImpl.unwrapDataKey(wrappedDataKey, createSoftwareKey(), IDENTIFIER, null));
+        // Modified wrapped key
+        final byte[] modifiedDataKey = Arrays.copyOf(wrappedDataKey, wrappedDataKey.length);
+        modifiedDataKey[AesGcmImpl.IV_SIZE_IN_BYTES] ^= 1;
+        assertNull(EnvelopeKeyImpl.unwrapDataKey(modifiedDataKey, wrappingKey, IDENTIFIER, null));
+
+        // The wrapped data key cannot be used as a keychain value.
+        assertNull(AesGcmImpl.decrypt(wrappedDataKey, wrappingKey, IDENTIFIER));
+
+        // Values encrypted with the data key
+        final byte[] encrypted = AesGcmImpl.encrypt(TEST_DATA, dataKey, IDENTIFIER);
+        assertNotNull(encrypted);
+        assertArrayEquals(TEST_DATA, AesGcmImpl.decrypt(encrypted, unwrappedDataKey, IDENTIFIER));
+
+        // Destroy
+        dataKey.destroy();
+        assertTrue(dataKey.isDestroyed());
+        try {
+            dataKey.getEncoded();
+            fail();
+        } catch (IllegalStateException e) {
+            // Success
+        }
+        assertFalse(unwrappedDataKey.isDestroyed());
+    }
+
+    @Test
+    public void testBenchmarkWithSoftwareKey() throws Exception {
+        runBenchmark("software key", createSoftwareKey());
+    }
+
+    /**
+     * Compare AES-GCM encryption and decryption with the provided master key and with the data key.
+     * @param name Benchmark name.
+     * @param masterKey Master key.
+     */
+    static void runBenchmark(@NonNull String name, @NonNull SecretKey masterKey) {
+        final EnvelopeKeyImpl.DataKey dataKey = EnvelopeKeyImpl.generateDataKey();
+        // Warm up both paths
+        for (int i = 0; i < BENCHMARK_ITERATIONS / 10; i++) {
+            encryptAndDecrypt(masterKey);
+            encryptAndDecrypt(dataKey);
+        }
+        final long directStart = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            encryptAndDecrypt(masterKey);
+        }
+        final long directTime = System.nanoTime() - directStart;
+
+        final long envelopeStart = System.nanoTime();
+        final byte[] wrappedDataKey = EnvelopeKeyImpl.wrapDataKey(dataKey, masterKey, IDENTIFIER, null);
+        assertNotNull(wrappedDataKey);
+        final EnvelopeKeyImpl.DataKey unwrappedDataKey = EnvelopeKeyImpl.unwrapDataKey(wrappedDataKey, masterKey, IDENTIFIER, null);
+        assertNotNull(unwrappedDataKey);
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            encryptAndDecrypt(unwrappedDataKey);
+        }
+        final long envelopeTime = System.nanoTime() - envelopeStart;
+
+        Logger.d("EnvelopeKeyImpl: %s, %d iterations, direct: %d us, envelope: %d us", name, BENCHMARK_ITERATIONS, directTime / 1000, envelopeTime / 1000);
+        dataKey.destroy();
+        unwrappedDataKey.destroy();
+    }
+
+    private static void encryptAndDecrypt(@NonNull SecretKey key) {
+        final byte[] encrypted = AesGcmImpl.encrypt(TEST_DATA, key, IDENTIFIER);
+        assertNotNull(encrypted);
+        assertArrayEquals(TEST_DATA, AesGcmImpl.decrypt(encrypted, key, IDENTIFIER));
+    }
+
+    @NonNull
+    private static SecretKey createSoftwareKey() {
+        final byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        return new SecretKeySpec(keyBytes, "AES");
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.keychain.impl;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+import io.getlime.security.powerauth.integration.support.Logger;
+import io.getlime.security.powerauth.keychain.FakeKeychainProtectionSupport;
+import io.getlime.security.powerauth.keychain.KeychainFactory;
+import io.getlime.security.powerauth.keychain.KeychainProtection;
+import io.getlime.security.powerauth.keychain.KeychainProtectionSupport;
+import io.getlime.security.powerauth.keychain.KeychainTransaction;
+import io.getlime.security.powerauth.keychain.SymmetricKeyProvider;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class FileKeychainTest extends BaseKeychainTest {
+
+    private static final String KEYCHAIN_NAME = "com.wultra.test.fileKeychain";
+    private static final int WRITE_COST_VALUES = 50;
+    private static final int BENCHMARK_KEYS = 50;
+    private static final int BENCHMARK_WRITES = 1000;
+    private static final int BENCHMARK_VALUE_SIZE = 128;
+
+    private Context androidContext;
+    private SharedPreferences backingSharedPreferences;
+    private File keychainFile;
+    private @KeychainProtection int currentProtectionLevel;
+
+    @Before
+    public void setUp() throws Exception {
+        androidContext = InstrumentationRegistry.getInstrumentation().getContext();
+        assertNotNull(androidContext);
+        currentProtectionLevel = KeychainFactory.getKeychainProtectionSupportedOnDevice(androidContext);
+
+        backingSharedPreferences = androidContext.getSharedPreferences(KEYCHAIN_NAME, Context.MODE_PRIVATE);
+        backingSharedPreferences.edit().clear().commit();
+
+        keychainFile = FileKeychain.getKeychainFile(androidContext, KEYCHAIN_NAME);
+        if (keychainFile.exists()) {
+            assertTrue(keychainFile.delete());
+        }
+
+        setupTestData();
+    }
+
+    @Test
+    public void testUnencryptedKeychain() throws Exception {
+        final FileKeychain keychain = new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, null);
+        assertFalse(keychain.isEncrypted());
+        assertFalse(keychain.isStrongBoxBacked());
+        runAllStandardTests(keychain);
+
+        // Content is available in the new instance.
+        fillTestValues(keychain);
+        testFilledValues(new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, null), false);
+
+        keychain.removeAll();
+        assertFalse(keychain.contains("test.string_NotEmpty"));
+        assertFalse(new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, null).contains("test.string_NotEmpty"));
+    }
+
+    @Test
+    public void testEncryptedKeychain() throws Exception {
+        // Do not run this test, in case that device doesn't support enough protection level.
+        if (currentProtectionLevel == KeychainProtection.NONE) {
+            return;
+        }
+        final SymmetricKeyProvider keyProvider = createKeyProvider();
+        final FileKeychain keychain = new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, keyProvider);
+        assertTrue(keychain.isEncrypted());
+        runAllStandardTests(keychain);
+
+        fillTestValues(keychain);
+        testFilledValues(new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, keyProvider), false);
+
+        // Encrypted content is kept when the encryption is not available, but it's not readable.
+        final FileKeychain keychainWithoutKey = new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, null);
+        assertTrue(keychainWithoutKey.isEncrypted());
+        assertNull(keychainWithoutKey.getString("test.string_NotEmpty"));
+        assertTrue(FileKeychain.isEncryptedContentInFile(keychainFile));
+
+        // Content is available again once the encryption is available.
+        testFilledValues(new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, keyProvider), false);
+    }
+
+    @Test
+    public void testStrongBoxSupportChange() throws Exception {
+        // Do not run this test, in case that device doesn't support enough protection level.
+        if (currentProtectionLevel == KeychainProtection.NONE) {
+            return;
+        }
+        // Content is encrypted with the backup key while StrongBox is disabled.
+        FileKeychain keychain = createStrongBoxKeychain(FakeKeychainProtectionSupport.HAS_STRONGBOX_DISABLED);
+        assertTrue(keychain.isEncrypted());
+        assertFalse(keychain.isStrongBoxBacked());
+        fillTestValues(keychain);
+
+        // Content is re-encrypted with the regular key once StrongBox is enabled.
+        keychain = createStrongBoxKeychain(FakeKeychainProtectionSupport.NO_STRONGBOX);
+        assertTrue(keychain.isEncrypted());
+        testFilledValues(keychain, false);
+        testFilledValues(createStrongBoxKeychain(FakeKeychainProtectionSupport.NO_STRONGBOX), false);
+
+        // And back to the backup key.
+        keychain = createStrongBoxKeychain(FakeKeychainProtectionSupport.HAS_STRONGBOX_DISABLED);
+        assertTrue(keychain.isEncrypted());
+        testFilledValues(keychain, false);
+    }
+
+    @Test
+    public void testEncryptUnencryptedContent() throws Exception {
+        // Do not run this test, in case that device doesn't support enough protection level.
+        if (currentProtectionLevel == KeychainProtection.NONE) {
+            return;
+        }
+        fillTestValues(new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, null));
+
+        final FileKeychain keychain = new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, createKeyProvider());
+        assertTrue(keychain.isEncrypted());
+        testFilledValues(keychain, false);
+    }
+
+    @Test
+    public void testImportFromLegacyKeychain() throws Exception {
+        final LegacyKeychain legacyKeychain = new LegacyKeychain(androidContext, KEYCHAIN_NAME);
+        fillTestValues(legacyKeychain);
+
+        final FileKeychain keychain = new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, null);
+        assertTrue(keychain.importFromSharedPreferences(backingSharedPreferences, null));
+        assertTrue(backingSharedPreferences.getAll().isEmpty());
+        testFilledValues(keychain, true);  // Empty string is treated as null after migration.
+    }
+
+    @Test
+    public void testFailedImportKeepsContent() throws Exception {
+        final LegacyKeychain legacyKeychain = new LegacyKeychain(androidContext, KEYCHAIN_NAME);
+        fillTestValues(legacyKeychain);
+        // Integer values are not supported by the keychain.
+        assertTrue(backingSharedPreferences.edit().putInt("test.integer", 1).commit());
+
+        final FileKeychain keychain = new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, null);
+        assertFalse(keychain.importFromSharedPreferences(backingSharedPreferences, null));
+        assertFalse(keychain.contains("test.string_NotEmpty"));
+        assertEquals(1, backingSharedPreferences.getInt("test.integer", 0));
+        testFilledValues(legacyKeychain, false);
+    }
+
+    @Test
+    public void testImportIsNotRepeated() throws Exception {
+        final LegacyKeychain legacyKeychain = new LegacyKeychain(androidContext, KEYCHAIN_NAME);
+        fillTestValues(legacyKeychain);
+
+        final FileKeychain keychain = new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, null);
+        assertTrue(keychain.importFromSharedPreferences(backingSharedPreferences, null));
+        keychain.putString("test.string_NotEmpty", "Newer value");
+
+        // Simulate that the imported content was not removed from SharedPreferences.
+        fillTestValues(legacyKeychain);
+        assertFalse(backingSharedPreferences.getAll().isEmpty());
+
+        // The outdated content is removed, but not imported again.
+        final FileKeychain newKeychain = new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, null);
+        assertTrue(newKeychain.importFromSharedPreferences(backingSharedPreferences, null));
+        assertTrue(backingSharedPreferences.getAll().isEmpty());
+        assertEquals("Newer value", newKeychain.getString("test.string_NotEmpty"));
+    }
+
+    @Test
+    public void testImportToNonEmptyFileFails() throws Exception {
+        final FileKeychain keychain = new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, null);
+        keychain.putString("test.fileOnly", "File value");
+
+        final LegacyKeychain legacyKeychain = new LegacyKeychain(androidContext, KEYCHAIN_NAME);
+        fillTestValues(legacyKeychain);
+
+        // Values that are not imported are never overwritten and SharedPreferences are kept intact.
+        assertFalse(keychain.importFromSharedPreferences(backingSharedPreferences, null));
+        assertEquals("File value", keychain.getString("test.fileOnly"));
+        assertFalse(keychain.contains("test.string_NotEmpty"));
+        testFilledValues(legacyKeychain, false);
+    }
+
+    @Test
+    public void testImportFromEncryptedKeychain() throws Exception {
+        // Do not run this test, in case that device doesn't support enough protection level.
+        if (currentProtectionLevel == KeychainProtection.NONE) {
+            return;
+        }
+        final SymmetricKeyProvider keyProvider = createKeyProvider();
+        final EncryptedKeychain encryptedKeychain = new EncryptedKeychain(androidContext, KEYCHAIN_NAME, keyProvider, null);
+        encryptedKeychain.removeAll();
+        fillTestValues(encryptedKeychain);
+
+        final FileKeychain keychain = new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, keyProvider);
+        assertTrue(keychain.importFromSharedPreferences(backingSharedPreferences, encryptedKeychain));
+        assertTrue(backingSharedPreferences.getAll().isEmpty());
+        testFilledValues(keychain, false);
+        testFilledValues(new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, keyProvider), false);
+    }
+
+    @Test
+    public void testWriteCost() throws Exception {
+        final FileKeychain keychain = new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, null);
+        final byte[] value = new byte[128];
+
+        // Each put synchronizes the file.
+        long start = System.nanoTime();
+        for (int i = 0; i < WRITE_COST_VALUES; i++) {
+            value[0] = (byte) i;
+            keychain.putData(value, "test.key" + i);
+        }
+        final long putTime = System.nanoTime() - start;
+
+        // Transaction synchronizes the file only once.
+        start = System.nanoTime();
+        final KeychainTransaction transaction = keychain.beginTransaction();
+        for (int i = 0; i < WRITE_COST_VALUES; i++) {
+            value[0] = (byte) (i + 1);
+            transaction.putData(value, "test.key" + i);
+        }
+        assertTrue(transaction.commit());
+        final long transactionTime = System.nanoTime() - start;
+
+        for (int i = 0; i < WRITE_COST_VALUES; i++) {
+            final byte[] stored = keychain.getData("test.key" + i);
+            assertNotNull(stored);
+            assertEquals((byte) (i + 1), stored[0]);
+        }
+        Logger.d("FileKeychain: %d puts: %d us per put, transaction with %d puts: %d us",
+                WRITE_COST_VALUES, putTime / WRITE_COST_VALUES / 1000, WRITE_COST_VALUES, transactionTime / 1000);
+    }
+
+    @Test
+    public void testBenchmarkAgainstSharedPreferences() throws Exception {
+        // This benchmark runs on the device, so it measures the real cost of both storages, including
+        // the synchronization of each change to the device storage.
+        final String preferencesName = KEYCHAIN_NAME + ".benchmark";
+        final SharedPreferences preferences = androidContext.getSharedPreferences(preferencesName, Context.MODE_PRIVATE);
+        final File preferencesFile = new File(androidContext.getApplicationInfo().dataDir, "shared_prefs/" + preferencesName + ".xml");
+        assertTrue(preferences.edit().clear().commit());
+        try {
+            final byte[] value = new byte[BENCHMARK_VALUE_SIZE];
+
+            // Append-only file, each change is committed separately.
+            final FileKeychain keychain = new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, null);
+            long start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_WRITES; i++) {
+                value[0] = (byte) i;
+                keychain.putData(value, "key" + (i % BENCHMARK_KEYS));
+            }
+            final long fileWriteTime = System.nanoTime() - start;
+            final KeychainLogFile.Statistics fileStats = keychain.getFileStatistics();
+            start = System.nanoTime();
+            assertNotNull(new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, null).getData("key0"));
+            final long fileLoadTime = System.nanoTime() - start;
+
+            // SharedPreferences rewrite the whole XML file on each commit. Values are stored as Base64
+            // strings, like in the keychain based on SharedPreferences.
+            long preferencesBytesWritten = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_WRITES; i++) {
+                value[0] = (byte) i;
+                assertTrue(preferences.edit().putString("key" + (i % BENCHMARK_KEYS), Base64.encodeToString(value, Base64.NO_WRAP)).commit());
+                preferencesBytesWritten += preferencesFile.length();
+            }
+            final long preferencesWriteTime = System.nanoTime() - start;
+            assertEquals(BENCHMARK_KEYS, preferences.getAll().size());
+
+            // The cold load of SharedPreferences cannot be measured, because the content is cached in the process.
+            final long payloadBytes = (long) BENCHMARK_WRITES * BENCHMARK_VALUE_SIZE;
+            Logger.d("FileKeychain: %d writes of %d bytes to %d keys", BENCHMARK_WRITES, BENCHMARK_VALUE_SIZE, BENCHMARK_KEYS);
+            Logger.d("FileKeychain:   file: written %d bytes (amplification %.1fx), %d compactions, write %d us per change, cold load %d us",
+                    fileStats.bytesWritten, (double) fileStats.bytesWritten / payloadBytes, fileStats.compactionCount, fileWriteTime / BENCHMARK_WRITES / 1000, fileLoadTime / 1000);
+            Logger.d("FileKeychain:   SharedPreferences: written %d bytes (amplification %.1fx), write %d us per change",
+                    preferencesBytesWritten, (double) preferencesBytesWritten / payloadBytes, preferencesWriteTime / BENCHMARK_WRITES / 1000);
+            // Timing is only reported, the number of written bytes doesn't depend on the device.
+            assertTrue(fileStats.bytesWritten < preferencesBytesWritten);
+        } finally {
+            preferences.edit().clear().commit();
+        }
+    }
+
+    private FileKeychain createStrongBoxKeychain(@NonNull KeychainProtectionSupport protectionSupport) {
+        final SymmetricKeyProvider regularKeyProvider = SymmetricKeyProvider.getAesGcmKeyProvider("com.wultra.test.symmetricAesGcmKey", true, protectionSupport, 256, true, null);
+        final SymmetricKeyProvider backupKeyProvider = SymmetricKeyProvider.getAesGcmKeyProvider("com.wultra.test.symmetricAesGcmKey.backup", false, protectionSupport, 256, true, null);
+        assertNotNull(regularKeyProvider);
+        assertNotNull(backupKeyProvider);
+        return new FileKeychain(androidContext, KEYCHAIN_NAME, keychainFile, regularKeyProvider, backupKeyProvider);
+    }
+
+    private SymmetricKeyProvider createKeyProvider() {
+        final SymmetricKeyProvider keyProvider = SymmetricKeyProvider.getAesGcmKeyProvider("com.wultra.test.symmetricAesGcmKey", true, FakeKeychainProtectionSupport.NO_STRONGBOX, 256, true, null);
+        assertNotNull(keyProvider);
+        return keyProvider;
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.keychain.impl;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class KeychainLogFileTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("keychain", ".log");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File f : new File[] { file, temporaryFile(), corruptedFile() }) {
+            if (f.exists()) {
+                assertTrue(f.delete());
+            }
+        }
+    }
+
+    @Test
+    public void testPutAndRemove() throws Exception {
+        KeychainLogFile logFile = new KeychainLogFile(file);
+        assertFalse(logFile.exists());
+        assertNull(logFile.get("a"));
+        assertTrue(logFile.commit(values("a", new byte[] { 1, 2, 3 }, "b", new byte[0])));
+        assertTrue(logFile.exists());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, logFile.get("a"));
+        assertArrayEquals(new byte[0], logFile.get("b"));
+        assertTrue(logFile.commit(values("a", null, "c", new byte[] { 4 })));
+        assertFalse(logFile.contains("a"));
+        assertArrayEquals(new byte[] { 4 }, logFile.get("c"));
+
+        // Load again
+        logFile = new KeychainLogFile(file);
+        assertEquals(2, logFile.getKeys().size());
+        assertNull(logFile.get("a"));
+        assertArrayEquals(new byte[0], logFile.get("b"));
+        assertArrayEquals(new byte[] { 4 }, logFile.get("c"));
+        assertEquals(0, logFile.getFlags());
+    }
+
+    @Test
+    public void testUncommittedRecordsAreIgnored() throws Exception {
+        KeychainLogFile logFile = new KeychainLogFile(file);
+        assertTrue(logFile.commit(values("a", new byte[] { 1 })));
+        final long committedLength = file.length();
+        assertTrue(logFile.commit(values("a", new byte[] { 2 }, "b", new byte[] { 3 })));
+        logFile.close();
+
+        // Simulate crash during the write, by removing the last byte.
+        truncate(file, file.length() - 1);
+        logFile = new KeychainLogFile(file);
+        assertArrayEquals(new byte[] { 1 }, logFile.get("a"));
+        assertFalse(logFile.contains("b"));
+        assertEquals(committedLength, file.length());
+        // Only the torn tail was removed, so there's no copy of the file.
+        assertFalse(corruptedFile().exists());
+        // The file is still usable
+        assertTrue(logFile.commit(values("b", new byte[] { 4 })));
+        logFile = new KeychainLogFile(file);
+        assertArrayEquals(new byte[] { 1 }, logFile.get("a"));
+        assertArrayEquals(new byte[] { 4 }, logFile.get("b"));
+    }
+
+    @Test
+    public void testDamagedRecord() throws Exception {
+        KeychainLogFile logFile = new KeychainLogFile(file);
+        assertTrue(logFile.commit(values("a", new byte[] { 1 })));
+        final long committedLength = file.length();
+        assertTrue(logFile.commit(values("a", new byte[] { 2 })));
+        logFile.close();
+
+        // Damage the value in the last record.
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(committedLength + 9 + 1);
+        raf.write(0x55);
+        raf.close();
+
+        logFile = new KeychainLogFile(file);
+        assertArrayEquals(new byte[] { 1 }, logFile.get("a"));
+        assertEquals(committedLength, file.length());
+        // The damaged record is followed by the commit record, so the file is kept aside.
+        assertTrue(corruptedFile().exists());
+    }
+
+    @Test
+    public void testDamagedRecordBeforeCommittedData() throws Exception {
+        KeychainLogFile logFile = new KeychainLogFile(file);
+        assertTrue(logFile.commit(values("a", new byte[] { 1 })));
+        final long committedLength = file.length();
+        assertTrue(logFile.commit(values("a", new byte[] { 2 })));
+        assertTrue(logFile.commit(values("b", new byte[] { 3 })));
+        final long originalLength = file.length();
+        logFile.close();
+
+        // Damage the value in the second record, that is followed by another commit.
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(committedLength + 9 + 1);
+        raf.write(0x55);
+        raf.close();
+
+        logFile = new KeychainLogFile(file);
+        assertArrayEquals(new byte[] { 1 }, logFile.get("a"));
+        assertFalse(logFile.contains("b"));
+        assertEquals(committedLength, file.length());
+        // The whole damaged file is kept aside, because the committed data was removed.
+        assertEquals(originalLength, corruptedFile().length());
+    }
+
+    @Test
+    public void testUnreadableFile() throws Exception {
+        // Directory in place of the file simulates the I/O error.
+        assertTrue(file.mkdir());
+        final KeychainLogFile logFile = new KeychainLogFile(file);
+        assertFalse(logFile.open());
+        assertNull(logFile.get("a"));
+        assertFalse(logFile.commit(values("a", new byte[] { 1 })));
+        assertFalse(logFile.replaceAll(values("a", new byte[] { 1 }), 0));
+        // Nothing was modified.
+        assertTrue(file.isDirectory());
+        assertFalse(corruptedFile().exists());
+
+        // The file is loaded again on the next access.
+        assertTrue(file.delete());
+        assertTrue(logFile.open());
+        assertTrue(logFile.commit(values("a", new byte[] { 1 })));
+        assertArrayEquals(new byte[] { 1 }, new KeychainLogFile(file).get("a"));
+    }
+
+    @Test
+    public void testUnknownFormat() throws Exception {
+        final FileOutputStream output = new FileOutputStream(file);
+        output.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        output.close();
+        final KeychainLogFile logFile = new KeychainLogFile(file);
+        assertTrue(logFile.getKeys().isEmpty());
+        assertFalse(file.exists());
+        // The damaged file is kept aside.
+        assertEquals(8, corruptedFile().length());
+        assertTrue(logFile.commit(values("a", new byte[] { 1 })));
+        assertArrayEquals(new byte[] { 1 }, new KeychainLogFile(file).get("a"));
+    }
+
+    @Test
+    public void testStaleTemporaryFile() throws Exception {
+        KeychainLogFile logFile = new KeychainLogFile(file);
+        assertTrue(logFile.commit(values("a", new byte[] { 1 })));
+        logFile.close();
+
+        // Temporary file left by the interrupted compaction is removed.
+        final FileOutputStream output = new FileOutputStream(temporaryFile());
+        output.write(new byte[] { 1, 2, 3 });
+        output.close();
+        logFile = new KeychainLogFile(file);
+        assertArrayEquals(new byte[] { 1 }, logFile.get("a"));
+        assertFalse(temporaryFile().exists());
+
+        // Temporary file is used when the original file is missing.
+        logFile.close();
+        assertTrue(file.renameTo(temporaryFile()));
+        logFile = new KeychainLogFile(file);
+        assertArrayEquals(new byte[] { 1 }, logFile.get("a"));
+        assertTrue(file.exists());
+        assertFalse(temporaryFile().exists());
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        KeychainLogFile logFile = new KeychainLogFile(file);
+        final byte[] value = new byte[100];
+        for (int i = 0; i < 1000; i++) {
+            value[0] = (byte) i;
+            assertTrue(logFile.commit(values("key" + (i % 10), value.clone())));
+        }
+        final KeychainLogFile.Statistics stats = logFile.getStatistics();
+        assertTrue(stats.compactionCount > 0);
+        assertEquals(10, stats.entryCount);
+        // The file contains less than twice the valid records plus the compaction threshold.
+        assertTrue(stats.fileLength < 2 * stats.liveBytes + 4 * 1024 + 100);
+        assertFalse(temporaryFile().exists());
+
+        logFile = new KeychainLogFile(file);
+        for (int i = 990; i < 1000; i++) {
+            final byte[] stored = logFile.get("key" + (i % 10));
+            assertNotNull(stored);
+            assertEquals((byte) i, stored[0]);
+        }
+    }
+
+    @Test
+    public void testReplaceAll() throws Exception {
+        KeychainLogFile logFile = new KeychainLogFile(file);
+        assertTrue(logFile.commit(values("a", new byte[] { 1 }, "b", new byte[] { 2 })));
+        assertTrue(logFile.replaceAll(values("c", new byte[] { 3 }), 1));
+        assertEquals(Collections.singleton("c"), logFile.getKeys());
+        logFile = new KeychainLogFile(file);
+        assertEquals(1, logFile.getFlags());
+        assertEquals(Collections.singleton("c"), logFile.getKeys());
+        assertArrayEquals(new byte[] { 3 }, logFile.get("c"));
+    }
+
+    // Helpers
+
+    private File temporaryFile() {
+        return new File(file.getPath() + ".tmp");
+    }
+
+    private File corruptedFile() {
+        return new File(file.getPath() + ".corrupt");
+    }
+
+    private static Map<String, byte[]> values(Object... keysAndValues) {
+        final Map<String, byte[]> result = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            result.put((String) keysAndValues[i], (byte[]) keysAndValues[i + 1]);
+        }
+        return result;
+    }
+
+    private static void truncate(@NonNull File file, long length) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(length);
+        raf.close();
+    }
+}
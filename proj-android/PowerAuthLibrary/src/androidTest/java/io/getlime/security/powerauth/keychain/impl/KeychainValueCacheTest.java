@@ -0,0 +1,160 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.keychain.impl;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class KeychainValueCacheTest {
+
+    @Test
+    public void testDisabledCache() throws Exception {
+        final KeychainValueCache cache = new KeychainValueCache(0);
+        assertFalse(cache.isEnabled());
+        cache.put("a", new byte[] { 1, 2, 3 });
+        assertNull(cache.get("a"));
+        final KeychainValueCache.Statistics stats = cache.getStatistics();
+        assertEquals(0, stats.entryCount);
+        assertEquals(0, stats.size);
+        assertEquals(0, stats.hitCount);
+        assertEquals(0, stats.missCount);
+    }
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        final KeychainValueCache cache = new KeychainValueCache(100);
+        assertNull(cache.get("a"));
+        final byte[] a = new byte[] { 1, 2, 3 };
+        cache.put("a", a);
+        assertSame(a, cache.get("a"));
+        assertSame(a, cache.get("a"));
+        // Update
+        final byte[] a2 = new byte[] { 4, 5 };
+        cache.put("a", a2);
+        assertArrayEquals(new byte[] { 0, 0, 0 }, a);
+        assertSame(a2, cache.get("a"));
+        // Remove
+        cache.put("a", null);
+        assertArrayEquals(new byte[] { 0, 0 }, a2);
+        assertNull(cache.get("a"));
+
+        final KeychainValueCache.Statistics stats = cache.getStatistics();
+        assertEquals(3, stats.hitCount);
+        assertEquals(2, stats.missCount);
+        assertEquals(0, stats.entryCount);
+        assertEquals(0, stats.size);
+    }
+
+    @Test
+    public void testByteBudget() throws Exception {
+        final KeychainValueCache cache = new KeychainValueCache(10);
+        final byte[] a = new byte[] { 1, 1, 1, 1 };
+        final byte[] b = new byte[] { 2, 2, 2, 2 };
+        final byte[] c = new byte[] { 3, 3, 3, 3 };
+        cache.put("a", a);
+        cache.put("b", b);
+        // Touch "a", so "b" is the least recently used value.
+        assertSame(a, cache.get("a"));
+        cache.put("c", c);
+        assertNull(cache.get("b"));
+        assertArrayEquals(new byte[4], b);
+        assertSame(a, cache.get("a"));
+        assertSame(c, cache.get("c"));
+        assertEquals(8, cache.getStatistics().size);
+
+        // Too big value is not cached at all.
+        cache.put("d", new byte[11]);
+        assertNull(cache.get("d"));
+        assertEquals(2, cache.getStatistics().entryCount);
+
+        // Shrink the cache
+        cache.setMaxSize(4);
+        assertEquals(1, cache.getStatistics().entryCount);
+        assertArrayEquals(new byte[4], a);
+        assertSame(c, cache.get("c"));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        final KeychainValueCache cache = new KeychainValueCache(100);
+        final byte[] a = new byte[] { 1, 2, 3 };
+        final byte[] b = new byte[] { 4, 5, 6 };
+        cache.put("a", a);
+        cache.put("b", b);
+        cache.clear();
+        assertArrayEquals(new byte[3], a);
+        assertArrayEquals(new byte[3], b);
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(0, cache.getStatistics().entryCount);
+        assertEquals(0, cache.getStatistics().size);
+        // Cache is still usable
+        cache.put("a", a);
+        assertSame(a, cache.get("a"));
+    }
+
+    @Test
+    public void testDecodedValues() throws Exception {
+        final KeychainValueCache cache = new KeychainValueCache(100);
+        final String string = "abc";
+        final Set<String> set = new HashSet<>(Arrays.asList("ab", "c"));
+        cache.put("string", string);
+        cache.put("long", 1L);
+        cache.put("set", set);
+        assertSame(string, cache.get("string"));
+        assertEquals(1L, cache.get("long"));
+        assertSame(set, cache.get("set"));
+        // 2 bytes per character, fixed size for long
+        assertEquals(6 + 8 + 6, cache.getStatistics().size);
+        cache.remove("set");
+        assertEquals(6 + 8, cache.getStatistics().size);
+    }
+
+    @Test
+    public void testSecretKeyChange() throws Exception {
+        final SecretKey keyA = new SecretKeySpec(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 }, "AES");
+        final SecretKey keyB = new SecretKeySpec(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 }, "AES");
+        final KeychainValueCache cache = new KeychainValueCache(100);
+        final byte[] a = new byte[] { 1, 2, 3 };
+        cache.setSecretKey(keyA);
+        cache.put("a", a);
+        // The same key keeps the content.
+        cache.setSecretKey(keyA);
+        assertSame(a, cache.get("a"));
+        // A different key instance removes the content, because the key was resolved again.
+        cache.setSecretKey(keyB);
+        assertNull(cache.get("a"));
+        assertArrayEquals(new byte[3], a);
+        // Unavailable key removes the content.
+        cache.put("b", "b");
+        cache.setSecretKey(null);
+        assertNull(cache.get("b"));
+        assertEquals(0, cache.getStatistics().entryCount);
+    }
+}
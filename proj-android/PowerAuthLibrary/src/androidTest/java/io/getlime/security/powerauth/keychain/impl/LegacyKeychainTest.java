@@ -51,4 +51,9 @@ public class LegacyKeychainTest extends BaseKeychainTest {
     public void testKeychainUsage() throws Exception {
         runAllStandardTests(keychain);
     }
+
+    @Test
+    public void testSequentialTransaction() throws Exception {
+        testTransaction(keychain, true);
+    }
 }
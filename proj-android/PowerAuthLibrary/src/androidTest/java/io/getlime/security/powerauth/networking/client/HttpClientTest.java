@@ -0,0 +1,351 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.networking.client;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.net.ssl.SSLException;
+
+import io.getlime.security.powerauth.core.EciesEncryptor;
+import io.getlime.security.powerauth.ecies.EciesEncryptorId;
+import io.getlime.security.powerauth.exception.PowerAuthErrorCodes;
+import io.getlime.security.powerauth.exception.PowerAuthErrorException;
+import io.getlime.security.powerauth.networking.endpoints.GetActivationStatusEndpoint;
+import io.getlime.security.powerauth.networking.endpoints.RemoveTokenEndpoint;
+import io.getlime.security.powerauth.networking.interfaces.ICancelable;
+import io.getlime.security.powerauth.networking.interfaces.INetworkResponseListener;
+import io.getlime.security.powerauth.networking.model.request.ActivationStatusRequest;
+import io.getlime.security.powerauth.networking.model.request.TokenRemoveRequest;
+import io.getlime.security.powerauth.networking.model.response.ActivationStatusResponse;
+import io.getlime.security.powerauth.networking.support.LocalHttpServer;
+import io.getlime.security.powerauth.sdk.PowerAuthAuthentication;
+import io.getlime.security.powerauth.sdk.PowerAuthAuthorizationHttpHeader;
+import io.getlime.security.powerauth.sdk.PowerAuthClientConfiguration;
+import io.getlime.security.powerauth.sdk.impl.DefaultExecutorProvider;
+import io.getlime.security.powerauth.sdk.impl.ICallbackDispatcher;
+import io.getlime.security.powerauth.sdk.impl.IPrivateCryptoHelper;
+import io.getlime.security.powerauth.system.PowerAuthLog;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class HttpClientTest {
+
+    private static final String STATUS_RESPONSE = "{\"status\":\"OK\",\"responseObject\":{\"activationId\":\"ACTIVATION-ID\",\"encryptedStatusBlob\":\"AAAA\",\"nonce\":\"BBBB\"}}";
+
+    private LocalHttpServer server;
+    private HttpClient client;
+    private AtomicInteger dispatchedCallbacks;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LocalHttpServer();
+        server.setResponseBody(STATUS_RESPONSE.getBytes("UTF-8"));
+        dispatchedCallbacks = new AtomicInteger();
+        final ICallbackDispatcher dispatcher = new ICallbackDispatcher() {
+            @Override
+            public void dispatchCallback(@NonNull Runnable runnable) {
+                dispatchedCallbacks.incrementAndGet();
+                runnable.run();
+            }
+        };
+        final PowerAuthClientConfiguration configuration = new PowerAuthClientConfiguration.Builder()
+                .allowUnsecuredConnection(true)
+                .build();
+        client = new HttpClient(configuration, server.getBaseUrl(), new DefaultExecutorProvider(), dispatcher);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testResponseIsDispatched() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<ActivationStatusResponse> result = new AtomicReference<>();
+        final ICancelable task = client.post(new ActivationStatusRequest(), new GetActivationStatusEndpoint(), cryptoHelper, new INetworkResponseListener<ActivationStatusResponse>() {
+            @Override
+            public void onNetworkResponse(ActivationStatusResponse response) {
+                result.set(response);
+                done.countDown();
+            }
+
+            @Override
+            public void onNetworkError(Throwable throwable) {
+                done.countDown();
+            }
+
+            @Override
+            public void onCancel() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNotNull(result.get());
+        assertEquals("ACTIVATION-ID", result.get().getActivationId());
+        assertEquals(1, dispatchedCallbacks.get());
+        // Future contains the same result
+        assertTrue(task instanceof HttpClientTask);
+        final ActivationStatusResponse futureResult = (ActivationStatusResponse) ((HttpClientTask<?, ?>) task).getFuture().get();
+        assertEquals("ACTIVATION-ID", futureResult.getActivationId());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        server.setResponseDelay(1000);
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger cancelCount = new AtomicInteger();
+        final ICancelable task = client.post(new ActivationStatusRequest(), new GetActivationStatusEndpoint(), cryptoHelper, new INetworkResponseListener<ActivationStatusResponse>() {
+            @Override
+            public void onNetworkResponse(ActivationStatusResponse response) {
+                done.countDown();
+            }
+
+            @Override
+            public void onNetworkError(Throwable throwable) {
+                done.countDown();
+            }
+
+            @Override
+            public void onCancel() {
+                cancelCount.incrementAndGet();
+                done.countDown();
+            }
+        });
+        task.cancel();
+        assertTrue(task.isCancelled());
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, cancelCount.get());
+    }
+
+    @Test
+    public void testUnsignedRequestIsStreamed() throws Exception {
+        final ActivationStatusRequest request = new ActivationStatusRequest();
+        request.setActivationId("ACTIVATION-ID");
+        request.setChallenge("CHALLENGE");
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        client.post(request, new GetActivationStatusEndpoint(), cryptoHelper, new INetworkResponseListener<ActivationStatusResponse>() {
+            @Override
+            public void onNetworkResponse(ActivationStatusResponse response) {
+                done.countDown();
+            }
+
+            @Override
+            public void onNetworkError(Throwable throwable) {
+                failure.set(throwable);
+                done.countDown();
+            }
+
+            @Override
+            public void onCancel() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNull(failure.get());
+        // Body without signature is streamed in chunks and must be equal to serialized object.
+        assertTrue(server.isLastRequestChunked());
+        assertArrayEquals(new JsonSerialization().serializeRequestObject(request), server.getLastRequestBody());
+    }
+
+    @Test
+    public void testSignedRequestSendsSignedBytes() throws Exception {
+        server.setResponseBody("{\"status\":\"OK\"}".getBytes("UTF-8"));
+        final TokenRemoveRequest request = new TokenRemoveRequest();
+        request.setTokenId("TOKEN-ID");
+        final AtomicReference<byte[]> signedBody = new AtomicReference<>();
+        final IPrivateCryptoHelper signingHelper = new IPrivateCryptoHelper() {
+            @NonNull
+            @Override
+            public EciesEncryptor getEciesEncryptor(@NonNull EciesEncryptorId identifier) throws PowerAuthErrorException {
+                throw new PowerAuthErrorException(PowerAuthErrorCodes.ENCRYPTION_ERROR);
+            }
+
+            @NonNull
+            @Override
+            public PowerAuthAuthorizationHttpHeader getAuthorizationHeader(boolean availableInProtocolUpgrade, @NonNull byte[] body, @NonNull String method, @NonNull String uriIdentifier, @NonNull PowerAuthAuthentication authentication) {
+                signedBody.set(body);
+                return PowerAuthAuthorizationHttpHeader.createAuthorizationHeader("PowerAuth signature");
+            }
+
+            @Nullable
+            @Override
+            public byte[] getDeviceRelatedKey() {
+                return null;
+            }
+        };
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        client.post(request, new RemoveTokenEndpoint(), signingHelper, new PowerAuthAuthentication(), new INetworkResponseListener<Void>() {
+            @Override
+            public void onNetworkResponse(Void response) {
+                done.countDown();
+            }
+
+            @Override
+            public void onNetworkError(Throwable throwable) {
+                failure.set(throwable);
+                done.countDown();
+            }
+
+            @Override
+            public void onCancel() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNull(failure.get());
+        // Signed body is sent with known length and it's exactly the same as signed data.
+        assertFalse(server.isLastRequestChunked());
+        assertNotNull(signedBody.get());
+        assertArrayEquals(signedBody.get(), server.getLastRequestBody());
+    }
+
+    @Test
+    public void testResponseSizeLimit() throws Exception {
+        final PowerAuthClientConfiguration configuration = new PowerAuthClientConfiguration.Builder()
+                .allowUnsecuredConnection(true)
+                .maxResponseSize(STATUS_RESPONSE.length() - 1)
+                .build();
+        final HttpClient limitedClient = new HttpClient(configuration, server.getBaseUrl(), new DefaultExecutorProvider(), client.getCallbackDispatcher());
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        limitedClient.post(new ActivationStatusRequest(), new GetActivationStatusEndpoint(), cryptoHelper, new INetworkResponseListener<ActivationStatusResponse>() {
+            @Override
+            public void onNetworkResponse(ActivationStatusResponse response) {
+                done.countDown();
+            }
+
+            @Override
+            public void onNetworkError(Throwable throwable) {
+                failure.set(throwable);
+                done.countDown();
+            }
+
+            @Override
+            public void onCancel() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(failure.get() instanceof PowerAuthErrorException);
+        assertEquals(PowerAuthErrorCodes.NETWORK_ERROR, ((PowerAuthErrorException) failure.get()).getPowerAuthErrorCode());
+    }
+
+    @Test
+    public void testLargeResponseWithoutLimit() throws Exception {
+        // Response larger than the pooled buffer must be read completely.
+        final StringBuilder padding = new StringBuilder();
+        while (padding.length() < HttpResponseBody.POOLED_BUFFER_SIZE * 3) {
+            padding.append("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        }
+        server.setResponseBody(("{\"status\":\"OK\",\"responseObject\":{\"activationId\":\"" + padding + "\"}}").getBytes("UTF-8"));
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<ActivationStatusResponse> result = new AtomicReference<>();
+        client.post(new ActivationStatusRequest(), new GetActivationStatusEndpoint(), cryptoHelper, new INetworkResponseListener<ActivationStatusResponse>() {
+            @Override
+            public void onNetworkResponse(ActivationStatusResponse response) {
+                result.set(response);
+                done.countDown();
+            }
+
+            @Override
+            public void onNetworkError(Throwable throwable) {
+                done.countDown();
+            }
+
+            @Override
+            public void onCancel() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNotNull(result.get());
+        assertEquals(padding.toString(), result.get().getActivationId());
+    }
+
+    @Test
+    public void testUnsecuredConnectionIsRejectedWithLogEnabled() throws Exception {
+        final boolean logEnabled = PowerAuthLog.isEnabled();
+        final boolean logVerbose = PowerAuthLog.isVerbose();
+        PowerAuthLog.setEnabled(true);
+        PowerAuthLog.setVerbose(true);
+        try {
+            final PowerAuthClientConfiguration configuration = new PowerAuthClientConfiguration.Builder().build();
+            final HttpClient secureClient = new HttpClient(configuration, server.getBaseUrl(), new DefaultExecutorProvider(), client.getCallbackDispatcher());
+            final CountDownLatch done = new CountDownLatch(1);
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            secureClient.post(new ActivationStatusRequest(), new GetActivationStatusEndpoint(), cryptoHelper, new INetworkResponseListener<ActivationStatusResponse>() {
+                @Override
+                public void onNetworkResponse(ActivationStatusResponse response) {
+                    done.countDown();
+                }
+
+                @Override
+                public void onNetworkError(Throwable throwable) {
+                    failure.set(throwable);
+                    done.countDown();
+                }
+
+                @Override
+                public void onCancel() {
+                    done.countDown();
+                }
+            });
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertTrue(failure.get() instanceof SSLException);
+            assertNull(server.getLastRequestBody());
+        } finally {
+            PowerAuthLog.setEnabled(logEnabled);
+            PowerAuthLog.setVerbose(logVerbose);
+        }
+    }
+
+    private final IPrivateCryptoHelper cryptoHelper = new IPrivateCryptoHelper() {
+        @NonNull
+        @Override
+        public EciesEncryptor getEciesEncryptor(@NonNull EciesEncryptorId identifier) throws PowerAuthErrorException {
+            throw new PowerAuthErrorException(PowerAuthErrorCodes.ENCRYPTION_ERROR);
+        }
+
+        @NonNull
+        @Override
+        public PowerAuthAuthorizationHttpHeader getAuthorizationHeader(boolean availableInProtocolUpgrade, @NonNull byte[] body, @NonNull String method, @NonNull String uriIdentifier, @NonNull PowerAuthAuthentication authentication) throws PowerAuthErrorException {
+            throw new PowerAuthErrorException(PowerAuthErrorCodes.SIGNATURE_ERROR);
+        }
+
+        @Nullable
+        @Override
+        public byte[] getDeviceRelatedKey() {
+            return null;
+        }
+    };
+}
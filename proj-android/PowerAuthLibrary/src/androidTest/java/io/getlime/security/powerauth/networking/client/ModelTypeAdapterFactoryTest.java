@@ -0,0 +1,217 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.networking.client;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.getlime.core.rest.model.base.request.ObjectRequest;
+import io.getlime.security.powerauth.networking.model.entity.ActivationRecovery;
+import io.getlime.security.powerauth.networking.model.entity.ActivationType;
+import io.getlime.security.powerauth.networking.model.entity.TokenResponsePayload;
+import io.getlime.security.powerauth.networking.model.request.ActivationLayer1Request;
+import io.getlime.security.powerauth.networking.model.request.ActivationLayer2Request;
+import io.getlime.security.powerauth.networking.model.request.ActivationStatusRequest;
+import io.getlime.security.powerauth.networking.model.request.ConfirmRecoveryRequestPayload;
+import io.getlime.security.powerauth.networking.model.request.EciesEncryptedRequest;
+import io.getlime.security.powerauth.networking.model.request.TokenRemoveRequest;
+import io.getlime.security.powerauth.networking.model.request.ValidateSignatureRequest;
+import io.getlime.security.powerauth.networking.model.request.VaultUnlockRequestPayload;
+import io.getlime.security.powerauth.networking.model.response.ActivationLayer1Response;
+import io.getlime.security.powerauth.networking.model.response.ActivationLayer2Response;
+import io.getlime.security.powerauth.networking.model.response.ActivationRemoveResponse;
+import io.getlime.security.powerauth.networking.model.response.ActivationStatusResponse;
+import io.getlime.security.powerauth.networking.model.response.ConfirmRecoveryResponsePayload;
+import io.getlime.security.powerauth.networking.model.response.EciesEncryptedResponse;
+import io.getlime.security.powerauth.networking.model.response.TokenRemoveResponse;
+import io.getlime.security.powerauth.networking.model.response.UpgradeResponsePayload;
+import io.getlime.security.powerauth.networking.model.response.VaultUnlockResponsePayload;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compare the hand-written adapters with Gson's default reflective adapters.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ModelTypeAdapterFactoryTest {
+
+    private final Gson reflectiveGson = new Gson();
+    private final JsonSerialization serialization = new JsonSerialization();
+
+    @Test
+    public void testSharedGson() throws Exception {
+        assertSame(serialization.getGson(), new JsonSerialization().getGson());
+    }
+
+    @Test
+    public void testRequestObjects() throws Exception {
+        final EciesEncryptedRequest eciesRequest = new EciesEncryptedRequest();
+        eciesRequest.setEphemeralPublicKey("KEY");
+        eciesRequest.setEncryptedData("DATA");
+        eciesRequest.setMac("MAC");
+        eciesRequest.setNonce(null);
+        assertSameJson(eciesRequest, EciesEncryptedRequest.class);
+
+        final Map<String, String> identityAttributes = new HashMap<>();
+        identityAttributes.put("code", "AAAAA-BBBBB-CCCCC-DDDDD");
+        final Map<String, Object> customAttributes = new HashMap<>();
+        customAttributes.put("string", "value \"quoted\" <html>");
+        customAttributes.put("number", 42.5);
+        customAttributes.put("bool", true);
+        final ActivationLayer1Request layer1Request = new ActivationLayer1Request();
+        layer1Request.setType(ActivationType.RECOVERY);
+        layer1Request.setIdentityAttributes(identityAttributes);
+        layer1Request.setCustomAttributes(customAttributes);
+        layer1Request.setActivationData(eciesRequest);
+        assertSameJson(layer1Request, ActivationLayer1Request.class);
+        assertSameJson(new ActivationLayer1Request(), ActivationLayer1Request.class);
+
+        final ActivationLayer2Request layer2Request = new ActivationLayer2Request();
+        layer2Request.setDevicePublicKey("PUBLIC-KEY");
+        layer2Request.setActivationName("My Phone");
+        layer2Request.setExtras("{\"extras\":true}");
+        layer2Request.setActivationOtp("1234");
+        layer2Request.setPlatform("android");
+        layer2Request.setDeviceInfo("Pixel");
+        assertSameJson(layer2Request, ActivationLayer2Request.class);
+
+        final ActivationStatusRequest statusRequest = new ActivationStatusRequest();
+        statusRequest.setActivationId("ACTIVATION-ID");
+        statusRequest.setChallenge("CHALLENGE");
+        assertSameJson(statusRequest, ActivationStatusRequest.class);
+
+        final ConfirmRecoveryRequestPayload confirmRequest = new ConfirmRecoveryRequestPayload();
+        confirmRequest.setRecoveryCode("CODE");
+        assertSameJson(confirmRequest, ConfirmRecoveryRequestPayload.class);
+
+        final TokenRemoveRequest tokenRemoveRequest = new TokenRemoveRequest();
+        tokenRemoveRequest.setTokenId("TOKEN-ID");
+        assertSameJson(tokenRemoveRequest, TokenRemoveRequest.class);
+
+        final ValidateSignatureRequest validateRequest = new ValidateSignatureRequest();
+        validateRequest.setReason("REASON");
+        assertSameJson(validateRequest, ValidateSignatureRequest.class);
+
+        final VaultUnlockRequestPayload vaultUnlockRequest = new VaultUnlockRequestPayload();
+        vaultUnlockRequest.setReason("REASON");
+        assertSameJson(vaultUnlockRequest, VaultUnlockRequestPayload.class);
+    }
+
+    @Test
+    public void testResponseObjects() throws Exception {
+        final ActivationRecovery recovery = new ActivationRecovery();
+        recovery.setRecoveryCode("CODE");
+        recovery.setPuk("0123456789");
+        assertSameJson(recovery, ActivationRecovery.class);
+
+        final TokenResponsePayload tokenResponse = new TokenResponsePayload();
+        tokenResponse.setTokenId("TOKEN-ID");
+        tokenResponse.setTokenSecret("SECRET");
+        assertSameJson(tokenResponse, TokenResponsePayload.class);
+
+        final EciesEncryptedResponse eciesResponse = new EciesEncryptedResponse("DATA", "MAC");
+        assertSameJson(eciesResponse, EciesEncryptedResponse.class);
+
+        final Map<String, Object> customObject = new HashMap<>();
+        customObject.put("nested", new HashMap<String, Object>());
+        customObject.put("value", 1.5);
+        final ActivationLayer1Response layer1Response = new ActivationLayer1Response();
+        layer1Response.setActivationData(eciesResponse);
+        layer1Response.setCustomAttributes(customObject);
+        assertSameJson(layer1Response, ActivationLayer1Response.class);
+
+        final ActivationLayer2Response layer2Response = new ActivationLayer2Response();
+        layer2Response.setActivationId("ACTIVATION-ID");
+        layer2Response.setServerPublicKey("SERVER-KEY");
+        layer2Response.setCtrData("CTR");
+        layer2Response.setActivationRecovery(recovery);
+        assertSameJson(layer2Response, ActivationLayer2Response.class);
+
+        final ActivationRemoveResponse removeResponse = new ActivationRemoveResponse();
+        removeResponse.setActivationId("ACTIVATION-ID");
+        assertSameJson(removeResponse, ActivationRemoveResponse.class);
+
+        final ActivationStatusResponse statusResponse = new ActivationStatusResponse();
+        statusResponse.setActivationId("ACTIVATION-ID");
+        statusResponse.setEncryptedStatusBlob("BLOB");
+        statusResponse.setNonce("NONCE");
+        statusResponse.setCustomObject(customObject);
+        assertSameJson(statusResponse, ActivationStatusResponse.class);
+
+        final ConfirmRecoveryResponsePayload confirmResponse = new ConfirmRecoveryResponsePayload();
+        confirmResponse.setAlreadyConfirmed(true);
+        assertSameJson(confirmResponse, ConfirmRecoveryResponsePayload.class);
+        assertSameJson(new ConfirmRecoveryResponsePayload(), ConfirmRecoveryResponsePayload.class);
+
+        final TokenRemoveResponse tokenRemoveResponse = new TokenRemoveResponse();
+        tokenRemoveResponse.setTokenId("TOKEN-ID");
+        assertSameJson(tokenRemoveResponse, TokenRemoveResponse.class);
+
+        final UpgradeResponsePayload upgradeResponse = new UpgradeResponsePayload();
+        upgradeResponse.setCtrData("CTR");
+        assertSameJson(upgradeResponse, UpgradeResponsePayload.class);
+
+        final VaultUnlockResponsePayload vaultUnlockResponse = new VaultUnlockResponsePayload();
+        vaultUnlockResponse.setEncryptedVaultEncryptionKey("KEY");
+        vaultUnlockResponse.setSignatureValid(true);
+        assertSameJson(vaultUnlockResponse, VaultUnlockResponsePayload.class);
+    }
+
+    @Test
+    public void testLenientValues() throws Exception {
+        final String json = "{\"encryptedVaultEncryptionKey\":123,\"signatureValid\":\"true\",\"unknown\":{\"a\":[1,2,3]}}";
+        final VaultUnlockResponsePayload response = serialization.getGson().fromJson(json, VaultUnlockResponsePayload.class);
+        final VaultUnlockResponsePayload expected = reflectiveGson.fromJson(json, VaultUnlockResponsePayload.class);
+        assertEquals(expected.getEncryptedVaultEncryptionKey(), response.getEncryptedVaultEncryptionKey());
+        assertEquals(expected.isSignatureValid(), response.isSignatureValid());
+
+        final ActivationLayer1Request request = serialization.getGson().fromJson("{\"type\":\"UNKNOWN\"}", ActivationLayer1Request.class);
+        assertNull(request.getType());
+    }
+
+    @Test
+    public void testRequestEnvelope() throws Exception {
+        final ActivationStatusRequest request = new ActivationStatusRequest();
+        request.setActivationId("ACTIVATION-ID");
+        request.setChallenge("CHALLENGE");
+        final String expected = reflectiveGson.toJson(new ObjectRequest<>(request));
+        final String json = new String(serialization.serializeRequestObject(request), Charset.defaultCharset());
+        assertEquals(expected, json);
+    }
+
+    /**
+     * Serialize object with both, reflective and hand-written adapters and compare the results. Then
+     * deserialize the JSON back with hand-written adapter and compare the result once again.
+     */
+    private <T> void assertSameJson(@NonNull T object, @NonNull Class<T> type) {
+        final String expected = reflectiveGson.toJson(object);
+        final String json = new String(serialization.serializeObject(object), Charset.defaultCharset());
+        assertEquals(expected, json);
+        final T deserialized = serialization.deserializeObject(json.getBytes(Charset.defaultCharset()), TypeToken.get(type));
+        assertEquals(expected, reflectiveGson.toJson(deserialized));
+    }
+}
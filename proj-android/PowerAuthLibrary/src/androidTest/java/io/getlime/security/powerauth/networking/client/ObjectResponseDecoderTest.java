@@ -0,0 +1,167 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.networking.client;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringReader;
+
+import io.getlime.security.powerauth.integration.support.Logger;
+import io.getlime.security.powerauth.networking.model.entity.TokenResponsePayload;
+import io.getlime.security.powerauth.networking.model.response.ActivationStatusResponse;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class ObjectResponseDecoderTest {
+
+    private static final String STATUS_RESPONSE = "{\"status\":\"OK\",\"responseObject\":{\"activationId\":\"ACTIVATION-ID\",\"encryptedStatusBlob\":\"AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA=\",\"nonce\":\"BBBBBBBBBBBBBBBBBBBBBB==\",\"customObject\":{\"key\":\"value\",\"number\":42}}}";
+    private static final String TOKEN_RESPONSE = "{\"status\":\"OK\",\"responseObject\":{\"tokenId\":\"TOKEN-ID\",\"tokenSecret\":\"CCCCCCCCCCCCCCCCCCCCCC==\"}}";
+    private static final int BENCHMARK_ITERATIONS = 5000;
+
+    private final Gson gson = new Gson();
+
+    @Test
+    public void testStatusBeforeResponseObject() throws Exception {
+        final ObjectResponseDecoder.Result<ActivationStatusResponse> result = decode(STATUS_RESPONSE, TypeToken.get(ActivationStatusResponse.class));
+        assertTrue(result.isOk);
+        assertNull(result.jsonRoot);
+        assertNotNull(result.responseObject);
+        assertEquals("ACTIVATION-ID", result.responseObject.getActivationId());
+        assertEquals("value", result.responseObject.getCustomObject().get("key"));
+    }
+
+    @Test
+    public void testStatusAfterResponseObject() throws Exception {
+        final String json = "{\"responseObject\":{\"tokenId\":\"TOKEN-ID\",\"tokenSecret\":\"SECRET\"},\"extra\":[1,2],\"status\":\"ok\"}";
+        final ObjectResponseDecoder.Result<TokenResponsePayload> result = decode(json, TypeToken.get(TokenResponsePayload.class));
+        assertTrue(result.isOk);
+        assertNotNull(result.responseObject);
+        assertEquals("TOKEN-ID", result.responseObject.getTokenId());
+        assertEquals("SECRET", result.responseObject.getTokenSecret());
+    }
+
+    @Test
+    public void testErrorStatus() throws Exception {
+        final String json = "{\"status\":\"ERROR\",\"responseObject\":{\"code\":\"ERR_ACTIVATION\",\"message\":\"Failure\",\"currentRecoveryPukIndex\":2}}";
+        final ObjectResponseDecoder.Result<ActivationStatusResponse> result = decode(json, TypeToken.get(ActivationStatusResponse.class));
+        assertFalse(result.isOk);
+        assertNull(result.responseObject);
+        assertNotNull(result.jsonRoot);
+        final JsonObject errorObject = result.jsonRoot.getAsJsonObject("responseObject");
+        assertEquals("ERR_ACTIVATION", errorObject.get("code").getAsString());
+        assertEquals(2, errorObject.get("currentRecoveryPukIndex").getAsInt());
+    }
+
+    @Test
+    public void testMissingStatusAndObject() throws Exception {
+        ObjectResponseDecoder.Result<ActivationStatusResponse> result = decode("{}", TypeToken.get(ActivationStatusResponse.class));
+        assertFalse(result.isOk);
+        result = decode("{\"status\":\"OK\"}", TypeToken.get(ActivationStatusResponse.class));
+        assertTrue(result.isOk);
+        assertNull(result.responseObject);
+        result = decode("{\"status\":\"OK\",\"responseObject\":\"string\"}", TypeToken.get(ActivationStatusResponse.class));
+        assertTrue(result.isOk);
+        assertNull(result.responseObject);
+        // No response type
+        final ObjectResponseDecoder.Result<Void> voidResult = decode(TOKEN_RESPONSE, null);
+        assertTrue(voidResult.isOk);
+        assertNull(voidResult.responseObject);
+    }
+
+    @Test
+    public void testInvalidJson() throws Exception {
+        final String[] invalidDocuments = {
+                "[]",
+                "\"OK\"",
+                "{\"status\":\"OK\"",
+                "{\"status\":\"OK\"}{}",
+                "{\"status\":\"OK\",\"responseObject\":{\"activationId\":[}}",
+        };
+        for (String json : invalidDocuments) {
+            try {
+                decode(json, TypeToken.get(ActivationStatusResponse.class));
+                fail("Document should be rejected: " + json);
+            } catch (JsonParseException e) {
+                // Success
+            }
+        }
+    }
+
+    @Test
+    public void testBenchmarkActivationStatusResponse() throws Exception {
+        runBenchmark("ActivationStatusResponse", STATUS_RESPONSE, TypeToken.get(ActivationStatusResponse.class));
+    }
+
+    @Test
+    public void testBenchmarkTokenResponsePayload() throws Exception {
+        runBenchmark("TokenResponsePayload", TOKEN_RESPONSE, TypeToken.get(TokenResponsePayload.class));
+    }
+
+    /**
+     * Compare the one-pass decoder with the previous implementation, that parsed the whole JSON tree
+     * at first and then deserialized the response object from the tree.
+     */
+    private <T> void runBenchmark(@NonNull String name, @NonNull String json, @NonNull TypeToken<T> type) {
+        // Warm up both paths
+        for (int i = 0; i < BENCHMARK_ITERATIONS / 10; i++) {
+            assertNotNull(decode(json, type).responseObject);
+            assertNotNull(decodeWithTree(json, type));
+        }
+        final long treeStart = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            assertNotNull(decodeWithTree(json, type));
+        }
+        final long treeTime = System.nanoTime() - treeStart;
+
+        final long streamStart = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            assertNotNull(decode(json, type).responseObject);
+        }
+        final long streamTime = System.nanoTime() - streamStart;
+
+        Logger.d("ObjectResponseDecoder: %s, %d iterations, tree: %d us, one-pass: %d us",
+                name, BENCHMARK_ITERATIONS, treeTime / 1000, streamTime / 1000);
+    }
+
+    private <T> ObjectResponseDecoder.Result<T> decode(@NonNull String json, TypeToken<T> type) {
+        return new ObjectResponseDecoder<>(gson, type).decode(new StringReader(json));
+    }
+
+    private <T> T decodeWithTree(@NonNull String json, @NonNull TypeToken<T> type) {
+        final JsonObject jsonRoot = new JsonSerialization().parseResponseObject(new StringReader(json));
+        final JsonElement status = jsonRoot.get("status");
+        if (status == null || !status.isJsonPrimitive() || !status.getAsString().equalsIgnoreCase("OK")) {
+            return null;
+        }
+        final JsonElement responseObjectElement = jsonRoot.get("responseObject");
+        if (responseObjectElement == null || !responseObjectElement.isJsonObject()) {
+            return null;
+        }
+        return gson.fromJson(responseObjectElement, type.getType());
+    }
+}
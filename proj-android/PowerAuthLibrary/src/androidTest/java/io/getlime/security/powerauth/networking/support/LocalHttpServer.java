@@ -0,0 +1,299 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.networking.support;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code LocalHttpServer} is a minimal HTTP/1.1 stand-in server listening on the loopback
+ * interface. The server responds to all requests with the same JSON response and honors keep-alive
+ * connections, so the tests can count how many TCP connections were opened by the client.
+ */
+public class LocalHttpServer {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ServerSocket serverSocket;
+    private final List<Socket> clientSockets = new ArrayList<>();
+    private final AtomicInteger acceptedConnections = new AtomicInteger();
+    private final AtomicInteger processedRequests = new AtomicInteger();
+    private volatile byte[] responseBody = "{\"status\":\"OK\"}".getBytes(UTF8);
+    private volatile int responseDelay;
+    private volatile boolean running;
+    private volatile byte[] lastRequestBody;
+    private volatile boolean lastRequestChunked;
+
+    /**
+     * Start a new server on random port.
+     *
+     * @throws IOException In case of failure.
+     */
+    public LocalHttpServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        running = true;
+        final Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        }, "LocalHttpServer-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * @param path Path to resource.
+     * @return URL to the resource on this server.
+     * @throws IOException In case of failure.
+     */
+    public @NonNull URL getUrl(@NonNull String path) throws IOException {
+        return new URL("http://127.0.0.1:" + serverSocket.getLocalPort() + path);
+    }
+
+    /**
+     * @return Base URL to this server, without a trailing slash.
+     */
+    public @NonNull String getBaseUrl() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * @param body Response body returned for all requests.
+     */
+    public void setResponseBody(@NonNull byte[] body) {
+        responseBody = body;
+    }
+
+    /**
+     * @param delay Delay in milliseconds applied before each response.
+     */
+    public void setResponseDelay(int delay) {
+        responseDelay = delay;
+    }
+
+    /**
+     * @return Number of TCP connections accepted by the server.
+     */
+    public int getAcceptedConnections() {
+        return acceptedConnections.get();
+    }
+
+    /**
+     * @return Number of HTTP requests processed by the server.
+     */
+    public int getProcessedRequests() {
+        return processedRequests.get();
+    }
+
+    /**
+     * @return Body of the last processed request, or null if no request was processed yet.
+     */
+    public byte[] getLastRequestBody() {
+        return lastRequestBody;
+    }
+
+    /**
+     * @return true if the last processed request was sent with chunked transfer encoding.
+     */
+    public boolean isLastRequestChunked() {
+        return lastRequestChunked;
+    }
+
+    /**
+     * Reset connection and request counters.
+     */
+    public void resetCounters() {
+        acceptedConnections.set(0);
+        processedRequests.set(0);
+    }
+
+    /**
+     * Stop the server and close all client connections.
+     */
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+        synchronized (clientSockets) {
+            for (Socket socket : clientSockets) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+            clientSockets.clear();
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                final Socket socket = serverSocket.accept();
+                acceptedConnections.incrementAndGet();
+                synchronized (clientSockets) {
+                    clientSockets.add(socket);
+                }
+                final Thread connectionThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serveConnection(socket);
+                    }
+                }, "LocalHttpServer-connection");
+                connectionThread.setDaemon(true);
+                connectionThread.start();
+            } catch (IOException e) {
+                // Server socket closed
+                return;
+            }
+        }
+    }
+
+    private void serveConnection(@NonNull Socket socket) {
+        try {
+            final InputStream is = new BufferedInputStream(socket.getInputStream());
+            final OutputStream os = socket.getOutputStream();
+            while (running) {
+                // Read request line and headers
+                String line = readLine(is);
+                if (line == null) {
+                    break;
+                }
+                int contentLength = 0;
+                boolean chunked = false;
+                boolean closeConnection = false;
+                while ((line = readLine(is)) != null && !line.isEmpty()) {
+                    final String lowerCaseLine = line.toLowerCase(Locale.US);
+                    if (lowerCaseLine.startsWith("content-length:")) {
+                        contentLength = Integer.parseInt(line.substring(15).trim());
+                    } else if (lowerCaseLine.startsWith("transfer-encoding:") && lowerCaseLine.contains("chunked")) {
+                        chunked = true;
+                    } else if (lowerCaseLine.startsWith("connection:") && lowerCaseLine.contains("close")) {
+                        closeConnection = true;
+                    }
+                }
+                if (line == null) {
+                    break;
+                }
+                // Read request body
+                final byte[] requestBody = chunked ? readChunkedBody(is) : readBody(is, contentLength);
+                if (requestBody == null) {
+                    return;
+                }
+                lastRequestBody = requestBody;
+                lastRequestChunked = chunked;
+                processedRequests.incrementAndGet();
+                if (responseDelay > 0) {
+                    Thread.sleep(responseDelay);
+                }
+                // Write response
+                final byte[] body = responseBody;
+                final String header = "HTTP/1.1 200 OK\r\n" +
+                        "Content-Type: application/json\r\n" +
+                        "Content-Length: " + body.length + "\r\n" +
+                        "Connection: " + (closeConnection ? "close" : "keep-alive") + "\r\n\r\n";
+                os.write(header.getBytes(UTF8));
+                os.write(body);
+                os.flush();
+                if (closeConnection) {
+                    break;
+                }
+            }
+        } catch (IOException | InterruptedException | NumberFormatException e) {
+            // Connection closed by the client
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private static byte[] readBody(@NonNull InputStream is, int length) throws IOException {
+        final byte[] body = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            final int count = is.read(body, offset, length - offset);
+            if (count < 0) {
+                return null;
+            }
+            offset += count;
+        }
+        return body;
+    }
+
+    private static byte[] readChunkedBody(@NonNull InputStream is) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while (true) {
+            final String sizeLine = readLine(is);
+            if (sizeLine == null) {
+                return null;
+            }
+            final int extensionIndex = sizeLine.indexOf(';');
+            final int chunkSize = Integer.parseInt((extensionIndex >= 0 ? sizeLine.substring(0, extensionIndex) : sizeLine).trim(), 16);
+            if (chunkSize == 0) {
+                // Skip optional trailers, up to the empty line
+                String trailer;
+                while ((trailer = readLine(is)) != null && !trailer.isEmpty()) {
+                    // Ignore trailer
+                }
+                return body.toByteArray();
+            }
+            final byte[] chunk = readBody(is, chunkSize);
+            if (chunk == null || readLine(is) == null) {
+                return null;
+            }
+            body.write(chunk);
+        }
+    }
+
+    private static String readLine(@NonNull InputStream is) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = is.read()) >= 0) {
+            if (c == '\n') {
+                break;
+            }
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+        if (c < 0 && line.size() == 0) {
+            return null;
+        }
+        return new String(line.toByteArray(), UTF8);
+    }
+}
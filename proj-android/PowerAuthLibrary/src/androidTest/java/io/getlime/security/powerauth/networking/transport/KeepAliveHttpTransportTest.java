@@ -0,0 +1,144 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.networking.transport;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import io.getlime.security.powerauth.integration.support.Logger;
+import io.getlime.security.powerauth.networking.support.LocalHttpServer;
+import io.getlime.security.powerauth.sdk.PowerAuthClientConfiguration;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class KeepAliveHttpTransportTest {
+
+    private static final int BURST_SIZE = 32;
+    private static final byte[] REQUEST_BODY = "{\"requestObject\":{}}".getBytes();
+
+    private LocalHttpServer server;
+    private PowerAuthClientConfiguration configuration;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LocalHttpServer();
+        configuration = new PowerAuthClientConfiguration.Builder()
+                .allowUnsecuredConnection(true)
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testConnectionReuse() throws Exception {
+        final HttpTransport transport = new KeepAliveHttpTransport();
+        final URL url = server.getUrl("/pa/v3/activation/status");
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < BURST_SIZE; i++) {
+            executeRequest(transport, url, true);
+        }
+        final long pooledTime = System.nanoTime() - start;
+        final int pooledConnections = server.getAcceptedConnections();
+
+        assertEquals(BURST_SIZE, server.getProcessedRequests());
+        assertTrue("Expected connection reuse, but " + pooledConnections + " connections were opened", pooledConnections < BURST_SIZE / 2);
+
+        // Now compare with the behavior without keep-alive
+        server.resetCounters();
+        final long start2 = System.nanoTime();
+        for (int i = 0; i < BURST_SIZE; i++) {
+            executeRequest(transport, url, false);
+        }
+        final long disconnectTime = System.nanoTime() - start2;
+        final int disconnectConnections = server.getAcceptedConnections();
+
+        assertEquals(BURST_SIZE, server.getProcessedRequests());
+        assertTrue(disconnectConnections > pooledConnections);
+
+        Logger.d("KeepAliveHttpTransport: %d requests, keep-alive: %d connections in %d ms, disconnect: %d connections in %d ms",
+                BURST_SIZE, pooledConnections, pooledTime / 1000000, disconnectConnections, disconnectTime / 1000000);
+    }
+
+    @Test
+    public void testMaxConnectionsPerHost() throws Exception {
+        final KeepAliveHttpTransport transport = new KeepAliveHttpTransport(2);
+        assertEquals(2, transport.getMaxConnectionsPerHost());
+        final PowerAuthClientConfiguration shortTimeout = new PowerAuthClientConfiguration.Builder()
+                .allowUnsecuredConnection(true)
+                .timeouts(200, 200)
+                .build();
+        final URL url = server.getUrl("/pa/v3/token/create");
+        final HttpURLConnection c1 = transport.openConnection(url, shortTimeout);
+        final HttpURLConnection c2 = transport.openConnection(url, shortTimeout);
+        try {
+            transport.openConnection(url, shortTimeout);
+            fail("Third connection must not be leased");
+        } catch (IOException e) {
+            // Expected
+        }
+        transport.releaseConnection(c1, false);
+        final HttpURLConnection c3 = transport.openConnection(url, shortTimeout);
+        transport.releaseConnection(c2, false);
+        transport.releaseConnection(c3, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxConnections() throws Exception {
+        new KeepAliveHttpTransport(0);
+    }
+
+    private void executeRequest(@NonNull HttpTransport transport, @NonNull URL url, boolean keepAlive) throws Exception {
+        final HttpURLConnection connection = transport.openConnection(url, configuration);
+        boolean reusable = false;
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setUseCaches(false);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.getOutputStream().write(REQUEST_BODY);
+            assertEquals(200, connection.getResponseCode());
+            final InputStream is = connection.getInputStream();
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[256];
+            int length;
+            while ((length = is.read(buffer)) != -1) {
+                os.write(buffer, 0, length);
+            }
+            is.close();
+            assertTrue(os.size() > 0);
+            reusable = keepAlive;
+        } finally {
+            transport.releaseConnection(connection, reusable);
+        }
+    }
+}
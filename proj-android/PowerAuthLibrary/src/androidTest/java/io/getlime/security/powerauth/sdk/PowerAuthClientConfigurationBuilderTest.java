@@ -26,6 +26,8 @@ import java.net.HttpURLConnection;
 
 import io.getlime.security.powerauth.networking.interceptors.HttpRequestInterceptor;
 import io.getlime.security.powerauth.networking.ssl.HttpClientSslNoValidationStrategy;
+import io.getlime.security.powerauth.networking.transport.HttpTransport;
+import io.getlime.security.powerauth.networking.transport.KeepAliveHttpTransport;
 
 import static org.junit.Assert.*;
 
@@ -41,10 +43,13 @@ public class PowerAuthClientConfigurationBuilderTest {
         assertEquals(PowerAuthClientConfiguration.DEFAULT_READ_TIMEOUT, configuration.getReadTimeout());
         assertNull(configuration.getClientValidationStrategy());
         assertNull(configuration.getRequestInterceptors());
+        assertTrue(configuration.getHttpTransport() instanceof KeepAliveHttpTransport);
+        assertEquals(PowerAuthClientConfiguration.DEFAULT_MAX_RESPONSE_SIZE, configuration.getMaxResponseSize());
     }
 
     @Test
     public void testCustomParameters() throws Exception {
+        final HttpTransport transport = new KeepAliveHttpTransport(1);
         PowerAuthClientConfiguration configuration = new PowerAuthClientConfiguration.Builder()
                 .allowUnsecuredConnection(true)
                 .timeouts(200, 300)
@@ -61,6 +66,8 @@ public class PowerAuthClientConfigurationBuilderTest {
                     }
                 })
                 .clientValidationStrategy(new HttpClientSslNoValidationStrategy())
+                .httpTransport(transport)
+                .maxResponseSize(4096)
                 .build();
         assertTrue(configuration.isUnsecuredConnectionAllowed());
         assertEquals(200, configuration.getConnectionTimeout());
@@ -68,5 +75,7 @@ public class PowerAuthClientConfigurationBuilderTest {
         assertNotNull(configuration.getClientValidationStrategy());
         assertNotNull(configuration.getRequestInterceptors());
         assertEquals(2, configuration.getRequestInterceptors().size());
+        assertSame(transport, configuration.getHttpTransport());
+        assertEquals(4096, configuration.getMaxResponseSize());
     }
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.sdk.impl;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.getlime.security.powerauth.integration.support.Logger;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class DefaultExecutorProviderTest {
+
+    @Test
+    public void testSizing() throws Exception {
+        DefaultExecutorProvider provider = new DefaultExecutorProvider();
+        assertEquals(DefaultExecutorProvider.DEFAULT_CONCURRENT_POOL_SIZE, provider.getConcurrentPoolSize());
+        assertEquals(DefaultExecutorProvider.DEFAULT_QUEUE_CAPACITY, provider.getQueueCapacity());
+        assertTrue(provider.getConcurrentPoolSize() >= 2);
+
+        provider = new DefaultExecutorProvider(3, 10);
+        assertEquals(3, provider.getConcurrentPoolSize());
+        assertEquals(10, provider.getQueueCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSizing() throws Exception {
+        new DefaultExecutorProvider(0, 10);
+    }
+
+    @Test
+    public void testConcurrentPoolSaturation() throws Exception {
+        final int poolSize = 2;
+        final int queueCapacity = 4;
+        final DefaultExecutorProvider provider = new DefaultExecutorProvider(poolSize, queueCapacity);
+        final Executor executor = provider.getConcurrentExecutor();
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(poolSize);
+        final CountDownLatch finished = new CountDownLatch(poolSize + queueCapacity);
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+
+        final Runnable blockingTask = new Runnable() {
+            @Override
+            public void run() {
+                final int current = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    if (current > maxRunning.get()) {
+                        maxRunning.set(current);
+                    }
+                }
+                started.countDown();
+                try {
+                    blocker.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+                running.decrementAndGet();
+                finished.countDown();
+            }
+        };
+        // Fill all threads and the whole queue
+        for (int i = 0; i < poolSize + queueCapacity; i++) {
+            executor.execute(blockingTask);
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // Next task must be rejected
+        try {
+            executor.execute(blockingTask);
+            fail("Task must be rejected when the queue is full");
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+        blocker.countDown();
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertEquals(poolSize, maxRunning.get());
+    }
+
+    @Test
+    public void testSerialExecutorIsNotStarvedByConcurrentTasks() throws Exception {
+        final DefaultExecutorProvider provider = new DefaultExecutorProvider(2, 16);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        // Saturate the concurrent pool
+        for (int i = 0; i < provider.getConcurrentPoolSize() + provider.getQueueCapacity(); i++) {
+            provider.getConcurrentExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        blocker.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                }
+            });
+        }
+        // Serial task must be still executed
+        final CountDownLatch serialDone = new CountDownLatch(1);
+        provider.getSerialExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                serialDone.countDown();
+            }
+        });
+        assertTrue(serialDone.await(2, TimeUnit.SECONDS));
+        blocker.countDown();
+    }
+
+    @Test
+    public void testSerialExecutorIsNotBounded() throws Exception {
+        final DefaultExecutorProvider provider = new DefaultExecutorProvider(2, 4);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final int count = provider.getQueueCapacity() * 10;
+        final CountDownLatch done = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            // Tasks submitted by the application are queued, even if the queue capacity is exceeded.
+            provider.getSerialExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        blocker.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        blocker.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSerialExecutionOrder() throws Exception {
+        final DefaultExecutorProvider provider = new DefaultExecutorProvider(2, 128);
+        final int count = 100;
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            provider.getSerialExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (running.incrementAndGet() > 1) {
+                        overlaps.incrementAndGet();
+                    }
+                    order.add(index);
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, order.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testConcurrentThroughput() throws Exception {
+        final DefaultExecutorProvider provider = new DefaultExecutorProvider();
+        final int batchSize = provider.getQueueCapacity();
+        final int batches = 20;
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final long start = System.nanoTime();
+        for (int batch = 0; batch < batches; batch++) {
+            final CountDownLatch done = new CountDownLatch(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                provider.getConcurrentExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        final int current = running.incrementAndGet();
+                        int max;
+                        do {
+                            max = maxRunning.get();
+                        } while (current > max && !maxRunning.compareAndSet(max, current));
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException e) {
+                            // Ignore
+                        }
+                        running.decrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+        }
+        final long elapsed = (System.nanoTime() - start) / 1000000;
+        final int total = batchSize * batches;
+        Logger.d("DefaultExecutorProvider: %d tasks on %d threads finished in %d ms", total, provider.getConcurrentPoolSize(), elapsed);
+        // Tasks must run in parallel, but never on more threads than the pool has. Timing is only reported.
+        assertTrue(maxRunning.get() > 1);
+        assertTrue(maxRunning.get() <= provider.getConcurrentPoolSize());
+    }
+}
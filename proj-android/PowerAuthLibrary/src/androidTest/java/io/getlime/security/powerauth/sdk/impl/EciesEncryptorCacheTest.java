@@ -0,0 +1,171 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.sdk.impl;
+
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.math.BigInteger;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+
+import io.getlime.security.powerauth.core.EciesCryptogram;
+import io.getlime.security.powerauth.core.EciesEncryptor;
+import io.getlime.security.powerauth.core.Session;
+import io.getlime.security.powerauth.core.SessionSetup;
+import io.getlime.security.powerauth.ecies.EciesEncryptorFactory;
+import io.getlime.security.powerauth.ecies.EciesEncryptorId;
+import io.getlime.security.powerauth.exception.PowerAuthErrorCodes;
+import io.getlime.security.powerauth.exception.PowerAuthErrorException;
+import io.getlime.security.powerauth.integration.support.Logger;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class EciesEncryptorCacheTest {
+
+    private static final int BENCHMARK_ITERATIONS = 1000;
+
+    private Session session;
+
+    @Before
+    public void setUp() throws Exception {
+        final String appKey = Base64.encodeToString("application-key!".getBytes(), Base64.NO_WRAP);
+        final String appSecret = Base64.encodeToString("application-sec!".getBytes(), Base64.NO_WRAP);
+        session = new Session(new SessionSetup(appKey, appSecret, generatePublicKey(), 0, null));
+        assertTrue(session.hasValidSetup());
+    }
+
+    @After
+    public void tearDown() {
+        session.destroy();
+    }
+
+    @Test
+    public void testApplicationScope() throws Exception {
+        final EciesEncryptorCache cache = new EciesEncryptorCache(session);
+        final EciesEncryptor template = new EciesEncryptorFactory(session, null).getEncryptor(EciesEncryptorId.GENERIC_APPLICATION_SCOPE);
+
+        final EciesEncryptor encryptor1 = cache.getEncryptor(EciesEncryptorId.GENERIC_APPLICATION_SCOPE, null);
+        final EciesEncryptor encryptor2 = cache.getEncryptor(EciesEncryptorId.GENERIC_APPLICATION_SCOPE, null);
+        assertNotSame(encryptor1, encryptor2);
+        for (EciesEncryptor encryptor : new EciesEncryptor[] { encryptor1, encryptor2 }) {
+            assertEquals(template.getPublicKey(), encryptor.getPublicKey());
+            assertArrayEquals(template.getSharedInfo1(), encryptor.getSharedInfo1());
+            assertArrayEquals(template.getSharedInfo2(), encryptor.getSharedInfo2());
+            assertNotNull(encryptor.getMetadata());
+            assertEquals(template.getMetadata().getActivationKey(), encryptor.getMetadata().getActivationKey());
+            assertNull(encryptor.getMetadata().getActivationIdentifier());
+            assertTrue(encryptor.canEncryptRequest());
+            assertFalse(encryptor.canDecryptResponse());
+        }
+
+        // Each copy has its own ephemeral key
+        final EciesCryptogram cryptogram1 = encryptor1.encryptRequest("request".getBytes());
+        assertNotNull(cryptogram1);
+        assertTrue(encryptor1.canDecryptResponse());
+        assertFalse(encryptor2.canDecryptResponse());
+        final EciesCryptogram cryptogram2 = encryptor2.encryptRequest("request".getBytes());
+        assertNotNull(cryptogram2);
+        assertFalse(Arrays.equals(cryptogram1.key, cryptogram2.key));
+
+        // Different identifiers produce different encryptors
+        final EciesEncryptor payloadEncryptor = cache.getEncryptor(EciesEncryptorId.ACTIVATION_PAYLOAD, null);
+        assertNotNull(payloadEncryptor);
+        assertNull(payloadEncryptor.getMetadata());
+
+        // Encryptor is still available after invalidation
+        cache.invalidate();
+        final EciesEncryptor encryptor3 = cache.getEncryptor(EciesEncryptorId.GENERIC_APPLICATION_SCOPE, null);
+        assertEquals(template.getPublicKey(), encryptor3.getPublicKey());
+        assertNotNull(encryptor3.encryptRequest("request".getBytes()));
+    }
+
+    @Test
+    public void testInvalidParameters() throws Exception {
+        final EciesEncryptorCache cache = new EciesEncryptorCache(session);
+        try {
+            cache.getEncryptor(EciesEncryptorId.NONE, null);
+            fail();
+        } catch (PowerAuthErrorException e) {
+            assertEquals(PowerAuthErrorCodes.WRONG_PARAMETER, e.getPowerAuthErrorCode());
+        }
+        try {
+            cache.getEncryptor(EciesEncryptorId.GENERIC_ACTIVATION_SCOPE, null);
+            fail();
+        } catch (PowerAuthErrorException e) {
+            assertEquals(PowerAuthErrorCodes.WRONG_PARAMETER, e.getPowerAuthErrorCode());
+        }
+        // Session has no activation
+        try {
+            cache.getEncryptor(EciesEncryptorId.GENERIC_ACTIVATION_SCOPE, new byte[16]);
+            fail();
+        } catch (PowerAuthErrorException e) {
+            assertEquals(PowerAuthErrorCodes.ENCRYPTION_ERROR, e.getPowerAuthErrorCode());
+        }
+    }
+
+    @Test
+    public void testBenchmark() throws Exception {
+        final EciesEncryptorCache cache = new EciesEncryptorCache(session);
+        assertNotNull(cache.getEncryptor(EciesEncryptorId.GENERIC_APPLICATION_SCOPE, null));
+
+        final long uncachedStart = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            assertNotNull(new EciesEncryptorFactory(session, null).getEncryptor(EciesEncryptorId.GENERIC_APPLICATION_SCOPE));
+        }
+        final long uncachedTime = System.nanoTime() - uncachedStart;
+
+        final long cachedStart = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            assertNotNull(cache.getEncryptor(EciesEncryptorId.GENERIC_APPLICATION_SCOPE, null));
+        }
+        final long cachedTime = System.nanoTime() - cachedStart;
+
+        Logger.d("EciesEncryptorCache: %d iterations, uncached: %d us, cached: %d us",
+                BENCHMARK_ITERATIONS, uncachedTime / 1000, cachedTime / 1000);
+    }
+
+    /**
+     * @return Base64 encoded, uncompressed EC public key on P-256 curve.
+     */
+    private static String generatePublicKey() throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        final ECPublicKey publicKey = (ECPublicKey) generator.generateKeyPair().getPublic();
+        final byte[] encoded = new byte[65];
+        encoded[0] = 0x04;
+        copyCoordinate(publicKey.getW().getAffineX(), encoded, 1);
+        copyCoordinate(publicKey.getW().getAffineY(), encoded, 33);
+        return Base64.encodeToString(encoded, Base64.NO_WRAP);
+    }
+
+    private static void copyCoordinate(@NonNull BigInteger coordinate, @NonNull byte[] destination, int offset) {
+        final byte[] bytes = coordinate.toByteArray();
+        final int length = Math.min(bytes.length, 32);
+        System.arraycopy(bytes, bytes.length - length, destination, offset + 32 - length, length);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.sdk.impl;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import io.getlime.security.powerauth.core.Session;
+import io.getlime.security.powerauth.core.SessionSetup;
+import io.getlime.security.powerauth.integration.support.Logger;
+import io.getlime.security.powerauth.networking.response.IFetchKeysStrategy;
+import io.getlime.security.powerauth.networking.response.IVersionedFetchKeysStrategy;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class PossessionUnlockKeyCacheTest {
+
+    private static final int BENCHMARK_ITERATIONS = 1000;
+
+    private Context context;
+    private Session session;
+
+    /**
+     * Strategy counting calls and providing a key that can be changed.
+     */
+    private static class TestStrategy implements IVersionedFetchKeysStrategy {
+        int calls = 0;
+        long version = 0;
+        String key = "initial-key";
+
+        @NonNull
+        @Override
+        public String getPossessionUnlockKey(@NonNull Context context) {
+            calls++;
+            return key;
+        }
+
+        @Override
+        public long getPossessionUnlockKeyVersion() {
+            return version;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getInstrumentation().getContext();
+        session = new Session(new SessionSetup());
+    }
+
+    @After
+    public void tearDown() {
+        session.destroy();
+    }
+
+    @Test
+    public void testKeyIsCached() throws Exception {
+        final TestStrategy strategy = new TestStrategy();
+        final PossessionUnlockKeyCache cache = new PossessionUnlockKeyCache(session, strategy);
+        final byte[] expectedKey = session.normalizeSignatureUnlockKeyFromData(strategy.key.getBytes());
+
+        final byte[] key1 = cache.getPossessionUnlockKey(context);
+        final byte[] key2 = cache.getPossessionUnlockKey(context);
+        assertArrayEquals(expectedKey, key1);
+        assertArrayEquals(expectedKey, key2);
+        assertNotSame(key1, key2);
+        assertEquals(1, strategy.calls);
+
+        // Modifying returned key doesn't affect the cache
+        key1[0] ^= 0xFF;
+        assertArrayEquals(expectedKey, cache.getPossessionUnlockKey(context));
+        assertEquals(1, strategy.calls);
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        final TestStrategy strategy = new TestStrategy();
+        final PossessionUnlockKeyCache cache = new PossessionUnlockKeyCache(session, strategy);
+        final byte[] key1 = cache.getPossessionUnlockKey(context);
+        assertEquals(1, strategy.calls);
+
+        // Explicit invalidation
+        cache.invalidate();
+        assertArrayEquals(key1, cache.getPossessionUnlockKey(context));
+        assertEquals(2, strategy.calls);
+
+        // Strategy reports a new key version
+        strategy.key = "changed-key";
+        assertArrayEquals(key1, cache.getPossessionUnlockKey(context));
+        strategy.version++;
+        final byte[] key2 = cache.getPossessionUnlockKey(context);
+        assertEquals(3, strategy.calls);
+        assertArrayEquals(session.normalizeSignatureUnlockKeyFromData(strategy.key.getBytes()), key2);
+        assertFalse(Arrays.equals(key1, key2));
+        cache.getPossessionUnlockKey(context);
+        assertEquals(3, strategy.calls);
+    }
+
+    @Test
+    public void testBenchmark() throws Exception {
+        final IFetchKeysStrategy strategy = new DefaultFetchKeysStrategy();
+        final PossessionUnlockKeyCache cache = new PossessionUnlockKeyCache(session, strategy);
+        assertArrayEquals(session.normalizeSignatureUnlockKeyFromData(strategy.getPossessionUnlockKey(context).getBytes()), cache.getPossessionUnlockKey(context));
+
+        final long uncachedStart = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            assertNotNull(session.normalizeSignatureUnlockKeyFromData(strategy.getPossessionUnlockKey(context).getBytes()));
+        }
+        final long uncachedTime = System.nanoTime() - uncachedStart;
+
+        final long cachedStart = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            assertNotNull(cache.getPossessionUnlockKey(context));
+        }
+        final long cachedTime = System.nanoTime() - cachedStart;
+
+        Logger.d("PossessionUnlockKeyCache: %d iterations, uncached: %d us, cached: %d us",
+                BENCHMARK_ITERATIONS, uncachedTime / 1000, cachedTime / 1000);
+    }
+}
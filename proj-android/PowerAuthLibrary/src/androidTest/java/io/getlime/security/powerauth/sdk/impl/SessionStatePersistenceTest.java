@@ -0,0 +1,683 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.sdk.impl;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.getlime.security.powerauth.integration.support.Logger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SessionStatePersistence}. The session is simulated by a counter, so each persisted
+ * state contains the counter value. A "crash" is simulated by the storage that stops accepting writes.
+ * In all cases, the value released to the caller must never be greater than the persisted one.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SessionStatePersistenceTest {
+
+    private static final String INSTANCE_ID = "test-instance";
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 25;
+    private static final int FULL_STATE_SIZE = 512;
+    private static final int COUNTER_STATE_SIZE = 8;
+
+    private ExecutorService executor;
+    private AtomicLong counter;
+    private CounterStorage storage;
+    private volatile boolean hasActivation;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(THREADS + 1);
+        counter = new AtomicLong();
+        storage = new CounterStorage();
+        hasActivation = true;
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSynchronousCommit() throws Exception {
+        final SessionStatePersistence persistence = createPersistence();
+        assertNull(storage.serializedState(INSTANCE_ID));
+
+        counter.incrementAndGet();
+        persistence.markChanged();
+        persistence.commit();
+        assertEquals(1, storage.getStoredCounter());
+        assertEquals(1, persistence.getChangeCount());
+        assertEquals(1, persistence.getCommitCount());
+
+        // No change, no write
+        persistence.commit();
+        assertEquals(1, persistence.getCommitCount());
+
+        counter.incrementAndGet();
+        persistence.markChanged();
+        persistence.commit();
+        assertEquals(2, storage.getStoredCounter());
+        assertEquals(2, persistence.getCommitCount());
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        final SessionStatePersistence persistence = createPersistence();
+        storage.setWriteDelay(2);
+
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CountDownLatch latch = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < ITERATIONS; i++) {
+                            final long value = counter.incrementAndGet();
+                            persistence.markChanged();
+                            persistence.commit();
+                            // The value leaves the device now, so it must be already stored.
+                            if (storage.getStoredCounter() < value) {
+                                failures.add(new AssertionError("Released value " + value + " is not persistent."));
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failures.add(t);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertTrue(failures.isEmpty());
+        assertEquals(THREADS * ITERATIONS, storage.getStoredCounter());
+        assertEquals(THREADS * ITERATIONS, persistence.getChangeCount());
+        assertTrue(persistence.getCommitCount() < persistence.getChangeCount());
+
+        Logger.d("SessionStatePersistence: %d changes, %d commits, %.3f commits per change",
+                persistence.getChangeCount(), persistence.getCommitCount(), (double) persistence.getCommitCount() / persistence.getChangeCount());
+    }
+
+    @Test
+    public void testAsynchronousCommit() throws Exception {
+        final SessionStatePersistence persistence = createPersistence();
+        storage.setWriteDelay(2);
+
+        final int count = THREADS * ITERATIONS;
+        final List<Long> released = Collections.synchronizedList(new ArrayList<Long>());
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            final long value = counter.incrementAndGet();
+            persistence.markChanged();
+            persistence.commitAsync(new SessionStatePersistence.ICommitListener() {
+                @Override
+                public void onCommitSucceeded() {
+                    if (storage.getStoredCounter() < value) {
+                        failures.add(new AssertionError("Released value " + value + " is not persistent."));
+                    }
+                    released.add(value);
+                    latch.countDown();
+                }
+
+                @Override
+                public void onCommitFailed(@NonNull Throwable t) {
+                    failures.add(t);
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertTrue(failures.isEmpty());
+        // Listeners are notified in the same order as commits were requested.
+        for (int i = 0; i < count; i++) {
+            assertEquals(i + 1, (long) released.get(i));
+        }
+        assertEquals(count, storage.getStoredCounter());
+        assertTrue(persistence.getCommitCount() < persistence.getChangeCount());
+
+        Logger.d("SessionStatePersistence (async): %d changes, %d commits",
+                persistence.getChangeCount(), persistence.getCommitCount());
+    }
+
+    @Test
+    public void testCommitFromListener() throws Exception {
+        final SessionStatePersistence persistence = createPersistence();
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final List<Long> released = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch latch = new CountDownLatch(2);
+
+        // The listener calculates another "signature", like the application does when it's notified
+        // on the same thread. The nested commit must not wait for the commit that notifies the listener.
+        counter.incrementAndGet();
+        persistence.markCounterChanged();
+        persistence.commitAsync(new SessionStatePersistence.ICommitListener() {
+            @Override
+            public void onCommitSucceeded() {
+                try {
+                    released.add(1L);
+                    final long value = counter.incrementAndGet();
+                    persistence.markChanged();
+                    persistence.commit();
+                    if (storage.getStoredCounter() < value) {
+                        failures.add(new AssertionError("Released value " + value + " is not persistent."));
+                    }
+                    // Nested asynchronous commit is reported after this listener returns.
+                    counter.incrementAndGet();
+                    persistence.markCounterChanged();
+                    persistence.commitAsync(new SessionStatePersistence.ICommitListener() {
+                        @Override
+                        public void onCommitSucceeded() {
+                            released.add(3L);
+                            latch.countDown();
+                        }
+
+                        @Override
+                        public void onCommitFailed(@NonNull Throwable t) {
+                            failures.add(t);
+                            latch.countDown();
+                        }
+                    });
+                    released.add(2L);
+                } catch (Throwable t) {
+                    failures.add(t);
+                } finally {
+                    latch.countDown();
+                }
+            }
+
+            @Override
+            public void onCommitFailed(@NonNull Throwable t) {
+                failures.add(t);
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(failures.isEmpty());
+        assertEquals(Arrays.asList(1L, 2L, 3L), released);
+        assertEquals(3, storage.getStoredCounter());
+    }
+
+    @Test
+    public void testMixedCommits() throws Exception {
+        final SessionStatePersistence persistence = createPersistence();
+        storage.setWriteDelay(1);
+
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CountDownLatch latch = new CountDownLatch(THREADS * ITERATIONS);
+        for (int t = 0; t < THREADS; t++) {
+            final boolean async = (t & 1) == 0;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        final long value = counter.incrementAndGet();
+                        persistence.markChanged();
+                        if (async) {
+                            persistence.commitAsync(new SessionStatePersistence.ICommitListener() {
+                                @Override
+                                public void onCommitSucceeded() {
+                                    if (storage.getStoredCounter() < value) {
+                                        failures.add(new AssertionError("Released value " + value + " is not persistent."));
+                                    }
+                                    latch.countDown();
+                                }
+
+                                @Override
+                                public void onCommitFailed(@NonNull Throwable t) {
+                                    failures.add(t);
+                                    latch.countDown();
+                                }
+                            });
+                        } else {
+                            try {
+                                persistence.commit();
+                                if (storage.getStoredCounter() < value) {
+                                    failures.add(new AssertionError("Released value " + value + " is not persistent."));
+                                }
+                            } catch (Throwable t) {
+                                failures.add(t);
+                            }
+                            latch.countDown();
+                        }
+                    }
+                }
+            });
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertTrue(failures.isEmpty());
+        assertEquals(THREADS * ITERATIONS, storage.getStoredCounter());
+    }
+
+    @Test
+    public void testCrashConsistency() throws Exception {
+        // Repeat with a different crash point, to hit different phases of the group commit.
+        for (int crashAfter = 1; crashAfter <= 16; crashAfter++) {
+            counter.set(0);
+            storage = new CounterStorage();
+            storage.setWriteDelay(1);
+            storage.setCrashAfterWrites(crashAfter);
+            final SessionStatePersistence persistence = createPersistence();
+
+            final AtomicLong maxReleased = new AtomicLong();
+            final CountDownLatch latch = new CountDownLatch(THREADS);
+            for (int t = 0; t < THREADS; t++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < ITERATIONS; i++) {
+                                final long value = counter.incrementAndGet();
+                                persistence.markChanged();
+                                persistence.commit();
+                                updateMax(maxReleased, value);
+                            }
+                        } catch (IllegalStateException e) {
+                            // Simulated crash
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+                });
+            }
+            assertTrue(latch.await(30, TimeUnit.SECONDS));
+            assertTrue(storage.isCrashed());
+            assertFalse(storage.isOutOfOrderWriteDetected());
+
+            // "Restart" the application. The restored counter must not be lower than any released value,
+            // otherwise the next signature would reuse an already used counter.
+            final long restoredCounter = storage.getStoredCounter();
+            assertTrue("Released " + maxReleased.get() + ", restored " + restoredCounter, restoredCounter >= maxReleased.get());
+        }
+    }
+
+    @Test
+    public void testCrashConsistencyAsync() throws Exception {
+        storage.setWriteDelay(1);
+        storage.setCrashAfterWrites(1);
+        final SessionStatePersistence persistence = createPersistence();
+
+        final int count = THREADS * ITERATIONS;
+        final AtomicLong maxReleased = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final CountDownLatch firstHalfLatch = new CountDownLatch(count / 2);
+        final CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            if (i == count / 2) {
+                // Let the first half to be committed, so the second half requires another write.
+                assertTrue(firstHalfLatch.await(30, TimeUnit.SECONDS));
+            }
+            final long value = counter.incrementAndGet();
+            persistence.markChanged();
+            persistence.commitAsync(new SessionStatePersistence.ICommitListener() {
+                @Override
+                public void onCommitSucceeded() {
+                    updateMax(maxReleased, value);
+                    firstHalfLatch.countDown();
+                    latch.countDown();
+                }
+
+                @Override
+                public void onCommitFailed(@NonNull Throwable t) {
+                    failed.incrementAndGet();
+                    firstHalfLatch.countDown();
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertTrue(storage.isCrashed());
+        assertTrue(failed.get() > 0);
+        assertFalse(storage.isOutOfOrderWriteDetected());
+        assertTrue(storage.getStoredCounter() >= maxReleased.get());
+    }
+
+    @Test
+    public void testUnavailableState() throws Exception {
+        final SessionStatePersistence persistence = new SessionStatePersistence(INSTANCE_ID, new SessionStatePersistence.IStateProvider() {
+            @Nullable
+            @Override
+            public byte[] serializedState() {
+                return null;
+            }
+
+            @Nullable
+            @Override
+            public byte[] serializedCounterState() {
+                return null;
+            }
+        }, storage, executor);
+        persistence.markChanged();
+        try {
+            persistence.commit();
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertNull(storage.serializedState(INSTANCE_ID));
+        assertEquals(0, persistence.getCommitCount());
+    }
+
+    @Test
+    public void testCounterOnlyCommits() throws Exception {
+        final SplitCounterStorage splitStorage = new SplitCounterStorage();
+        storage = splitStorage;
+        final SessionStatePersistence persistence = createPersistence();
+
+        // Initial state, for example after the activation.
+        persistence.markChanged();
+        persistence.commit();
+        assertEquals(1, persistence.getFullStateCommitCount());
+        assertEquals(FULL_STATE_SIZE + COUNTER_STATE_SIZE, persistence.getBytesWritten());
+
+        // Signatures write only the counter record.
+        for (int i = 0; i < 10; i++) {
+            counter.incrementAndGet();
+            persistence.markCounterChanged();
+            persistence.commit();
+            assertEquals(counter.get(), splitStorage.getStoredCounter());
+        }
+        assertEquals(11, persistence.getCommitCount());
+        assertEquals(1, persistence.getFullStateCommitCount());
+        assertEquals(FULL_STATE_SIZE + 11 * COUNTER_STATE_SIZE, persistence.getBytesWritten());
+        assertEquals(0, splitStorage.getFullStateCounter());
+
+        // Change of other data writes the counter record first, and then the full state.
+        splitStorage.clearWriteLog();
+        persistence.markChanged();
+        persistence.commit();
+        assertEquals(2, persistence.getFullStateCommitCount());
+        assertEquals(10, splitStorage.getFullStateCounter());
+        assertEquals(Arrays.asList("counter", "full"), splitStorage.getWriteLog());
+    }
+
+    @Test
+    public void testMigrationFromFullState() throws Exception {
+        // State saved by older SDK contains only the full state.
+        final SplitCounterStorage splitStorage = new SplitCounterStorage();
+        splitStorage.onPowerAuthStateChanged(INSTANCE_ID, createFullState(42));
+        assertNull(splitStorage.serializedCounterState(INSTANCE_ID));
+        assertEquals(42, splitStorage.getStoredCounter());
+
+        // Restore and calculate signature.
+        storage = splitStorage;
+        counter.set(splitStorage.getStoredCounter());
+        final SessionStatePersistence persistence = createPersistence();
+        counter.incrementAndGet();
+        persistence.markCounterChanged();
+        persistence.commit();
+
+        // Counter record now overrides the counter in the full state.
+        assertEquals(0, persistence.getFullStateCommitCount());
+        assertEquals(42, splitStorage.getFullStateCounter());
+        assertNotNull(splitStorage.serializedCounterState(INSTANCE_ID));
+        assertEquals(43, splitStorage.getStoredCounter());
+    }
+
+    @Test
+    public void testCounterRecordRemoval() throws Exception {
+        final SplitCounterStorage splitStorage = new SplitCounterStorage();
+        storage = splitStorage;
+        final SessionStatePersistence persistence = createPersistence();
+        counter.incrementAndGet();
+        persistence.markCounterChanged();
+        persistence.commit();
+        assertNotNull(splitStorage.serializedCounterState(INSTANCE_ID));
+
+        // Activation is removed, so the full state is saved without the counter record.
+        hasActivation = false;
+        persistence.markChanged();
+        persistence.commit();
+        assertNull(splitStorage.serializedCounterState(INSTANCE_ID));
+        assertNotNull(splitStorage.serializedState(INSTANCE_ID));
+
+        // Counter-only commit is not possible without activation.
+        persistence.markCounterChanged();
+        try {
+            persistence.commit();
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testCrashConsistencyWithCounterRecord() throws Exception {
+        for (int crashAfter = 1; crashAfter <= 16; crashAfter++) {
+            counter.set(0);
+            final SplitCounterStorage splitStorage = new SplitCounterStorage();
+            splitStorage.setWriteDelay(1);
+            splitStorage.setCrashAfterWrites(crashAfter);
+            storage = splitStorage;
+            final SessionStatePersistence persistence = createPersistence();
+
+            final AtomicLong maxReleased = new AtomicLong();
+            final CountDownLatch latch = new CountDownLatch(THREADS);
+            for (int t = 0; t < THREADS; t++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < ITERATIONS; i++) {
+                                final long value = counter.incrementAndGet();
+                                // Mostly signatures, but sometimes also a change of other data.
+                                if (i % 10 == 0) {
+                                    persistence.markChanged();
+                                } else {
+                                    persistence.markCounterChanged();
+                                }
+                                persistence.commit();
+                                updateMax(maxReleased, value);
+                            }
+                        } catch (IllegalStateException e) {
+                            // Simulated crash
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+                });
+            }
+            assertTrue(latch.await(30, TimeUnit.SECONDS));
+            assertTrue(splitStorage.isCrashed());
+            assertFalse(splitStorage.isOutOfOrderWriteDetected());
+
+            // Restored counter is taken from the counter record, if available, otherwise from the full state.
+            final long restoredCounter = splitStorage.getStoredCounter();
+            assertTrue("Released " + maxReleased.get() + ", restored " + restoredCounter, restoredCounter >= maxReleased.get());
+        }
+    }
+
+    private SessionStatePersistence createPersistence() {
+        return new SessionStatePersistence(INSTANCE_ID, new SessionStatePersistence.IStateProvider() {
+            @Nullable
+            @Override
+            public byte[] serializedState() {
+                return createFullState(counter.get());
+            }
+
+            @Nullable
+            @Override
+            public byte[] serializedCounterState() {
+                return hasActivation ? ByteBuffer.allocate(COUNTER_STATE_SIZE).putLong(counter.get()).array() : null;
+            }
+        }, storage, executor);
+    }
+
+    /**
+     * Simulate the full state, with the counter at the beginning of the data.
+     */
+    private static byte[] createFullState(long counterValue) {
+        return ByteBuffer.allocate(FULL_STATE_SIZE).putLong(counterValue).array();
+    }
+
+    private static void updateMax(@NonNull AtomicLong max, long value) {
+        long current;
+        do {
+            current = max.get();
+        } while (current < value && !max.compareAndSet(current, value));
+    }
+
+    /**
+     * Storage keeping the last written counter. After the configured number of writes, the storage
+     * "crashes" and rejects all following writes.
+     */
+    private static class CounterStorage implements ISavePowerAuthStateListener {
+
+        private byte[] storedState;
+        private long writeDelay;
+        private int crashAfterWrites = -1;
+        private int writes;
+        private boolean crashed;
+        private boolean outOfOrderWriteDetected;
+        private boolean writeInProgress;
+        private final List<String> writeLog = new ArrayList<>();
+
+        synchronized void setWriteDelay(long writeDelay) {
+            this.writeDelay = writeDelay;
+        }
+
+        synchronized void setCrashAfterWrites(int crashAfterWrites) {
+            this.crashAfterWrites = crashAfterWrites;
+        }
+
+        /**
+         * @return Counter that would be restored after the application restart.
+         */
+        synchronized long getStoredCounter() {
+            return getFullStateCounter();
+        }
+
+        synchronized long getFullStateCounter() {
+            return storedState == null ? 0 : ByteBuffer.wrap(storedState).getLong();
+        }
+
+        synchronized boolean isCrashed() {
+            return crashed;
+        }
+
+        synchronized boolean isOutOfOrderWriteDetected() {
+            return outOfOrderWriteDetected;
+        }
+
+        @Nullable
+        @Override
+        public synchronized byte[] serializedState(@NonNull String instanceId) {
+            return storedState;
+        }
+
+        @Override
+        public void onPowerAuthStateChanged(@NonNull String instanceId, @NonNull byte[] serializedState) {
+            beginWrite(serializedState);
+            synchronized (this) {
+                storedState = serializedState;
+                endWrite("full");
+            }
+        }
+
+        /**
+         * Simulate the write of data. The method validates the order of writes and may "crash" the storage.
+         * The caller must call {@link #endWrite(String)} once the data is stored.
+         *
+         * @param data Data to be written. The data must start with the counter value.
+         */
+        void beginWrite(@Nullable byte[] data) {
+            final long delay;
+            synchronized (this) {
+                if (crashed || writes == crashAfterWrites) {
+                    crashed = true;
+                    throw new IllegalStateException("Storage crashed");
+                }
+                if (writeInProgress || (data != null && ByteBuffer.wrap(data).getLong() < getStoredCounter())) {
+                    outOfOrderWriteDetected = true;
+                }
+                writeInProgress = true;
+                delay = writeDelay;
+            }
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        void endWrite(@NonNull String record) {
+            writes++;
+            writeInProgress = false;
+            writeLog.add(record);
+        }
+
+        synchronized List<String> getWriteLog() {
+            return new ArrayList<>(writeLog);
+        }
+
+        synchronized void clearWriteLog() {
+            writeLog.clear();
+        }
+    }
+
+    /**
+     * Storage that keeps the counter record separately from the full state.
+     */
+    private static class SplitCounterStorage extends CounterStorage implements ISavePowerAuthCounterStateListener {
+
+        private byte[] storedCounterState;
+
+        @Override
+        synchronized long getStoredCounter() {
+            return storedCounterState != null ? ByteBuffer.wrap(storedCounterState).getLong() : getFullStateCounter();
+        }
+
+        @Nullable
+        @Override
+        public synchronized byte[] serializedCounterState(@NonNull String instanceId) {
+            return storedCounterState;
+        }
+
+        @Override
+        public void onPowerAuthCounterStateChanged(@NonNull String instanceId, @Nullable byte[] serializedCounterState) {
+            beginWrite(serializedCounterState);
+            synchronized (this) {
+                storedCounterState = serializedCounterState;
+                endWrite("counter");
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.sdk.impl;
+
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.getlime.security.powerauth.core.TokenCalculator;
+import io.getlime.security.powerauth.integration.support.Logger;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class TokenHeaderGeneratorTest {
+
+    private static final Pattern HEADER_PATTERN = Pattern.compile(
+            "^PowerAuth version=\"3\\.1\", token_id=\"([^\"]+)\", token_digest=\"([^\"]+)\", nonce=\"([^\"]+)\", timestamp=\"([0-9]+)\"$");
+    private static final int BENCHMARK_ITERATIONS = 10000;
+
+    @Test
+    public void testHeaderFormat() throws Exception {
+        final PowerAuthPrivateTokenData tokenData = createTokenData("token-name", "TOKEN-ID");
+        final long timeBefore = System.currentTimeMillis();
+        final String header = tokenData.getHeaderGenerator().generateHeaderValue();
+        final long timeAfter = System.currentTimeMillis();
+        assertNotNull(header);
+        final Map<String, String> components = parseHeader(header);
+        assertEquals("TOKEN-ID", components.get("token_id"));
+        final long timestamp = Long.parseLong(components.get("timestamp"));
+        assertTrue(timestamp >= timeBefore && timestamp <= timeAfter);
+        final byte[] nonce = Base64.decode(components.get("nonce"), Base64.NO_WRAP);
+        assertEquals(16, nonce.length);
+        assertEquals(components.get("token_digest"), calculateDigest(tokenData.secret, nonce, components.get("timestamp")));
+
+        // Each call produces a different nonce
+        assertNotEquals(header, tokenData.getHeaderGenerator().generateHeaderValue());
+        // Generator is cached in token data
+        assertSame(tokenData.getHeaderGenerator(), tokenData.getHeaderGenerator());
+    }
+
+    @Test
+    public void testFixedValues() throws Exception {
+        final PowerAuthPrivateTokenData tokenData = createTokenData("token-name", "TOKEN-ID");
+        final byte[] nonce = new byte[16];
+        for (int i = 0; i < nonce.length; i++) {
+            nonce[i] = (byte) i;
+        }
+        final long[] timestamps = { 0, 7, 1234567890123L, Long.MAX_VALUE };
+        for (long timestamp : timestamps) {
+            final String header = tokenData.getHeaderGenerator().calculateHeaderValue(nonce, timestamp);
+            assertNotNull(header);
+            final String expected = "PowerAuth version=\"3.1\", token_id=\"TOKEN-ID\", token_digest=\"" +
+                    calculateDigest(tokenData.secret, nonce, Long.toString(timestamp)) +
+                    "\", nonce=\"" + Base64.encodeToString(nonce, Base64.NO_WRAP) +
+                    "\", timestamp=\"" + timestamp + "\"";
+            assertEquals(expected, header);
+        }
+        // Invalid parameters
+        assertNull(tokenData.getHeaderGenerator().calculateHeaderValue(new byte[15], 1));
+        assertNull(tokenData.getHeaderGenerator().calculateHeaderValue(nonce, -1));
+    }
+
+    @Test
+    public void testMultipleTokensOnMultipleThreads() throws Exception {
+        final List<PowerAuthPrivateTokenData> tokens = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tokens.add(createTokenData("token-" + i, "TOKEN-ID-" + i));
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        for (int i = 0; i < 500; i++) {
+                            final PowerAuthPrivateTokenData tokenData = tokens.get(i % tokens.size());
+                            final String header = tokenData.getHeaderGenerator().generateHeaderValue();
+                            assertNotNull(header);
+                            final Map<String, String> components = parseHeader(header);
+                            assertEquals(tokenData.identifier, components.get("token_id"));
+                            final byte[] nonce = Base64.decode(components.get("nonce"), Base64.NO_WRAP);
+                            assertEquals(components.get("token_digest"), calculateDigest(tokenData.secret, nonce, components.get("timestamp")));
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCrossCheckWithNativeImplementation() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            final PowerAuthPrivateTokenData tokenData = createTokenData("token-" + i, "TOKEN-ID-" + i);
+            final String nativeHeader = TokenCalculator.calculateTokenValue(tokenData);
+            assertNotNull(nativeHeader);
+            final Map<String, String> components = parseHeader(nativeHeader);
+            final byte[] nonce = Base64.decode(components.get("nonce"), Base64.NO_WRAP);
+            final long timestamp = Long.parseLong(components.get("timestamp"));
+            final String javaHeader = tokenData.getHeaderGenerator().calculateHeaderValue(nonce, timestamp);
+            assertEquals(nativeHeader, javaHeader);
+        }
+    }
+
+    @Test
+    public void testBenchmark() throws Exception {
+        final PowerAuthPrivateTokenData tokenData = createTokenData("token-name", "TOKEN-ID");
+        // Warm up both implementations
+        for (int i = 0; i < BENCHMARK_ITERATIONS / 10; i++) {
+            assertNotNull(TokenCalculator.calculateTokenValue(tokenData));
+            assertNotNull(tokenData.getHeaderGenerator().generateHeaderValue());
+        }
+        final long nativeStart = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            assertNotNull(TokenCalculator.calculateTokenValue(tokenData));
+        }
+        final long nativeTime = System.nanoTime() - nativeStart;
+
+        final long javaStart = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            assertNotNull(tokenData.getHeaderGenerator().generateHeaderValue());
+        }
+        final long javaTime = System.nanoTime() - javaStart;
+
+        Logger.d("TokenHeaderGenerator: %d iterations, native: %d us, java: %d us",
+                BENCHMARK_ITERATIONS, nativeTime / 1000, javaTime / 1000);
+    }
+
+    private static PowerAuthPrivateTokenData createTokenData(@NonNull String name, @NonNull String identifier) {
+        final byte[] secret = new byte[16];
+        new SecureRandom().nextBytes(secret);
+        final PowerAuthPrivateTokenData tokenData = new PowerAuthPrivateTokenData(name, identifier, secret);
+        assertTrue(tokenData.hasValidData());
+        return tokenData;
+    }
+
+    private static Map<String, String> parseHeader(@NonNull String header) {
+        final Matcher matcher = HEADER_PATTERN.matcher(header);
+        assertTrue("Unexpected header format: " + header, matcher.matches());
+        final Map<String, String> components = new HashMap<>();
+        components.put("token_id", matcher.group(1));
+        components.put("token_digest", matcher.group(2));
+        components.put("nonce", matcher.group(3));
+        components.put("timestamp", matcher.group(4));
+        return components;
+    }
+
+    private static String calculateDigest(@NonNull byte[] secret, @NonNull byte[] nonce, @NonNull String timestamp) throws Exception {
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+        mac.update(nonce);
+        mac.update("&".getBytes(Charset.forName("US-ASCII")));
+        mac.update(timestamp.getBytes(Charset.forName("US-ASCII")));
+        return Base64.encodeToString(mac.doFinal(), Base64.NO_WRAP);
+    }
+}
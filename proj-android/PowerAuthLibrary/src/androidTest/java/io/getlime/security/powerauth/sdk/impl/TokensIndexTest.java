@@ -0,0 +1,185 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.sdk.impl;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import io.getlime.security.powerauth.keychain.Keychain;
+import io.getlime.security.powerauth.keychain.KeychainFactory;
+import io.getlime.security.powerauth.keychain.KeychainTransaction;
+import io.getlime.security.powerauth.keychain.impl.LegacyKeychain;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class TokensIndexTest {
+
+    private static final String KEYCHAIN_NAME = "com.wultra.test.tokensIndex";
+    private static final String PREFIX = "powerAuthToken__test__";
+    private static final String INDEX_KEY = PREFIX + "$$index$$";
+    private static final int TOKENS_COUNT = 500;
+
+    private Keychain keychain;
+
+    @Before
+    public void setUp() throws Exception {
+        Context androidContext = InstrumentationRegistry.getInstrumentation().getContext();
+        assertNotNull(androidContext);
+        keychain = new LegacyKeychain(androidContext, KEYCHAIN_NAME);
+        keychain.removeAll();
+    }
+
+    @Test
+    public void testAddAndRemove() throws Exception {
+        final List<String> identifiers = generateIdentifiers(TOKENS_COUNT);
+
+        TokensIndex index = createIndex();
+        assertTrue(index.getIdentifiers().isEmpty());
+        for (String identifier : identifiers) {
+            index.add(identifier);
+        }
+        // Adding the same identifier again doesn't change the index
+        index.add(identifiers.get(0));
+        assertEquals(TOKENS_COUNT, index.getIdentifiers().size());
+
+        // Load index again, from the keychain
+        index = createIndex();
+        assertEquals(new HashSet<>(identifiers), index.getIdentifiers());
+
+        // Remove every second identifier
+        final Set<String> expected = new HashSet<>(identifiers);
+        for (int i = 0; i < TOKENS_COUNT; i += 2) {
+            index.remove(identifiers.get(i));
+            expected.remove(identifiers.get(i));
+        }
+        assertFalse(index.contains(identifiers.get(0)));
+        assertTrue(index.contains(identifiers.get(1)));
+        assertEquals(expected, index.getIdentifiers());
+        assertEquals(expected, createIndex().getIdentifiers());
+
+        // Remove the rest
+        for (String identifier : identifiers) {
+            index.remove(identifier);
+        }
+        assertTrue(index.getIdentifiers().isEmpty());
+        assertFalse(keychain.contains(INDEX_KEY));
+        assertTrue(createIndex().getIdentifiers().isEmpty());
+    }
+
+    @Test
+    public void testBulkOperations() throws Exception {
+        final List<String> identifiers = generateIdentifiers(TOKENS_COUNT);
+
+        TokensIndex index = createIndex();
+        index.addAll(identifiers);
+        assertEquals(new HashSet<>(identifiers), index.getIdentifiers());
+        assertEquals(new HashSet<>(identifiers), createIndex().getIdentifiers());
+
+        final List<String> toRemove = identifiers.subList(0, TOKENS_COUNT / 2);
+        index.removeAll(toRemove);
+        final Set<String> expected = new HashSet<>(identifiers.subList(TOKENS_COUNT / 2, TOKENS_COUNT));
+        assertEquals(expected, index.getIdentifiers());
+        assertEquals(expected, createIndex().getIdentifiers());
+
+        index.clear();
+        assertTrue(index.getIdentifiers().isEmpty());
+        assertFalse(keychain.contains(INDEX_KEY));
+        assertTrue(createIndex().getIdentifiers().isEmpty());
+    }
+
+    @Test
+    public void testInvalidIdentifiers() throws Exception {
+        final TokensIndex index = createIndex();
+        index.add("invalid-identifier");
+        assertTrue(index.getIdentifiers().isEmpty());
+        assertFalse(keychain.contains(INDEX_KEY));
+    }
+
+    @Test
+    public void testCompatibleFormat() throws Exception {
+        final List<String> identifiers = generateIdentifiers(TOKENS_COUNT);
+        final List<String> legacyIdentifiers = new ArrayList<>(identifiers);
+        legacyIdentifiers.add("invalid-identifier");
+
+        // Index written by the previous versions of SDK.
+        keychain.putString(TextUtils.join("\n", legacyIdentifiers.toArray()), INDEX_KEY);
+        final TokensIndex index = createIndex();
+        assertEquals(new HashSet<>(identifiers), index.getIdentifiers());
+
+        // Index written by this version can be read by the previous versions of SDK.
+        index.remove(identifiers.get(0));
+        final String joinedIdentifiers = keychain.getString(INDEX_KEY);
+        assertNotNull(joinedIdentifiers);
+        final Set<String> expected = new HashSet<>(identifiers.subList(1, TOKENS_COUNT));
+        assertEquals(expected, new HashSet<>(Arrays.asList(joinedIdentifiers.split("\n"))));
+    }
+
+    @Test
+    public void testTransactionOperations() throws Exception {
+        final List<String> identifiers = generateIdentifiers(TOKENS_COUNT);
+
+        final TokensIndex index = createIndex();
+        KeychainTransaction transaction = KeychainFactory.beginTransaction(keychain);
+        for (String identifier : identifiers) {
+            transaction.putString(identifier, identifier);
+        }
+        index.addAll(identifiers, transaction);
+        // Nothing is stored before commit
+        assertFalse(keychain.contains(INDEX_KEY));
+        assertFalse(keychain.contains(identifiers.get(0)));
+        assertTrue(transaction.commit());
+        assertEquals(new HashSet<>(identifiers), createIndex().getIdentifiers());
+        assertEquals(identifiers.get(0), keychain.getString(identifiers.get(0)));
+
+        transaction = KeychainFactory.beginTransaction(keychain);
+        for (String identifier : identifiers) {
+            transaction.remove(identifier);
+        }
+        index.clear(transaction);
+        assertTrue(keychain.contains(INDEX_KEY));
+        assertTrue(transaction.commit());
+        assertFalse(keychain.contains(INDEX_KEY));
+        assertFalse(keychain.contains(identifiers.get(0)));
+        assertTrue(createIndex().getIdentifiers().isEmpty());
+    }
+
+    private TokensIndex createIndex() {
+        return new TokensIndex(keychain, INDEX_KEY, PREFIX);
+    }
+
+    private static List<String> generateIdentifiers(int count) {
+        final List<String> identifiers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            identifiers.add(PREFIX + "TestToken_" + i);
+        }
+        return identifiers;
+    }
+}
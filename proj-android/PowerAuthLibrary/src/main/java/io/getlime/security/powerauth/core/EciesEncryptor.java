@@ -80,6 +80,30 @@ public class EciesEncryptor {
         return null;
     }
 
+    /**
+     * Returns a new instance of {@code EciesEncryptor}, suitable for a new request encryption, or
+     * null if current encryptor is not able to encrypt requests.
+     *
+     * <h2>Discussion</h2>
+     *
+     * The returned copy has the same public key and shared info parameters as this encryptor,
+     * but doesn't share any ephemeral key with the original object. The metadata object is also
+     * assigned to the copy. This is helpful when you want to keep an encryptor as a template and
+     * use a separate instance for each request-response round trip.
+     *
+     * @return New instance of {@code EciesEncryptor} suitable for data encryption or null in case of error
+     *         or if this encryptor can't encrypt data.
+     */
+    public EciesEncryptor copyForEncryption() {
+        long handleCopy = this.copyHandleForEncryption();
+        if (handleCopy != 0) {
+            final EciesEncryptor encryptor = new EciesEncryptor(handleCopy);
+            encryptor.setMetadata(this.metadata);
+            return encryptor;
+        }
+        return null;
+    }
+
     /**
      * Constructs a new encryptor with specific handle. This constructor is private and is used
      * internally by this class.
@@ -134,6 +158,14 @@ public class EciesEncryptor {
      */
     private native long copyHandleForDecryption();
 
+    /**
+     * Internal JNI copy.
+     *
+     * @return A handle representing new underlying native C++ object. If returned value is equal
+     *         to zero, then this instance cannot be used for request encryption.
+     */
+    private native long copyHandleForEncryption();
+
     //
     // Getters
     //
@@ -164,6 +196,27 @@ public class EciesEncryptor {
      */
     public native boolean canDecryptResponse();
 
+    //
+    // Ephemeral key pool
+    //
+
+    /**
+     * Enables or disables the pool of pre-computed ephemeral keys. If the pool is enabled, then
+     * the ephemeral key pairs and ECDH shared secrets are calculated in advance on a native
+     * background thread and {@link #encryptRequest(byte[])} performs only a symmetric cryptography.
+     * If the pool is empty, then the key is calculated on the calling thread, as usual. Each
+     * pre-computed key is used only once.
+     * <p>
+     * The pool is shared with all copies created by {@link #copyForEncryption()}.
+     *
+     * @param depth maximum number of pre-computed keys. If zero, then the pool is disabled.
+     * @param refillThreshold number of available keys that triggers the background refill.
+     *                        The value must be lower than {@code depth}.
+     * @return true if the pool has been configured, false if parameters are invalid or this
+     *         encryptor can't encrypt requests.
+     */
+    public native boolean setEphemeralKeyPool(int depth, int refillThreshold);
+
     //
     // Encrypt & Decrypt
     //
@@ -138,6 +138,39 @@ public class Session {
     @ErrorCode
     public native int deserializeState(byte[] state);
 
+    /**
+     * Saves only the signature counter into the small sequence of bytes. The counter changes
+     * after each calculated signature, so you can persist this record instead of the whole state
+     * returned from {@link #serializedState()}.
+     *
+     * @return byte array with serialized counter, or null if there's no valid activation.
+     */
+    public native byte[] serializedCounterState();
+
+    /**
+     * Loads the signature counter from previously saved sequence of bytes and applies it to
+     * the state loaded by {@link #deserializeState(byte[])}. The counter record is ignored if it
+     * belongs to a different activation or protocol version. The record is also ignored if it's
+     * older than the counter stored in the full state, for example, if it was restored from a backup.
+     * <p>
+     * You should always save the counter record before the full state, so the record is never
+     * older than the counter stored in the full state.
+     *
+     * @param state byte array containing previously serialized counter
+     * @return integer value, which can be compared to the constants from an {@link ErrorCode} class.
+     */
+    @ErrorCode
+    public native int deserializeCounterState(byte[] state);
+
+    /**
+     * Checks whether the state loaded by {@link #deserializeState(byte[])} was saved by an older
+     * version of the library, without the sequence number of the signature counter. In this case,
+     * you should save the full state before you save the next counter record.
+     *
+     * @return {@code true} if the full state should be saved, until {@link #serializedState()} is called.
+     */
+    public native boolean hasOutdatedSerializedState();
+
     //
     // Activation
     //
@@ -188,6 +221,30 @@ public class Session {
      */
     public native ActivationStep1Result startActivation(ActivationStep1Param param);
 
+    /**
+     * Prepares cryptographic material for the next activation in advance. The method generates
+     * device's key pair, so the subsequent call to {@link #startActivation(ActivationStep1Param)}
+     * doesn't need to do this work. The method can be called from a background thread, because
+     * the key pair generation doesn't block other Session's methods.
+     * <p>
+     * The prepared material is used only once, by the next activation start. If you don't start
+     * the activation, then call {@link #discardPreparedActivation()}. The material is also
+     * discarded in {@link #resetSession()}.
+     *
+     * @return integer comparable to constants available at {@link ErrorCode} class.
+     */
+    public native int prepareActivation();
+
+    /**
+     * @return true if cryptographic material for the next activation is prepared.
+     */
+    public native boolean hasPreparedActivation();
+
+    /**
+     * Discards cryptographic material prepared in {@link #prepareActivation()}.
+     */
+    public native void discardPreparedActivation();
+
     /**
      * Validates activation response from the server. The Session expects that activation process
      * was previously started with using {@link #startActivation(ActivationStep1Param)} method. You have to provide
@@ -314,6 +371,28 @@ public class Session {
      */
     public native SignatureResult signHTTPRequest(SignatureRequest request, SignatureUnlockKeys unlockKeys, @SignatureFactor int signatureFactor);
 
+    /**
+     * Returns true if the session keeps signature keys unlocked in the previous call to
+     * {@link #signHTTPRequest(SignatureRequest, SignatureUnlockKeys, int)} and these keys can still
+     * be used. Check {@link SignatureUnlockKeys#cacheTimeToLive} for details.
+     *
+     * @return true if the session has cached signature keys.
+     */
+    public native boolean hasCachedSignatureKeys();
+
+    /**
+     * Clears the cached signature keys, if such keys are no longer usable. You can call this method
+     * when the cache's time to live elapses, to remove the sensitive data from the memory as soon
+     * as possible.
+     */
+    public native void purgeExpiredSignatureKeys();
+
+    /**
+     * Clears the cached signature keys. The keys are also cleared in {@link #resetSession()}, when the
+     * session is destroyed, or when the factor keys are changed.
+     */
+    public native void clearCachedSignatureKeys();
+
     /**
      * @return name of authorization header. The value is constant and is equal to "X-PowerAuth-Authorization".
      *         You can calculate appropriate value with using 'signHTTPRequest' method.
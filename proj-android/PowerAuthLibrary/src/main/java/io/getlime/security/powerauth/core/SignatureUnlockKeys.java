@@ -46,6 +46,20 @@ public class SignatureUnlockKeys {
      * The Session validates only the minimum lenght of the passphrase.
      */
     public final Password userPassword;
+    /**
+     * Optional time in milliseconds, for which the Session may keep signature keys unlocked
+     * with this object in the memory. If {@code cacheTimeToLive} is greater than zero and {@code cacheMaxUseCount}
+     * is greater than one, then the next signature calculation with the same unlock keys
+     * and factor skips the expensive keys unlocking. The value is used only in
+     * {@link Session#signHTTPRequest(SignatureRequest, SignatureUnlockKeys, int)}.
+     */
+    public final int cacheTimeToLive;
+    /**
+     * Optional maximum number of signatures, which can be calculated with signature keys
+     * unlocked with this object, including the first one. The value must be greater than one
+     * to keep the keys in the memory.
+     */
+    public final int cacheMaxUseCount;
 
     /**
      * @param possessionUnlockKey key for lock or unlock the signature key for possession factor
@@ -53,8 +67,28 @@ public class SignatureUnlockKeys {
      * @param userPassword password for lock or unlock the signature key for knowledge factor
      */
     public SignatureUnlockKeys(byte[] possessionUnlockKey, byte[] biometryUnlockKey, Password userPassword) {
+        this(possessionUnlockKey, biometryUnlockKey, userPassword, 0, 0);
+    }
+
+    /**
+     * @param possessionUnlockKey key for lock or unlock the signature key for possession factor
+     * @param biometryUnlockKey key for lock or unlock the signature key for biometry factor
+     * @param userPassword password for lock or unlock the signature key for knowledge factor
+     * @param cacheTimeToLive time in milliseconds, for which the unlocked keys can be kept in the memory
+     * @param cacheMaxUseCount maximum number of signatures calculated with the unlocked keys
+     */
+    public SignatureUnlockKeys(byte[] possessionUnlockKey, byte[] biometryUnlockKey, Password userPassword, int cacheTimeToLive, int cacheMaxUseCount) {
         this.possessionUnlockKey = possessionUnlockKey;
         this.biometryUnlockKey = biometryUnlockKey;
         this.userPassword = userPassword;
+        this.cacheTimeToLive = Math.max(cacheTimeToLive, 0);
+        this.cacheMaxUseCount = Math.max(cacheMaxUseCount, 0);
+    }
+
+    /**
+     * @return true if this object allows the Session to keep the unlocked signature keys in the memory.
+     */
+    public boolean isCacheEnabled() {
+        return cacheTimeToLive > 0 && cacheMaxUseCount > 1;
     }
-}
\ No newline at end of file
+}
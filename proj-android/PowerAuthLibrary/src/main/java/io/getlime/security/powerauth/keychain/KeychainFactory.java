@@ -21,6 +21,7 @@ import android.content.SharedPreferences;
 import android.os.Build;
 import android.security.keystore.KeyInfo;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -33,7 +34,9 @@ import io.getlime.security.powerauth.exception.PowerAuthErrorCodes;
 import io.getlime.security.powerauth.exception.PowerAuthErrorException;
 import io.getlime.security.powerauth.keychain.impl.DefaultKeychainProtectionSupport;
 import io.getlime.security.powerauth.keychain.impl.EncryptedKeychain;
+import io.getlime.security.powerauth.keychain.impl.FileKeychain;
 import io.getlime.security.powerauth.keychain.impl.LegacyKeychain;
+import io.getlime.security.powerauth.keychain.impl.SequentialKeychainTransaction;
 import io.getlime.security.powerauth.system.PowerAuthLog;
 
 /**
@@ -122,6 +125,130 @@ public class KeychainFactory {
         }
     }
 
+    /**
+     * Enable or disable the envelope encryption of encrypted keychains. If enabled, then the keychain
+     * content is encrypted with a random data key and only the data key is encrypted with the key
+     * stored in Android KeyStore. The data key is decrypted once per process and then kept in memory,
+     * so the keychain access is much faster, especially when StrongBox is enabled. By default, the envelope
+     * encryption is disabled. It's required to alter the default configuration at application's startup
+     * and before you create any instance of {@link Keychain} or any {@code PowerAuthSDK} class. Otherwise the
+     * {@link PowerAuthErrorException} is produced.
+     * <p>
+     * The already encrypted content is re-encrypted once the keychain is created with the changed configuration.
+     *
+     * @param enabled {@code true} to enable.
+     * @throws PowerAuthErrorException In case that {@code KeychainFactory} already created some {@link Keychain} instances.
+     */
+    public static void setEnvelopeEncryptionEnabled(boolean enabled) throws PowerAuthErrorException {
+        synchronized (SharedData.class) {
+            final SharedData sharedData = getSharedData();
+            if (!sharedData.getKeychainMap().isEmpty()) {
+                throw new PowerAuthErrorException(PowerAuthErrorCodes.WRONG_PARAMETER, "There are already created keychains in KeychainFactory.");
+            }
+            if (sharedData.isEnvelopeEncryptionEnabled() != enabled) {
+                sharedData.setEnvelopeEncryptionEnabled(enabled);
+                PowerAuthLog.d("KeychainFactory: Envelope encryption is now " + (enabled ? "enabled." : "disabled."));
+            }
+        }
+    }
+
+    /**
+     * Determine whether the envelope encryption of encrypted keychains is enabled.
+     *
+     * @return {@code true} in case that the envelope encryption is enabled.
+     */
+    public static boolean isEnvelopeEncryptionEnabled() {
+        synchronized (SharedData.class) {
+            return getSharedData().isEnvelopeEncryptionEnabled();
+        }
+    }
+
+    /**
+     * Set the maximum number of bytes of decrypted values that each encrypted keychain keeps
+     * in memory. The cached values are read without decryption, so the repeated reads of the same
+     * value are much faster. By default, the cache is disabled. It's required to alter the default
+     * configuration at application's startup and before you create any instance of {@link Keychain}
+     * or any {@code PowerAuthSDK} class. Otherwise the {@link PowerAuthErrorException} is produced.
+     *
+     * @param maxSize Maximum number of bytes of cached values in each keychain. If {@code 0}, then the cache is disabled.
+     * @throws PowerAuthErrorException In case that {@code KeychainFactory} already created some {@link Keychain} instances.
+     */
+    public static void setValueCacheSize(int maxSize) throws PowerAuthErrorException {
+        synchronized (SharedData.class) {
+            final SharedData sharedData = getSharedData();
+            if (!sharedData.getKeychainMap().isEmpty()) {
+                throw new PowerAuthErrorException(PowerAuthErrorCodes.WRONG_PARAMETER, "There are already created keychains in KeychainFactory.");
+            }
+            sharedData.setValueCacheSize(Math.max(0, maxSize));
+        }
+    }
+
+    /**
+     * Remove all decrypted values cached in memory by encrypted keychains. The content of each removed
+     * value is overwritten with zeros. You can call this method from your application's
+     * {@code onTrimMemory()} callback.
+     */
+    public static void trimValueCaches() {
+        synchronized (SharedData.class) {
+            getSharedData().trimValueCaches();
+        }
+    }
+
+    /**
+     * Enable or disable the file based keychain storage. If enabled, then the keychain content is stored
+     * in an append-only binary file instead of {@code SharedPreferences}, so each change writes only
+     * the changed values. The content previously stored in {@code SharedPreferences} is moved to the file
+     * once the keychain is created. By default, the file storage is disabled. It's required to alter
+     * the default configuration at application's startup and before you create any instance of {@link Keychain}
+     * or any {@code PowerAuthSDK} class. Otherwise the {@link PowerAuthErrorException} is produced.
+     * <p>
+     * The content stored in the file is not moved back to {@code SharedPreferences} if you disable the file
+     * storage later, so you should not disable the file storage once it was enabled in your application.
+     *
+     * @param enabled {@code true} to enable.
+     * @throws PowerAuthErrorException In case that {@code KeychainFactory} already created some {@link Keychain} instances.
+     */
+    public static void setFileStorageEnabled(boolean enabled) throws PowerAuthErrorException {
+        synchronized (SharedData.class) {
+            final SharedData sharedData = getSharedData();
+            if (!sharedData.getKeychainMap().isEmpty()) {
+                throw new PowerAuthErrorException(PowerAuthErrorCodes.WRONG_PARAMETER, "There are already created keychains in KeychainFactory.");
+            }
+            if (sharedData.isFileStorageEnabled() != enabled) {
+                sharedData.setFileStorageEnabled(enabled);
+                PowerAuthLog.d("KeychainFactory: File storage is now " + (enabled ? "enabled." : "disabled."));
+            }
+        }
+    }
+
+    /**
+     * Determine whether the file based keychain storage is enabled.
+     *
+     * @return {@code true} in case that the file storage is enabled.
+     */
+    public static boolean isFileStorageEnabled() {
+        synchronized (SharedData.class) {
+            return getSharedData().isFileStorageEnabled();
+        }
+    }
+
+    /**
+     * Begin a new transaction for the provided keychain. If the keychain implements {@link TransactionalKeychain}
+     * interface, then the changes are applied at once. Otherwise the changes are applied one by one, when
+     * the transaction is committed. Such fallback transaction is not atomic on crash, so if the application
+     * is terminated during the commit, then the keychain may contain only some of the changes.
+     *
+     * @param keychain Keychain to be modified.
+     * @return New transaction object.
+     */
+    @NonNull
+    public static KeychainTransaction beginTransaction(@NonNull Keychain keychain) {
+        if (keychain instanceof TransactionalKeychain) {
+            return ((TransactionalKeychain) keychain).beginTransaction();
+        }
+        return new SequentialKeychainTransaction(keychain);
+    }
+
     /**
      * Set alternate implementation of {@link KeychainProtectionSupport} used internally to determine current StrongBox
      * support. The method is useful only for unit testing, so it's not declared as public. Be aware that
@@ -155,6 +282,68 @@ public class KeychainFactory {
     @NonNull
     private static Keychain createKeychain(@NonNull Context context, @NonNull SharedData sharedData, @NonNull String identifier) {
         final SharedPreferences preferences = context.getSharedPreferences(identifier, Context.MODE_PRIVATE);
+        if (sharedData.isFileStorageEnabled()) {
+            return createFileKeychain(context, sharedData, identifier, preferences);
+        }
+        return createSharedPreferencesKeychain(context, sharedData, identifier, preferences);
+    }
+
+    /**
+     * Create a new instance of {@link FileKeychain} object with given identifier. If there's a content
+     * stored in {@code SharedPreferences}, then the content is imported to the keychain file. The content
+     * is imported only once, so the outdated content that was not removed after the previous import
+     * never overwrites the content of the file.
+     *
+     * @param context Android context.
+     * @param sharedData Shared KeychainFactory data.
+     * @param identifier Keychain identifier.
+     * @param preferences {@link SharedPreferences} that may contain the keychain content.
+     * @return Instance of {@link FileKeychain}, or instance of {@link Keychain} based on {@code SharedPreferences}
+     *         in case that the import failed.
+     */
+    @NonNull
+    private static Keychain createFileKeychain(@NonNull Context context, @NonNull SharedData sharedData, @NonNull String identifier, @NonNull SharedPreferences preferences) {
+        final File file = FileKeychain.getKeychainFile(context, identifier);
+        // The content is already encrypted if the file, or the not imported SharedPreferences, contain encrypted data.
+        final boolean isAlreadyEncrypted = FileKeychain.isEncryptedContentInFile(file) || EncryptedKeychain.isEncryptedContentInSharedPreferences(preferences);
+        SymmetricKeyProvider keyProvider = null;
+        SymmetricKeyProvider backupKeyProvider = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            if (sharedData.getKeychainProtection(context) != KeychainProtection.NONE || isAlreadyEncrypted) {
+                keyProvider = sharedData.getMasterEncryptionKeyProvider(context);
+                backupKeyProvider = sharedData.getBackupEncryptionKeyProvider(context);
+            }
+        }
+        final FileKeychain fileKeychain = new FileKeychain(context, identifier, file, keyProvider, backupKeyProvider);
+        fileKeychain.setValueCacheSize(sharedData.getValueCacheSize());
+        if (!preferences.getAll().isEmpty()) {
+            // Import the content from the keychain based on SharedPreferences.
+            final Keychain sourceKeychain = createSharedPreferencesKeychain(context, sharedData, identifier, preferences);
+            EncryptedKeychain encryptedSourceKeychain = null;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && sourceKeychain instanceof EncryptedKeychain) {
+                encryptedSourceKeychain = (EncryptedKeychain) sourceKeychain;
+            }
+            if (!fileKeychain.importFromSharedPreferences(preferences, encryptedSourceKeychain)) {
+                PowerAuthLog.e("KeychainFactory: " + identifier + ": Failed to import content to the file storage.");
+                return sourceKeychain;
+            }
+            PowerAuthLog.d("KeychainFactory: " + identifier + ": Content imported to the file storage.");
+        }
+        return fileKeychain;
+    }
+
+    /**
+     * Create a new instance of {@link Keychain} object with given identifier, that stores its content
+     * in {@code SharedPreferences}.
+     *
+     * @param context Android context.
+     * @param sharedData Shared KeychainFactory data.
+     * @param identifier Keychain identifier.
+     * @param preferences {@link SharedPreferences} with the keychain content.
+     * @return Instance of {@link Keychain}.
+     */
+    @NonNull
+    private static Keychain createSharedPreferencesKeychain(@NonNull Context context, @NonNull SharedData sharedData, @NonNull String identifier, @NonNull SharedPreferences preferences) {
         final boolean isAlreadyEncrypted = EncryptedKeychain.isEncryptedContentInSharedPreferences(preferences);
         final int keychainProtection = sharedData.getKeychainProtection(context);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
@@ -163,7 +352,8 @@ public class KeychainFactory {
                 final SymmetricKeyProvider masterKeyProvider = sharedData.getMasterEncryptionKeyProvider(context);
                 final SymmetricKeyProvider backupKeyProvider = sharedData.getBackupEncryptionKeyProvider(context);
                 if (masterKeyProvider != null) {
-                    final EncryptedKeychain encryptedKeychain = new EncryptedKeychain(context, identifier, masterKeyProvider, backupKeyProvider);
+                    final EncryptedKeychain encryptedKeychain = new EncryptedKeychain(context, identifier, masterKeyProvider, backupKeyProvider, sharedData.isEnvelopeEncryptionEnabled());
+                    encryptedKeychain.setValueCacheSize(sharedData.getValueCacheSize());
                     if (isAlreadyEncrypted) {
                         // If keychain is already encrypted, then just validate encryption support.
                         // The update function may fail in case that re-encryption did not end well,
@@ -227,6 +417,21 @@ public class KeychainFactory {
          */
         private @KeychainProtection int keychainProtection;
 
+        /**
+         * If {@code true}, then the encrypted keychains use the envelope encryption.
+         */
+        private boolean envelopeEncryptionEnabled;
+
+        /**
+         * Maximum number of bytes of decrypted values cached in each encrypted keychain.
+         */
+        private int valueCacheSize;
+
+        /**
+         * If {@code true}, then the keychains store their content in files.
+         */
+        private boolean fileStorageEnabled;
+
         /**
          * @return Map containing an already instantiated keychain objects.
          */
@@ -234,6 +439,61 @@ public class KeychainFactory {
             return keychainMap;
         }
 
+        /**
+         * @return {@code true} if the encrypted keychains use the envelope encryption.
+         */
+        boolean isEnvelopeEncryptionEnabled() {
+            return envelopeEncryptionEnabled;
+        }
+
+        /**
+         * @param enabled If {@code true}, then the encrypted keychains will use the envelope encryption.
+         */
+        void setEnvelopeEncryptionEnabled(boolean enabled) {
+            envelopeEncryptionEnabled = enabled;
+        }
+
+        /**
+         * @return {@code true} if the keychains store their content in files.
+         */
+        boolean isFileStorageEnabled() {
+            return fileStorageEnabled;
+        }
+
+        /**
+         * @param enabled If {@code true}, then the keychains will store their content in files.
+         */
+        void setFileStorageEnabled(boolean enabled) {
+            fileStorageEnabled = enabled;
+        }
+
+        /**
+         * @return Maximum number of bytes of decrypted values cached in each encrypted keychain.
+         */
+        int getValueCacheSize() {
+            return valueCacheSize;
+        }
+
+        /**
+         * @param maxSize Maximum number of bytes of decrypted values cached in each encrypted keychain.
+         */
+        void setValueCacheSize(int maxSize) {
+            valueCacheSize = maxSize;
+        }
+
+        /**
+         * Remove all decrypted values cached in the encrypted keychains.
+         */
+        void trimValueCaches() {
+            for (Keychain keychain : keychainMap.values()) {
+                if (keychain instanceof FileKeychain) {
+                    ((FileKeychain) keychain).trimValueCache();
+                } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && keychain instanceof EncryptedKeychain) {
+                    ((EncryptedKeychain) keychain).trimValueCache();
+                }
+            }
+        }
+
         /**
          * Master key alias identifying key in the Android KeyStore.
          */
@@ -253,6 +513,23 @@ public class KeychainFactory {
          * Reset {@code SharedData} object to non-initialized state.
          */
         private void resetSharedData() {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                // Keychains created before the reset may still use the providers, so make sure
+                // that they'll resolve the keys from Android KeyStore again.
+                if (masterEncryptionKeyProvider != null) {
+                    masterEncryptionKeyProvider.invalidateCachedSecretKey();
+                }
+                if (backupEncryptionKeyProvider != null) {
+                    backupEncryptionKeyProvider.invalidateCachedSecretKey();
+                }
+                // Also wipe data keys kept in memory.
+                for (Keychain keychain : keychainMap.values()) {
+                    if (keychain instanceof EncryptedKeychain) {
+                        ((EncryptedKeychain) keychain).wipeDataKey();
+                    }
+                }
+            }
+            trimValueCaches();
             keychainMap.clear();
             keychainProtection = 0;
             keychainProtectionSupport = null;
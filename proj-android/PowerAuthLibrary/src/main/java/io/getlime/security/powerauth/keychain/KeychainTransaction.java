@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.keychain;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Set;
+
+/**
+ * The {@code KeychainTransaction} interface allows you to modify multiple values in {@link Keychain}
+ * at once. The changes are collected in the transaction object and are written to the keychain
+ * only when {@link #commit()} is called. Either all changes are applied, or none of them.
+ * <p>
+ * The transaction object is not thread safe and can be committed only once. You can acquire
+ * a new transaction from {@link TransactionalKeychain#beginTransaction()}, or from
+ * {@link KeychainFactory#beginTransaction(Keychain)}.
+ */
+public interface KeychainTransaction {
+
+    /**
+     * Remove data for given key.
+     *
+     * @param key Key to be used for data removal.
+     * @return This transaction.
+     */
+    @NonNull KeychainTransaction remove(@NonNull String key);
+
+    /**
+     * Store array of bytes for given key. If data is {@code null} then it's equal to {@link #remove(String)}.
+     *
+     * @param data Data to be stored. If value is {@code null} then it's equal to {@link #remove(String)}.
+     * @param key Key to be used for storing data.
+     * @return This transaction.
+     */
+    @NonNull KeychainTransaction putData(@Nullable byte[] data, @NonNull String key);
+
+    /**
+     * Store string for given key. If string is {@code null} then it's equal to {@link #remove(String)}.
+     *
+     * @param string String to be stored. If value is {@code null} then it's equal to {@link #remove(String)}.
+     * @param key Key to be used for storing string.
+     * @return This transaction.
+     */
+    @NonNull KeychainTransaction putString(@Nullable String string, @NonNull String key);
+
+    /**
+     * Store set of strings for given key. If provided set is {@code null} then it's equal to {@link #remove(String)}.
+     *
+     * @param stringSet Set of strings to be stored. If value is {@code null} then it's equal to {@link #remove(String)}.
+     * @param key Key to be used for storing set of strings.
+     * @return This transaction.
+     */
+    @NonNull KeychainTransaction putStringSet(@Nullable Set<String> stringSet, @NonNull String key);
+
+    /**
+     * Store boolean value for given key.
+     *
+     * @param value Boolean value to be stored.
+     * @param key Key to be used for storing boolean value.
+     * @return This transaction.
+     */
+    @NonNull KeychainTransaction putBoolean(boolean value, @NonNull String key);
+
+    /**
+     * Store long value for given key.
+     *
+     * @param value long value to be stored.
+     * @param key Key to be used for storing long value.
+     * @return This transaction.
+     */
+    @NonNull KeychainTransaction putLong(long value, @NonNull String key);
+
+    /**
+     * Store float value for given key.
+     *
+     * @param value float value to be stored.
+     * @param key Key to be used for storing float value.
+     * @return This transaction.
+     */
+    @NonNull KeychainTransaction putFloat(float value, @NonNull String key);
+
+    /**
+     * Write all changes collected in this transaction to the keychain. If the keychain fails
+     * to store any value, then no change is applied.
+     *
+     * @return {@code true} if all changes were applied, {@code false} if no change was applied.
+     * @throws IllegalStateException If the transaction is already committed.
+     */
+    boolean commit();
+}
@@ -59,6 +59,19 @@ public class SymmetricKeyProvider {
     private final boolean allowStrongBoxBackedKey;
     private final @NonNull KeychainProtectionSupport keychainProtectionSupport;
 
+    /**
+     * Key resolved from Android KeyStore, or {@code null} if key must be resolved again.
+     */
+    private volatile SecretKey cachedSecretKey;
+
+    // Numbers of calls to Android KeyStore, guarded by SymmetricKeyProvider.class lock.
+
+    private long containsAliasCount;
+    private long getKeyCount;
+    private long generateKeyCount;
+    private long deleteEntryCount;
+    private long getKeyInfoCount;
+
     /**
      * The {@code SymmetricKeyProvider.OnGenerateKey} interface allows additional key configuration
      * before the secret key is generated by Android KeyStore.
@@ -71,6 +84,59 @@ public class SymmetricKeyProvider {
         void configureBuilder(@NonNull KeyGenParameterSpec.Builder builder);
     }
 
+    /**
+     * The {@code SymmetricKeyProvider.KeyStoreStatistics} class contains numbers of calls to Android
+     * KeyStore made by the key provider, since the provider was created.
+     */
+    public static class KeyStoreStatistics {
+        /**
+         * Number of tests whether the key exists in Android KeyStore.
+         */
+        public final long containsAliasCount;
+        /**
+         * Number of key retrievals from Android KeyStore.
+         */
+        public final long getKeyCount;
+        /**
+         * Number of key generations.
+         */
+        public final long generateKeyCount;
+        /**
+         * Number of key removals from Android KeyStore.
+         */
+        public final long deleteEntryCount;
+        /**
+         * Number of {@link KeyInfo} retrievals.
+         */
+        public final long getKeyInfoCount;
+
+        KeyStoreStatistics(long containsAliasCount, long getKeyCount, long generateKeyCount, long deleteEntryCount, long getKeyInfoCount) {
+            this.containsAliasCount = containsAliasCount;
+            this.getKeyCount = getKeyCount;
+            this.generateKeyCount = generateKeyCount;
+            this.deleteEntryCount = deleteEntryCount;
+            this.getKeyInfoCount = getKeyInfoCount;
+        }
+
+        /**
+         * @return Total number of calls to Android KeyStore.
+         */
+        public long getTotalCount() {
+            return containsAliasCount + getKeyCount + generateKeyCount + deleteEntryCount + getKeyInfoCount;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "KeyStoreStatistics{containsAlias=" + containsAliasCount +
+                    ", getKey=" + getKeyCount +
+                    ", generateKey=" + generateKeyCount +
+                    ", deleteEntry=" + deleteEntryCount +
+                    ", getKeyInfo=" + getKeyInfoCount +
+                    "}";
+        }
+    }
+
     /**
      * Create a new instance of this class.
      *
@@ -172,6 +238,8 @@ public class SymmetricKeyProvider {
 
     /**
      * Get existing secret key or create a new one if such key is not exist in Android KeyStore.
+     * The key is resolved from Android KeyStore only once and then it's kept in the provider
+     * until {@link #deleteSecretKey()} or {@link #invalidateCachedSecretKey()} is called.
      * @param context Android context object.
      * @param forceCreateOnFailure If {@code true} then key is re-generated in case that key exists
      *                             in KeyStore but cannot be obtained.
@@ -179,10 +247,20 @@ public class SymmetricKeyProvider {
      */
     @Nullable
     public SecretKey getOrCreateSecretKey(@NonNull Context context, boolean forceCreateOnFailure) {
+        final SecretKey secretKey = cachedSecretKey;
+        if (secretKey != null) {
+            return secretKey;
+        }
         synchronized (SymmetricKeyProvider.class) {
+            if (cachedSecretKey != null) {
+                return cachedSecretKey;
+            }
             if (hasSecretKey()) {
                 try {
-                    return (SecretKey) keyStore.getKey(keyAlias, null);
+                    getKeyCount++;
+                    final SecretKey existingSecretKey = (SecretKey) keyStore.getKey(keyAlias, null);
+                    cachedSecretKey = existingSecretKey;
+                    return existingSecretKey;
                 } catch (KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException e) {
                     PowerAuthLog.e("SymmetricKeyProvider: " + keyAlias + "Failed to get key. Exception: " + e.getMessage());
                     if (!forceCreateOnFailure) {
@@ -205,6 +283,7 @@ public class SymmetricKeyProvider {
                 final KeyInfo newKeyInfo = getKeyInfoForSecretKey(newSecretKey);
                 PowerAuthLog.d("SymmetricKeyProvider: " + keyAlias + ": Created key with attributes: " + getSecretKeyAttributes(newKeyInfo));
             }
+            cachedSecretKey = newSecretKey;
             return newSecretKey;
         }
     }
@@ -214,12 +293,32 @@ public class SymmetricKeyProvider {
      */
     public void deleteSecretKey() {
         synchronized (SymmetricKeyProvider.class) {
+            cachedSecretKey = null;
             if (hasSecretKey()) {
                 removeSecretKey();
             }
         }
     }
 
+    /**
+     * Forget the key resolved from Android KeyStore, so the next {@link #getOrCreateSecretKey(Context, boolean)}
+     * resolves the key again. The method should be called when the key is no longer usable, for example
+     * when the cipher initialization fails with {@code KeyPermanentlyInvalidatedException}.
+     */
+    public void invalidateCachedSecretKey() {
+        cachedSecretKey = null;
+    }
+
+    /**
+     * @return Numbers of calls to Android KeyStore made by this key provider.
+     */
+    @NonNull
+    public KeyStoreStatistics getKeyStoreStatistics() {
+        synchronized (SymmetricKeyProvider.class) {
+            return new KeyStoreStatistics(containsAliasCount, getKeyCount, generateKeyCount, deleteEntryCount, getKeyInfoCount);
+        }
+    }
+
     /**
      * @return {@code true} if key exists in Android KeyStore.
      */
@@ -320,6 +419,7 @@ public class SymmetricKeyProvider {
             if (secretKey == null) {
                 return null;
             }
+            getKeyInfoCount++;
             final SecretKeyFactory keyFactory = SecretKeyFactory.getInstance(secretKey.getAlgorithm(), ANDROID_KEY_STORE);
             return (KeyInfo) keyFactory.getKeySpec(secretKey, KeyInfo.class);
         } catch (NoSuchAlgorithmException | NoSuchProviderException | InvalidKeySpecException e) {
@@ -370,6 +470,7 @@ public class SymmetricKeyProvider {
     @Nullable
     @RequiresApi(api = Build.VERSION_CODES.P)
     private SecretKey generateStrongBoxSecretKey(@NonNull Context context) {
+        generateKeyCount++;
         try {
             final KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEY_STORE);
             keyGenerator.init(getSecretKeySpecBuilder()
@@ -389,6 +490,7 @@ public class SymmetricKeyProvider {
      */
     @Nullable
     private SecretKey generateSecretKey() {
+        generateKeyCount++;
         try {
             // Secret key is not created yet, or has been just removed. Try to create a new one.
             final KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEY_STORE);
@@ -423,6 +525,7 @@ public class SymmetricKeyProvider {
      * @return {@code true} if keystore contains secret key with key alias.
      */
     private boolean hasSecretKey() {
+        containsAliasCount++;
         try {
             return keyStore.containsAlias(keyAlias);
         } catch (KeyStoreException e) {
@@ -434,6 +537,8 @@ public class SymmetricKeyProvider {
      * Remove secret key from keystore. The private implementation hides all keystore exceptions.
      */
     private void removeSecretKey() {
+        cachedSecretKey = null;
+        deleteEntryCount++;
         try {
             keyStore.deleteEntry(keyAlias);
             PowerAuthLog.d("SymmetricKeyProvider: " + keyAlias + ": Key has been deleted.");
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.keychain;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The {@code TransactionalKeychain} interface extends {@link Keychain} with the ability to modify
+ * multiple values at once. All keychains created by {@link KeychainFactory} implement this interface.
+ * If you need a transaction for an arbitrary {@link Keychain} implementation, then use
+ * {@link KeychainFactory#beginTransaction(Keychain)}.
+ */
+public interface TransactionalKeychain extends Keychain {
+
+    /**
+     * Begin a new transaction that allows you to modify multiple values at once. The changes
+     * collected in the transaction are applied to the keychain with {@link KeychainTransaction#commit()}.
+     *
+     * @return New transaction object.
+     */
+    @NonNull KeychainTransaction beginTransaction();
+}
@@ -32,6 +32,7 @@ import javax.crypto.SecretKey;
 import javax.crypto.ShortBufferException;
 import javax.crypto.spec.GCMParameterSpec;
 
+import io.getlime.security.powerauth.keychain.SymmetricKeyProvider;
 import io.getlime.security.powerauth.system.PowerAuthLog;
 
 /**
@@ -62,6 +63,20 @@ public class AesGcmImpl {
      */
     @Nullable
     public static byte[] encrypt(@NonNull byte[] plaintext, @NonNull SecretKey key, @NonNull String identifier) {
+        return encrypt(plaintext, key, identifier, null);
+    }
+
+    /**
+     * Encrypt provided data with secret key.
+     *
+     * @param plaintext Data to be encrypted.
+     * @param key Encryption key
+     * @param identifier String identifier as a source for AAD.
+     * @param keyProvider Provider of the key. If the key is rejected by the cipher, then the key cached in the provider is invalidated.
+     * @return Encrypted data or {@code null} in case of failure.
+     */
+    @Nullable
+    public static byte[] encrypt(@NonNull byte[] plaintext, @NonNull SecretKey key, @NonNull String identifier, @Nullable SymmetricKeyProvider keyProvider) {
         try {
             if (plaintext.length > Integer.MAX_VALUE - IV_SIZE_IN_BYTES - TAG_SIZE_IN_BYTES) {
                 PowerAuthLog.e("AesGcmImpl: " + identifier + ": Plaintext is too long.");
@@ -77,7 +92,11 @@ public class AesGcmImpl {
             System.arraycopy(cipher.getIV(), 0, ciphertext, 0, IV_SIZE_IN_BYTES);
             return ciphertext;
 
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException | BadPaddingException | IllegalBlockSizeException | ShortBufferException e) {
+        } catch (InvalidKeyException e) {
+            PowerAuthLog.e("AesGcmImpl: " + identifier + ": Failed to encrypt keychain value. Exception: " + e.getMessage());
+            invalidateCachedKey(keyProvider);
+            return null;
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | BadPaddingException | IllegalBlockSizeException | ShortBufferException e) {
             PowerAuthLog.e("AesGcmImpl: " + identifier + ": Failed to encrypt keychain value. Exception: " + e.getMessage());
             return null;
         }
@@ -93,6 +112,20 @@ public class AesGcmImpl {
      */
     @Nullable
     public static byte[] decrypt(@NonNull byte[] ciphertext, @NonNull SecretKey key, @NonNull String identifier) {
+        return decrypt(ciphertext, key, identifier, null);
+    }
+
+    /**
+     * Decrypt previously encrypted data with secret key.
+     *
+     * @param ciphertext Data to be decrypted.
+     * @param key Decryption key.
+     * @param identifier String identifier as a source for AAD.
+     * @param keyProvider Provider of the key. If the key is rejected by the cipher, then the key cached in the provider is invalidated.
+     * @return Decrypted data or {@code null} in case of failure.
+     */
+    @Nullable
+    public static byte[] decrypt(@NonNull byte[] ciphertext, @NonNull SecretKey key, @NonNull String identifier, @Nullable SymmetricKeyProvider keyProvider) {
         try {
             if (ciphertext.length < IV_SIZE_IN_BYTES + TAG_SIZE_IN_BYTES) {
                 PowerAuthLog.e("AesGcmImpl: " + identifier + ": Ciphertext is too short.");
@@ -105,9 +138,26 @@ public class AesGcmImpl {
             cipher.updateAAD(aad);
             return cipher.doFinal(ciphertext, IV_SIZE_IN_BYTES, ciphertext.length - IV_SIZE_IN_BYTES);
 
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidAlgorithmParameterException | InvalidKeyException | BadPaddingException | IllegalBlockSizeException e) {
+        } catch (InvalidKeyException e) {
             PowerAuthLog.e("AesGcmImpl: " + identifier + ": Failed to decrypt keychain value. Exception: " + e.getMessage());
+            invalidateCachedKey(keyProvider);
             return null;
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidAlgorithmParameterException | BadPaddingException | IllegalBlockSizeException e) {
+            PowerAuthLog.e("AesGcmImpl: " + identifier + ": Failed to decrypt keychain value. Exception: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Invalidate key cached in the key provider. The {@link InvalidKeyException} is also thrown
+     * when the key is permanently invalidated or removed from Android KeyStore, so the provider
+     * must resolve the key again.
+     *
+     * @param keyProvider Provider of the rejected key.
+     */
+    private static void invalidateCachedKey(@Nullable SymmetricKeyProvider keyProvider) {
+        if (keyProvider != null) {
+            keyProvider.invalidateCachedSecretKey();
         }
     }
 }
@@ -33,10 +33,11 @@ import javax.crypto.SecretKey;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
-import io.getlime.security.powerauth.keychain.IllegalKeychainAccessException;
 import io.getlime.security.powerauth.keychain.Keychain;
 import io.getlime.security.powerauth.keychain.KeychainProtectionSupport;
+import io.getlime.security.powerauth.keychain.KeychainTransaction;
 import io.getlime.security.powerauth.keychain.SymmetricKeyProvider;
+import io.getlime.security.powerauth.keychain.TransactionalKeychain;
 import io.getlime.security.powerauth.system.PowerAuthLog;
 
 /**
@@ -45,9 +46,14 @@ import io.getlime.security.powerauth.system.PowerAuthLog;
  * on all systems newer or equal than Android "M".)
  *
  * The "AES/GCM/NoPadding" scheme is used for encryption and decryption.
+ *
+ * If the envelope encryption is enabled, then the values are encrypted with a random data key
+ * and only the data key is encrypted with the key stored in Android KeyStore. The data key
+ * is decrypted once and then kept in memory, so the values are encrypted and decrypted without
+ * calling the KeyStore, or the StrongBox.
  */
 @RequiresApi(api = Build.VERSION_CODES.M)
-public class EncryptedKeychain implements Keychain {
+public class EncryptedKeychain implements TransactionalKeychain {
 
     /**
      * Keychain identifier.
@@ -77,9 +83,22 @@ public class EncryptedKeychain implements Keychain {
      * Current encryption mode (see ENCRYPTION_MODE_* constants)
      */
     private final int encryptionMode;
+    /**
+     * If {@code true}, then the content is encrypted with the data key.
+     */
+    private final boolean envelopeEncryption;
+    /**
+     * Data key decrypted from the shared preferences, or {@code null} if not available yet.
+     */
+    private @Nullable EnvelopeKeyImpl.DataKey dataKey;
+    /**
+     * Cache of decrypted values. The cache is disabled by default.
+     */
+    private final @NonNull KeychainValueCache valueCache = new KeychainValueCache(0);
 
     /**
      * Default constructor, initialize keychain with given identifier and symmetric key provider.
+     * The envelope encryption is not used.
      *
      * @param context Android application context.
      * @param identifier String with the keychain identifier.
@@ -93,6 +112,27 @@ public class EncryptedKeychain implements Keychain {
             @NonNull String identifier,
             @NonNull SymmetricKeyProvider secretKeyProvider,
             @Nullable SymmetricKeyProvider backupSecretKeyProvider) {
+        this(context, identifier, secretKeyProvider, backupSecretKeyProvider, false);
+    }
+
+    /**
+     * Initialize keychain with given identifier, symmetric key provider and envelope encryption mode.
+     *
+     * @param context Android application context.
+     * @param identifier String with the keychain identifier.
+     * @param secretKeyProvider Object that provides secret key for data encryption and decryption.
+     * @param backupSecretKeyProvider Object that provides alternate secret key for data encryption
+     *                                and decryption. The parameter is required only for StrongBox
+     *                                devices.
+     * @param envelopeEncryption If {@code true}, then the content is encrypted with the data key,
+     *                           wrapped with the secret key.
+     */
+    public EncryptedKeychain(
+            @NonNull Context context,
+            @NonNull String identifier,
+            @NonNull SymmetricKeyProvider secretKeyProvider,
+            @Nullable SymmetricKeyProvider backupSecretKeyProvider,
+            boolean envelopeEncryption) {
         this.identifier = identifier;
         this.context = context;
         this.regularKeyProvider = secretKeyProvider;
@@ -100,6 +140,7 @@ public class EncryptedKeychain implements Keychain {
         this.valueEncoder = new KeychainValueEncoder();
         this.encryptionMode = determineEncryptionMode(regularKeyProvider.getKeychainProtectionSupport());
         this.effectiveKeyProvider = determineEffectiveKeyProvider(encryptionMode, secretKeyProvider, backupSecretKeyProvider);
+        this.envelopeEncryption = envelopeEncryption;
     }
 
 
@@ -190,16 +231,62 @@ public class EncryptedKeychain implements Keychain {
         return encryptionMode;
     }
 
+    /**
+     * @return {@code true} if the content is encrypted with the data key.
+     */
+    public boolean isEnvelopeEncryptionEnabled() {
+        return envelopeEncryption;
+    }
+
+    /**
+     * Set the maximum number of bytes of decrypted values kept in memory. The values are then
+     * read without decryption, until they're evicted from the cache.
+     *
+     * @param maxSize Maximum number of bytes of cached values. If {@code 0}, then the cache is disabled.
+     */
+    public synchronized void setValueCacheSize(int maxSize) {
+        valueCache.setMaxSize(maxSize);
+    }
+
+    /**
+     * Remove all decrypted values from memory. The content of each removed value is overwritten
+     * with zeros. The method is useful when the application is asked to trim its memory.
+     */
+    public synchronized void trimValueCache() {
+        valueCache.clear();
+    }
+
+    /**
+     * @return Information about the usage of decrypted values cache.
+     */
+    @NonNull
+    public synchronized KeychainValueCache.Statistics getValueCacheStatistics() {
+        return valueCache.getStatistics();
+    }
+
+    /**
+     * Wipe the data key kept in memory. The key is decrypted again on the next keychain access.
+     */
+    public synchronized void wipeDataKey() {
+        // The values decrypted with the data key are wiped together with the key.
+        valueCache.clear();
+        if (dataKey != null) {
+            dataKey.destroy();
+            dataKey = null;
+        }
+    }
+
     // Byte array accessors
 
     @Override
     public synchronized boolean contains(@NonNull String key) {
-        return getRawValue(key) != null;
+        return getCachedValue(key) != null || getRawValue(key) != null;
     }
 
     @Override
     public synchronized void remove(@NonNull String key) {
         ReservedKeyImpl.failOnReservedKey(key);
+        valueCache.remove(key);
         getSharedPreferences()
                 .edit()
                 .remove(key)
@@ -208,21 +295,37 @@ public class EncryptedKeychain implements Keychain {
 
     @Override
     public synchronized void removeAll() {
+        // The data key is removed together with the content, so the new one is generated later.
+        wipeDataKey();
+        valueCache.clear();
         final SharedPreferences.Editor editor = getSharedPreferences().edit();
         editor.clear();
         putVersion(editor);
         editor.apply();
     }
 
+    @NonNull
+    @Override
+    public KeychainTransaction beginTransaction() {
+        return new KeychainTransactionImpl(valueEncoder) {
+            @Override
+            boolean commitChanges(@NonNull Map<String, byte[]> changes) {
+                return commitRawValues(changes);
+            }
+        };
+    }
+
     @Nullable
     @Override
     public synchronized byte[] getData(@NonNull String key) {
-        final byte[] encoded = getRawValue(key);
-        if (encoded == null) {
+        final Object value = getValue(key);
+        if (value == null) {
             return null;
         }
-        final byte[] decoded = valueEncoder.decodeBytes(encoded);
-        return decoded.length > 0 ? decoded : null;
+        valueEncoder.checkDecodedType(value, KeychainValueEncoder.TYPE_DATA);
+        // The cached array must not be exposed to the application.
+        final byte[] decoded = (byte[]) value;
+        return decoded.length > 0 ? decoded.clone() : null;
     }
 
     @Override
@@ -235,21 +338,23 @@ public class EncryptedKeychain implements Keychain {
     @Nullable
     @Override
     public synchronized String getString(@NonNull String key) {
-        final byte[] encoded = getRawValue(key);
-        if (encoded == null) {
+        final Object value = getValue(key);
+        if (value == null) {
             return null;
         }
-        return valueEncoder.decodeString(encoded);
+        valueEncoder.checkDecodedType(value, KeychainValueEncoder.TYPE_STRING);
+        return (String) value;
     }
 
     @NonNull
     @Override
     public synchronized String getString(@NonNull String key, @NonNull String defaultValue) {
-        final byte[] encoded = getRawValue(key);
-        if (encoded == null) {
+        final Object value = getValue(key);
+        if (value == null) {
             return defaultValue;
         }
-        return valueEncoder.decodeString(encoded);
+        valueEncoder.checkDecodedType(value, KeychainValueEncoder.TYPE_STRING);
+        return (String) value;
     }
 
     @Override
@@ -261,12 +366,15 @@ public class EncryptedKeychain implements Keychain {
 
     @Nullable
     @Override
+    @SuppressWarnings("unchecked")
     public synchronized Set<String> getStringSet(@NonNull String key) {
-        final byte[] encoded = getRawValue(key);
-        if (encoded == null) {
+        final Object value = getValue(key);
+        if (value == null) {
             return null;
         }
-        return valueEncoder.decodeStringSet(encoded);
+        valueEncoder.checkDecodedType(value, KeychainValueEncoder.TYPE_STRING_SET);
+        // The cached set must not be exposed to the application.
+        return new HashSet<>((Set<String>) value);
     }
 
     @Override
@@ -278,11 +386,12 @@ public class EncryptedKeychain implements Keychain {
 
     @Override
     public synchronized boolean getBoolean(@NonNull String key, boolean defaultValue) {
-        final byte[] bytes = getRawValue(key);
-        if (bytes == null) {
+        final Object value = getValue(key);
+        if (value == null) {
             return defaultValue;
         }
-        return valueEncoder.decodeBoolean(bytes);
+        valueEncoder.checkDecodedType(value, KeychainValueEncoder.TYPE_BOOLEAN);
+        return (Boolean) value;
     }
 
     @Override
@@ -294,11 +403,12 @@ public class EncryptedKeychain implements Keychain {
 
     @Override
     public synchronized long getLong(@NonNull String key, long defaultValue) {
-        final byte[] bytes = getRawValue(key);
-        if (bytes == null) {
+        final Object value = getValue(key);
+        if (value == null) {
             return defaultValue;
         }
-        return valueEncoder.decodeLong(bytes);
+        valueEncoder.checkDecodedType(value, KeychainValueEncoder.TYPE_LONG);
+        return (Long) value;
     }
 
     @Override
@@ -309,16 +419,17 @@ public class EncryptedKeychain implements Keychain {
     // Float accessors
 
     @Override
-    public float getFloat(@NonNull String key, float defaultValue) {
-        final byte[] bytes = getRawValue(key);
-        if (bytes == null) {
+    public synchronized float getFloat(@NonNull String key, float defaultValue) {
+        final Object value = getValue(key);
+        if (value == null) {
             return defaultValue;
         }
-        return valueEncoder.decodeFloat(bytes);
+        valueEncoder.checkDecodedType(value, KeychainValueEncoder.TYPE_FLOAT);
+        return (Float) value;
     }
 
     @Override
-    public void putFloat(float value, @NonNull String key) {
+    public synchronized void putFloat(float value, @NonNull String key) {
         setRawValue(key, valueEncoder.encode(value));
     }
 
@@ -348,6 +459,13 @@ public class EncryptedKeychain implements Keychain {
     @RequiresApi(api = Build.VERSION_CODES.KITKAT)
     public static final int KEYCHAIN_V2 = 2;
 
+    /**
+     * Constant defines key to {@code SharedPreferences} for string value that contains Base64 encoded,
+     * wrapped data key. The value is present only if the content is encrypted with the envelope encryption.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.KITKAT)
+    public static final String ENCRYPTED_KEYCHAIN_DATA_KEY = "com.wultra.PowerAuthKeychain.DataKey";
+
     /**
      * Evaluate whether {@link SharedPreferences} contains encrypted content. The method is available also
      * for Android devices older than "M".
@@ -381,23 +499,23 @@ public class EncryptedKeychain implements Keychain {
         }
         final String identifier = "TestIdentifier";
         byte[] testData = new byte[0];
-        byte[] encrypted = AesGcmImpl.encrypt(testData, secretKey, identifier);
+        byte[] encrypted = AesGcmImpl.encrypt(testData, secretKey, identifier, keyProvider);
         if (encrypted == null) {
             PowerAuthLog.e("verifyKeystoreEncryption: Empty data encryption failed.");
             return false;
         }
-        byte[] decrypted = AesGcmImpl.decrypt(encrypted, secretKey, identifier);
+        byte[] decrypted = AesGcmImpl.decrypt(encrypted, secretKey, identifier, keyProvider);
         if (decrypted == null || !Arrays.equals(testData, decrypted)) {
             PowerAuthLog.e("verifyKeystoreEncryption: Empty data decryption failed.");
             return false;
         }
         testData = ENCRYPTED_KEYCHAIN_VERSION_KEY.getBytes(Charset.defaultCharset());
-        encrypted = AesGcmImpl.encrypt(testData, secretKey, identifier);
+        encrypted = AesGcmImpl.encrypt(testData, secretKey, identifier, keyProvider);
         if (encrypted == null) {
             PowerAuthLog.e("verifyKeystoreEncryption: Non-empty data encryption failed.");
             return false;
         }
-        decrypted = AesGcmImpl.decrypt(encrypted, secretKey, identifier);
+        decrypted = AesGcmImpl.decrypt(encrypted, secretKey, identifier, keyProvider);
         if (decrypted == null || !Arrays.equals(testData, decrypted)) {
             PowerAuthLog.e("verifyKeystoreEncryption: Non-empty data decryption failed.");
             return false;
@@ -416,7 +534,7 @@ public class EncryptedKeychain implements Keychain {
     public boolean importFromLegacyKeychain(@NonNull SharedPreferences preferences) {
         // Acquire an encryption key. Return failure immediately, if the key is not available.
         // The key can be re-created in case of failure, only if this is the first content import attempt.
-        final SecretKey encryptionKey = getMasterKey();
+        final SecretKey encryptionKey = getValueKey();
         if (encryptionKey == null) {
             return false;
         }
@@ -430,50 +548,20 @@ public class EncryptedKeychain implements Keychain {
                 continue;
             }
             final Object value = entry.getValue();
-            final @NonNull byte[] encodedValue;
-            if (value instanceof String) {
-                final String string = (String)value;
-                if (string.isEmpty()) {
-                    // It's impossible to determine whether the stored value was string or Base64
-                    // encoded data. The most safe way to handle this situation is to remove such
-                    // value from the keychain.
-                    keysToRemove.add(key);
-                    continue;
-                }
-                // Test whether the string is Base64 encoded sequence of bytes
-                final byte[] decodedBytes = tryDecodeBase64Data(string);
-                if (decodedBytes != null) {
-                    // String contains Base64 encoded sequence of bytes.
-                    encodedValue = valueEncoder.encode(decodedBytes);
-                } else {
-                    // Non-Base64 encoded string. Just encode string as it is.
-                    encodedValue = valueEncoder.encode(string);
+            final byte[] encodedValue = valueEncoder.encodeLegacyValue(value);
+            if (encodedValue == null) {
+                // Empty string cannot be imported, because it's impossible to determine whether the stored
+                // value was string or Base64 encoded data. Other types of object are not supported by the keychain.
+                // The most safe way to handle this situation is to remove such value from the keychain.
+                if (!"".equals(value)) {
+                    PowerAuthLog.e("EncryptedKeychain: " + identifier + ": Removing unsupported value from key: " + key);
                 }
-            } else if (value instanceof Boolean) {
-                // Boolean value
-                encodedValue = valueEncoder.encode((Boolean)value);
-            } else if (value instanceof Long) {
-                // Long value
-                encodedValue = valueEncoder.encode((Long)value);
-            } else if (value instanceof Float) {
-                // Float value
-                encodedValue = valueEncoder.encode((Float)value);
-            } else if (value instanceof Set<?>) {
-                // Set<String> value.
-                // We can suppress "unchecked" warning, because SharedPreferences doesn't use other
-                // type of set than Set<String>.
-                @SuppressWarnings("unchecked")
-                final Set<String> stringSet = (Set<String>)value;
-                encodedValue = valueEncoder.encode(stringSet);
-            } else {
-                // This type of object is not supported by the keychain, so remove it from shared preferences.
-                PowerAuthLog.e("EncryptedKeychain: " + identifier + ": Removing unsupported value from key: " + key);
                 keysToRemove.add(key);
                 continue;
             }
 
             // Now encrypt the encoded value
-            final byte[] encryptedValue = AesGcmImpl.encrypt(encodedValue, encryptionKey, identifier);
+            final byte[] encryptedValue = AesGcmImpl.encrypt(encodedValue, encryptionKey, identifier, getValueKeyProvider());
             if (encryptedValue == null) {
                 PowerAuthLog.e("EncryptedKeychain: " + identifier + ": Failed to import value from key: " + key);
                 return false;
@@ -498,22 +586,32 @@ public class EncryptedKeychain implements Keychain {
     }
 
     /**
-     * Try to decode provided string as Base64 data. If string is real Base64 data, then return
-     * array with decoded bytes, otherwise return null.
+     * Decrypt all values stored in the keychain. The method is used for the migration of the keychain
+     * content to another storage.
      *
-     * @param string Possible Base64 data to decode.
-     * @return Decoded array of bytes in case that string is real Base64 data, otherwise null.
-     */
-    private @Nullable byte[] tryDecodeBase64Data(@NonNull String string) {
-        try {
-            final byte[] decodedBytes = Base64.decode(string, Base64.DEFAULT);
-            if (Base64.encodeToString(decodedBytes, Base64.DEFAULT).trim().equals(string.trim())) {
-                return decodedBytes;
-            }
-            return null;
-        } catch (IllegalArgumentException ex) {
+     * @return Map with all encoded raw values, or {@code null} in case that the encryption key is not available,
+     *         or any value cannot be decrypted.
+     */
+    @Nullable
+    synchronized Map<String, byte[]> exportRawValues() {
+        final SecretKey secretKey = getValueKey();
+        if (secretKey == null) {
             return null;
         }
+        final Map<String, byte[]> result = new HashMap<>();
+        for (final Map.Entry<String, ?> entry : getSharedPreferences().getAll().entrySet()) {
+            final String key = entry.getKey();
+            if (ReservedKeyImpl.isReservedKey(key)) {
+                continue;
+            }
+            final byte[] rawValue = entry.getValue() instanceof String ? decryptRawValue(secretKey, getValueKeyProvider(), (String) entry.getValue()) : null;
+            if (rawValue == null) {
+                PowerAuthLog.e("EncryptedKeychain: " + identifier + ": Failed to export value from key: " + key);
+                return null;
+            }
+            result.put(key, rawValue);
+        }
+        return result;
     }
 
     /**
@@ -565,8 +663,8 @@ public class EncryptedKeychain implements Keychain {
     /**
      * Compare the current encryption mode supported on the device against the value stored in
      * the shared preferences and re-encrypt keychain content if needed. The function also upgrade
-     * keychain version from V1 to V2, if possible. In case of failure, function remove all data
-     * from keychain.
+     * keychain version from V1 to V2, if possible, and re-encrypts the content if the envelope
+     * encryption was turned on or off. In case of failure, function remove all data from keychain.
      *
      * @param preferences Underlying {@code SharedPreferences} that contains content of keychain.
      * @return {@code true} in case of success.
@@ -581,8 +679,10 @@ public class EncryptedKeychain implements Keychain {
         }
         // Get stored StrongBox support.
         final int previousDeviceSupport = preferences.getInt(ENCRYPTED_KEYCHAIN_MODE_KEY, ENCRYPTION_MODE_NA);
-        if (keychainVersion == KEYCHAIN_V2 && encryptionMode == previousDeviceSupport) {
-            // There's no change in StrongBox support from previous initialization.
+        // Determine whether the content is encrypted with the data key.
+        final boolean previousEnvelopeEncryption = preferences.contains(ENCRYPTED_KEYCHAIN_DATA_KEY);
+        if (keychainVersion == KEYCHAIN_V2 && encryptionMode == previousDeviceSupport && envelopeEncryption == previousEnvelopeEncryption) {
+            // There's no change in StrongBox support, nor in envelope encryption from previous initialization.
             return true;
         }
         // Investigate what was changed since the last keychain initialization.
@@ -604,7 +704,7 @@ public class EncryptedKeychain implements Keychain {
                 // to old legacy format.
                 reEncryptContent = true;
             }
-        } else if (keychainVersion == KEYCHAIN_V2) {
+        } else if (keychainVersion == KEYCHAIN_V2 && encryptionMode != previousDeviceSupport) {
             // We're on V2 keychain and it seems that StrongBox or encryption support was changed.
             // This typically means that this version of SDK has a different encryption support than
             // previous one. For example, Google did fix its implementation and we decided to re-enable
@@ -655,26 +755,33 @@ public class EncryptedKeychain implements Keychain {
                     result = false;
                 }
             }
-            if (!result) {
-                // This is a special cleanup, that leaves data in V0 (e.g. not encrypted) format. It basically remove all
-                // the content from the preferences file.
-                PowerAuthLog.e("EncryptedKeychain: " + identifier + ": Data migration failed. Removing all remaining content.");
-                preferences.edit()
-                        .clear()
-                        .apply();
-            }
+        } else if (encryptionEnabled && envelopeEncryption != previousEnvelopeEncryption) {
+            // Only the envelope encryption was turned on or off, so re-encrypt data with the same key.
+            PowerAuthLog.d("EncryptedKeychain: " + identifier + ": Re-encrypting data " + (envelopeEncryption ? "with data key." : "without data key."));
+            final SecretKey masterKey = getMasterKey();
+            result = masterKey != null && reEncryptKeychain(preferences, masterKey, masterKey);
         } else {
             // It looks like that re-encryption is not required.
             final SharedPreferences.Editor editor = preferences.edit();
             putVersion(editor);
             editor.apply();
         }
+        if (!result) {
+            // This is a special cleanup, that leaves data in V0 (e.g. not encrypted) format. It basically remove all
+            // the content from the preferences file.
+            PowerAuthLog.e("EncryptedKeychain: " + identifier + ": Data migration failed. Removing all remaining content.");
+            preferences.edit()
+                    .clear()
+                    .apply();
+        }
         return result;
     }
 
     /**
      * Re-encrypt content of keychain to a different encryption key or back to a legacy plaintext
-     * format.
+     * format. If the content is encrypted with the data key, then the data key is decrypted with
+     * the source key. If the envelope encryption is enabled, then the data key is encrypted with
+     * the destination key.
      *
      * @param preferences {@link SharedPreferences} containing keychain data.
      * @param source {@link SecretKey} to decrypt data.
@@ -683,6 +790,76 @@ public class EncryptedKeychain implements Keychain {
      * @return {@code true} in case of success.
      */
     private boolean reEncryptKeychain(@NonNull SharedPreferences preferences, @NonNull SecretKey source, @Nullable SecretKey destination) {
+        // Determine the key that encrypts the content now.
+        final EnvelopeKeyImpl.DataKey sourceDataKey;
+        final byte[] wrappedDataKey = getWrappedDataKey(preferences);
+        if (wrappedDataKey != null) {
+            sourceDataKey = EnvelopeKeyImpl.unwrapDataKey(wrappedDataKey, source, identifier, null);
+            if (sourceDataKey == null) {
+                PowerAuthLog.e("EncryptedKeychain: " + identifier + ": Failed to decrypt data key. Data migration will fail.");
+                return false;
+            }
+            if (destination != null && envelopeEncryption) {
+                // The content stays encrypted with the same data key, so only the data key is re-encrypted.
+                final SharedPreferences.Editor editor = preferences.edit();
+                if (!putWrappedDataKey(editor, sourceDataKey, destination, null)) {
+                    sourceDataKey.destroy();
+                    return false;
+                }
+                putVersion(editor);
+                editor.apply();
+                dataKey = sourceDataKey;
+                return true;
+            }
+        } else {
+            sourceDataKey = null;
+        }
+        // Determine the key that will encrypt the content.
+        final SharedPreferences.Editor editor = preferences.edit();
+        final EnvelopeKeyImpl.DataKey destinationDataKey;
+        if (destination != null && envelopeEncryption) {
+            destinationDataKey = EnvelopeKeyImpl.generateDataKey();
+            if (!putWrappedDataKey(editor, destinationDataKey, destination, null)) {
+                destinationDataKey.destroy();
+                if (sourceDataKey != null) {
+                    sourceDataKey.destroy();
+                }
+                return false;
+            }
+        } else {
+            editor.remove(ENCRYPTED_KEYCHAIN_DATA_KEY);
+            destinationDataKey = null;
+        }
+        final boolean result = reEncryptKeychainValues(
+                preferences,
+                editor,
+                sourceDataKey != null ? sourceDataKey : source,
+                destinationDataKey != null ? destinationDataKey : destination);
+        if (sourceDataKey != null) {
+            sourceDataKey.destroy();
+        }
+        if (destinationDataKey != null) {
+            if (result) {
+                dataKey = destinationDataKey;
+            } else {
+                destinationDataKey.destroy();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Re-encrypt all keychain values to a different encryption key or back to a legacy plaintext
+     * format. The changes are applied with the provided editor.
+     *
+     * @param preferences {@link SharedPreferences} containing keychain data.
+     * @param editor {@link SharedPreferences.Editor} instance.
+     * @param source {@link SecretKey} to decrypt data.
+     * @param destination {@link SecretKey} to encrypt data. If {@code null}, then the function store
+     *                    keychain content in plaintext.
+     * @return {@code true} in case of success.
+     */
+    private boolean reEncryptKeychainValues(@NonNull SharedPreferences preferences, @NonNull SharedPreferences.Editor editor, @NonNull SecretKey source, @Nullable SecretKey destination) {
         boolean result = true;
         // Prepare hash map for decrypted content.
         final Map<String, byte[]> decryptedContent = new HashMap<>();
@@ -696,7 +873,7 @@ public class EncryptedKeychain implements Keychain {
             if (!(value instanceof String)) {
                 continue;
             }
-            final byte[] encodedValue = decryptRawValue(source, (String)value);
+            final byte[] encodedValue = decryptRawValue(source, null, (String)value);
             if (encodedValue == null) {
                 PowerAuthLog.e("EncryptedKeychain: " + identifier + ": Failed to decrypt data for key '" + key + "'. Data migration will fail.");
                 result = false;
@@ -706,7 +883,6 @@ public class EncryptedKeychain implements Keychain {
         }
         // Now encrypt data with a destination secret key. If destination key is not available, then
         // just save data in legacy format.
-        SharedPreferences.Editor editor = preferences.edit();
         if (result) {
             // Now try to encrypt all decrypted data.
             for (final Map.Entry<String, byte[]> entry : decryptedContent.entrySet()) {
@@ -715,7 +891,7 @@ public class EncryptedKeychain implements Keychain {
                 if (destination != null) {
                     // Destination key is available, so encrypt raw value with it. We don't care
                     // about value's type in this point.
-                    final String encryptedValue = encryptRawValue(destination, value);
+                    final String encryptedValue = encryptRawValue(destination, null, value);
                     if (encryptedValue == null) {
                         PowerAuthLog.e("EncryptedKeychain: " + identifier + ": Failed to encrypt data for key '" + key + "'. Data migration will fail.");
                         result = false;
@@ -750,6 +926,57 @@ public class EncryptedKeychain implements Keychain {
         return context.getSharedPreferences(identifier, Context.MODE_PRIVATE);
     }
 
+    /**
+     * Return decoded value stored in the shared preferences. The value is returned from the cache
+     * if possible, otherwise it's decrypted, decoded and then stored to the cache.
+     * @param key Key to be used for value retrieval.
+     * @return Decoded value in case there are some data under given key, {@code null} otherwise.
+     *         The caller must not modify the returned object.
+     */
+    @Nullable
+    private Object getValue(@NonNull String key) {
+        final Object cachedValue = getCachedValue(key);
+        if (cachedValue != null) {
+            return cachedValue;
+        }
+        final byte[] rawValue = getRawValue(key);
+        if (rawValue == null) {
+            return null;
+        }
+        final Object value = valueEncoder.decodeValue(rawValue);
+        valueCache.put(key, value);
+        return value;
+    }
+
+    /**
+     * Return decoded value from the cache. The cache is cleared if the value key is no longer the same
+     * as the key that decrypted the cached values.
+     * @param key Key to be used for value retrieval.
+     * @return Cached value or {@code null} if the value is not cached.
+     */
+    @Nullable
+    private Object getCachedValue(@NonNull String key) {
+        ReservedKeyImpl.failOnReservedKey(key);
+        if (!valueCache.isEnabled()) {
+            return null;
+        }
+        valueCache.setSecretKey(getValueKey());
+        return valueCache.get(key);
+    }
+
+    /**
+     * Update the cache after the encoded raw value was stored.
+     * @param secretKey Key that encrypted the stored value.
+     * @param key Key to the value.
+     * @param rawValue Encoded raw value, or {@code null} if the value was removed.
+     */
+    private void updateCachedValue(@NonNull SecretKey secretKey, @NonNull String key, @Nullable byte[] rawValue) {
+        if (valueCache.isEnabled()) {
+            valueCache.setSecretKey(secretKey);
+            valueCache.put(key, rawValue != null ? valueEncoder.decodeValue(rawValue) : null);
+        }
+    }
+
     /**
      * Return encoded raw value bytes stored in the shared preferences.
      * @param key Key to be used for value retrieval.
@@ -762,26 +989,27 @@ public class EncryptedKeychain implements Keychain {
         if (encodedValue == null) {
             return null;
         }
-        final SecretKey secretKey = getMasterKey();
+        final SecretKey secretKey = getValueKey();
         if (secretKey == null) {
             return null;
         }
-        return decryptRawValue(secretKey, encodedValue);
+        return decryptRawValue(secretKey, getValueKeyProvider(), encodedValue);
     }
 
     /**
      * Decrypt Base64 encoded data with secret key.
      * @param secretKey Decryption key.
+     * @param keyProvider Provider of the decryption key, if the key is cached in the provider.
      * @param encodedValue Base64 string with encrypted value.
      * @return Decrypted raw value or {@code null} in case of failure.
      */
     @Nullable
-    private byte[] decryptRawValue(@NonNull SecretKey secretKey, @NonNull String encodedValue) {
+    private byte[] decryptRawValue(@NonNull SecretKey secretKey, @Nullable SymmetricKeyProvider keyProvider, @NonNull String encodedValue) {
         final byte[] encryptedBytes = Base64.decode(encodedValue, Base64.NO_WRAP);
         if (encryptedBytes.length == 0) {
             return null;
         }
-        return AesGcmImpl.decrypt(encryptedBytes, secretKey, identifier);
+        return AesGcmImpl.decrypt(encryptedBytes, secretKey, identifier, keyProvider);
     }
 
     /**
@@ -791,14 +1019,14 @@ public class EncryptedKeychain implements Keychain {
      */
     private void setRawValue(@NonNull String key, @Nullable byte[] value) {
         ReservedKeyImpl.failOnReservedKey(key);
-        final SecretKey secretKey = getMasterKey();
+        final SecretKey secretKey = getValueKey();
         if (secretKey == null) {
             // Do not modify entry in case that the secret key is not available.
             return;
         }
         final String encryptedString;
         if (value != null) {
-            encryptedString = encryptRawValue(secretKey, value);
+            encryptedString = encryptRawValue(secretKey, getValueKeyProvider(), value);
             if (encryptedString == null) {
                 // Do not delete entry if encryption failed.
                 return;
@@ -811,17 +1039,57 @@ public class EncryptedKeychain implements Keychain {
                 .edit()
                 .putString(key, encryptedString)
                 .apply();
+        // Update the cache, so the written value is available without decryption.
+        updateCachedValue(secretKey, key, value);
+    }
+
+    /**
+     * Put multiple encoded raw values to the shared preferences at once. Each value is encrypted
+     * with the same secret key and all values are written with a single editor. If any value fails
+     * to encrypt, then no value is stored.
+     * @param values Map with encoded raw values. If value is {@code null} then the key is removed.
+     * @return {@code true} if all values were stored, {@code false} if no value was stored.
+     */
+    private synchronized boolean commitRawValues(@NonNull Map<String, byte[]> values) {
+        final SecretKey secretKey = getValueKey();
+        if (secretKey == null) {
+            // Do not modify entries in case that the secret key is not available.
+            return false;
+        }
+        final SymmetricKeyProvider keyProvider = getValueKeyProvider();
+        final SharedPreferences.Editor editor = getSharedPreferences().edit();
+        for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+            final byte[] value = entry.getValue();
+            if (value != null) {
+                final String encryptedString = encryptRawValue(secretKey, keyProvider, value);
+                if (encryptedString == null) {
+                    // Do not apply any change if encryption failed.
+                    PowerAuthLog.e("EncryptedKeychain: " + identifier + ": Failed to encrypt value in transaction.");
+                    return false;
+                }
+                editor.putString(entry.getKey(), encryptedString);
+            } else {
+                editor.remove(entry.getKey());
+            }
+        }
+        editor.apply();
+        // Update the cache, so the written values are available without decryption.
+        for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+            updateCachedValue(secretKey, entry.getKey(), entry.getValue());
+        }
+        return true;
     }
 
     /**
      * Encrypt encoded raw value with a secret key and return encrypted data encoded in Base64.
      * @param secretKey Encryption key.
+     * @param keyProvider Provider of the encryption key, if the key is cached in the provider.
      * @param rawValue Bytes to encrypt.
      * @return Base64 string with encrypted value or {@code null} in case of failure.
      */
     @Nullable
-    private String encryptRawValue(@NonNull SecretKey secretKey, @NonNull byte[] rawValue) {
-        final byte[] encryptedValue = AesGcmImpl.encrypt(rawValue, secretKey, identifier);
+    private String encryptRawValue(@NonNull SecretKey secretKey, @Nullable SymmetricKeyProvider keyProvider, @NonNull byte[] rawValue) {
+        final byte[] encryptedValue = AesGcmImpl.encrypt(rawValue, secretKey, identifier, keyProvider);
         if (encryptedValue != null) {
             return Base64.encodeToString(encryptedValue, Base64.NO_WRAP);
         }
@@ -836,41 +1104,7 @@ public class EncryptedKeychain implements Keychain {
      * @return {@code true} if value was properly stored to given editor.
      */
     private boolean storeLegacyRawValue(@NonNull SharedPreferences.Editor editor, @NonNull String key, @NonNull byte[] rawValue) {
-        try {
-            switch (valueEncoder.decodeValueType(rawValue)) {
-                case KeychainValueEncoder.TYPE_DATA:
-                    final byte[] dataValue = valueEncoder.decodeBytes(rawValue);
-                    final String serializedData = dataValue.length > 0 ? Base64.encodeToString(dataValue, Base64.DEFAULT) : null;
-                    editor.putString(key, serializedData);
-                    break;
-                case KeychainValueEncoder.TYPE_STRING:
-                    final String stringValue = valueEncoder.decodeString(rawValue);
-                    editor.putString(key, stringValue);
-                    break;
-                case KeychainValueEncoder.TYPE_BOOLEAN:
-                    final boolean boolValue = valueEncoder.decodeBoolean(rawValue);
-                    editor.putBoolean(key, boolValue);
-                    break;
-                case KeychainValueEncoder.TYPE_LONG:
-                    final long longValue = valueEncoder.decodeLong(rawValue);
-                    editor.putLong(key, longValue);
-                    break;
-                case KeychainValueEncoder.TYPE_FLOAT:
-                    final float floatValue = valueEncoder.decodeFloat(rawValue);
-                    editor.putFloat(key, floatValue);
-                    break;
-                case KeychainValueEncoder.TYPE_STRING_SET:
-                    final Set<String> setValue = valueEncoder.decodeStringSet(rawValue);
-                    editor.putStringSet(key, setValue);
-                    break;
-                default:
-                    return false;
-            }
-        } catch (IllegalKeychainAccessException e) {
-            // Failed to decode raw value
-            return false;
-        }
-        return true;
+        return KeychainTransactionImpl.storeLegacyRawValue(valueEncoder, editor, key, rawValue);
     }
 
     /**
@@ -886,4 +1120,87 @@ public class EncryptedKeychain implements Keychain {
         }
         return masterSecretKey;
     }
+
+    /**
+     * Acquire {@link SecretKey} for the keychain values encryption and decryption. If the envelope
+     * encryption is enabled, then the data key is returned. The data key is decrypted with the master
+     * key, or created if the keychain has no data key yet.
+     *
+     * @return Instance of {@link SecretKey} or {@code null} in case of failure.
+     */
+    @Nullable
+    private SecretKey getValueKey() {
+        if (!envelopeEncryption) {
+            return getMasterKey();
+        }
+        if (dataKey != null) {
+            return dataKey;
+        }
+        final SecretKey masterKey = getMasterKey();
+        if (masterKey == null) {
+            return null;
+        }
+        final SharedPreferences preferences = getSharedPreferences();
+        final byte[] wrappedDataKey = getWrappedDataKey(preferences);
+        if (wrappedDataKey != null) {
+            dataKey = EnvelopeKeyImpl.unwrapDataKey(wrappedDataKey, masterKey, identifier, effectiveKeyProvider);
+            if (dataKey == null) {
+                PowerAuthLog.e("EncryptedKeychain: " + identifier + ": Unable to decrypt data key.");
+            }
+        } else {
+            final EnvelopeKeyImpl.DataKey newDataKey = EnvelopeKeyImpl.generateDataKey();
+            final SharedPreferences.Editor editor = preferences.edit();
+            if (!putWrappedDataKey(editor, newDataKey, masterKey, effectiveKeyProvider)) {
+                newDataKey.destroy();
+                return null;
+            }
+            editor.apply();
+            dataKey = newDataKey;
+        }
+        return dataKey;
+    }
+
+    /**
+     * @return Key provider that should be notified about the value key failure, or {@code null}
+     *         if the value key is not provided by a key provider.
+     */
+    @Nullable
+    private SymmetricKeyProvider getValueKeyProvider() {
+        return envelopeEncryption ? null : effectiveKeyProvider;
+    }
+
+    /**
+     * Get wrapped data key stored in the shared preferences.
+     *
+     * @param preferences {@link SharedPreferences} containing keychain data.
+     * @return Wrapped data key or {@code null} if the content is not encrypted with the envelope encryption.
+     */
+    @Nullable
+    private static byte[] getWrappedDataKey(@NonNull SharedPreferences preferences) {
+        final String encodedDataKey = preferences.getString(ENCRYPTED_KEYCHAIN_DATA_KEY, null);
+        if (encodedDataKey == null) {
+            return null;
+        }
+        final byte[] wrappedDataKey = Base64.decode(encodedDataKey, Base64.NO_WRAP);
+        return wrappedDataKey.length > 0 ? wrappedDataKey : null;
+    }
+
+    /**
+     * Wrap the data key and put it to {@link SharedPreferences.Editor}.
+     *
+     * @param editor {@link SharedPreferences.Editor} instance.
+     * @param dataKey Data key to store.
+     * @param masterKey Key that wraps the data key.
+     * @param keyProvider Provider of the master key, if the key is cached in the provider.
+     * @return {@code true} in case of success.
+     */
+    private boolean putWrappedDataKey(@NonNull SharedPreferences.Editor editor, @NonNull EnvelopeKeyImpl.DataKey dataKey, @NonNull SecretKey masterKey, @Nullable SymmetricKeyProvider keyProvider) {
+        final byte[] wrappedDataKey = EnvelopeKeyImpl.wrapDataKey(dataKey, masterKey, identifier, keyProvider);
+        if (wrappedDataKey == null) {
+            PowerAuthLog.e("EncryptedKeychain: " + identifier + ": Unable to encrypt data key.");
+            return false;
+        }
+        editor.putString(ENCRYPTED_KEYCHAIN_DATA_KEY, Base64.encodeToString(wrappedDataKey, Base64.NO_WRAP));
+        return true;
+    }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.keychain.impl;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.SecretKey;
+
+import io.getlime.security.powerauth.keychain.SymmetricKeyProvider;
+import io.getlime.security.powerauth.system.PowerAuthLog;
+
+/**
+ * The {@code EnvelopeKeyImpl} class implements the envelope encryption of keychain content.
+ * The keychain values are encrypted with a random data key and only the data key is encrypted
+ * (wrapped) with the key stored in Android KeyStore. The data key is wrapped with AES-GCM,
+ * with AAD different from AAD used for the keychain values.
+ */
+public class EnvelopeKeyImpl {
+
+    /**
+     * Size of data key in bytes.
+     */
+    public static final int DATA_KEY_SIZE_IN_BYTES = 32;
+
+    /**
+     * Suffix appended to the keychain identifier, to create AAD for the data key wrapping.
+     */
+    private static final String DATA_KEY_AAD_SUFFIX = "/DataKey";
+
+    /**
+     * The {@code DataKey} class represents the data key in memory. Unlike {@code SecretKeySpec},
+     * the key material can be wiped by calling {@link #destroy()}.
+     */
+    public static class DataKey implements SecretKey {
+
+        private final byte[] keyBytes;
+        private boolean destroyed;
+
+        /**
+         * @param keyBytes Key material. The array is owned by the new object.
+         */
+        DataKey(@NonNull byte[] keyBytes) {
+            this.keyBytes = keyBytes;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return "AES";
+        }
+
+        @Override
+        public String getFormat() {
+            return "RAW";
+        }
+
+        @Override
+        public synchronized byte[] getEncoded() {
+            if (destroyed) {
+                throw new IllegalStateException("Data key is already destroyed.");
+            }
+            return keyBytes.clone();
+        }
+
+        /**
+         * Wipe the key material.
+         */
+        @Override
+        public synchronized void destroy() {
+            Arrays.fill(keyBytes, (byte) 0);
+            destroyed = true;
+        }
+
+        @Override
+        public synchronized boolean isDestroyed() {
+            return destroyed;
+        }
+    }
+
+    /**
+     * @return New random data key.
+     */
+    @NonNull
+    public static DataKey generateDataKey() {
+        final byte[] keyBytes = new byte[DATA_KEY_SIZE_IN_BYTES];
+        new SecureRandom().nextBytes(keyBytes);
+        return new DataKey(keyBytes);
+    }
+
+    /**
+     * Wrap the data key with the key encryption key.
+     *
+     * @param dataKey Data key to wrap.
+     * @param wrappingKey Key encryption key, typically key stored in Android KeyStore.
+     * @param identifier Keychain identifier, used as a source for AAD.
+     * @param keyProvider Provider of the key encryption key. If the key is rejected by the cipher, then the key cached in the provider is invalidated.
+     * @return Wrapped data key or {@code null} in case of failure.
+     */
+    @Nullable
+    public static byte[] wrapDataKey(@NonNull DataKey dataKey, @NonNull SecretKey wrappingKey, @NonNull String identifier, @Nullable SymmetricKeyProvider keyProvider) {
+        final byte[] keyBytes = dataKey.getEncoded();
+        try {
+            return AesGcmImpl.encrypt(keyBytes, wrappingKey, identifier + DATA_KEY_AAD_SUFFIX, keyProvider);
+        } finally {
+            Arrays.fill(keyBytes, (byte) 0);
+        }
+    }
+
+    /**
+     * Unwrap the data key previously wrapped with {@link #wrapDataKey(DataKey, SecretKey, String, SymmetricKeyProvider)}.
+     *
+     * @param wrappedDataKey Wrapped data key.
+     * @param wrappingKey Key encryption key, typically key stored in Android KeyStore.
+     * @param identifier Keychain identifier, used as a source for AAD.
+     * @param keyProvider Provider of the key encryption key. If the key is rejected by the cipher, then the key cached in the provider is invalidated.
+     * @return Data key or {@code null} in case of failure.
+     */
+    @Nullable
+    public static DataKey unwrapDataKey(@NonNull byte[] wrappedDataKey, @NonNull SecretKey wrappingKey, @NonNull String identifier, @Nullable SymmetricKeyProvider keyProvider) {
+        final byte[] keyBytes = AesGcmImpl.decrypt(wrappedDataKey, wrappingKey, identifier + DATA_KEY_AAD_SUFFIX, keyProvider);
+        if (keyBytes == null) {
+            return null;
+        }
+        if (keyBytes.length != DATA_KEY_SIZE_IN_BYTES) {
+            PowerAuthLog.e("EnvelopeKeyImpl: " + identifier + ": Unwrapped data key has wrong size.");
+            Arrays.fill(keyBytes, (byte) 0);
+            return null;
+        }
+        return new DataKey(keyBytes);
+    }
+}
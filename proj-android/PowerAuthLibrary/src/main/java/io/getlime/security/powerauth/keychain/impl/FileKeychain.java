@@ -0,0 +1,724 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.keychain.impl;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.crypto.SecretKey;
+
+import io.getlime.security.powerauth.keychain.Keychain;
+import io.getlime.security.powerauth.keychain.KeychainProtectionSupport;
+import io.getlime.security.powerauth.keychain.KeychainTransaction;
+import io.getlime.security.powerauth.keychain.SymmetricKeyProvider;
+import io.getlime.security.powerauth.keychain.TransactionalKeychain;
+import io.getlime.security.powerauth.system.PowerAuthLog;
+
+/**
+ * The {@code FileKeychain} class implements {@link Keychain} interface on top of an append-only
+ * binary file, instead of {@code SharedPreferences}. Each change appends only the changed values
+ * to the file, so the cost of write doesn't depend on the size of keychain. The values are stored
+ * as raw bytes, without Base64 encoding. See {@link KeychainLogFile} for more details.
+ * <p>
+ * Unlike {@code SharedPreferences.Editor.apply()}, each {@code put*()} or {@code remove()} call
+ * synchronizes the file to the storage on the calling thread, so the change is durable once the method
+ * returns. The synchronization typically costs from one to a few tens of milliseconds on flash storage,
+ * so don't modify the keychain from the main thread. If you need to change multiple values, use
+ * {@link #beginTransaction()} to write all changes with one synchronization.
+ * <p>
+ * If the symmetric key provider is available, then the values are encrypted with "AES/GCM/NoPadding"
+ * scheme, with the key stored in Android KeyStore. Otherwise the content is not encrypted. The file
+ * header keeps information whether the content is encrypted with the regular or with the backup key,
+ * so the content is re-encrypted when StrongBox is enabled or disabled on the device. The encrypted
+ * content is never removed when the encryption key is not available.
+ */
+public class FileKeychain implements TransactionalKeychain {
+
+    /**
+     * Name of directory with keychain files, created in the application's files directory.
+     */
+    private static final String FILE_KEYCHAIN_DIRECTORY = "com.wultra.PowerAuthKeychain";
+    /**
+     * Extension of keychain file.
+     */
+    private static final String FILE_KEYCHAIN_EXTENSION = ".keychain";
+    /**
+     * Flag stored in the file header if the content is encrypted.
+     */
+    private static final int FLAG_ENCRYPTED = 1;
+    /**
+     * Flag stored in the file header if the content is encrypted with the backup key, because
+     * StrongBox is supported but disabled on the device.
+     */
+    private static final int FLAG_BACKUP_KEY = 2;
+    /**
+     * Flag stored in the file header once the content of {@code SharedPreferences} is imported to the file.
+     */
+    private static final int FLAG_IMPORTED = 4;
+
+    /**
+     * Keychain identifier.
+     */
+    private final @NonNull String identifier;
+    /**
+     * Android application context.
+     */
+    private final @NonNull Context context;
+    /**
+     * Regular secret key provider, or {@code null} if the content should not be encrypted.
+     */
+    private final @Nullable SymmetricKeyProvider regularKeyProvider;
+    /**
+     * Backup secret key provider, required only on devices that support StrongBox.
+     */
+    private final @Nullable SymmetricKeyProvider backupKeyProvider;
+    /**
+     * Secret key provider that encrypts the content, or {@code null} if the content is not encrypted,
+     * or if the encryption key is not available.
+     */
+    private @Nullable SymmetricKeyProvider keyProvider;
+    /**
+     * Encoder that helps with the keychain value serialization and deserialization.
+     */
+    private final @NonNull KeychainValueEncoder valueEncoder;
+    /**
+     * File with the keychain content.
+     */
+    private final @NonNull KeychainLogFile logFile;
+    /**
+     * Cache of decrypted values, disabled by default.
+     */
+    private final @NonNull KeychainValueCache valueCache = new KeychainValueCache(0);
+    /**
+     * If {@code true}, then the content of file was already validated.
+     */
+    private boolean contentValidated;
+    /**
+     * If {@code true}, then the content of file is encrypted.
+     */
+    private boolean encrypted;
+    /**
+     * If {@code true}, then the content of {@code SharedPreferences} was already imported to the file.
+     */
+    private boolean imported;
+
+    /**
+     * Initialize keychain with given identifier and file.
+     *
+     * @param context Android context.
+     * @param identifier Keychain identifier.
+     * @param file File with the keychain content. Use {@link #getKeychainFile(Context, String)} to get the default location.
+     * @param keyProvider Secret key provider, or {@code null} if the content should not be encrypted.
+     */
+    public FileKeychain(
+            @NonNull Context context,
+            @NonNull String identifier,
+            @NonNull File file,
+            @Nullable SymmetricKeyProvider keyProvider) {
+        this(context, identifier, file, keyProvider, null);
+    }
+
+    /**
+     * Initialize keychain with given identifier, file and symmetric key providers.
+     *
+     * @param context Android context.
+     * @param identifier Keychain identifier.
+     * @param file File with the keychain content. Use {@link #getKeychainFile(Context, String)} to get the default location.
+     * @param keyProvider Secret key provider, or {@code null} if the content should not be encrypted.
+     * @param backupKeyProvider Object that provides alternate secret key for data encryption
+     *                          and decryption. The parameter is required only for StrongBox
+     *                          devices.
+     */
+    public FileKeychain(
+            @NonNull Context context,
+            @NonNull String identifier,
+            @NonNull File file,
+            @Nullable SymmetricKeyProvider keyProvider,
+            @Nullable SymmetricKeyProvider backupKeyProvider) {
+        this.context = context;
+        this.identifier = identifier;
+        this.regularKeyProvider = keyProvider;
+        this.backupKeyProvider = backupKeyProvider;
+        if (backupKeyProvider != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            this.keyProvider = EncryptedKeychain.determineEffectiveSymmetricKeyProvider(keyProvider, backupKeyProvider);
+        } else {
+            this.keyProvider = keyProvider;
+        }
+        this.valueEncoder = new KeychainValueEncoder();
+        this.logFile = new KeychainLogFile(file);
+    }
+
+    /**
+     * Evaluate whether the keychain file contains encrypted content.
+     *
+     * @param file File with the keychain content.
+     * @return {@code true} if the file contains encrypted content.
+     */
+    public static boolean isEncryptedContentInFile(@NonNull File file) {
+        return (KeychainLogFile.readFlags(file) & FLAG_ENCRYPTED) != 0;
+    }
+
+    /**
+     * Get the default location of the keychain file.
+     *
+     * @param context Android context.
+     * @param identifier Keychain identifier.
+     * @return Default location of the keychain file.
+     */
+    @NonNull
+    public static File getKeychainFile(@NonNull Context context, @NonNull String identifier) {
+        final File directory = new File(context.getFilesDir(), FILE_KEYCHAIN_DIRECTORY);
+        final String fileName = identifier.replace(File.separatorChar, '_') + FILE_KEYCHAIN_EXTENSION;
+        return new File(directory, fileName);
+    }
+
+    @NonNull
+    @Override
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    @Override
+    public synchronized boolean isEncrypted() {
+        getLogFile();
+        return encrypted;
+    }
+
+    @Override
+    public synchronized boolean isStrongBoxBacked() {
+        if (!isEncrypted() || keyProvider == null || keyProvider != regularKeyProvider) {
+            return false;
+        }
+        final KeychainProtectionSupport support = keyProvider.getKeychainProtectionSupport();
+        return support.isStrongBoxSupported() && support.isStrongBoxEnabled();
+    }
+
+    @Override
+    public boolean isReservedKey(@NonNull String key) {
+        return ReservedKeyImpl.isReservedKey(key);
+    }
+
+    /**
+     * Set the maximum number of bytes of decrypted values kept in memory.
+     *
+     * @param maxSize Maximum number of bytes of cached values. If {@code 0}, then the cache is disabled.
+     */
+    public synchronized void setValueCacheSize(int maxSize) {
+        valueCache.setMaxSize(maxSize);
+    }
+
+    /**
+     * Remove all values from the cache of decrypted values.
+     */
+    public synchronized void trimValueCache() {
+        valueCache.clear();
+    }
+
+    /**
+     * @return Information about the keychain file usage.
+     */
+    @NonNull
+    public synchronized KeychainLogFile.Statistics getFileStatistics() {
+        return getLogFile().getStatistics();
+    }
+
+    /**
+     * Import content of keychain stored in {@code SharedPreferences}. All values are written
+     * to the file at once, together with the marker in the file header, and then the content
+     * of {@code SharedPreferences} is removed. In case of import failure, the content of
+     * {@code SharedPreferences} is kept intact. The import fails if any value cannot be decrypted
+     * or decoded, so no value is ever lost during the migration.
+     * <p>
+     * If the file is already marked as imported, then the content of {@code SharedPreferences} is
+     * outdated, because it was not removed after the previous import. In this case, the content of
+     * the file is kept and only the removal of {@code SharedPreferences} content is repeated. The import
+     * also fails if the file is not marked as imported, but already contains some values.
+     *
+     * @param preferences {@link SharedPreferences} object that contains the keychain content.
+     * @param encryptedKeychain Keychain that provides decrypted content of {@code preferences}, or
+     *                          {@code null} if the content is not encrypted.
+     * @return {@code true} if import was successful, otherwise {@code false}.
+     */
+    public synchronized boolean importFromSharedPreferences(@NonNull SharedPreferences preferences, @Nullable EncryptedKeychain encryptedKeychain) {
+        final KeychainLogFile logFile = getLogFile();
+        if (imported) {
+            // The values in the file may be newer than the outdated content of SharedPreferences.
+            PowerAuthLog.e("FileKeychain: " + identifier + ": Content is already imported. Removing the outdated content again.");
+            removeImportedContent(preferences);
+            return true;
+        }
+        if (!logFile.getKeys().isEmpty()) {
+            PowerAuthLog.e("FileKeychain: " + identifier + ": The file already contains values that are not imported.");
+            return false;
+        }
+        final Map<String, byte[]> values;
+        if (encryptedKeychain != null) {
+            values = encryptedKeychain.exportRawValues();
+            if (values == null) {
+                return false;
+            }
+        } else {
+            values = new HashMap<>();
+            for (final Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+                final String key = entry.getKey();
+                if (ReservedKeyImpl.isReservedKey(key) || "".equals(entry.getValue())) {
+                    // Empty string cannot be migrated, because it may be either string or empty data.
+                    continue;
+                }
+                final byte[] encodedValue = valueEncoder.encodeLegacyValue(entry.getValue());
+                if (encodedValue == null) {
+                    PowerAuthLog.e("FileKeychain: " + identifier + ": Unsupported value in key: " + key);
+                    return false;
+                }
+                values.put(key, encodedValue);
+            }
+        }
+        final SecretKey secretKey = encrypted ? getSecretKey() : null;
+        final Map<String, byte[]> storedValues = prepareStoredValues(values, secretKey);
+        if (storedValues == null) {
+            return false;
+        }
+        // Values and the marker are written at once, so the outdated content of SharedPreferences
+        // is never imported again, even if it cannot be removed now.
+        imported = true;
+        if (!logFile.replaceAll(storedValues, getFileFlags())) {
+            imported = false;
+            return false;
+        }
+        updateValueCache(secretKey, values);
+        removeImportedContent(preferences);
+        return true;
+    }
+
+    /**
+     * Remove the content of {@code SharedPreferences} that is already imported to the file.
+     *
+     * @param preferences {@link SharedPreferences} object that contains the imported content.
+     */
+    private void removeImportedContent(@NonNull SharedPreferences preferences) {
+        if (!preferences.edit().clear().commit()) {
+            PowerAuthLog.e("FileKeychain: " + identifier + ": Failed to remove imported content.");
+        }
+    }
+
+    // Byte array accessors
+
+    @Override
+    public synchronized boolean contains(@NonNull String key) {
+        ReservedKeyImpl.failOnReservedKey(key);
+        return getLogFile().contains(key);
+    }
+
+    @Override
+    public synchronized void remove(@NonNull String key) {
+        ReservedKeyImpl.failOnReservedKey(key);
+        commitRawValues(Collections.singletonMap(key, (byte[]) null));
+    }
+
+    @Override
+    public synchronized void removeAll() {
+        valueCache.clear();
+        if (!getLogFile().replaceAll(Collections.<String, byte[]>emptyMap(), getFileFlags())) {
+            PowerAuthLog.e("FileKeychain: " + identifier + ": Failed to remove content.");
+        }
+    }
+
+    @NonNull
+    @Override
+    public KeychainTransaction beginTransaction() {
+        return new KeychainTransactionImpl(valueEncoder) {
+            @Override
+            boolean commitChanges(@NonNull Map<String, byte[]> changes) {
+                return commitRawValues(changes);
+            }
+        };
+    }
+
+    @Nullable
+    @Override
+    public synchronized byte[] getData(@NonNull String key) {
+        final Object value = getValue(key);
+        if (value == null) {
+            return null;
+        }
+        valueEncoder.checkDecodedType(value, KeychainValueEncoder.TYPE_DATA);
+        // The cached array must not be exposed to the application.
+        final byte[] decoded = (byte[]) value;
+        return decoded.length > 0 ? decoded.clone() : null;
+    }
+
+    @Override
+    public synchronized void putData(@Nullable byte[] data, @NonNull String key) {
+        setRawValue(key, (data != null && data.length > 0) ? valueEncoder.encode(data) : null);
+    }
+
+    // String accessors
+
+    @Nullable
+    @Override
+    public synchronized String getString(@NonNull String key) {
+        final Object value = getValue(key);
+        if (value == null) {
+            return null;
+        }
+        valueEncoder.checkDecodedType(value, KeychainValueEncoder.TYPE_STRING);
+        return (String) value;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String getString(@NonNull String key, @NonNull String defaultValue) {
+        final Object value = getValue(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        valueEncoder.checkDecodedType(value, KeychainValueEncoder.TYPE_STRING);
+        return (String) value;
+    }
+
+    @Override
+    public synchronized void putString(@Nullable String string, @NonNull String key) {
+        setRawValue(key, string != null ? valueEncoder.encode(string) : null);
+    }
+
+    // String Set accessors
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized Set<String> getStringSet(@NonNull String key) {
+        final Object value = getValue(key);
+        if (value == null) {
+            return null;
+        }
+        valueEncoder.checkDecodedType(value, KeychainValueEncoder.TYPE_STRING_SET);
+        // The cached set must not be exposed to the application.
+        return new HashSet<>((Set<String>) value);
+    }
+
+    @Override
+    public synchronized void putStringSet(@Nullable Set<String> stringSet, @NonNull String key) {
+        setRawValue(key, stringSet != null ? valueEncoder.encode(stringSet) : null);
+    }
+
+    // Boolean accessors
+
+    @Override
+    public synchronized boolean getBoolean(@NonNull String key, boolean defaultValue) {
+        final Object value = getValue(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        valueEncoder.checkDecodedType(value, KeychainValueEncoder.TYPE_BOOLEAN);
+        return (Boolean) value;
+    }
+
+    @Override
+    public synchronized void putBoolean(boolean value, @NonNull String key) {
+        setRawValue(key, valueEncoder.encode(value));
+    }
+
+    // Long accessors
+
+    @Override
+    public synchronized long getLong(@NonNull String key, long defaultValue) {
+        final Object value = getValue(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        valueEncoder.checkDecodedType(value, KeychainValueEncoder.TYPE_LONG);
+        return (Long) value;
+    }
+
+    @Override
+    public synchronized void putLong(long value, @NonNull String key) {
+        setRawValue(key, valueEncoder.encode(value));
+    }
+
+    // Float accessors
+
+    @Override
+    public synchronized float getFloat(@NonNull String key, float defaultValue) {
+        final Object value = getValue(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        valueEncoder.checkDecodedType(value, KeychainValueEncoder.TYPE_FLOAT);
+        return (Float) value;
+    }
+
+    @Override
+    public synchronized void putFloat(float value, @NonNull String key) {
+        setRawValue(key, valueEncoder.encode(value));
+    }
+
+    // Private methods
+
+    /**
+     * Return the keychain file. If the file is accessed for the first time, then validates whether
+     * the encryption of the content matches the availability of the key provider. The unencrypted
+     * content is encrypted if the key provider is now available, and the encrypted content is re-encrypted
+     * if the content is encrypted with a different key. The encrypted content is kept intact if the key
+     * provider is not available.
+     *
+     * @return The keychain file.
+     */
+    @NonNull
+    private KeychainLogFile getLogFile() {
+        if (!contentValidated) {
+            if (!logFile.open()) {
+                // The file cannot be read now, so the content is validated on the next access.
+                return logFile;
+            }
+            contentValidated = true;
+            if (!logFile.exists()) {
+                // Create an empty file with the right flags.
+                encrypted = keyProvider != null;
+                logFile.replaceAll(Collections.<String, byte[]>emptyMap(), getFileFlags());
+                return logFile;
+            }
+            final int flags = logFile.getFlags();
+            encrypted = (flags & FLAG_ENCRYPTED) != 0;
+            imported = (flags & FLAG_IMPORTED) != 0;
+            if (encrypted) {
+                final SymmetricKeyProvider previousKeyProvider = (flags & FLAG_BACKUP_KEY) != 0 ? backupKeyProvider : regularKeyProvider;
+                if (previousKeyProvider == null) {
+                    // Keep the content, the encryption may be available on the next start. All reads and writes will fail.
+                    PowerAuthLog.e("FileKeychain: " + identifier + ": The content is encrypted but the encryption key is not available.");
+                    keyProvider = null;
+                } else if (previousKeyProvider != keyProvider) {
+                    reEncryptContent(previousKeyProvider);
+                }
+            } else if (keyProvider != null) {
+                encryptContent();
+            }
+        }
+        return logFile;
+    }
+
+    /**
+     * @return Flags to be stored in the file header.
+     */
+    private int getFileFlags() {
+        int flags = imported ? FLAG_IMPORTED : 0;
+        if (encrypted) {
+            flags |= FLAG_ENCRYPTED;
+            if (keyProvider != null && keyProvider == backupKeyProvider) {
+                flags |= FLAG_BACKUP_KEY;
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * Encrypt the whole unencrypted content of the file. If the encryption fails, then the content
+     * is kept unencrypted.
+     */
+    private void encryptContent() {
+        final SecretKey secretKey = getSecretKey();
+        if (secretKey == null) {
+            return;
+        }
+        final Map<String, byte[]> encryptedValues = new HashMap<>();
+        for (String key : logFile.getKeys()) {
+            final byte[] rawValue = logFile.get(key);
+            final byte[] encryptedValue = rawValue != null ? AesGcmImpl.encrypt(rawValue, secretKey, identifier, keyProvider) : null;
+            if (encryptedValue == null) {
+                PowerAuthLog.e("FileKeychain: " + identifier + ": Failed to encrypt value from key: " + key);
+                return;
+            }
+            encryptedValues.put(key, encryptedValue);
+        }
+        encrypted = true;
+        if (!logFile.replaceAll(encryptedValues, getFileFlags())) {
+            encrypted = false;
+        }
+    }
+
+    /**
+     * Re-encrypt the whole content of the file with the current key provider. The method is used
+     * when StrongBox was enabled or disabled since the content was encrypted. If the re-encryption
+     * fails, then the content is kept intact and the keychain keeps using the previous key provider.
+     *
+     * @param sourceKeyProvider Key provider that encrypted the current content.
+     */
+    private void reEncryptContent(@NonNull SymmetricKeyProvider sourceKeyProvider) {
+        PowerAuthLog.d("FileKeychain: " + identifier + ": Re-encrypting data with " + (keyProvider == backupKeyProvider ? "backup key." : "regular key."));
+        final SecretKey sourceKey = sourceKeyProvider.getOrCreateSecretKey(context, false);
+        final SecretKey destinationKey = getSecretKey();
+        if (sourceKey != null && destinationKey != null) {
+            final Map<String, byte[]> encryptedValues = new HashMap<>();
+            boolean result = true;
+            for (String key : logFile.getKeys()) {
+                final byte[] storedValue = logFile.get(key);
+                final byte[] rawValue = storedValue != null ? AesGcmImpl.decrypt(storedValue, sourceKey, identifier, sourceKeyProvider) : null;
+                final byte[] encryptedValue = rawValue != null ? AesGcmImpl.encrypt(rawValue, destinationKey, identifier, keyProvider) : null;
+                if (encryptedValue == null) {
+                    PowerAuthLog.e("FileKeychain: " + identifier + ": Failed to re-encrypt value from key: " + key);
+                    result = false;
+                    break;
+                }
+                encryptedValues.put(key, encryptedValue);
+            }
+            if (result && logFile.replaceAll(encryptedValues, getFileFlags())) {
+                return;
+            }
+        }
+        PowerAuthLog.e("FileKeychain: " + identifier + ": Failed to re-encrypt content. The previous encryption key is still used.");
+        keyProvider = sourceKeyProvider;
+    }
+
+    /**
+     * Return decoded value stored in the file. The value is returned from the cache if possible,
+     * otherwise it's decrypted, decoded and then stored to the cache.
+     * @param key Key to be used for value retrieval.
+     * @return Decoded value in case there are some data under given key, {@code null} otherwise.
+     *         The caller must not modify the returned object.
+     */
+    @Nullable
+    private Object getValue(@NonNull String key) {
+        ReservedKeyImpl.failOnReservedKey(key);
+        final KeychainLogFile logFile = getLogFile();
+        if (valueCache.isEnabled()) {
+            // The cached values are valid only as long as the key that decrypted them is valid.
+            valueCache.setSecretKey(encrypted ? getSecretKey() : null);
+            final Object cachedValue = valueCache.get(key);
+            if (cachedValue != null) {
+                return cachedValue;
+            }
+        }
+        final byte[] storedValue = logFile.get(key);
+        if (storedValue == null) {
+            return null;
+        }
+        final byte[] rawValue;
+        if (encrypted) {
+            final SecretKey secretKey = getSecretKey();
+            if (secretKey == null) {
+                return null;
+            }
+            rawValue = AesGcmImpl.decrypt(storedValue, secretKey, identifier, keyProvider);
+            if (rawValue == null) {
+                return null;
+            }
+        } else {
+            rawValue = storedValue;
+        }
+        final Object value = valueEncoder.decodeValue(rawValue);
+        valueCache.put(key, value);
+        return value;
+    }
+
+    /**
+     * Put encoded raw value to the file.
+     * @param key Key to be used for storing the encoded raw value.
+     * @param value Encoded raw value to be stored. If value is {@code null} then it's equal to {@link #remove(String)}.
+     */
+    private void setRawValue(@NonNull String key, @Nullable byte[] value) {
+        ReservedKeyImpl.failOnReservedKey(key);
+        commitRawValues(Collections.singletonMap(key, value));
+    }
+
+    /**
+     * Put multiple encoded raw values to the file at once. If any value fails to encrypt, then no value is stored.
+     * The file is synchronized to the storage once per call, so the caller should group the changes if possible.
+     * @param values Map with encoded raw values. If value is {@code null} then the key is removed.
+     * @return {@code true} if all values were stored, {@code false} if no value was stored.
+     */
+    private synchronized boolean commitRawValues(@NonNull Map<String, byte[]> values) {
+        final KeychainLogFile logFile = getLogFile();
+        final SecretKey secretKey = encrypted ? getSecretKey() : null;
+        final Map<String, byte[]> storedValues = prepareStoredValues(values, secretKey);
+        if (storedValues == null || !logFile.commit(storedValues)) {
+            return false;
+        }
+        updateValueCache(secretKey, values);
+        return true;
+    }
+
+    /**
+     * Prepare encoded raw values to be stored in the file. If the content is encrypted, then each value
+     * is encrypted with the provided secret key.
+     * @param values Map with encoded raw values. If value is {@code null} then the key is removed.
+     * @param secretKey Secret key for the encryption, or {@code null} if the content is not encrypted.
+     * @return Map with values to be stored in the file, or {@code null} if any value cannot be encrypted.
+     */
+    @Nullable
+    private Map<String, byte[]> prepareStoredValues(@NonNull Map<String, byte[]> values, @Nullable SecretKey secretKey) {
+        if (!encrypted) {
+            return values;
+        }
+        if (secretKey == null) {
+            // Do not modify entries in case that the secret key is not available.
+            return null;
+        }
+        final Map<String, byte[]> storedValues = new HashMap<>(values.size());
+        for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+            final byte[] value = entry.getValue();
+            byte[] encryptedValue = null;
+            if (value != null) {
+                encryptedValue = AesGcmImpl.encrypt(value, secretKey, identifier, keyProvider);
+                if (encryptedValue == null) {
+                    // Do not apply any change if encryption failed.
+                    PowerAuthLog.e("FileKeychain: " + identifier + ": Failed to encrypt value for key: " + entry.getKey());
+                    return null;
+                }
+            }
+            storedValues.put(entry.getKey(), encryptedValue);
+        }
+        return storedValues;
+    }
+
+    /**
+     * Update the cache, so the written values are available without decryption.
+     * @param secretKey Secret key that encrypted the values, or {@code null} if the content is not encrypted.
+     * @param values Map with written encoded raw values. If value is {@code null} then the key was removed.
+     */
+    private void updateValueCache(@Nullable SecretKey secretKey, @NonNull Map<String, byte[]> values) {
+        if (valueCache.isEnabled()) {
+            valueCache.setSecretKey(secretKey);
+            for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+                final byte[] value = entry.getValue();
+                valueCache.put(entry.getKey(), value != null ? valueEncoder.decodeValue(value) : null);
+            }
+        }
+    }
+
+    /**
+     * Acquire {@link SecretKey} for encryption and decryption purposes, from the symmetric key provider.
+     * @return Instance of {@link SecretKey} or {@code null} in case of failure.
+     */
+    @Nullable
+    private SecretKey getSecretKey() {
+        final SecretKey secretKey = keyProvider != null ? keyProvider.getOrCreateSecretKey(context, false) : null;
+        if (secretKey == null) {
+            PowerAuthLog.e("FileKeychain: " + identifier + ": Unable to acquire encryption key.");
+        }
+        return secretKey;
+    }
+}
@@ -0,0 +1,942 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.keychain.impl;
+
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import io.getlime.security.powerauth.system.PowerAuthLog;
+
+/**
+ * The {@code KeychainLogFile} class implements a simple key-value storage on top of an append-only
+ * binary file. Each change is appended to the end of the file as a record protected with CRC32 and
+ * each group of changes is terminated with a commit record. The changes without the commit record,
+ * for example after a crash during the write, are ignored and removed from the file. If a damaged record
+ * is followed by another commit record, then the file is damaged in the middle, and the whole file is copied
+ * aside, with {@code .corrupt} suffix, before the committed records after the damaged one are removed.
+ * If the file cannot be read, for example due to a temporary I/O error, then the file is not modified
+ * at all, all writes fail, and the file is loaded again on the next access.
+ * <p>
+ * The index of keys is built lazily, on the first access to the storage. The index keeps only
+ * positions of values in the file, so the values are read from the file on demand. Once the file
+ * contains more obsolete records than valid ones, then the file is compacted. The compacted content
+ * is written to a temporary file that atomically replaces the original file. The directory is synchronized
+ * after the file is replaced, so the new file survives a power loss. On Android 4.4, there's no API to
+ * synchronize the directory, so the durability of the replacement depends on the filesystem. A temporary
+ * file left behind by an interrupted compaction is removed when the file is loaded. A file with unknown
+ * format is never removed, but renamed with {@code .corrupt} suffix, so its content can be examined later.
+ * <p>
+ * The file has the following format:
+ * <pre>
+ * HEADER: MAGIC (4 bytes) | VERSION (1 byte) | FLAGS (1 byte)
+ * RECORD: TYPE (1 byte) | KEY_LENGTH (4 bytes) | VALUE_LENGTH (4 bytes) | KEY (UTF-8) | VALUE | CRC32 (4 bytes)
+ * </pre>
+ * <p>
+ * The class is not thread safe. The owning keychain must serialize access to the file.
+ */
+public class KeychainLogFile {
+
+    /**
+     * The {@code KeychainLogFile.Statistics} class contains information about the file usage.
+     */
+    public static class Statistics {
+        /**
+         * Number of bytes written to the file since the object was created, including the compaction.
+         */
+        public final long bytesWritten;
+        /**
+         * Number of compactions since the object was created.
+         */
+        public final int compactionCount;
+        /**
+         * Current length of the file in bytes.
+         */
+        public final long fileLength;
+        /**
+         * Number of bytes occupied by valid values.
+         */
+        public final long liveBytes;
+        /**
+         * Number of keys stored in the file.
+         */
+        public final int entryCount;
+
+        Statistics(long bytesWritten, int compactionCount, long fileLength, long liveBytes, int entryCount) {
+            this.bytesWritten = bytesWritten;
+            this.compactionCount = compactionCount;
+            this.fileLength = fileLength;
+            this.liveBytes = liveBytes;
+            this.entryCount = entryCount;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Statistics{bytesWritten=" + bytesWritten +
+                    ", compactions=" + compactionCount +
+                    ", fileLength=" + fileLength +
+                    ", liveBytes=" + liveBytes +
+                    ", entries=" + entryCount +
+                    "}";
+        }
+    }
+
+    /**
+     * Magic constant at the beginning of the file ("PAKL").
+     */
+    private static final int MAGIC = 0x50414B4C;
+    /**
+     * Version of file format.
+     */
+    private static final byte VERSION = 1;
+    /**
+     * Size of the file header in bytes.
+     */
+    private static final int HEADER_SIZE = 6;
+    /**
+     * Record with a new value.
+     */
+    private static final byte RECORD_PUT = 1;
+    /**
+     * Record with a removed value.
+     */
+    private static final byte RECORD_REMOVE = 2;
+    /**
+     * Record that commits all previous records.
+     */
+    private static final byte RECORD_COMMIT = 3;
+    /**
+     * Size of record header (type, key and value length) in bytes.
+     */
+    private static final int RECORD_HEADER_SIZE = 9;
+    /**
+     * Size of CRC32 at the end of each record.
+     */
+    private static final int RECORD_CRC_SIZE = 4;
+    /**
+     * Maximum length of key or value. The limit protects the parser against a damaged length.
+     */
+    private static final int MAX_ITEM_LENGTH = 16 * 1024 * 1024;
+    /**
+     * The file is not compacted until it contains at least this amount of obsolete bytes.
+     */
+    private static final long MIN_GARBAGE_FOR_COMPACTION = 4 * 1024;
+    /**
+     * Suffix of the temporary file used for the compaction.
+     */
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+    /**
+     * Suffix of the file with unknown format.
+     */
+    private static final String CORRUPTED_FILE_SUFFIX = ".corrupt";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The {@code Entry} class contains position of value in the file.
+     */
+    private static class Entry {
+        final long valueOffset;
+        final int valueLength;
+        final int recordSize;
+
+        Entry(long valueOffset, int valueLength, int recordSize) {
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+            this.recordSize = recordSize;
+        }
+    }
+
+    private final @NonNull File file;
+    private final @NonNull File temporaryFile;
+    /**
+     * Index of valid values, or {@code null} if the file is not loaded yet.
+     */
+    private @Nullable HashMap<String, Entry> index;
+    /**
+     * File opened for reading values, or {@code null} if not opened yet.
+     */
+    private @Nullable RandomAccessFile reader;
+    private int flags;
+    private long fileLength;
+    private long liveBytes;
+    private long bytesWritten;
+    private int compactionCount;
+
+    /**
+     * @param file File with the content. The file doesn't need to exist.
+     */
+    KeychainLogFile(@NonNull File file) {
+        this.file = file;
+        this.temporaryFile = new File(file.getPath() + TEMPORARY_FILE_SUFFIX);
+    }
+
+    /**
+     * @return {@code true} if the file exists.
+     */
+    boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Read flags from the header of the file, without loading the whole file. If the file doesn't exist,
+     * then the header of the temporary file left by an interrupted compaction is used, because such file
+     * replaces the original file on the first load.
+     *
+     * @param file File with the content.
+     * @return Flags stored in the file header, or {@code 0} if the file doesn't exist, has unknown format, or cannot be read.
+     */
+    static int readFlags(@NonNull File file) {
+        final File source = file.exists() ? file : new File(file.getPath() + TEMPORARY_FILE_SUFFIX);
+        if (!source.exists()) {
+            return 0;
+        }
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new FileInputStream(source));
+            if (input.readInt() != MAGIC || input.readByte() != VERSION) {
+                return 0;
+            }
+            return input.readByte() & 0xFF;
+        } catch (IOException e) {
+            return 0;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    /**
+     * Load the content of the file, if it's not loaded yet.
+     *
+     * @return {@code false} if the file exists but cannot be read now. The file is not modified in this case.
+     */
+    boolean open() {
+        return ensureLoaded() != null;
+    }
+
+    /**
+     * @return Flags stored in the file header, or {@code 0} if the file doesn't exist, or cannot be read.
+     */
+    int getFlags() {
+        return ensureLoaded() != null ? flags : 0;
+    }
+
+    /**
+     * @return Set of all keys stored in the file.
+     */
+    @NonNull
+    Set<String> getKeys() {
+        final HashMap<String, Entry> index = ensureLoaded();
+        return index != null ? new HashSet<>(index.keySet()) : new HashSet<String>();
+    }
+
+    /**
+     * @param key Key to the value.
+     * @return {@code true} if the file contains value for the key.
+     */
+    boolean contains(@NonNull String key) {
+        final HashMap<String, Entry> index = ensureLoaded();
+        return index != null && index.containsKey(key);
+    }
+
+    /**
+     * Read value from the file.
+     *
+     * @param key Key to the value.
+     * @return Value or {@code null} if there's no such value, or the value cannot be read.
+     */
+    @Nullable
+    byte[] get(@NonNull String key) {
+        final HashMap<String, Entry> index = ensureLoaded();
+        final Entry entry = index != null ? index.get(key) : null;
+        if (entry == null) {
+            return null;
+        }
+        try {
+            if (reader == null) {
+                reader = new RandomAccessFile(file, "r");
+            }
+            final byte[] value = new byte[entry.valueLength];
+            reader.seek(entry.valueOffset);
+            reader.readFully(value);
+            return value;
+        } catch (IOException e) {
+            PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Failed to read value: " + e.getMessage());
+            closeReader();
+            return null;
+        }
+    }
+
+    /**
+     * Append multiple changes to the file at once. If the write fails, then no change is applied.
+     * The file is compacted if it contains too many obsolete records.
+     *
+     * @param changes Changes to apply. The {@code null} value means that the key should be removed.
+     * @return {@code true} if all changes were applied, {@code false} if no change was applied.
+     */
+    boolean commit(@NonNull Map<String, byte[]> changes) {
+        final HashMap<String, Entry> index = ensureLoaded();
+        if (index == null) {
+            return false;
+        }
+        if (changes.isEmpty()) {
+            return true;
+        }
+        // If the file doesn't exist yet, then the header is written together with the records.
+        final boolean createFile = fileLength == 0;
+        final long baseOffset = createFile ? 0 : fileLength;
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final HashMap<String, Entry> newEntries = new HashMap<>(changes.size());
+        try {
+            final DataOutputStream output = new DataOutputStream(buffer);
+            if (createFile) {
+                writeHeader(output, flags);
+            }
+            for (Map.Entry<String, byte[]> change : changes.entrySet()) {
+                final long recordOffset = baseOffset + output.size();
+                if (change.getValue() != null) {
+                    newEntries.put(change.getKey(), writeRecord(output, RECORD_PUT, change.getKey(), change.getValue(), recordOffset));
+                } else {
+                    writeRecord(output, RECORD_REMOVE, change.getKey(), null, recordOffset);
+                    newEntries.put(change.getKey(), null);
+                }
+            }
+            writeRecord(output, RECORD_COMMIT, null, null, baseOffset + output.size());
+            output.flush();
+        } catch (IOException e) {
+            // Writing to memory should not fail.
+            return false;
+        }
+        final byte[] bytes = buffer.toByteArray();
+        if (!appendToFile(bytes, createFile)) {
+            return false;
+        }
+        fileLength = baseOffset + bytes.length;
+        bytesWritten += bytes.length;
+        for (Map.Entry<String, Entry> newEntry : newEntries.entrySet()) {
+            final Entry entry = newEntry.getValue();
+            final Entry previous = entry != null ? index.put(newEntry.getKey(), entry) : index.remove(newEntry.getKey());
+            if (previous != null) {
+                liveBytes -= previous.recordSize;
+            }
+            if (entry != null) {
+                liveBytes += entry.recordSize;
+            }
+        }
+        if (shouldCompact()) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Replace the whole content of the file. The new content is written to a temporary file that
+     * atomically replaces the original file.
+     *
+     * @param values New content of the file.
+     * @param newFlags Flags to be stored in the file header.
+     * @return {@code true} if the content was replaced, {@code false} if the original content is still in the file.
+     */
+    boolean replaceAll(@NonNull Map<String, byte[]> values, int newFlags) {
+        // The content that cannot be read must not be replaced.
+        return ensureLoaded() != null && rewrite(values, newFlags);
+    }
+
+    /**
+     * Write only valid values to a new file and replace the original file.
+     *
+     * @return {@code true} if the file was compacted.
+     */
+    boolean compact() {
+        final HashMap<String, Entry> index = ensureLoaded();
+        if (index == null) {
+            return false;
+        }
+        final HashMap<String, byte[]> values = new HashMap<>(index.size());
+        for (String key : index.keySet()) {
+            final byte[] value = get(key);
+            if (value == null) {
+                return false;
+            }
+            values.put(key, value);
+        }
+        if (!rewrite(values, flags)) {
+            return false;
+        }
+        compactionCount++;
+        return true;
+    }
+
+    /**
+     * Close the file and drop the index, so the file is loaded again on the next access.
+     */
+    void close() {
+        closeReader();
+        index = null;
+    }
+
+    /**
+     * @return Information about the file usage.
+     */
+    @NonNull
+    Statistics getStatistics() {
+        final HashMap<String, Entry> index = ensureLoaded();
+        return new Statistics(bytesWritten, compactionCount, fileLength, liveBytes, index != null ? index.size() : 0);
+    }
+
+    // Private methods
+
+    /**
+     * Load the index from the file, if it's not loaded yet.
+     *
+     * @return Index of values, or {@code null} if the file cannot be read now.
+     */
+    @Nullable
+    private HashMap<String, Entry> ensureLoaded() {
+        if (index == null) {
+            final HashMap<String, Entry> newIndex = new HashMap<>();
+            flags = 0;
+            fileLength = 0;
+            liveBytes = 0;
+            recoverTemporaryFile();
+            if (file.exists() && !load(newIndex)) {
+                // Try to load the file again on the next access.
+                closeReader();
+                return null;
+            }
+            index = newIndex;
+        }
+        return index;
+    }
+
+    /**
+     * Scan the file and build the index. The records after the last valid commit record are removed from the file.
+     * If there's another commit record after the damaged record, then the file is copied aside before the records
+     * are removed.
+     *
+     * @param index Index to fill.
+     * @return {@code false} if the file cannot be read. The file is not modified in this case.
+     */
+    private boolean load(@NonNull HashMap<String, Entry> index) {
+        final long length = file.length();
+        long validLength = 0;
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 16 * 1024));
+            if (length < HEADER_SIZE || input.readInt() != MAGIC || input.readByte() != VERSION) {
+                PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Unknown file format.");
+            } else {
+                flags = input.readByte() & 0xFF;
+                validLength = HEADER_SIZE;
+                final HashMap<String, Entry> pending = new HashMap<>();
+                final Set<String> pendingRemovals = new HashSet<>();
+                long offset = HEADER_SIZE;
+                while (offset < length) {
+                    final byte type = input.readByte();
+                    final int keyLength = input.readInt();
+                    final int valueLength = input.readInt();
+                    if (type < RECORD_PUT || type > RECORD_COMMIT || !isValidLength(keyLength) || !isValidLength(valueLength)) {
+                        break;
+                    }
+                    final int recordSize = RECORD_HEADER_SIZE + keyLength + valueLength + RECORD_CRC_SIZE;
+                    if (offset + recordSize > length) {
+                        break;
+                    }
+                    final byte[] keyBytes = new byte[keyLength];
+                    input.readFully(keyBytes);
+                    final CRC32 crc = new CRC32();
+                    updateCrc(crc, type, keyLength, valueLength);
+                    crc.update(keyBytes);
+                    updateCrc(crc, input, valueLength);
+                    if (input.readInt() != (int) crc.getValue()) {
+                        break;
+                    }
+                    final String key = new String(keyBytes, UTF8);
+                    if (type == RECORD_PUT) {
+                        pendingRemovals.remove(key);
+                        pending.put(key, new Entry(offset + RECORD_HEADER_SIZE + keyLength, valueLength, recordSize));
+                    } else if (type == RECORD_REMOVE) {
+                        pending.remove(key);
+                        pendingRemovals.add(key);
+                    } else {
+                        // Commit record, apply all pending changes.
+                        for (String removedKey : pendingRemovals) {
+                            final Entry removed = index.remove(removedKey);
+                            if (removed != null) {
+                                liveBytes -= removed.recordSize;
+                            }
+                        }
+                        for (Map.Entry<String, Entry> entry : pending.entrySet()) {
+                            final Entry previous = index.put(entry.getKey(), entry.getValue());
+                            if (previous != null) {
+                                liveBytes -= previous.recordSize;
+                            }
+                            liveBytes += entry.getValue().recordSize;
+                        }
+                        pending.clear();
+                        pendingRemovals.clear();
+                        validLength = offset + recordSize;
+                    }
+                    offset += recordSize;
+                }
+            }
+        } catch (EOFException e) {
+            // The last record is not complete.
+        } catch (IOException e) {
+            PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Failed to read file: " + e.getMessage());
+            index.clear();
+            flags = 0;
+            liveBytes = 0;
+            return false;
+        } finally {
+            closeQuietly(input);
+        }
+        final File corruptedFile = new File(file.getPath() + CORRUPTED_FILE_SUFFIX);
+        if (validLength == 0) {
+            // The file is damaged, so start with empty content, but keep the file for later examination.
+            index.clear();
+            liveBytes = 0;
+            closeReader();
+            if (!file.renameTo(corruptedFile)) {
+                PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Failed to move damaged file.");
+                return false;
+            }
+            PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Damaged file moved to " + corruptedFile.getName());
+        } else if (validLength < length) {
+            try {
+                if (containsCommitRecord(validLength, length)) {
+                    // The damaged record is not at the end of file, so the truncation removes committed data.
+                    PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Damaged record before committed data. Copying file to " + corruptedFile.getName());
+                    copyFile(file, corruptedFile);
+                }
+            } catch (IOException e) {
+                PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Failed to keep damaged file: " + e.getMessage());
+                index.clear();
+                liveBytes = 0;
+                return false;
+            }
+            PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Removing " + (length - validLength) + " bytes after the last valid commit.");
+            if (!truncateFile(validLength)) {
+                index.clear();
+                liveBytes = 0;
+                return false;
+            }
+        }
+        fileLength = validLength;
+        return true;
+    }
+
+    /**
+     * Determine whether the part of the file contains a commit record. The commit record has always
+     * the same content, so it's found without parsing the records.
+     *
+     * @param offset Offset where the search begins.
+     * @param length Length of the file.
+     * @return {@code true} if the commit record is found.
+     * @throws IOException In case of failure.
+     */
+    private boolean containsCommitRecord(long offset, long length) throws IOException {
+        final byte[] pattern = createCommitRecord();
+        final byte[] buffer = new byte[16 * 1024];
+        RandomAccessFile input = null;
+        try {
+            input = new RandomAccessFile(file, "r");
+            input.seek(offset);
+            long remaining = length - offset;
+            int kept = 0;
+            while (remaining > 0) {
+                final int read = input.read(buffer, kept, (int) Math.min(buffer.length - kept, remaining));
+                if (read < 0) {
+                    break;
+                }
+                remaining -= read;
+                final int available = kept + read;
+                for (int i = 0; i + pattern.length <= available; i++) {
+                    if (regionMatches(buffer, i, pattern)) {
+                        return true;
+                    }
+                }
+                // Keep the end of buffer, the pattern may continue in the next chunk.
+                kept = Math.min(available, pattern.length - 1);
+                System.arraycopy(buffer, available - kept, buffer, 0, kept);
+            }
+            return false;
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    /**
+     * Copy the content of the file to another file.
+     *
+     * @param source Source file.
+     * @param destination Destination file. The file is replaced if it already exists.
+     * @throws IOException In case of failure.
+     */
+    private static void copyFile(@NonNull File source, @NonNull File destination) throws IOException {
+        FileInputStream input = null;
+        FileOutputStream output = null;
+        try {
+            input = new FileInputStream(source);
+            output = new FileOutputStream(destination);
+            final byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                output.write(buffer, 0, read);
+            }
+            output.getFD().sync();
+        } finally {
+            closeQuietly(input);
+            closeQuietly(output);
+        }
+    }
+
+    /**
+     * Write the values to the temporary file and then replace the original file.
+     *
+     * @param values Values to write.
+     * @param newFlags Flags to be stored in the file header.
+     * @return {@code true} in case of success.
+     */
+    private boolean rewrite(@NonNull Map<String, byte[]> values, int newFlags) {
+        final HashMap<String, Entry> newIndex = new HashMap<>(values.size());
+        long newLiveBytes = 0;
+        long newLength = HEADER_SIZE;
+        if (!createParentDirectory()) {
+            return false;
+        }
+        FileOutputStream fileOutput = null;
+        try {
+            fileOutput = new FileOutputStream(temporaryFile);
+            final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutput, 16 * 1024));
+            writeHeader(output, newFlags);
+            for (Map.Entry<String, byte[]> value : values.entrySet()) {
+                final Entry entry = writeRecord(output, RECORD_PUT, value.getKey(), value.getValue(), newLength);
+                newIndex.put(value.getKey(), entry);
+                newLiveBytes += entry.recordSize;
+                newLength += entry.recordSize;
+            }
+            writeRecord(output, RECORD_COMMIT, null, null, 0);
+            newLength += RECORD_HEADER_SIZE + RECORD_CRC_SIZE;
+            output.flush();
+            fileOutput.getFD().sync();
+            fileOutput.close();
+            fileOutput = null;
+        } catch (IOException e) {
+            PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Failed to write temporary file: " + e.getMessage());
+            closeQuietly(fileOutput);
+            deleteTemporaryFile();
+            return false;
+        }
+        closeReader();
+        if (!temporaryFile.renameTo(file)) {
+            PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Failed to replace file.");
+            deleteTemporaryFile();
+            return false;
+        }
+        syncParentDirectory();
+        index = newIndex;
+        flags = newFlags;
+        fileLength = newLength;
+        liveBytes = newLiveBytes;
+        bytesWritten += newLength;
+        return true;
+    }
+
+    /**
+     * Append bytes to the end of file. If the write fails, then the file is truncated to its original length.
+     *
+     * @param bytes Bytes to append.
+     * @param createFile If {@code true}, then the file is created, or truncated if already exists.
+     * @return {@code true} in case of success.
+     */
+    private boolean appendToFile(@NonNull byte[] bytes, boolean createFile) {
+        if (createFile && !createParentDirectory()) {
+            return false;
+        }
+        FileOutputStream output = null;
+        try {
+            output = new FileOutputStream(file, !createFile);
+            output.write(bytes);
+            output.getFD().sync();
+            output.close();
+            if (createFile) {
+                syncParentDirectory();
+            }
+            return true;
+        } catch (IOException e) {
+            PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Failed to write file: " + e.getMessage());
+            closeQuietly(output);
+            if (createFile) {
+                if (!file.delete()) {
+                    PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Failed to delete incomplete file.");
+                }
+            } else if (!truncateFile(fileLength)) {
+                // Load the file again on the next access, to remove the incomplete records.
+                close();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @return {@code true} if the file contains enough obsolete records.
+     */
+    private boolean shouldCompact() {
+        final long garbage = fileLength - HEADER_SIZE - liveBytes;
+        return garbage >= MIN_GARBAGE_FOR_COMPACTION && garbage > liveBytes;
+    }
+
+    /**
+     * Truncate the file to the required length.
+     *
+     * @param length New length of the file.
+     * @return {@code true} in case of success.
+     */
+    private boolean truncateFile(long length) {
+        closeReader();
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(length);
+            return true;
+        } catch (IOException e) {
+            PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Failed to truncate file: " + e.getMessage());
+            return false;
+        } finally {
+            closeQuietly(raf);
+        }
+    }
+
+    /**
+     * Create the directory for the file, if it doesn't exist yet.
+     *
+     * @return {@code false} if the directory cannot be created.
+     */
+    private boolean createParentDirectory() {
+        final File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Failed to create directory.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Handle the temporary file left behind by an interrupted compaction. If the original file exists,
+     * then the file was not replaced yet and the temporary file is removed. Otherwise the temporary
+     * file is used as the original file, and its content is validated later, during the load.
+     */
+    private void recoverTemporaryFile() {
+        if (!temporaryFile.exists()) {
+            return;
+        }
+        if (file.exists()) {
+            PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Removing stale temporary file.");
+            deleteTemporaryFile();
+        } else if (temporaryFile.renameTo(file)) {
+            PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Recovered content from temporary file.");
+            syncParentDirectory();
+        } else {
+            PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Failed to recover temporary file.");
+        }
+    }
+
+    /**
+     * Synchronize the directory containing the file, so the created or renamed file is persisted.
+     * The failure is only logged, because the file content is already synchronized.
+     */
+    private void syncParentDirectory() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        final File parent = file.getParentFile();
+        if (parent == null) {
+            return;
+        }
+        FileDescriptor fd = null;
+        try {
+            fd = Os.open(parent.getPath(), OsConstants.O_RDONLY, 0);
+            Os.fsync(fd);
+        } catch (ErrnoException e) {
+            PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Failed to synchronize directory: " + e.getMessage());
+        } finally {
+            if (fd != null) {
+                try {
+                    Os.close(fd);
+                } catch (ErrnoException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    private void deleteTemporaryFile() {
+        if (temporaryFile.exists() && !temporaryFile.delete()) {
+            PowerAuthLog.e("KeychainLogFile: " + file.getName() + ": Failed to delete temporary file.");
+        }
+    }
+
+    private void closeReader() {
+        closeQuietly(reader);
+        reader = null;
+    }
+
+    /**
+     * @param length Length of key or value.
+     * @return {@code true} if length is valid.
+     */
+    private static boolean isValidLength(int length) {
+        return length >= 0 && length <= MAX_ITEM_LENGTH;
+    }
+
+    /**
+     * Write the file header.
+     *
+     * @param output Output stream.
+     * @param flags Flags to be stored in the header.
+     * @throws IOException In case of failure.
+     */
+    private static void writeHeader(@NonNull DataOutputStream output, int flags) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+        output.writeByte(flags);
+    }
+
+    /**
+     * Write one record.
+     *
+     * @param output Output stream.
+     * @param type Type of record.
+     * @param key Key or {@code null} for the commit record.
+     * @param value Value or {@code null} for the remove and commit records.
+     * @param recordOffset Offset of the record in the file.
+     * @return Position of the value in the file.
+     * @throws IOException In case of failure.
+     */
+    @NonNull
+    private static Entry writeRecord(@NonNull DataOutputStream output, byte type, @Nullable String key, @Nullable byte[] value, long recordOffset) throws IOException {
+        final byte[] keyBytes = key != null ? key.getBytes(UTF8) : new byte[0];
+        final byte[] valueBytes = value != null ? value : new byte[0];
+        final CRC32 crc = new CRC32();
+        updateCrc(crc, type, keyBytes.length, valueBytes.length);
+        crc.update(keyBytes);
+        crc.update(valueBytes);
+        output.writeByte(type);
+        output.writeInt(keyBytes.length);
+        output.writeInt(valueBytes.length);
+        output.write(keyBytes);
+        output.write(valueBytes);
+        output.writeInt((int) crc.getValue());
+        final int recordSize = RECORD_HEADER_SIZE + keyBytes.length + valueBytes.length + RECORD_CRC_SIZE;
+        return new Entry(recordOffset + RECORD_HEADER_SIZE + keyBytes.length, valueBytes.length, recordSize);
+    }
+
+    /**
+     * @return Content of the commit record.
+     */
+    @NonNull
+    private static byte[] createCommitRecord() {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(RECORD_HEADER_SIZE + RECORD_CRC_SIZE);
+        try {
+            writeRecord(new DataOutputStream(buffer), RECORD_COMMIT, null, null, 0);
+        } catch (IOException e) {
+            // Writing to memory should not fail.
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * @param buffer Buffer to test.
+     * @param offset Offset in the buffer.
+     * @param pattern Expected content.
+     * @return {@code true} if the buffer at the offset contains the pattern.
+     */
+    private static boolean regionMatches(@NonNull byte[] buffer, int offset, @NonNull byte[] pattern) {
+        for (int i = 0; i < pattern.length; i++) {
+            if (buffer[offset + i] != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Update CRC with the record header.
+     */
+    private static void updateCrc(@NonNull CRC32 crc, byte type, int keyLength, int valueLength) {
+        crc.update(type);
+        updateCrc(crc, keyLength);
+        updateCrc(crc, valueLength);
+    }
+
+    private static void updateCrc(@NonNull CRC32 crc, int value) {
+        crc.update(value >>> 24);
+        crc.update(value >>> 16);
+        crc.update(value >>> 8);
+        crc.update(value);
+    }
+
+    /**
+     * Update CRC with bytes read from the input stream, without keeping the bytes in memory.
+     */
+    private static void updateCrc(@NonNull CRC32 crc, @NonNull DataInputStream input, int length) throws IOException {
+        final byte[] buffer = new byte[Math.min(length, 4096)];
+        int remaining = length;
+        while (remaining > 0) {
+            final int chunk = Math.min(remaining, buffer.length);
+            input.readFully(buffer, 0, chunk);
+            crc.update(buffer, 0, chunk);
+            remaining -= chunk;
+        }
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.keychain.impl;
+
+import android.content.SharedPreferences;
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import io.getlime.security.powerauth.keychain.IllegalKeychainAccessException;
+import io.getlime.security.powerauth.keychain.KeychainTransaction;
+
+/**
+ * The {@code KeychainTransactionImpl} class collects changes made in {@link KeychainTransaction}.
+ * The values are serialized with {@link KeychainValueEncoder} when the change is staged, and
+ * the subclass writes all collected changes at once in {@link #commitChanges(Map)}.
+ */
+abstract class KeychainTransactionImpl implements KeychainTransaction {
+
+    /**
+     * Encoder that helps with the keychain value serialization.
+     */
+    final @NonNull KeychainValueEncoder valueEncoder;
+    /**
+     * Staged changes in order of modification. The {@code null} value means that the key should be removed.
+     */
+    private final @NonNull LinkedHashMap<String, byte[]> changes = new LinkedHashMap<>();
+    /**
+     * If {@code true}, then the transaction is already committed.
+     */
+    private boolean committed;
+
+    /**
+     * @param valueEncoder Encoder that helps with the keychain value serialization.
+     */
+    KeychainTransactionImpl(@NonNull KeychainValueEncoder valueEncoder) {
+        this.valueEncoder = valueEncoder;
+    }
+
+    @NonNull
+    @Override
+    public KeychainTransaction remove(@NonNull String key) {
+        return stageRawValue(key, null);
+    }
+
+    @NonNull
+    @Override
+    public KeychainTransaction putData(@Nullable byte[] data, @NonNull String key) {
+        return stageRawValue(key, (data != null && data.length > 0) ? valueEncoder.encode(data) : null);
+    }
+
+    @NonNull
+    @Override
+    public KeychainTransaction putString(@Nullable String string, @NonNull String key) {
+        return stageRawValue(key, string != null ? valueEncoder.encode(string) : null);
+    }
+
+    @NonNull
+    @Override
+    public KeychainTransaction putStringSet(@Nullable Set<String> stringSet, @NonNull String key) {
+        return stageRawValue(key, stringSet != null ? valueEncoder.encode(stringSet) : null);
+    }
+
+    @NonNull
+    @Override
+    public KeychainTransaction putBoolean(boolean value, @NonNull String key) {
+        return stageRawValue(key, valueEncoder.encode(value));
+    }
+
+    @NonNull
+    @Override
+    public KeychainTransaction putLong(long value, @NonNull String key) {
+        return stageRawValue(key, valueEncoder.encode(value));
+    }
+
+    @NonNull
+    @Override
+    public KeychainTransaction putFloat(float value, @NonNull String key) {
+        return stageRawValue(key, valueEncoder.encode(value));
+    }
+
+    @Override
+    public boolean commit() {
+        failOnCommitted();
+        committed = true;
+        if (changes.isEmpty()) {
+            return true;
+        }
+        return commitChanges(changes);
+    }
+
+    /**
+     * Write all staged changes to the keychain. The implementation must not apply any change
+     * if it fails to store one of the values.
+     *
+     * @param changes Staged changes in order of modification. The {@code null} value means that the key should be removed.
+     * @return {@code true} if all changes were applied, {@code false} if no change was applied.
+     */
+    abstract boolean commitChanges(@NonNull Map<String, byte[]> changes);
+
+    /**
+     * Store encoded raw value in legacy, unencrypted format to given {@link SharedPreferences.Editor} instance.
+     *
+     * @param valueEncoder Encoder that helps with the keychain value deserialization.
+     * @param editor {@link SharedPreferences.Editor} instance.
+     * @param key Key to shared preferences.
+     * @param rawValue Encoded raw value.
+     * @return {@code true} if value was properly stored to given editor.
+     */
+    static boolean storeLegacyRawValue(@NonNull KeychainValueEncoder valueEncoder, @NonNull SharedPreferences.Editor editor, @NonNull String key, @NonNull byte[] rawValue) {
+        try {
+            switch (valueEncoder.decodeValueType(rawValue)) {
+                case KeychainValueEncoder.TYPE_DATA:
+                    final byte[] dataValue = valueEncoder.decodeBytes(rawValue);
+                    final String serializedData = dataValue.length > 0 ? Base64.encodeToString(dataValue, Base64.DEFAULT) : null;
+                    editor.putString(key, serializedData);
+                    break;
+                case KeychainValueEncoder.TYPE_STRING:
+                    final String stringValue = valueEncoder.decodeString(rawValue);
+                    editor.putString(key, stringValue);
+                    break;
+                case KeychainValueEncoder.TYPE_BOOLEAN:
+                    final boolean boolValue = valueEncoder.decodeBoolean(rawValue);
+                    editor.putBoolean(key, boolValue);
+                    break;
+                case KeychainValueEncoder.TYPE_LONG:
+                    final long longValue = valueEncoder.decodeLong(rawValue);
+                    editor.putLong(key, longValue);
+                    break;
+                case KeychainValueEncoder.TYPE_FLOAT:
+                    final float floatValue = valueEncoder.decodeFloat(rawValue);
+                    editor.putFloat(key, floatValue);
+                    break;
+                case KeychainValueEncoder.TYPE_STRING_SET:
+                    final Set<String> setValue = valueEncoder.decodeStringSet(rawValue);
+                    editor.putStringSet(key, setValue);
+                    break;
+                default:
+                    return false;
+            }
+        } catch (IllegalKeychainAccessException e) {
+            // Failed to decode raw value
+            return false;
+        }
+        return true;
+    }
+
+    // Private methods
+
+    /**
+     * Stage encoded raw value for the commit.
+     *
+     * @param key Key to be used for storing the encoded raw value.
+     * @param rawValue Encoded raw value to be stored. If value is {@code null} then the key will be removed.
+     * @return This transaction.
+     */
+    @NonNull
+    private KeychainTransaction stageRawValue(@NonNull String key, @Nullable byte[] rawValue) {
+        ReservedKeyImpl.failOnReservedKey(key);
+        failOnCommitted();
+        // Remove the previous change first, so the order of changes follows the last modification.
+        changes.remove(key);
+        changes.put(key, rawValue);
+        return this;
+    }
+
+    /**
+     * Throw {@link IllegalStateException} if the transaction is already committed.
+     */
+    private void failOnCommitted() {
+        if (committed) {
+            throw new IllegalStateException("Keychain transaction is already committed.");
+        }
+    }
+}
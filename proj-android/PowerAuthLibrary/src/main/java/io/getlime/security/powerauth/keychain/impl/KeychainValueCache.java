@@ -0,0 +1,267 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.keychain.impl;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.crypto.SecretKey;
+
+/**
+ * The {@code KeychainValueCache} class keeps decrypted and decoded keychain values in memory, so
+ * the cached value is returned without decryption and decoding. The cache has a byte budget and
+ * evicts the least recently used values once the budget is exceeded. The content of each byte array
+ * removed from the cache is overwritten with zeros. Other types of values, like strings, cannot be
+ * wiped and are only released.
+ * <p>
+ * The cached values are valid only as long as the secret key that decrypted them is valid, so
+ * the owning keychain must call {@link #setSecretKey(SecretKey)} before it accesses the cache.
+ * <p>
+ * The class is not thread safe. The owning keychain must serialize access to the cache.
+ */
+public class KeychainValueCache {
+    /**
+     * The {@code KeychainValueCache.Statistics} class contains information about the cache usage.
+     */
+    public static class Statistics {
+        /**
+         * Number of reads served from the cache.
+         */
+        public final long hitCount;
+        /**
+         * Number of reads that had to decrypt the value.
+         */
+        public final long missCount;
+        /**
+         * Number of values in the cache.
+         */
+        public final int entryCount;
+        /**
+         * Estimated number of bytes of values in the cache.
+         */
+        public final int size;
+        /**
+         * Maximum number of bytes of values in the cache.
+         */
+        public final int maxSize;
+
+        Statistics(long hitCount, long missCount, int entryCount, int size, int maxSize) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.entryCount = entryCount;
+            this.size = size;
+            this.maxSize = maxSize;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Statistics{hits=" + hitCount +
+                    ", misses=" + missCount +
+                    ", entries=" + entryCount +
+                    ", size=" + size +
+                    ", maxSize=" + maxSize +
+                    "}";
+        }
+    }
+
+    /**
+     * Estimated size of value that has a fixed size, like {@code Long}.
+     */
+    private static final int FIXED_VALUE_SIZE = 8;
+
+    /**
+     * Decoded values in the least recently used order.
+     */
+    private final LinkedHashMap<String, Object> values = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Secret key that decrypted the cached values.
+     */
+    private @Nullable SecretKey secretKey;
+    private int maxSize;
+    private int size;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * @param maxSize Maximum number of bytes of cached values. If {@code 0}, then the cache is disabled.
+     */
+    KeychainValueCache(int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+    }
+
+    /**
+     * @return {@code true} if the cache can keep some values.
+     */
+    boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Change the maximum number of bytes of cached values. The cache is trimmed to the new size.
+     *
+     * @param maxSize Maximum number of bytes of cached values. If {@code 0}, then the cache is disabled.
+     */
+    void setMaxSize(int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+        trimToSize(this.maxSize);
+    }
+
+    /**
+     * Set the secret key that decrypts the keychain values. If the key is different from the key
+     * that decrypted the cached values, for example if the key was removed or invalidated, then all
+     * cached values are removed.
+     *
+     * @param secretKey Current secret key, or {@code null} if the key is not available, or if
+     *                  the values are not encrypted.
+     */
+    void setSecretKey(@Nullable SecretKey secretKey) {
+        if (this.secretKey != secretKey) {
+            clear();
+            this.secretKey = secretKey;
+        }
+    }
+
+    /**
+     * Get decoded value from the cache. The method also updates the hit and miss counters.
+     *
+     * @param key Key to the value.
+     * @return Cached value or {@code null} if value is not cached. The caller must not modify the returned object.
+     */
+    @Nullable
+    Object get(@NonNull String key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        final Object value = values.get(key);
+        if (value != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return value;
+    }
+
+    /**
+     * Put decoded value to the cache. The cache takes the ownership of the value, so the caller must not modify it later.
+     *
+     * @param key Key to the value.
+     * @param value Decoded value to cache. If {@code null}, then the value is removed from the cache.
+     */
+    void put(@NonNull String key, @Nullable Object value) {
+        if (value == null || sizeOf(value) > maxSize) {
+            remove(key);
+            return;
+        }
+        final Object previous = values.put(key, value);
+        if (previous != null) {
+            size -= sizeOf(previous);
+            if (previous != value) {
+                wipe(previous);
+            }
+        }
+        size += sizeOf(value);
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Remove value from the cache.
+     *
+     * @param key Key to the value.
+     */
+    void remove(@NonNull String key) {
+        final Object value = values.remove(key);
+        if (value != null) {
+            size -= sizeOf(value);
+            wipe(value);
+        }
+    }
+
+    /**
+     * Remove all values from the cache.
+     */
+    void clear() {
+        for (Object value : values.values()) {
+            wipe(value);
+        }
+        values.clear();
+        size = 0;
+    }
+
+    /**
+     * Remove the least recently used values until the cache fits to the requested size.
+     *
+     * @param targetSize Requested number of bytes of cached values.
+     */
+    void trimToSize(int targetSize) {
+        final Iterator<Map.Entry<String, Object>> iterator = values.entrySet().iterator();
+        while (size > targetSize && iterator.hasNext()) {
+            final Object value = iterator.next().getValue();
+            iterator.remove();
+            size -= sizeOf(value);
+            wipe(value);
+        }
+    }
+
+    /**
+     * @return Information about the cache usage.
+     */
+    @NonNull
+    Statistics getStatistics() {
+        return new Statistics(hitCount, missCount, values.size(), size, maxSize);
+    }
+
+    // Private methods
+
+    /**
+     * Estimate the number of bytes occupied by the decoded value.
+     *
+     * @param value Decoded value.
+     * @return Estimated number of bytes.
+     */
+    private static int sizeOf(@NonNull Object value) {
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        } else if (value instanceof String) {
+            return 2 * ((String) value).length();
+        } else if (value instanceof Set<?>) {
+            int setSize = 0;
+            for (Object item : (Set<?>) value) {
+                setSize += 2 * item.toString().length();
+            }
+            return setSize;
+        }
+        return FIXED_VALUE_SIZE;
+    }
+
+    /**
+     * Overwrite the content of the value with zeros, if it's possible.
+     *
+     * @param value Decoded value.
+     */
+    private static void wipe(@NonNull Object value) {
+        if (value instanceof byte[]) {
+            Arrays.fill((byte[]) value, (byte) 0);
+        }
+    }
+}
@@ -16,7 +16,10 @@
 
 package io.getlime.security.powerauth.keychain.impl;
 
+import android.util.Base64;
+
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
@@ -165,6 +168,46 @@ class KeychainValueEncoder {
         return buffer.array();
     }
 
+    /**
+     * Encode value stored in the legacy, unencrypted keychain. The legacy keychain stores data
+     * as Base64 encoded strings, so every string that is a valid Base64 sequence is encoded as data.
+     *
+     * @param value Value retrieved from {@code SharedPreferences}.
+     * @return Encoded array of bytes or {@code null} if the value type is not supported, or if it's
+     *         impossible to determine the type of value.
+     */
+    @Nullable byte[] encodeLegacyValue(@Nullable Object value) {
+        if (value instanceof String) {
+            final String string = (String)value;
+            if (string.isEmpty()) {
+                // It's impossible to determine whether the stored value was string or Base64
+                // encoded data.
+                return null;
+            }
+            // Test whether the string is Base64 encoded sequence of bytes
+            final byte[] decodedBytes = tryDecodeBase64Data(string);
+            if (decodedBytes != null) {
+                // String contains Base64 encoded sequence of bytes.
+                return encode(decodedBytes);
+            }
+            // Non-Base64 encoded string. Just encode string as it is.
+            return encode(string);
+        } else if (value instanceof Boolean) {
+            return encode((Boolean)value);
+        } else if (value instanceof Long) {
+            return encode((Long)value);
+        } else if (value instanceof Float) {
+            return encode((Float)value);
+        } else if (value instanceof Set<?>) {
+            // We can suppress "unchecked" warning, because SharedPreferences doesn't use other
+            // type of set than Set<String>.
+            @SuppressWarnings("unchecked")
+            final Set<String> stringSet = (Set<String>)value;
+            return encode(stringSet);
+        }
+        return null;
+    }
+
 
     // Decode from bytes
 
@@ -270,8 +313,79 @@ class KeychainValueEncoder {
     }
 
 
+    /**
+     * Decode value of any supported type from encoded sequence of bytes. The {@link IllegalKeychainAccessException}
+     * is thrown in case that encoded sequence contains an unknown type of value, or there's not enough
+     * bytes to decode the value.
+     *
+     * @param encoded Sequence of bytes containing encoded value.
+     * @return Decoded value, that is {@code byte[]}, {@code String}, {@code Boolean}, {@code Long}, {@code Float} or {@code Set<String>}.
+     */
+    @NonNull Object decodeValue(@NonNull byte[] encoded) {
+        switch (decodeValueType(encoded)) {
+            case TYPE_DATA:
+                return decodeBytes(encoded);
+            case TYPE_STRING:
+                return decodeString(encoded);
+            case TYPE_BOOLEAN:
+                return decodeBoolean(encoded);
+            case TYPE_LONG:
+                return decodeLong(encoded);
+            case TYPE_FLOAT:
+                return decodeFloat(encoded);
+            default:
+                return decodeStringSet(encoded);
+        }
+    }
+
+    /**
+     * Test whether value previously decoded with {@link #decodeValue(byte[])} has the expected type.
+     * The {@link IllegalKeychainAccessException} is thrown in case that the value has a different type.
+     *
+     * @param value Decoded value.
+     * @param expected Expected value type.
+     */
+    void checkDecodedType(@NonNull Object value, byte expected) {
+        final byte decodedType;
+        if (value instanceof byte[]) {
+            decodedType = TYPE_DATA;
+        } else if (value instanceof String) {
+            decodedType = TYPE_STRING;
+        } else if (value instanceof Boolean) {
+            decodedType = TYPE_BOOLEAN;
+        } else if (value instanceof Long) {
+            decodedType = TYPE_LONG;
+        } else if (value instanceof Float) {
+            decodedType = TYPE_FLOAT;
+        } else {
+            decodedType = TYPE_STRING_SET;
+        }
+        if (decodedType != expected) {
+            throw new IllegalKeychainAccessException("Requesting '" + typeToString(expected) + "' but keychain contains '" + typeToString(decodedType) + "' type");
+        }
+    }
+
     // Private methods
 
+    /**
+     * Try to decode provided string as Base64 data. If string is real Base64 data, then return
+     * array with decoded bytes, otherwise return null.
+     *
+     * @param string Possible Base64 data to decode.
+     * @return Decoded array of bytes in case that string is real Base64 data, otherwise null.
+     */
+    private @Nullable byte[] tryDecodeBase64Data(@NonNull String string) {
+        try {
+            final byte[] decodedBytes = Base64.decode(string, Base64.DEFAULT);
+            if (Base64.encodeToString(decodedBytes, Base64.DEFAULT).trim().equals(string.trim())) {
+                return decodedBytes;
+            }
+            return null;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
     /**
      * Test whether encoded value's type is equal to expected type. The method also check whether encoded
      * sequence of bytes contains enough bytes to decode such value. The {@link IllegalKeychainAccessException}
@@ -22,16 +22,19 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import android.util.Base64;
 
+import java.util.Map;
 import java.util.Set;
 
 import io.getlime.security.powerauth.keychain.Keychain;
+import io.getlime.security.powerauth.keychain.KeychainTransaction;
+import io.getlime.security.powerauth.keychain.TransactionalKeychain;
 
 /**
  * The {@code LegacyKeychain} class implements {@link Keychain} interface with no content
  * encryption. The class is used on all devices that doesn't support KeyStore reliably
  * (e.g. on all systems older than Android "M".)
  */
-public class LegacyKeychain implements Keychain {
+public class LegacyKeychain implements TransactionalKeychain {
 
     private final String identifier;
     private final Context context;
@@ -92,6 +95,17 @@ public class LegacyKeychain implements Keychain {
                 .apply();
     }
 
+    @NonNull
+    @Override
+    public KeychainTransaction beginTransaction() {
+        return new KeychainTransactionImpl(new KeychainValueEncoder()) {
+            @Override
+            boolean commitChanges(@NonNull Map<String, byte[]> changes) {
+                return commitValues(valueEncoder, changes);
+            }
+        };
+    }
+
     @Nullable
     @Override
     public synchronized byte[] getData(@NonNull String key) {
@@ -207,6 +221,29 @@ public class LegacyKeychain implements Keychain {
         return context.getSharedPreferences(identifier, Context.MODE_PRIVATE);
     }
 
+    /**
+     * Put multiple values to the shared preferences at once, with a single editor.
+     *
+     * @param valueEncoder Encoder that helps with the values deserialization.
+     * @param values Map with encoded raw values. If value is null then the key is removed.
+     * @return {@code true} if all values were stored, {@code false} if no value was stored.
+     */
+    private synchronized boolean commitValues(@NonNull KeychainValueEncoder valueEncoder, @NonNull Map<String, byte[]> values) {
+        final SharedPreferences.Editor editor = getSharedPreferences().edit();
+        for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+            final byte[] value = entry.getValue();
+            if (value != null) {
+                if (!KeychainTransactionImpl.storeLegacyRawValue(valueEncoder, editor, entry.getKey(), value)) {
+                    return false;
+                }
+            } else {
+                editor.remove(entry.getKey());
+            }
+        }
+        editor.apply();
+        return true;
+    }
+
     /**
      * Return value stored in the shared preferences.
      *
@@ -32,7 +32,8 @@ class ReservedKeyImpl {
      */
     static boolean isReservedKey(@NonNull String key) {
         return key.equals(EncryptedKeychain.ENCRYPTED_KEYCHAIN_VERSION_KEY) ||
-                key.equals(EncryptedKeychain.ENCRYPTED_KEYCHAIN_MODE_KEY);
+                key.equals(EncryptedKeychain.ENCRYPTED_KEYCHAIN_MODE_KEY) ||
+                key.equals(EncryptedKeychain.ENCRYPTED_KEYCHAIN_DATA_KEY);
     }
 
     /**
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.keychain.impl;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.getlime.security.powerauth.keychain.IllegalKeychainAccessException;
+import io.getlime.security.powerauth.keychain.Keychain;
+import io.getlime.security.powerauth.keychain.KeychainTransaction;
+import io.getlime.security.powerauth.keychain.TransactionalKeychain;
+
+/**
+ * The {@code SequentialKeychainTransaction} class implements {@link KeychainTransaction} for
+ * {@link Keychain} implementations that don't support transactions. The collected changes are
+ * decoded and validated first, so the commit fails without modifying the keychain if one of the
+ * values is not valid. After that, the changes are applied one by one, in order of modification,
+ * so the keychain may contain only some of them if the application is terminated during the commit.
+ */
+public class SequentialKeychainTransaction extends KeychainTransactionImpl {
+
+    private final @NonNull Keychain keychain;
+
+    /**
+     * @param keychain Keychain that doesn't implement {@link TransactionalKeychain} interface.
+     */
+    public SequentialKeychainTransaction(@NonNull Keychain keychain) {
+        super(new KeychainValueEncoder());
+        this.keychain = keychain;
+    }
+
+    @Override
+    boolean commitChanges(@NonNull Map<String, byte[]> changes) {
+        // Decode all values first, so no change is applied if one of the values is not valid.
+        final List<DecodedChange> decodedChanges = new ArrayList<>(changes.size());
+        for (Map.Entry<String, byte[]> entry : changes.entrySet()) {
+            final String key = entry.getKey();
+            final byte[] rawValue = entry.getValue();
+            if (rawValue == null) {
+                decodedChanges.add(new DecodedChange(key, 0, null));
+                continue;
+            }
+            try {
+                final int valueType = valueEncoder.decodeValueType(rawValue);
+                final Object value;
+                switch (valueType) {
+                    case KeychainValueEncoder.TYPE_DATA:
+                        value = valueEncoder.decodeBytes(rawValue);
+                        break;
+                    case KeychainValueEncoder.TYPE_STRING:
+                        value = valueEncoder.decodeString(rawValue);
+                        break;
+                    case KeychainValueEncoder.TYPE_BOOLEAN:
+                        value = valueEncoder.decodeBoolean(rawValue);
+                        break;
+                    case KeychainValueEncoder.TYPE_LONG:
+                        value = valueEncoder.decodeLong(rawValue);
+                        break;
+                    case KeychainValueEncoder.TYPE_FLOAT:
+                        value = valueEncoder.decodeFloat(rawValue);
+                        break;
+                    case KeychainValueEncoder.TYPE_STRING_SET:
+                        value = valueEncoder.decodeStringSet(rawValue);
+                        break;
+                    default:
+                        return false;
+                }
+                decodedChanges.add(new DecodedChange(key, valueType, value));
+            } catch (IllegalKeychainAccessException e) {
+                // Failed to decode raw value
+                return false;
+            }
+        }
+        // Now apply the changes one by one.
+        for (DecodedChange change : decodedChanges) {
+            change.applyTo(keychain);
+        }
+        return true;
+    }
+
+    /**
+     * The {@code DecodedChange} class contains one decoded change, prepared for the commit.
+     */
+    private static class DecodedChange {
+
+        final @NonNull String key;
+        final int valueType;
+        final @Nullable Object value;
+
+        /**
+         * @param key Key to be modified.
+         * @param valueType Type of value, defined in {@link KeychainValueEncoder}.
+         * @param value Decoded value, or {@code null} if the key should be removed.
+         */
+        DecodedChange(@NonNull String key, int valueType, @Nullable Object value) {
+            this.key = key;
+            this.valueType = valueType;
+            this.value = value;
+        }
+
+        /**
+         * Apply this change to the keychain.
+         *
+         * @param keychain Keychain to be modified.
+         */
+        @SuppressWarnings("unchecked")
+        void applyTo(@NonNull Keychain keychain) {
+            if (value == null) {
+                keychain.remove(key);
+                return;
+            }
+            switch (valueType) {
+                case KeychainValueEncoder.TYPE_DATA:
+                    keychain.putData((byte[]) value, key);
+                    break;
+                case KeychainValueEncoder.TYPE_STRING:
+                    keychain.putString((String) value, key);
+                    break;
+                case KeychainValueEncoder.TYPE_BOOLEAN:
+                    keychain.putBoolean((Boolean) value, key);
+                    break;
+                case KeychainValueEncoder.TYPE_LONG:
+                    keychain.putLong((Long) value, key);
+                    break;
+                case KeychainValueEncoder.TYPE_FLOAT:
+                    keychain.putFloat((Float) value, key);
+                    break;
+                case KeychainValueEncoder.TYPE_STRING_SET:
+                    keychain.putStringSet((Set<String>) value, key);
+                    break;
+            }
+        }
+    }
+}
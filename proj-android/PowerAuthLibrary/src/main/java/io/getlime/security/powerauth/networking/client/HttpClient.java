@@ -27,6 +27,7 @@ import io.getlime.security.powerauth.networking.interfaces.IExecutorProvider;
 import io.getlime.security.powerauth.networking.interfaces.INetworkResponseListener;
 import io.getlime.security.powerauth.sdk.PowerAuthAuthentication;
 import io.getlime.security.powerauth.sdk.PowerAuthClientConfiguration;
+import io.getlime.security.powerauth.sdk.impl.ICallbackDispatcher;
 import io.getlime.security.powerauth.sdk.impl.IPrivateCryptoHelper;
 
 /**
@@ -42,19 +43,23 @@ public class HttpClient {
     private final @NonNull PowerAuthClientConfiguration configuration;
     private final @NonNull String baseUrl;
     private final @NonNull IExecutorProvider executorProvider;
+    private final @NonNull ICallbackDispatcher callbackDispatcher;
 
     /**
      * @param configuration HTTP client configuration
      * @param baseUrl String with base URL to PowerAuth Server REST API
      * @param executorProvider object providing serial or concurrent thread executors
+     * @param callbackDispatcher object dispatching results to response listeners
      */
     public HttpClient(
             @NonNull PowerAuthClientConfiguration configuration,
             @NonNull String baseUrl,
-            @NonNull IExecutorProvider executorProvider) {
+            @NonNull IExecutorProvider executorProvider,
+            @NonNull ICallbackDispatcher callbackDispatcher) {
         this.configuration = configuration;
         this.baseUrl = baseUrl;
         this.executorProvider = executorProvider;
+        this.callbackDispatcher = callbackDispatcher;
     }
 
     /**
@@ -79,6 +84,13 @@ public class HttpClient {
         return executorProvider;
     }
 
+    /**
+     * @return {@link ICallbackDispatcher} object assigned during the client initialization.
+     */
+    public @NonNull ICallbackDispatcher getCallbackDispatcher() {
+        return callbackDispatcher;
+    }
+
     /**
      * Posts a HTTP request with provided object to the REST endpoint.
      *
@@ -120,10 +132,10 @@ public class HttpClient {
             @NonNull INetworkResponseListener<TResponse> listener) {
 
         final HttpRequestHelper<TRequest, TResponse> request = new HttpRequestHelper<>(object, endpoint, authentication);
-        final HttpClientTask<TRequest, TResponse> task = new HttpClientTask<>(request, baseUrl, configuration, helper, listener);
+        final HttpClientTask<TRequest, TResponse> task = new HttpClientTask<>(request, baseUrl, configuration, helper, callbackDispatcher, listener);
 
         final Executor executor = endpoint.isSynchronized() ? executorProvider.getSerialExecutor() : executorProvider.getConcurrentExecutor();
-        task.executeOnExecutor(executor, null, null);
+        task.executeOnExecutor(executor);
         return task;
     }
 }
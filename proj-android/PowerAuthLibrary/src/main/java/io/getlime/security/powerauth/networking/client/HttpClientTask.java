@@ -17,21 +17,23 @@
 package io.getlime.security.powerauth.networking.client;
 
 import android.net.TrafficStats;
-import android.os.AsyncTask;
 import androidx.annotation.NonNull;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLException;
-import javax.net.ssl.SSLSocketFactory;
 
 import io.getlime.security.powerauth.ecies.EciesEncryptorId;
 import io.getlime.security.powerauth.networking.exceptions.FailedApiException;
@@ -39,16 +41,18 @@ import io.getlime.security.powerauth.networking.interceptors.HttpRequestIntercep
 import io.getlime.security.powerauth.networking.interfaces.ICancelable;
 import io.getlime.security.powerauth.networking.interfaces.IEndpointDefinition;
 import io.getlime.security.powerauth.networking.interfaces.INetworkResponseListener;
-import io.getlime.security.powerauth.networking.ssl.HttpClientValidationStrategy;
+import io.getlime.security.powerauth.networking.transport.HttpTransport;
 import io.getlime.security.powerauth.sdk.PowerAuthClientConfiguration;
+import io.getlime.security.powerauth.sdk.impl.ICallbackDispatcher;
 import io.getlime.security.powerauth.sdk.impl.IPrivateCryptoHelper;
 import io.getlime.security.powerauth.system.PowerAuthLog;
 
 /**
- * The {@code ClientTask} class implements an actual HTTP request & response processing, with using
- * {@link AsyncTask} infrastructure.
+ * The {@code ClientTask} class implements an actual HTTP request &amp; response processing. The task
+ * is executed on executor provided by {@link io.getlime.security.powerauth.networking.interfaces.IExecutorProvider}
+ * and its result is delivered to the listener via {@link ICallbackDispatcher}.
  */
-class HttpClientTask<TRequest, TResponse> extends AsyncTask<TRequest, Void, TResponse> implements ICancelable {
+class HttpClientTask<TRequest, TResponse> implements Callable<TResponse>, ICancelable {
 
     private static final int THREAD_STATS_TAG = 0x3456;
 
@@ -57,17 +61,25 @@ class HttpClientTask<TRequest, TResponse> extends AsyncTask<TRequest, Void, TRes
     private final IPrivateCryptoHelper cryptoHelper;
     private final INetworkResponseListener<TResponse> listener;
     private final PowerAuthClientConfiguration clientConfiguration;
+    private final HttpTransport httpTransport;
+    private final ICallbackDispatcher callbackDispatcher;
 
     /**
-     * If not null, then the task ended with an error.
+     * Future task wrapping this object.
      */
-    private Throwable error;
+    private final FutureTask<TResponse> future;
+
+    /**
+     * If not null, then the executor rejected the task.
+     */
+    private volatile RejectedExecutionException rejection;
 
     /**
      * @param httpRequestHelper request helper responsible for object serialization and deserialization
      * @param baseUrl base URL
      * @param clientConfiguration client configuration
      * @param cryptoHelper cryptographic helper
+     * @param callbackDispatcher dispatcher for the listener's callbacks
      * @param listener response listener
      */
     HttpClientTask(
@@ -75,42 +87,54 @@ class HttpClientTask<TRequest, TResponse> extends AsyncTask<TRequest, Void, TRes
             @NonNull String baseUrl,
             @NonNull PowerAuthClientConfiguration clientConfiguration,
             @NonNull IPrivateCryptoHelper cryptoHelper,
+            @NonNull ICallbackDispatcher callbackDispatcher,
             @NonNull INetworkResponseListener<TResponse> listener) {
         this.httpRequestHelper = httpRequestHelper;
         this.baseUrl = baseUrl;
         this.cryptoHelper = cryptoHelper;
         this.clientConfiguration = clientConfiguration;
+        this.httpTransport = clientConfiguration.getHttpTransport();
+        this.callbackDispatcher = callbackDispatcher;
         this.listener = listener;
+        this.future = new FutureTask<TResponse>(this) {
+            @Override
+            protected void done() {
+                onComplete();
+            }
+        };
     }
 
     /**
-     * Reads all bytes from an input stream.
+     * Schedule this task for execution on provided executor. If the executor rejects the task,
+     * then the listener is notified with {@link RejectedExecutionException}.
      *
-     * @param is input stream whose content will be converted
-     * @return String received from input stream
+     * @param executor executor to execute the task
      */
-    private byte[] loadBytesFromInputStream(InputStream is) throws IOException {
-        if (is == null) {
-            return null;
-        }
-        ByteArrayOutputStream result = new ByteArrayOutputStream();
-        byte[] buffer = new byte[1024];
-        int length;
-        while ((length = is.read(buffer)) != -1) {
-            result.write(buffer, 0, length);
-            if (isCancelled()) {
-                return null;
-            }
+    void executeOnExecutor(@NonNull Executor executor) {
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            rejection = e;
+            future.cancel(false);
         }
-        return result.toByteArray();
+    }
+
+    /**
+     * @return {@link Future} object representing the result of this task.
+     */
+    @NonNull
+    Future<TResponse> getFuture() {
+        return future;
     }
 
     @Override
-    protected TResponse doInBackground(TRequest... tRequests) {
+    public TResponse call() throws Exception {
         setThreadStatsTag();
 
         InputStream inputStream = null;
+        HttpResponseBody responseData = null;
         HttpURLConnection urlConnection = null;
+        boolean connectionReusable = false;
         try {
             if (isCancelled()) {
                 return null;
@@ -119,40 +143,31 @@ class HttpClientTask<TRequest, TResponse> extends AsyncTask<TRequest, Void, TRes
             // Prepare request data
             HttpRequestHelper.RequestData requestData = httpRequestHelper.buildRequest(baseUrl, cryptoHelper);
 
-            // Create an URL connection
-            urlConnection = (HttpURLConnection) requestData.url.openConnection();
-            final boolean securedUrlConnection = urlConnection instanceof HttpsURLConnection;
+            // Acquire an URL connection from the transport
+            if (!clientConfiguration.isUnsecuredConnectionAllowed() && !"https".equalsIgnoreCase(requestData.url.getProtocol())) {
+                throw new SSLException("Connection to non-TLS endpoint is not allowed.");
+            }
+            urlConnection = httpTransport.openConnection(requestData.url, clientConfiguration);
 
             // Setup the connection
             urlConnection.setRequestMethod(requestData.method);
             urlConnection.setDoOutput(true);
             urlConnection.setUseCaches(false);
-            urlConnection.setConnectTimeout(clientConfiguration.getConnectionTimeout());
-            urlConnection.setReadTimeout(clientConfiguration.getReadTimeout());
+            final HttpRequestBody requestBody = requestData.body;
+            if (requestBody != null) {
+                // Don't let the connection buffer the whole body. If the length is known, then
+                // use fixed-length streaming, otherwise send the body in chunks.
+                final long contentLength = requestBody.getContentLength();
+                if (contentLength != HttpRequestBody.UNKNOWN_LENGTH) {
+                    urlConnection.setFixedLengthStreamingMode(contentLength);
+                } else {
+                    urlConnection.setChunkedStreamingMode(0);
+                }
+            }
             for (Map.Entry<String, String> header : requestData.httpHeaders.entrySet()) {
                 urlConnection.setRequestProperty(header.getKey(), header.getValue());
             }
 
-            // ssl validation strategy
-            if (securedUrlConnection) {
-                final HttpClientValidationStrategy clientValidationStrategy = clientConfiguration.getClientValidationStrategy();
-                if (clientValidationStrategy != null) {
-                    final HttpsURLConnection sslConnection = (HttpsURLConnection) urlConnection;
-                    final SSLSocketFactory sslSocketFactory = clientValidationStrategy.getSSLSocketFactory();
-                    if (sslSocketFactory != null) {
-                        sslConnection.setSSLSocketFactory(sslSocketFactory);
-                    }
-                    final HostnameVerifier hostnameVerifier = clientValidationStrategy.getHostnameVerifier();
-                    if (hostnameVerifier != null) {
-                        sslConnection.setHostnameVerifier(hostnameVerifier);
-                    }
-                }
-            } else {
-                if (!clientConfiguration.isUnsecuredConnectionAllowed()) {
-                    throw new SSLException("Connection to non-TLS endpoint is not allowed.");
-                }
-            }
-
             // Apply request interceptors
             final List<HttpRequestInterceptor> requestInterceptors = clientConfiguration.getRequestInterceptors();
             if (requestInterceptors != null) {
@@ -161,11 +176,16 @@ class HttpClientTask<TRequest, TResponse> extends AsyncTask<TRequest, Void, TRes
                 }
             }
             // Log request
-            logRequest(urlConnection, requestData.body);
+            logRequest(urlConnection, requestBody);
 
             // Connect to endpoint
-            if (requestData.body != null) {
-                urlConnection.getOutputStream().write(requestData.body);
+            if (requestBody != null) {
+                final OutputStream outputStream = urlConnection.getOutputStream();
+                try {
+                    requestBody.writeTo(outputStream);
+                } finally {
+                    outputStream.close();
+                }
             }
             urlConnection.connect();
 
@@ -183,12 +203,17 @@ class HttpClientTask<TRequest, TResponse> extends AsyncTask<TRequest, Void, TRes
 
             // Get response bytes from input stream
             inputStream = responseOk ? urlConnection.getInputStream() : urlConnection.getErrorStream();
-            final byte[] responseData = loadBytesFromInputStream(inputStream);
+            if (inputStream != null) {
+                responseData = HttpResponseBody.read(inputStream, urlConnection.getContentLength(), clientConfiguration.getMaxResponseSize(), this);
+            }
 
             if (isCancelled()) {
                 return null;
             }
 
+            // Response is fully consumed, so the connection can be reused by the transport
+            connectionReusable = responseData != null;
+
             // Try to deserialize response
             TResponse result = httpRequestHelper.buildResponse(responseCode, responseData);
             // Log response
@@ -199,43 +224,90 @@ class HttpClientTask<TRequest, TResponse> extends AsyncTask<TRequest, Void, TRes
         } catch (Throwable e) {
             // Log response with error
             logResponse(urlConnection, null, e);
-            // Keep an exception for later reporting.
-            error = e;
+            // Re-throw the exception, so it's reported via future.
+            if (e instanceof Exception) {
+                throw (Exception) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            throw new ExecutionException(e);
 
         } finally {
-            // Close input stream and disconnect the URL connection
+            // Close input stream and release the URL connection back to the transport
             if (inputStream != null) {
                 try {
                     inputStream.close();
                 } catch (IOException e) {
+                    connectionReusable = false;
                 }
             }
             if (urlConnection != null) {
-                urlConnection.disconnect();
+                httpTransport.releaseConnection(urlConnection, connectionReusable);
+            }
+            // Return the response buffer back to the pool
+            if (responseData != null) {
+                responseData.recycle();
             }
         }
-        return null;
     }
 
-    @Override
-    protected void onCancelled() {
-        super.onCancelled();
-        listener.onCancel();
+    /**
+     * Called when the future task is completed, cancelled, or rejected. The method dispatches
+     * the result to the listener.
+     */
+    private void onComplete() {
+        final RejectedExecutionException rejectionError = rejection;
+        if (rejectionError != null) {
+            dispatchError(rejectionError);
+            return;
+        }
+        if (future.isCancelled()) {
+            callbackDispatcher.dispatchCallback(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onCancel();
+                }
+            });
+            return;
+        }
+        try {
+            final TResponse response = future.get();
+            callbackDispatcher.dispatchCallback(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onNetworkResponse(response);
+                }
+            });
+        } catch (ExecutionException e) {
+            dispatchError(e.getCause() != null ? e.getCause() : e);
+        } catch (InterruptedException e) {
+            dispatchError(e);
+        }
     }
 
-    @Override
-    protected void onPostExecute(TResponse response) {
-        super.onPostExecute(response);
-        if (error == null) {
-            listener.onNetworkResponse(response);
-        } else {
-            listener.onNetworkError(error);
-        }
+    /**
+     * Dispatch error to the listener.
+     *
+     * @param error error to report
+     */
+    private void dispatchError(@NonNull final Throwable error) {
+        callbackDispatcher.dispatchCallback(new Runnable() {
+            @Override
+            public void run() {
+                listener.onNetworkError(error);
+            }
+        });
     }
 
     @Override
     public void cancel() {
-        this.cancel(true);
+        future.cancel(true);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return future.isCancelled();
     }
 
     /**
@@ -253,9 +325,9 @@ class HttpClientTask<TRequest, TResponse> extends AsyncTask<TRequest, Void, TRes
      * Print information about HTTP request to {@link PowerAuthLog}.
      *
      * @param connection prepared connection object.
-     * @param requestData (optional) byte array with request data.
+     * @param requestBody (optional) request body.
      */
-    private void logRequest(HttpURLConnection connection, byte[] requestData) {
+    private void logRequest(HttpURLConnection connection, HttpRequestBody requestBody) {
         if (!PowerAuthLog.isEnabled()) {
             return;
         }
@@ -278,7 +350,7 @@ class HttpClientTask<TRequest, TResponse> extends AsyncTask<TRequest, Void, TRes
             if (encrypted) {
                 PowerAuthLog.d("HTTP %s request%s: %s\n- Headers: %s- Body: <encrypted>", method, signedEncrypted, url, propStr);
             } else {
-                final String bodyStr = requestData == null ? "<empty>" : new String(requestData, Charset.defaultCharset());
+                final String bodyStr = requestBody == null ? "<empty>" : new String(requestBody.toByteArrayForLog(), Charset.defaultCharset());
                 PowerAuthLog.d("HTTP %s request%s: %s\n- Headers: %s\n- Body: %s", method, signedEncrypted, url, propStr, bodyStr);
             }
         }
@@ -287,31 +359,30 @@ class HttpClientTask<TRequest, TResponse> extends AsyncTask<TRequest, Void, TRes
     /**
      * Prints information about HTTP response to {@link PowerAuthLog}.
      *
-     * @param connection connection object.
+     * @param connection connection object, or {@code null} if the request failed before the connection was opened.
      * @param responseData (optional) data returned in HTTP request.
      * @param error (optional) error produced during the request.
      */
-    private void logResponse(HttpURLConnection connection, byte[] responseData, Throwable error) {
+    private void logResponse(HttpURLConnection connection, HttpResponseBody responseData, Throwable error) {
         if (!PowerAuthLog.isEnabled()) {
             return;
         }
         // Endpoint
         final IEndpointDefinition<TResponse> endpoint = httpRequestHelper.getEndpoint();
-        // URL, method
-        final String url = connection.getURL().toString();
         final String method = endpoint.getHttpMethod();
         final String errorMessage;
         if (error != null) {
-            if (error instanceof FailedApiException) {
-                FailedApiException exception = (FailedApiException) error;
-                if (responseData == null && exception.getResponseBody() != null) {
-                    responseData = exception.getResponseBody().getBytes();
-                }
-            }
             errorMessage = error.getMessage() != null ? error.getMessage() : error.toString();
         } else {
             errorMessage = null;
         }
+        if (connection == null) {
+            // Request failed before the connection was opened, so there's no response to print.
+            PowerAuthLog.d("HTTP %s request failed: %s%s\n- Error: %s", method, baseUrl, endpoint.getRelativePath(), errorMessage);
+            return;
+        }
+        // URL
+        final String url = connection.getURL().toString();
         // Response code
         int responseCode;
         try {
@@ -331,7 +402,11 @@ class HttpClientTask<TRequest, TResponse> extends AsyncTask<TRequest, Void, TRes
             // Response headers
             final String responseHeaders = connection.getHeaderFields().toString();
             // Response body
-            final String responseBodyTmp = responseData == null ? "<empty>" : new String(responseData, Charset.defaultCharset());
+            String responseString = responseData == null ? null : responseData.toString();
+            if (responseString == null && error instanceof FailedApiException) {
+                responseString = ((FailedApiException) error).getResponseBody();
+            }
+            final String responseBodyTmp = responseString == null ? "<empty>" : responseString;
             final String responseBody;
             if (!encrypted || error != null) {
                 responseBody = responseBodyTmp;
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.networking.client;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The {@code HttpRequestBody} class represents a body of HTTP request. The body is either backed
+ * by an array of bytes with a known length, or by a request object that is serialized directly
+ * into the connection's output stream. The class is package-private.
+ */
+abstract class HttpRequestBody {
+
+    /**
+     * Constant returned from {@link #getContentLength()} when the length of body is not known in advance.
+     */
+    static final long UNKNOWN_LENGTH = -1;
+
+    /**
+     * @return Length of body in bytes, or {@link #UNKNOWN_LENGTH} if body is streamed and its
+     *         length is not known in advance.
+     */
+    abstract long getContentLength();
+
+    /**
+     * @return Bytes of the body if the body is backed by an array of bytes, or null for
+     *         the streamed body.
+     */
+    @Nullable
+    abstract byte[] getBytes();
+
+    /**
+     * Write the whole body into the provided output stream. The stream is not closed.
+     *
+     * @param outputStream Stream to write the body to.
+     * @throws IOException In case of write failure.
+     */
+    abstract void writeTo(@NonNull OutputStream outputStream) throws IOException;
+
+    /**
+     * Serialize the whole body into an array of bytes. The method is intended for debug logging only,
+     * because it may serialize the request object once again.
+     *
+     * @return Bytes of the body.
+     */
+    @NonNull
+    byte[] toByteArrayForLog() {
+        final byte[] bytes = getBytes();
+        if (bytes != null) {
+            return bytes;
+        }
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            writeTo(outputStream);
+        } catch (IOException e) {
+            // ByteArrayOutputStream doesn't throw
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Create a new request body backed by an array of bytes.
+     *
+     * @param bytes Body bytes.
+     * @return Request body with known length.
+     */
+    @NonNull
+    static HttpRequestBody fromBytes(@NonNull final byte[] bytes) {
+        return new HttpRequestBody() {
+            @Override
+            long getContentLength() {
+                return bytes.length;
+            }
+
+            @Nullable
+            @Override
+            byte[] getBytes() {
+                return bytes;
+            }
+
+            @Override
+            void writeTo(@NonNull OutputStream outputStream) throws IOException {
+                outputStream.write(bytes);
+            }
+        };
+    }
+
+    /**
+     * Create a new request body that serializes the request object wrapped in
+     * {@link io.getlime.core.rest.model.base.request.ObjectRequest} envelope directly
+     * into the output stream.
+     *
+     * @param serialization Serialization helper.
+     * @param requestObject Request object to serialize.
+     * @param <TRequest> Type of request object.
+     * @return Streamed request body with unknown length.
+     */
+    @NonNull
+    static <TRequest> HttpRequestBody fromRequestObject(@NonNull final JsonSerialization serialization, @NonNull final TRequest requestObject) {
+        return new HttpRequestBody() {
+            @Override
+            long getContentLength() {
+                return UNKNOWN_LENGTH;
+            }
+
+            @Nullable
+            @Override
+            byte[] getBytes() {
+                return null;
+            }
+
+            @Override
+            void writeTo(@NonNull OutputStream outputStream) throws IOException {
+                serialization.serializeRequestObject(requestObject, outputStream);
+            }
+        };
+    }
+}
@@ -24,6 +24,9 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
@@ -119,9 +122,10 @@ class HttpRequestHelper<TRequest, TResponse> {
          */
         final @NonNull Map<String, String> httpHeaders;
         /**
-         * HTTP request body. May contain an empty array of bytes.
+         * HTTP request body. The body is either backed by an array of bytes, or streamed directly
+         * into the connection.
          */
-        final @Nullable byte[] body;
+        final @Nullable HttpRequestBody body;
 
         /**
          * @param url full URL
@@ -133,7 +137,7 @@ class HttpRequestHelper<TRequest, TResponse> {
                 @NonNull URL url,
                 @NonNull String method,
                 @NonNull Map<String, String> httpHeaders,
-                @Nullable byte[] body) {
+                @Nullable HttpRequestBody body) {
             this.url = url;
             this.method = method;
             this.httpHeaders = httpHeaders;
@@ -174,7 +178,14 @@ class HttpRequestHelper<TRequest, TResponse> {
         if (!needsEncryption) {
             // No data encryption
             encryptor = null;
-            requestData = serialization.serializeRequestObject(requestObject);
+            if (needsSignature || requestObject == null) {
+                // The signature is calculated from the whole body, so serialize the object into bytes.
+                // The same bytes are later sent to the server.
+                requestData = serialization.serializeRequestObject(requestObject);
+            } else {
+                // Body will be serialized directly into the connection.
+                requestData = null;
+            }
         } else {
             // Acquire the encryptor from the helper and keep it locally.
             // We will use it later for the response decryption.
@@ -210,8 +221,16 @@ class HttpRequestHelper<TRequest, TResponse> {
         requestHeaders.put("Content-Type", "application/json");
         requestHeaders.put("Accept", "application/json");
 
+        // Prepare body. If request data is not available, then the request object is streamed.
+        final HttpRequestBody requestBody;
+        if (requestData != null) {
+            requestBody = HttpRequestBody.fromBytes(requestData);
+        } else {
+            requestBody = HttpRequestBody.fromRequestObject(serialization, requestObject);
+        }
+
         // Return object with all information prepared for request processing.
-        return new RequestData(requestUrl, requestMethod, requestHeaders, requestData);
+        return new RequestData(requestUrl, requestMethod, requestHeaders, requestBody);
     }
 
 
@@ -220,12 +239,12 @@ class HttpRequestHelper<TRequest, TResponse> {
      * {@link ErrorResponseApiException} or {@link PowerAuthErrorException} exceptions.
      *
      * @param responseCode HTTP response status code
-     * @param responseData Response bytes
+     * @param responseData Response body
      * @return object created from response bytes
      * @throws Throwable if a deserialization, or decryption error occured.
      */
     @Nullable
-    TResponse buildResponse(int responseCode, @Nullable byte[] responseData) throws Throwable {
+    TResponse buildResponse(int responseCode, @Nullable HttpResponseBody responseData) throws Throwable {
 
         if (responseCode != 200) {
             // Non-200 response, throw an error
@@ -250,24 +269,29 @@ class HttpRequestHelper<TRequest, TResponse> {
      * to process a success response object.
      *
      * @param responseCode HTTP response status code
-     * @param responseData Response bytes
+     * @param responseData Response body
      * @return Response object, or null if response object is not specified.
      * @throws Throwable if object cannot be constructed.
      */
     @Nullable
-    private TResponse buildResponseObject(int responseCode, @Nullable byte[] responseData) throws Throwable {
+    private TResponse buildResponseObject(int responseCode, @Nullable HttpResponseBody responseData) throws Throwable {
 
-        final byte[] objectData;
+        if (responseData == null || responseData.length() == 0) {
+            throw new JsonParseException("Empty response received.");
+        }
+
+        final Reader objectData;
         final boolean unwrapResponse;
 
         if (encryptor != null) {
             // Encrypted response. The expected object is never wrapper in ObjectResponse<T>
             unwrapResponse = false;
-            objectData = serialization.decryptData(responseData, encryptor);
+            final byte[] plainData = serialization.decryptData(responseData.openReader(), encryptor);
+            objectData = new InputStreamReader(new ByteArrayInputStream(plainData), Charset.defaultCharset());
         } else {
             // Regular response. It's always wrapped in ObjectResponse<T>
             unwrapResponse = true;
-            objectData = responseData;
+            objectData = responseData.openReader();
         }
 
         // So far so good, we can continue with an object deserialization.
@@ -275,23 +299,16 @@ class HttpRequestHelper<TRequest, TResponse> {
 
         if (unwrapResponse) {
             // Response object is wrapped in ObjectResponse<T> envelope.
-            // At first, try to deserialize JSON
-            final JsonObject jsonRoot = serialization.parseResponseObject(objectData);
+            // Decode the envelope and the response object in one pass.
+            final ObjectResponseDecoder<TResponse> decoder = new ObjectResponseDecoder<>(serialization.getGson(), endpoint.getResponseType());
+            final ObjectResponseDecoder.Result<TResponse> envelope = decoder.decode(objectData);
 
             // Check "status" property in received JSON
-            final JsonElement status = jsonRoot.get("status");
-            if (status == null || !status.isJsonPrimitive() || !status.getAsString().equalsIgnoreCase("OK")) {
-                throw buildResponseException(responseCode, responseData, jsonRoot, null);
+            if (!envelope.isOk) {
+                throw buildResponseException(responseCode, responseData, envelope.jsonRoot, null);
             }
             if (endpoint.getResponseType() != null) {
-                // Check "responseObject" property, but only if response type is specified
-                final JsonElement responseObjectElement = jsonRoot.get("responseObject");
-                if (responseObjectElement != null && responseObjectElement.isJsonObject()) {
-                    // Now finally, try to deserialize the response object
-                    result = serialization.getGson().fromJson(responseObjectElement, endpoint.getResponseType().getType());
-                } else {
-                    result = null;
-                }
+                result = envelope.responseObject;
                 // Check if object was created and if not, then throw an exception.
                 if (result == null) {
                     throw new JsonParseException("Failed to deserialize response object.");
@@ -322,18 +339,18 @@ class HttpRequestHelper<TRequest, TResponse> {
      * on data received from the server. The method is package-private.
      *
      * @param responseCode HTTP response code
-     * @param responseData Response bytes
+     * @param responseData Response body
      * @param jsonRoot Optional JSON representation. If object is not available, then the function will try to parse
      * @param exception Optional exception. If provided, then its message will be used as a fallback.
      * @return {@link Throwable} object with an appropriate exception.
      */
     @NonNull
-    private Throwable buildResponseException(int responseCode, @Nullable byte[] responseData, @Nullable JsonObject jsonRoot, @Nullable Throwable exception) {
+    private Throwable buildResponseException(int responseCode, @Nullable HttpResponseBody responseData, @Nullable JsonObject jsonRoot, @Nullable Throwable exception) {
 
         // Convert bytes into String
         final String responseString;
         if (responseData != null) {
-            responseString = new String(responseData, Charset.defaultCharset());
+            responseString = responseData.toString();
         } else {
             responseString = null;
         }
@@ -341,7 +358,10 @@ class HttpRequestHelper<TRequest, TResponse> {
         if (jsonRoot == null) {
             // Try to parse bytes into JSON representation
             try {
-                jsonRoot = serialization.parseResponseObject(responseData);
+                if (responseData == null || responseData.length() == 0) {
+                    throw new JsonParseException("Empty response received.");
+                }
+                jsonRoot = serialization.parseResponseObject(responseData.openReader());
             } catch (JsonParseException e) {
                 exception = e;
             }
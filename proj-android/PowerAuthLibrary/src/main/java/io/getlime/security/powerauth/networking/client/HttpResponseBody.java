@@ -0,0 +1,205 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.networking.client;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import io.getlime.security.powerauth.exception.PowerAuthErrorCodes;
+import io.getlime.security.powerauth.exception.PowerAuthErrorException;
+import io.getlime.security.powerauth.networking.interfaces.ICancelable;
+
+/**
+ * The {@code HttpResponseBody} class keeps bytes of HTTP response body in a buffer borrowed
+ * from a small pool shared by all requests. The body is read incrementally from the connection's
+ * input stream and its size is limited, so a misbehaving server or proxy cannot exhaust the memory.
+ * <p>
+ * The object must be recycled by calling {@link #recycle()} once the response is processed.
+ * The class is package-private.
+ */
+class HttpResponseBody {
+
+    /**
+     * Size of buffer kept in the pool. Larger responses use a temporary buffer.
+     */
+    static final int POOLED_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Maximum number of buffers kept in the pool.
+     */
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    /**
+     * Pool of reusable buffers.
+     */
+    private static final ArrayDeque<byte[]> bufferPool = new ArrayDeque<>(MAX_POOLED_BUFFERS);
+
+    private byte[] buffer;
+    private int length;
+
+    /**
+     * @param buffer Initial buffer.
+     */
+    private HttpResponseBody(@NonNull byte[] buffer) {
+        this.buffer = buffer;
+        this.length = 0;
+    }
+
+    /**
+     * Read the whole content of input stream into a new response body.
+     *
+     * @param inputStream Stream to read.
+     * @param expectedLength Expected length of body, or -1 if length is not known.
+     * @param maxLength Maximum allowed length of body.
+     * @param cancelable Object to check whether the operation is cancelled.
+     * @return Response body, or null if the operation was cancelled.
+     * @throws IOException In case of read failure.
+     * @throws PowerAuthErrorException In case that response is larger than allowed.
+     */
+    @Nullable
+    static HttpResponseBody read(@NonNull InputStream inputStream, long expectedLength, int maxLength, @NonNull ICancelable cancelable) throws IOException, PowerAuthErrorException {
+        if (expectedLength > maxLength) {
+            throw createTooLargeException(maxLength);
+        }
+        final HttpResponseBody body = new HttpResponseBody(acquireBuffer(expectedLength));
+        boolean success = false;
+        try {
+            int count;
+            while ((count = inputStream.read(body.buffer, body.length, body.buffer.length - body.length)) != -1) {
+                body.length += count;
+                if (cancelable.isCancelled()) {
+                    return null;
+                }
+                if (body.length > maxLength) {
+                    throw createTooLargeException(maxLength);
+                }
+                if (body.length == body.buffer.length) {
+                    // Buffer is full, so grow it, up to the maximum length.
+                    if (body.length >= maxLength) {
+                        if (inputStream.read() == -1) {
+                            break;
+                        }
+                        throw createTooLargeException(maxLength);
+                    }
+                    final int newLength = (int) Math.min((long) body.buffer.length * 2, maxLength);
+                    body.buffer = Arrays.copyOf(body.buffer, newLength);
+                }
+            }
+            success = true;
+            return body;
+        } finally {
+            if (!success) {
+                body.recycle();
+            }
+        }
+    }
+
+    /**
+     * @return Number of bytes in the body.
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * @return New input stream reading the body's bytes.
+     */
+    @NonNull
+    InputStream openStream() {
+        return new ByteArrayInputStream(buffer, 0, length);
+    }
+
+    /**
+     * @return New reader reading the body's bytes, decoded with default charset.
+     */
+    @NonNull
+    Reader openReader() {
+        return new InputStreamReader(openStream(), Charset.defaultCharset());
+    }
+
+    /**
+     * @return Copy of body's bytes.
+     */
+    @NonNull
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * @return Body's bytes converted to string with default charset.
+     */
+    @NonNull
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length, Charset.defaultCharset());
+    }
+
+    /**
+     * Return the buffer back to the pool. The object must not be used after this call.
+     */
+    void recycle() {
+        final byte[] bufferToRecycle = buffer;
+        buffer = null;
+        length = 0;
+        if (bufferToRecycle != null && bufferToRecycle.length == POOLED_BUFFER_SIZE) {
+            synchronized (bufferPool) {
+                if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+                    bufferPool.push(bufferToRecycle);
+                }
+            }
+        }
+    }
+
+    /**
+     * Acquire buffer for a response with expected length.
+     *
+     * @param expectedLength Expected length of response, or -1 if length is not known.
+     * @return Buffer from the pool, or a new buffer if the expected length is larger than the pooled buffer.
+     */
+    @NonNull
+    private static byte[] acquireBuffer(long expectedLength) {
+        if (expectedLength > POOLED_BUFFER_SIZE) {
+            // +1 byte allows detecting the end of stream without growing the buffer.
+            return new byte[(int) Math.min(expectedLength + 1, Integer.MAX_VALUE)];
+        }
+        synchronized (bufferPool) {
+            final byte[] pooledBuffer = bufferPool.poll();
+            if (pooledBuffer != null) {
+                return pooledBuffer;
+            }
+        }
+        return new byte[POOLED_BUFFER_SIZE];
+    }
+
+    /**
+     * @param maxLength Maximum allowed length of body.
+     * @return Exception reporting that response is too large.
+     */
+    @NonNull
+    private static PowerAuthErrorException createTooLargeException(int maxLength) {
+        return new PowerAuthErrorException(PowerAuthErrorCodes.NETWORK_ERROR, "Response body exceeds the maximum allowed size of " + maxLength + " bytes.");
+    }
+}
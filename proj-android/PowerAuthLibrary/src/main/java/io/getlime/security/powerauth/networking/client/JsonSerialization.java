@@ -22,14 +22,21 @@ import androidx.annotation.Nullable;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.nio.charset.Charset;
 
-import io.getlime.core.rest.model.base.request.ObjectRequest;
 import io.getlime.security.powerauth.core.EciesCryptogram;
 import io.getlime.security.powerauth.core.EciesEncryptor;
 import io.getlime.security.powerauth.exception.PowerAuthErrorCodes;
@@ -44,19 +51,19 @@ import io.getlime.security.powerauth.networking.model.response.EciesEncryptedRes
 public class JsonSerialization {
 
     /**
-     * Private instance of {@link Gson} object.
+     * Name of property containing the request object in the request envelope.
      */
-    private Gson gson;
+    private static final String REQUEST_OBJECT = "requestObject";
 
     /**
-     * Private instance of {@link JsonParser}.
+     * Constant representing an empty object, serialized to JSON (e.g. empty curly brackets, {@code {}})
      */
-    private JsonParser parser;
+    private static final byte[] EMPTY_OBJECT_BYTES = { 0x7B, 0x7D };
 
     /**
-     * Constant representing an empty object, serialized to JSON (e.g. empty curly brackets, {@code {}})
+     * Initial capacity of buffer used for object serialization into sequence of bytes.
      */
-    private static final byte[] EMPTY_OBJECT_BYTES = { 0x7B, 0x7D };
+    private static final int INITIAL_BUFFER_SIZE = 512;
 
 
     public JsonSerialization() {
@@ -75,13 +82,30 @@ public class JsonSerialization {
     @NonNull
     public <TRequest> byte[] serializeObject(@Nullable TRequest object) {
         if (object != null) {
-            final String jsonString = getGson().toJson(object);
-            return jsonString.getBytes(Charset.defaultCharset());
+            return writeJsonToBytes(object, false);
         }
         return EMPTY_OBJECT_BYTES;
     }
 
 
+    /**
+     * Serializes object as is, directly into provided output stream in JSON format. If object parameter
+     * is null, then empty curly brackets are written. The output stream is not closed.
+     *
+     * @param object object to serialize
+     * @param outputStream stream to write JSON representation of object
+     * @param <TRequest> type of object, to serialize
+     * @throws IOException in case of write failure
+     */
+    public <TRequest> void serializeObject(@Nullable TRequest object, @NonNull OutputStream outputStream) throws IOException {
+        if (object != null) {
+            writeJson(object, false, outputStream);
+        } else {
+            outputStream.write(EMPTY_OBJECT_BYTES);
+        }
+    }
+
+
     /**
      * Deserialize object from from sequence of bytes in JSON format.
      *
@@ -104,11 +128,30 @@ public class JsonSerialization {
     }
 
 
+    /**
+     * Deserialize object from JSON data provided by a reader. Unlike {@link #deserializeObject(byte[], TypeToken)},
+     * this method doesn't create an intermediate {@code String} with the whole JSON document.
+     *
+     * @param reader reader providing JSON data
+     * @param type {@link TypeToken} for object to be deserialized.
+     * @param <TResponse> type of object to be deserialized.
+     * @return deserialized object
+     */
+    @NonNull
+    public <TResponse> TResponse deserializeObject(@NonNull Reader reader, @NonNull TypeToken<TResponse> type) throws JsonParseException {
+        final TResponse object = getGson().fromJson(reader, type.getType());
+        if (object != null) {
+            return object;
+        }
+        throw new JsonParseException("Failed to deserialize object.");
+    }
+
+
     // Request object
 
     /**
      * Serializes object into sequence of bytes in JSON format. Unlike {@link #serializeObject(Object)},
-     * this method wraps the provided object into {@link ObjectRequest} request envelope,
+     * this method wraps the provided object into {@code ObjectRequest} request envelope,
      * before the serialization.
      *
      * If object parameter is null, then empty curly brackets are returned.
@@ -120,14 +163,81 @@ public class JsonSerialization {
     @NonNull
     public <TRequest> byte[] serializeRequestObject(@Nullable TRequest object) {
         if (object != null) {
-            ObjectRequest<TRequest> request = new ObjectRequest<>(object);
-            final String jsonString = getGson().toJson(request);
-            return jsonString.getBytes(Charset.defaultCharset());
+            return writeJsonToBytes(object, true);
         }
         return EMPTY_OBJECT_BYTES;
     }
 
 
+    /**
+     * Serializes object directly into provided output stream in JSON format. Unlike
+     * {@link #serializeObject(Object, OutputStream)}, this method wraps the provided object into
+     * {@code ObjectRequest} request envelope, before the serialization. The output stream is not closed.
+     *
+     * If object parameter is null, then empty curly brackets are written.
+     *
+     * @param object object to serialize
+     * @param outputStream stream to write JSON representation of object
+     * @param <TRequest> type of object, to serialize
+     * @throws IOException in case of write failure
+     */
+    public <TRequest> void serializeRequestObject(@Nullable TRequest object, @NonNull OutputStream outputStream) throws IOException {
+        if (object != null) {
+            writeJson(object, true, outputStream);
+        } else {
+            outputStream.write(EMPTY_OBJECT_BYTES);
+        }
+    }
+
+
+    /**
+     * Write JSON representation of object into the output stream, without creating an intermediate
+     * {@code String}. The output stream is flushed, but not closed.
+     *
+     * @param object object to serialize
+     * @param wrapInRequestEnvelope if true, then the object is wrapped in {@code ObjectRequest} envelope
+     * @param outputStream stream to write JSON representation of object
+     * @throws IOException in case of write failure
+     */
+    private void writeJson(@NonNull Object object, boolean wrapInRequestEnvelope, @NonNull OutputStream outputStream) throws IOException {
+        final Gson gson = getGson();
+        @SuppressWarnings("unchecked")
+        final TypeAdapter<Object> adapter = (TypeAdapter<Object>) gson.getAdapter(object.getClass());
+        final JsonWriter writer = gson.newJsonWriter(new OutputStreamWriter(outputStream, Charset.defaultCharset()));
+        writer.setLenient(true);
+        if (wrapInRequestEnvelope) {
+            // Envelope is written directly, so ObjectRequest class doesn't need to be serialized with reflection.
+            writer.beginObject();
+            writer.name(REQUEST_OBJECT);
+            adapter.write(writer, object);
+            writer.endObject();
+        } else {
+            adapter.write(writer, object);
+        }
+        writer.flush();
+    }
+
+
+    /**
+     * Serialize object into sequence of bytes in JSON format, without creating an intermediate {@code String}.
+     *
+     * @param object object to serialize
+     * @param wrapInRequestEnvelope if true, then the object is wrapped in {@code ObjectRequest} envelope
+     * @return JSON representation of object
+     */
+    @NonNull
+    private byte[] writeJsonToBytes(@NonNull Object object, boolean wrapInRequestEnvelope) {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        try {
+            writeJson(object, wrapInRequestEnvelope, outputStream);
+        } catch (IOException e) {
+            // ByteArrayOutputStream never throws, but keep the compiler happy.
+            throw new JsonIOException(e);
+        }
+        return outputStream.toByteArray();
+    }
+
+
     /**
      * Parse bytes in JSON format.
      *
@@ -149,6 +259,24 @@ public class JsonSerialization {
     }
 
 
+    /**
+     * Parse JSON data provided by a reader. Unlike {@link #parseResponseObject(byte[])}, this method
+     * doesn't create an intermediate {@code String} with the whole JSON document.
+     *
+     * @param reader reader providing JSON data
+     * @return {@link JsonObject} in case that provided JSON's root element is object.
+     * @throws JsonParseException if JSON is invalid
+     */
+    @NonNull
+    public JsonObject parseResponseObject(@NonNull Reader reader) throws JsonParseException {
+        final JsonElement jsonRoot = getParser().parse(reader);
+        if (!jsonRoot.isJsonObject()) {
+            throw new JsonParseException("Unexpected type of JSON data.");
+        }
+        return jsonRoot.getAsJsonObject();
+    }
+
+
     // ECIES encrypt & decrypt
 
     /**
@@ -179,9 +307,41 @@ public class JsonSerialization {
     public byte[] decryptData(@Nullable byte[] data, @NonNull EciesEncryptor decryptor) throws PowerAuthErrorException {
         // 1. Deserialize bytes into response object
         final EciesEncryptedResponse response = deserializeObject(data, TypeToken.get(EciesEncryptedResponse.class));
-        // 2. Construct cryptogam with data & mac (response doesn't contain ephemeral key)
+        // 2. Decrypt the response
+        return decryptData(response, decryptor);
+    }
+
+
+    /**
+     * Decrypt standard JSON formatted ECIES response, provided by a reader, into bytes.
+     *
+     * @param reader reader providing JSON formatted ECIES response
+     * @param decryptor the ECIES decryptor
+     * @return decrypted sequence of bytes
+     * @throws PowerAuthErrorException if decryption fails.
+     */
+    @NonNull
+    public byte[] decryptData(@NonNull Reader reader, @NonNull EciesEncryptor decryptor) throws PowerAuthErrorException {
+        // 1. Deserialize JSON into response object
+        final EciesEncryptedResponse response = deserializeObject(reader, TypeToken.get(EciesEncryptedResponse.class));
+        // 2. Decrypt the response
+        return decryptData(response, decryptor);
+    }
+
+
+    /**
+     * Decrypt {@link EciesEncryptedResponse} object into bytes.
+     *
+     * @param response encrypted response
+     * @param decryptor the ECIES decryptor
+     * @return decrypted sequence of bytes
+     * @throws PowerAuthErrorException if decryption fails.
+     */
+    @NonNull
+    private byte[] decryptData(@NonNull EciesEncryptedResponse response, @NonNull EciesEncryptor decryptor) throws PowerAuthErrorException {
+        // 1. Construct cryptogam with data & mac (response doesn't contain ephemeral key)
         final EciesCryptogram cryptogram = new EciesCryptogram(response.getEncryptedData(), response.getMac());
-        // 3. Decrypt the response
+        // 2. Decrypt the response
         final byte[] plainData = decryptor.decryptResponse(cryptogram);
         if (plainData == null) {
             throw new PowerAuthErrorException(PowerAuthErrorCodes.ENCRYPTION_ERROR, "Failed to decrypt object data.");
@@ -266,28 +426,35 @@ public class JsonSerialization {
         return deserializeObject(plainData, type);
     }
 
-    // Lazy initialized GSON & JsonParser
+    // Shared GSON & JsonParser
 
     /**
-     * @return Lazy initialized instance of {@link Gson} object.
+     * The {@code SharedContext} nested class holds {@link Gson} and {@link JsonParser} instances shared
+     * by all {@link JsonSerialization} objects. The instances are created lazily, when the class is
+     * accessed for the first time. Gson caches type adapters per instance, so sharing the instance
+     * avoids the adapter lookup for each request.
+     */
+    private static class SharedContext {
+        static final Gson GSON = new GsonBuilder()
+                .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+                .create();
+        static final JsonParser PARSER = new JsonParser();
+    }
+
+    /**
+     * @return Shared instance of {@link Gson} object.
      */
     @NonNull
     public Gson getGson() {
-        if (gson == null) {
-            gson = new GsonBuilder().create();
-        }
-        return gson;
+        return SharedContext.GSON;
     }
 
     /**
-     * @return Lazy initialized instance of {@link JsonParser} object.
+     * @return Shared instance of {@link JsonParser} object.
      */
     @NonNull
     public JsonParser getParser() {
-        if (parser == null) {
-            parser = new JsonParser();
-        }
-        return parser;
+        return SharedContext.PARSER;
     }
 
 }
@@ -0,0 +1,1019 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.networking.client;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.getlime.security.powerauth.networking.model.entity.ActivationRecovery;
+import io.getlime.security.powerauth.networking.model.entity.ActivationType;
+import io.getlime.security.powerauth.networking.model.entity.TokenResponsePayload;
+import io.getlime.security.powerauth.networking.model.request.ActivationLayer1Request;
+import io.getlime.security.powerauth.networking.model.request.ActivationLayer2Request;
+import io.getlime.security.powerauth.networking.model.request.ActivationStatusRequest;
+import io.getlime.security.powerauth.networking.model.request.ConfirmRecoveryRequestPayload;
+import io.getlime.security.powerauth.networking.model.request.EciesEncryptedRequest;
+import io.getlime.security.powerauth.networking.model.request.TokenRemoveRequest;
+import io.getlime.security.powerauth.networking.model.request.ValidateSignatureRequest;
+import io.getlime.security.powerauth.networking.model.request.VaultUnlockRequestPayload;
+import io.getlime.security.powerauth.networking.model.response.ActivationLayer1Response;
+import io.getlime.security.powerauth.networking.model.response.ActivationLayer2Response;
+import io.getlime.security.powerauth.networking.model.response.ActivationRemoveResponse;
+import io.getlime.security.powerauth.networking.model.response.ActivationStatusResponse;
+import io.getlime.security.powerauth.networking.model.response.ConfirmRecoveryResponsePayload;
+import io.getlime.security.powerauth.networking.model.response.EciesEncryptedResponse;
+import io.getlime.security.powerauth.networking.model.response.TokenRemoveResponse;
+import io.getlime.security.powerauth.networking.model.response.UpgradeResponsePayload;
+import io.getlime.security.powerauth.networking.model.response.VaultUnlockResponsePayload;
+
+/**
+ * The {@code ModelTypeAdapterFactory} provides hand-written {@link TypeAdapter}s for all classes from
+ * {@code io.getlime.security.powerauth.networking.model} package. The adapters don't use reflection,
+ * so the adapter lookup is cheap and the model classes don't need to be kept when the application
+ * is minified. The JSON produced by the adapters is the same as the JSON produced by Gson's default
+ * reflective adapters. The class is package-private.
+ */
+class ModelTypeAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        final Class<? super T> rawType = type.getRawType();
+        if (rawType == ActivationRecovery.class) {
+            return (TypeAdapter<T>) new ActivationRecoveryAdapter(gson);
+        } else if (rawType == TokenResponsePayload.class) {
+            return (TypeAdapter<T>) new TokenResponsePayloadAdapter(gson);
+        } else if (rawType == ActivationLayer1Request.class) {
+            return (TypeAdapter<T>) new ActivationLayer1RequestAdapter(gson);
+        } else if (rawType == ActivationLayer2Request.class) {
+            return (TypeAdapter<T>) new ActivationLayer2RequestAdapter(gson);
+        } else if (rawType == ActivationStatusRequest.class) {
+            return (TypeAdapter<T>) new ActivationStatusRequestAdapter(gson);
+        } else if (rawType == ConfirmRecoveryRequestPayload.class) {
+            return (TypeAdapter<T>) new ConfirmRecoveryRequestPayloadAdapter(gson);
+        } else if (rawType == EciesEncryptedRequest.class) {
+            return (TypeAdapter<T>) new EciesEncryptedRequestAdapter(gson);
+        } else if (rawType == TokenRemoveRequest.class) {
+            return (TypeAdapter<T>) new TokenRemoveRequestAdapter(gson);
+        } else if (rawType == ValidateSignatureRequest.class) {
+            return (TypeAdapter<T>) new ValidateSignatureRequestAdapter(gson);
+        } else if (rawType == VaultUnlockRequestPayload.class) {
+            return (TypeAdapter<T>) new VaultUnlockRequestPayloadAdapter(gson);
+        } else if (rawType == ActivationLayer1Response.class) {
+            return (TypeAdapter<T>) new ActivationLayer1ResponseAdapter(gson);
+        } else if (rawType == ActivationLayer2Response.class) {
+            return (TypeAdapter<T>) new ActivationLayer2ResponseAdapter(gson);
+        } else if (rawType == ActivationRemoveResponse.class) {
+            return (TypeAdapter<T>) new ActivationRemoveResponseAdapter(gson);
+        } else if (rawType == ActivationStatusResponse.class) {
+            return (TypeAdapter<T>) new ActivationStatusResponseAdapter(gson);
+        } else if (rawType == ConfirmRecoveryResponsePayload.class) {
+            return (TypeAdapter<T>) new ConfirmRecoveryResponsePayloadAdapter(gson);
+        } else if (rawType == EciesEncryptedResponse.class) {
+            return (TypeAdapter<T>) new EciesEncryptedResponseAdapter(gson);
+        } else if (rawType == TokenRemoveResponse.class) {
+            return (TypeAdapter<T>) new TokenRemoveResponseAdapter(gson);
+        } else if (rawType == UpgradeResponsePayload.class) {
+            return (TypeAdapter<T>) new UpgradeResponsePayloadAdapter(gson);
+        } else if (rawType == VaultUnlockResponsePayload.class) {
+            return (TypeAdapter<T>) new VaultUnlockResponsePayloadAdapter(gson);
+        } else if (rawType == ActivationType.class) {
+            return (TypeAdapter<T>) new ActivationTypeAdapter();
+        }
+        return null;
+    }
+
+    // Base adapter
+
+    /**
+     * The {@code ModelAdapter} class implements a common skeleton for adapters that serialize
+     * a model object into JSON object.
+     *
+     * @param <T> Type of model object.
+     */
+    private static abstract class ModelAdapter<T> extends TypeAdapter<T> {
+
+        @Override
+        public final void write(JsonWriter out, T value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            writeProperties(out, value);
+            out.endObject();
+        }
+
+        @Override
+        public final T read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            final T value = newInstance();
+            in.beginObject();
+            while (in.hasNext()) {
+                if (!readProperty(in, in.nextName(), value)) {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+
+        /**
+         * @return New instance of model object.
+         */
+        @NonNull
+        abstract T newInstance();
+
+        /**
+         * Write all properties of model object. Null values are handled by the writer.
+         *
+         * @param out JSON writer.
+         * @param value Model object.
+         * @throws IOException In case of write failure.
+         */
+        abstract void writeProperties(@NonNull JsonWriter out, @NonNull T value) throws IOException;
+
+        /**
+         * Read one property into the model object.
+         *
+         * @param in JSON reader positioned at property's value.
+         * @param name Name of the property.
+         * @param value Model object.
+         * @return true if property was consumed, false if it's unknown and must be skipped.
+         * @throws IOException In case of read failure.
+         */
+        abstract boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull T value) throws IOException;
+    }
+
+    // Value helpers
+
+    /**
+     * Read string value. Like Gson's default adapter, the function accepts also numbers and booleans.
+     *
+     * @param in JSON reader.
+     * @return String value, or null.
+     * @throws IOException In case of read failure.
+     */
+    @Nullable
+    private static String readString(@NonNull JsonReader in) throws IOException {
+        final JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+
+    /**
+     * Read boolean value. Like Gson's default adapter, the function accepts also strings.
+     *
+     * @param in JSON reader.
+     * @param defaultValue Value returned for JSON null.
+     * @return Boolean value.
+     * @throws IOException In case of read failure.
+     */
+    private static boolean readBoolean(@NonNull JsonReader in, boolean defaultValue) throws IOException {
+        final JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return defaultValue;
+        }
+        if (token == JsonToken.STRING) {
+            return Boolean.parseBoolean(in.nextString());
+        }
+        return in.nextBoolean();
+    }
+
+    /**
+     * Write map with string values.
+     *
+     * @param out JSON writer.
+     * @param map Map to write.
+     * @throws IOException In case of write failure.
+     */
+    private static void writeStringMap(@NonNull JsonWriter out, @Nullable Map<String, String> map) throws IOException {
+        if (map == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            out.name(String.valueOf(entry.getKey())).value(entry.getValue());
+        }
+        out.endObject();
+    }
+
+    /**
+     * Read map with string values.
+     *
+     * @param in JSON reader.
+     * @return Map with string values, or null.
+     * @throws IOException In case of read failure.
+     */
+    @Nullable
+    private static Map<String, String> readStringMap(@NonNull JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        final Map<String, String> map = new LinkedHashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            map.put(in.nextName(), readString(in));
+        }
+        in.endObject();
+        return map;
+    }
+
+    /**
+     * Write map with arbitrary values.
+     *
+     * @param out JSON writer.
+     * @param map Map to write.
+     * @param valueAdapter Adapter for map values.
+     * @throws IOException In case of write failure.
+     */
+    private static void writeObjectMap(@NonNull JsonWriter out, @Nullable Map<String, Object> map, @NonNull TypeAdapter<Object> valueAdapter) throws IOException {
+        if (map == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            out.name(String.valueOf(entry.getKey()));
+            valueAdapter.write(out, entry.getValue());
+        }
+        out.endObject();
+    }
+
+    /**
+     * Read map with arbitrary values.
+     *
+     * @param in JSON reader.
+     * @param valueAdapter Adapter for map values.
+     * @return Map with arbitrary values, or null.
+     * @throws IOException In case of read failure.
+     */
+    @Nullable
+    private static Map<String, Object> readObjectMap(@NonNull JsonReader in, @NonNull TypeAdapter<Object> valueAdapter) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        final Map<String, Object> map = new LinkedHashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            map.put(in.nextName(), valueAdapter.read(in));
+        }
+        in.endObject();
+        return map;
+    }
+
+    // Enum adapters
+
+    /**
+     * Adapter for {@link ActivationType} enumeration.
+     */
+    private static class ActivationTypeAdapter extends TypeAdapter<ActivationType> {
+
+        @Override
+        public void write(JsonWriter out, ActivationType value) throws IOException {
+            out.value(value == null ? null : value.name());
+        }
+
+        @Override
+        public ActivationType read(JsonReader in) throws IOException {
+            final String name = readString(in);
+            if (name != null) {
+                for (ActivationType type : ActivationType.values()) {
+                    if (type.name().equals(name)) {
+                        return type;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    // Model adapters
+    /**
+     * Adapter for {@link ActivationRecovery} class.
+     */
+    private static class ActivationRecoveryAdapter extends ModelAdapter<ActivationRecovery> {
+
+        ActivationRecoveryAdapter(@NonNull Gson gson) {
+        }
+
+        @NonNull
+        @Override
+        ActivationRecovery newInstance() {
+            return new ActivationRecovery();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull ActivationRecovery value) throws IOException {
+            out.name("recoveryCode").value(value.getRecoveryCode());
+            out.name("puk").value(value.getPuk());
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull ActivationRecovery value) throws IOException {
+            switch (name) {
+                case "recoveryCode":
+                    value.setRecoveryCode(readString(in));
+                    return true;
+                case "puk":
+                    value.setPuk(readString(in));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link TokenResponsePayload} class.
+     */
+    private static class TokenResponsePayloadAdapter extends ModelAdapter<TokenResponsePayload> {
+
+        TokenResponsePayloadAdapter(@NonNull Gson gson) {
+        }
+
+        @NonNull
+        @Override
+        TokenResponsePayload newInstance() {
+            return new TokenResponsePayload();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull TokenResponsePayload value) throws IOException {
+            out.name("tokenId").value(value.getTokenId());
+            out.name("tokenSecret").value(value.getTokenSecret());
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull TokenResponsePayload value) throws IOException {
+            switch (name) {
+                case "tokenId":
+                    value.setTokenId(readString(in));
+                    return true;
+                case "tokenSecret":
+                    value.setTokenSecret(readString(in));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link ActivationLayer1Request} class.
+     */
+    private static class ActivationLayer1RequestAdapter extends ModelAdapter<ActivationLayer1Request> {
+
+        private final TypeAdapter<ActivationType> activationTypeAdapter;
+        private final TypeAdapter<Object> objectAdapter;
+        private final TypeAdapter<EciesEncryptedRequest> eciesEncryptedRequestAdapter;
+
+        ActivationLayer1RequestAdapter(@NonNull Gson gson) {
+            this.activationTypeAdapter = gson.getAdapter(ActivationType.class);
+            this.objectAdapter = gson.getAdapter(Object.class);
+            this.eciesEncryptedRequestAdapter = gson.getAdapter(EciesEncryptedRequest.class);
+        }
+
+        @NonNull
+        @Override
+        ActivationLayer1Request newInstance() {
+            return new ActivationLayer1Request();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull ActivationLayer1Request value) throws IOException {
+            out.name("type");
+            activationTypeAdapter.write(out, value.getType());
+            out.name("identityAttributes");
+            writeStringMap(out, value.getIdentityAttributes());
+            out.name("customAttributes");
+            writeObjectMap(out, value.getCustomAttributes(), objectAdapter);
+            out.name("activationData");
+            eciesEncryptedRequestAdapter.write(out, value.getActivationData());
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull ActivationLayer1Request value) throws IOException {
+            switch (name) {
+                case "type":
+                    value.setType(activationTypeAdapter.read(in));
+                    return true;
+                case "identityAttributes":
+                    value.setIdentityAttributes(readStringMap(in));
+                    return true;
+                case "customAttributes":
+                    value.setCustomAttributes(readObjectMap(in, objectAdapter));
+                    return true;
+                case "activationData":
+                    value.setActivationData(eciesEncryptedRequestAdapter.read(in));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link ActivationLayer2Request} class.
+     */
+    private static class ActivationLayer2RequestAdapter extends ModelAdapter<ActivationLayer2Request> {
+
+        ActivationLayer2RequestAdapter(@NonNull Gson gson) {
+        }
+
+        @NonNull
+        @Override
+        ActivationLayer2Request newInstance() {
+            return new ActivationLayer2Request();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull ActivationLayer2Request value) throws IOException {
+            out.name("devicePublicKey").value(value.getDevicePublicKey());
+            out.name("activationName").value(value.getActivationName());
+            out.name("extras").value(value.getExtras());
+            out.name("activationOtp").value(value.getActivationOtp());
+            out.name("platform").value(value.getPlatform());
+            out.name("deviceInfo").value(value.getDeviceInfo());
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull ActivationLayer2Request value) throws IOException {
+            switch (name) {
+                case "devicePublicKey":
+                    value.setDevicePublicKey(readString(in));
+                    return true;
+                case "activationName":
+                    value.setActivationName(readString(in));
+                    return true;
+                case "extras":
+                    value.setExtras(readString(in));
+                    return true;
+                case "activationOtp":
+                    value.setActivationOtp(readString(in));
+                    return true;
+                case "platform":
+                    value.setPlatform(readString(in));
+                    return true;
+                case "deviceInfo":
+                    value.setDeviceInfo(readString(in));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link ActivationStatusRequest} class.
+     */
+    private static class ActivationStatusRequestAdapter extends ModelAdapter<ActivationStatusRequest> {
+
+        ActivationStatusRequestAdapter(@NonNull Gson gson) {
+        }
+
+        @NonNull
+        @Override
+        ActivationStatusRequest newInstance() {
+            return new ActivationStatusRequest();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull ActivationStatusRequest value) throws IOException {
+            out.name("activationId").value(value.getActivationId());
+            out.name("challenge").value(value.getChallenge());
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull ActivationStatusRequest value) throws IOException {
+            switch (name) {
+                case "activationId":
+                    value.setActivationId(readString(in));
+                    return true;
+                case "challenge":
+                    value.setChallenge(readString(in));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link ConfirmRecoveryRequestPayload} class.
+     */
+    private static class ConfirmRecoveryRequestPayloadAdapter extends ModelAdapter<ConfirmRecoveryRequestPayload> {
+
+        ConfirmRecoveryRequestPayloadAdapter(@NonNull Gson gson) {
+        }
+
+        @NonNull
+        @Override
+        ConfirmRecoveryRequestPayload newInstance() {
+            return new ConfirmRecoveryRequestPayload();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull ConfirmRecoveryRequestPayload value) throws IOException {
+            out.name("recoveryCode").value(value.getRecoveryCode());
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull ConfirmRecoveryRequestPayload value) throws IOException {
+            switch (name) {
+                case "recoveryCode":
+                    value.setRecoveryCode(readString(in));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link EciesEncryptedRequest} class.
+     */
+    private static class EciesEncryptedRequestAdapter extends ModelAdapter<EciesEncryptedRequest> {
+
+        EciesEncryptedRequestAdapter(@NonNull Gson gson) {
+        }
+
+        @NonNull
+        @Override
+        EciesEncryptedRequest newInstance() {
+            return new EciesEncryptedRequest();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull EciesEncryptedRequest value) throws IOException {
+            out.name("ephemeralPublicKey").value(value.getEphemeralPublicKey());
+            out.name("encryptedData").value(value.getEncryptedData());
+            out.name("mac").value(value.getMac());
+            out.name("nonce").value(value.getNonce());
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull EciesEncryptedRequest value) throws IOException {
+            switch (name) {
+                case "ephemeralPublicKey":
+                    value.setEphemeralPublicKey(readString(in));
+                    return true;
+                case "encryptedData":
+                    value.setEncryptedData(readString(in));
+                    return true;
+                case "mac":
+                    value.setMac(readString(in));
+                    return true;
+                case "nonce":
+                    value.setNonce(readString(in));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link TokenRemoveRequest} class.
+     */
+    private static class TokenRemoveRequestAdapter extends ModelAdapter<TokenRemoveRequest> {
+
+        TokenRemoveRequestAdapter(@NonNull Gson gson) {
+        }
+
+        @NonNull
+        @Override
+        TokenRemoveRequest newInstance() {
+            return new TokenRemoveRequest();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull TokenRemoveRequest value) throws IOException {
+            out.name("tokenId").value(value.getTokenId());
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull TokenRemoveRequest value) throws IOException {
+            switch (name) {
+                case "tokenId":
+                    value.setTokenId(readString(in));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link ValidateSignatureRequest} class.
+     */
+    private static class ValidateSignatureRequestAdapter extends ModelAdapter<ValidateSignatureRequest> {
+
+        ValidateSignatureRequestAdapter(@NonNull Gson gson) {
+        }
+
+        @NonNull
+        @Override
+        ValidateSignatureRequest newInstance() {
+            return new ValidateSignatureRequest();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull ValidateSignatureRequest value) throws IOException {
+            out.name("reason").value(value.getReason());
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull ValidateSignatureRequest value) throws IOException {
+            switch (name) {
+                case "reason":
+                    value.setReason(readString(in));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link VaultUnlockRequestPayload} class.
+     */
+    private static class VaultUnlockRequestPayloadAdapter extends ModelAdapter<VaultUnlockRequestPayload> {
+
+        VaultUnlockRequestPayloadAdapter(@NonNull Gson gson) {
+        }
+
+        @NonNull
+        @Override
+        VaultUnlockRequestPayload newInstance() {
+            return new VaultUnlockRequestPayload();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull VaultUnlockRequestPayload value) throws IOException {
+            out.name("reason").value(value.getReason());
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull VaultUnlockRequestPayload value) throws IOException {
+            switch (name) {
+                case "reason":
+                    value.setReason(readString(in));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link ActivationLayer1Response} class.
+     */
+    private static class ActivationLayer1ResponseAdapter extends ModelAdapter<ActivationLayer1Response> {
+
+        private final TypeAdapter<EciesEncryptedResponse> eciesEncryptedResponseAdapter;
+        private final TypeAdapter<Object> objectAdapter;
+
+        ActivationLayer1ResponseAdapter(@NonNull Gson gson) {
+            this.eciesEncryptedResponseAdapter = gson.getAdapter(EciesEncryptedResponse.class);
+            this.objectAdapter = gson.getAdapter(Object.class);
+        }
+
+        @NonNull
+        @Override
+        ActivationLayer1Response newInstance() {
+            return new ActivationLayer1Response();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull ActivationLayer1Response value) throws IOException {
+            out.name("activationData");
+            eciesEncryptedResponseAdapter.write(out, value.getActivationData());
+            out.name("customAttributes");
+            writeObjectMap(out, value.getCustomAttributes(), objectAdapter);
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull ActivationLayer1Response value) throws IOException {
+            switch (name) {
+                case "activationData":
+                    value.setActivationData(eciesEncryptedResponseAdapter.read(in));
+                    return true;
+                case "customAttributes":
+                    value.setCustomAttributes(readObjectMap(in, objectAdapter));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link ActivationLayer2Response} class.
+     */
+    private static class ActivationLayer2ResponseAdapter extends ModelAdapter<ActivationLayer2Response> {
+
+        private final TypeAdapter<ActivationRecovery> activationRecoveryAdapter;
+
+        ActivationLayer2ResponseAdapter(@NonNull Gson gson) {
+            this.activationRecoveryAdapter = gson.getAdapter(ActivationRecovery.class);
+        }
+
+        @NonNull
+        @Override
+        ActivationLayer2Response newInstance() {
+            return new ActivationLayer2Response();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull ActivationLayer2Response value) throws IOException {
+            out.name("activationId").value(value.getActivationId());
+            out.name("serverPublicKey").value(value.getServerPublicKey());
+            out.name("ctrData").value(value.getCtrData());
+            out.name("activationRecovery");
+            activationRecoveryAdapter.write(out, value.getActivationRecovery());
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull ActivationLayer2Response value) throws IOException {
+            switch (name) {
+                case "activationId":
+                    value.setActivationId(readString(in));
+                    return true;
+                case "serverPublicKey":
+                    value.setServerPublicKey(readString(in));
+                    return true;
+                case "ctrData":
+                    value.setCtrData(readString(in));
+                    return true;
+                case "activationRecovery":
+                    value.setActivationRecovery(activationRecoveryAdapter.read(in));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link ActivationRemoveResponse} class.
+     */
+    private static class ActivationRemoveResponseAdapter extends ModelAdapter<ActivationRemoveResponse> {
+
+        ActivationRemoveResponseAdapter(@NonNull Gson gson) {
+        }
+
+        @NonNull
+        @Override
+        ActivationRemoveResponse newInstance() {
+            return new ActivationRemoveResponse();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull ActivationRemoveResponse value) throws IOException {
+            out.name("activationId").value(value.getActivationId());
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull ActivationRemoveResponse value) throws IOException {
+            switch (name) {
+                case "activationId":
+                    value.setActivationId(readString(in));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link ActivationStatusResponse} class.
+     */
+    private static class ActivationStatusResponseAdapter extends ModelAdapter<ActivationStatusResponse> {
+
+        private final TypeAdapter<Object> objectAdapter;
+
+        ActivationStatusResponseAdapter(@NonNull Gson gson) {
+            this.objectAdapter = gson.getAdapter(Object.class);
+        }
+
+        @NonNull
+        @Override
+        ActivationStatusResponse newInstance() {
+            return new ActivationStatusResponse();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull ActivationStatusResponse value) throws IOException {
+            out.name("activationId").value(value.getActivationId());
+            out.name("encryptedStatusBlob").value(value.getEncryptedStatusBlob());
+            out.name("nonce").value(value.getNonce());
+            out.name("customObject");
+            writeObjectMap(out, value.getCustomObject(), objectAdapter);
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull ActivationStatusResponse value) throws IOException {
+            switch (name) {
+                case "activationId":
+                    value.setActivationId(readString(in));
+                    return true;
+                case "encryptedStatusBlob":
+                    value.setEncryptedStatusBlob(readString(in));
+                    return true;
+                case "nonce":
+                    value.setNonce(readString(in));
+                    return true;
+                case "customObject":
+                    value.setCustomObject(readObjectMap(in, objectAdapter));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link ConfirmRecoveryResponsePayload} class.
+     */
+    private static class ConfirmRecoveryResponsePayloadAdapter extends ModelAdapter<ConfirmRecoveryResponsePayload> {
+
+        ConfirmRecoveryResponsePayloadAdapter(@NonNull Gson gson) {
+        }
+
+        @NonNull
+        @Override
+        ConfirmRecoveryResponsePayload newInstance() {
+            return new ConfirmRecoveryResponsePayload();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull ConfirmRecoveryResponsePayload value) throws IOException {
+            out.name("alreadyConfirmed").value(value.getAlreadyConfirmed());
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull ConfirmRecoveryResponsePayload value) throws IOException {
+            switch (name) {
+                case "alreadyConfirmed":
+                    value.setAlreadyConfirmed(readBoolean(in, value.getAlreadyConfirmed()));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link EciesEncryptedResponse} class.
+     */
+    private static class EciesEncryptedResponseAdapter extends ModelAdapter<EciesEncryptedResponse> {
+
+        EciesEncryptedResponseAdapter(@NonNull Gson gson) {
+        }
+
+        @NonNull
+        @Override
+        EciesEncryptedResponse newInstance() {
+            return new EciesEncryptedResponse();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull EciesEncryptedResponse value) throws IOException {
+            out.name("encryptedData").value(value.getEncryptedData());
+            out.name("mac").value(value.getMac());
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull EciesEncryptedResponse value) throws IOException {
+            switch (name) {
+                case "encryptedData":
+                    value.setEncryptedData(readString(in));
+                    return true;
+                case "mac":
+                    value.setMac(readString(in));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link TokenRemoveResponse} class.
+     */
+    private static class TokenRemoveResponseAdapter extends ModelAdapter<TokenRemoveResponse> {
+
+        TokenRemoveResponseAdapter(@NonNull Gson gson) {
+        }
+
+        @NonNull
+        @Override
+        TokenRemoveResponse newInstance() {
+            return new TokenRemoveResponse();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull TokenRemoveResponse value) throws IOException {
+            out.name("tokenId").value(value.getTokenId());
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull TokenRemoveResponse value) throws IOException {
+            switch (name) {
+                case "tokenId":
+                    value.setTokenId(readString(in));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link UpgradeResponsePayload} class.
+     */
+    private static class UpgradeResponsePayloadAdapter extends ModelAdapter<UpgradeResponsePayload> {
+
+        UpgradeResponsePayloadAdapter(@NonNull Gson gson) {
+        }
+
+        @NonNull
+        @Override
+        UpgradeResponsePayload newInstance() {
+            return new UpgradeResponsePayload();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull UpgradeResponsePayload value) throws IOException {
+            out.name("ctrData").value(value.getCtrData());
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull UpgradeResponsePayload value) throws IOException {
+            switch (name) {
+                case "ctrData":
+                    value.setCtrData(readString(in));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+    /**
+     * Adapter for {@link VaultUnlockResponsePayload} class.
+     */
+    private static class VaultUnlockResponsePayloadAdapter extends ModelAdapter<VaultUnlockResponsePayload> {
+
+        VaultUnlockResponsePayloadAdapter(@NonNull Gson gson) {
+        }
+
+        @NonNull
+        @Override
+        VaultUnlockResponsePayload newInstance() {
+            return new VaultUnlockResponsePayload();
+        }
+
+        @Override
+        void writeProperties(@NonNull JsonWriter out, @NonNull VaultUnlockResponsePayload value) throws IOException {
+            out.name("encryptedVaultEncryptionKey").value(value.getEncryptedVaultEncryptionKey());
+            out.name("signatureValid").value(value.isSignatureValid());
+        }
+
+        @Override
+        boolean readProperty(@NonNull JsonReader in, @NonNull String name, @NonNull VaultUnlockResponsePayload value) throws IOException {
+            switch (name) {
+                case "encryptedVaultEncryptionKey":
+                    value.setEncryptedVaultEncryptionKey(readString(in));
+                    return true;
+                case "signatureValid":
+                    value.setSignatureValid(readBoolean(in, value.isSignatureValid()));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+}
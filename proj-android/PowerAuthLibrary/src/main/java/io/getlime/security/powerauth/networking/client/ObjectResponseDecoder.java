@@ -0,0 +1,174 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.networking.client;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The {@code ObjectResponseDecoder} class decodes the {@code {"status": ..., "responseObject": ...}}
+ * response envelope in one streaming pass. If the {@code status} property precedes the {@code responseObject},
+ * and the status is {@code "OK"}, then the response object is bound directly to the requested type,
+ * without creating an intermediate JSON tree.
+ * <p>
+ * In all other cases, the decoder keeps the envelope as {@link JsonObject}, so the error object can
+ * be later constructed without parsing the response data again. The class is package-private.
+ *
+ * @param <TResponse> Type of response object.
+ */
+class ObjectResponseDecoder<TResponse> {
+
+    private static final String STATUS = "status";
+    private static final String RESPONSE_OBJECT = "responseObject";
+    private static final String STATUS_OK = "OK";
+
+    private final Gson gson;
+    private final TypeToken<TResponse> responseType;
+
+    /**
+     * The {@code Result} nested class contains result of envelope decoding.
+     *
+     * @param <TResponse> Type of response object.
+     */
+    static class Result<TResponse> {
+        /**
+         * Contains true if envelope's status is {@code "OK"}.
+         */
+        final boolean isOk;
+        /**
+         * Response object, available only if status is OK and the response type is known.
+         */
+        final @Nullable TResponse responseObject;
+        /**
+         * JSON representation of the envelope, available only if status is not OK.
+         */
+        final @Nullable JsonObject jsonRoot;
+
+        Result(boolean isOk, @Nullable TResponse responseObject, @Nullable JsonObject jsonRoot) {
+            this.isOk = isOk;
+            this.responseObject = responseObject;
+            this.jsonRoot = jsonRoot;
+        }
+    }
+
+    /**
+     * @param gson Gson instance used for the response object deserialization.
+     * @param responseType Type of response object, or null if the response object is not expected.
+     */
+    ObjectResponseDecoder(@NonNull Gson gson, @Nullable TypeToken<TResponse> responseType) {
+        this.gson = gson;
+        this.responseType = responseType;
+    }
+
+    /**
+     * Decode response envelope from provided reader.
+     *
+     * @param reader Reader providing JSON data.
+     * @return {@link Result} object with decoded envelope.
+     * @throws JsonParseException In case of invalid JSON data.
+     */
+    @NonNull
+    Result<TResponse> decode(@NonNull Reader reader) throws JsonParseException {
+        final JsonReader jsonReader = new JsonReader(reader);
+        jsonReader.setLenient(true);
+        try {
+            if (jsonReader.peek() != JsonToken.BEGIN_OBJECT) {
+                throw new JsonParseException("Unexpected type of JSON data.");
+            }
+            return decodeEnvelope(jsonReader);
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    /**
+     * Decode the whole envelope.
+     *
+     * @param jsonReader Reader positioned at the beginning of the envelope object.
+     * @return {@link Result} object with decoded envelope.
+     * @throws IOException In case of read failure.
+     */
+    @NonNull
+    private Result<TResponse> decodeEnvelope(@NonNull JsonReader jsonReader) throws IOException {
+        final TypeAdapter<JsonElement> treeAdapter = gson.getAdapter(JsonElement.class);
+        // JSON tree with properties collected while the status is unknown, or not OK.
+        final JsonObject jsonRoot = new JsonObject();
+        String status = null;
+        TResponse responseObject = null;
+        boolean responseObjectBound = false;
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            final String name = jsonReader.nextName();
+            if (STATUS.equals(name) && status == null) {
+                final JsonElement statusElement = treeAdapter.read(jsonReader);
+                status = statusElement.isJsonPrimitive() ? statusElement.getAsString() : "";
+                jsonRoot.add(name, statusElement);
+
+            } else if (RESPONSE_OBJECT.equals(name) && STATUS_OK.equalsIgnoreCase(status) && !responseObjectBound) {
+                // Status is already known, so the object can be bound directly.
+                if (responseType != null && jsonReader.peek() == JsonToken.BEGIN_OBJECT) {
+                    responseObject = gson.getAdapter(responseType).read(jsonReader);
+                } else {
+                    jsonReader.skipValue();
+                }
+                responseObjectBound = true;
+
+            } else if (STATUS_OK.equalsIgnoreCase(status) && !RESPONSE_OBJECT.equals(name)) {
+                // Envelope is OK, other properties are not needed.
+                jsonReader.skipValue();
+
+            } else {
+                // Status is not known yet or is not OK, keep the property.
+                jsonRoot.add(name, treeAdapter.read(jsonReader));
+            }
+        }
+        jsonReader.endObject();
+        if (jsonReader.peek() != JsonToken.END_DOCUMENT) {
+            throw new JsonSyntaxException("Did not consume the entire document.");
+        }
+
+        if (!STATUS_OK.equalsIgnoreCase(status)) {
+            return new Result<>(false, null, jsonRoot);
+        }
+        if (!responseObjectBound && responseType != null) {
+            // The response object preceded the status, so bind it from the collected tree.
+            final JsonElement responseObjectElement = jsonRoot.get(RESPONSE_OBJECT);
+            if (responseObjectElement != null && responseObjectElement.isJsonObject()) {
+                responseObject = gson.fromJson(responseObjectElement, responseType.getType());
+            }
+        }
+        return new Result<>(true, responseObject, null);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.networking.response;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+/**
+ * Listener for asynchronous calculation of offline signature.
+ */
+public interface IOfflineSignatureListener {
+
+    /**
+     * Called when the signature calculation succeeds.
+     *
+     * @param signature calculated signature for all involved factors
+     */
+    @MainThread
+    void onOfflineSignatureSucceeded(@NonNull String signature);
+
+    /**
+     * Called when the signature calculation fails with an error.
+     *
+     * @param t error occurred during the operation
+     */
+    @MainThread
+    void onOfflineSignatureFailed(@NonNull Throwable t);
+}
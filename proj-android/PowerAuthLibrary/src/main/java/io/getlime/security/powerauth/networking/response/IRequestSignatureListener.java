@@ -0,0 +1,44 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.networking.response;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+import io.getlime.security.powerauth.sdk.PowerAuthAuthorizationHttpHeader;
+
+/**
+ * Listener for asynchronous calculation of HTTP signature header.
+ */
+public interface IRequestSignatureListener {
+
+    /**
+     * Called when the signature calculation succeeds.
+     *
+     * @param header HTTP header with PowerAuth authorization signature
+     */
+    @MainThread
+    void onRequestSignatureSucceeded(@NonNull PowerAuthAuthorizationHttpHeader header);
+
+    /**
+     * Called when the signature calculation fails with an error.
+     *
+     * @param t error occurred during the operation
+     */
+    @MainThread
+    void onRequestSignatureFailed(@NonNull Throwable t);
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.networking.response;
+
+/**
+ * The {@code IVersionedFetchKeysStrategy} interface extends {@link IFetchKeysStrategy} with
+ * the ability to signal that the possession unlock key has changed.
+ * <p>
+ * PowerAuthSDK keeps the key returned from {@link #getPossessionUnlockKey(android.content.Context)}
+ * in memory, so the strategy is normally called only once per SDK instance. If your strategy
+ * may provide a different key during the application's lifetime, then implement this interface
+ * and change the returned version whenever the key changes.
+ */
+public interface IVersionedFetchKeysStrategy extends IFetchKeysStrategy {
+
+    /**
+     * Return version of the possession unlock key. The method is called before each use of
+     * the cached key, so it should be fast and must not do any I/O.
+     *
+     * @return Value that changes whenever the possession unlock key changes.
+     */
+    long getPossessionUnlockKeyVersion();
+}
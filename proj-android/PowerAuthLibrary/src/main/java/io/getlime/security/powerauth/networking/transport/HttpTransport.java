@@ -0,0 +1,62 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.networking.transport;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import io.getlime.security.powerauth.sdk.PowerAuthClientConfiguration;
+
+/**
+ * The {@code HttpTransport} interface defines a low level transport used by the SDK's internal
+ * HTTP client. The transport is responsible for providing {@link HttpURLConnection} objects
+ * for requests and for deciding what happens with the connection once the request is processed.
+ * <p>
+ * You can set your own implementation in {@link PowerAuthClientConfiguration.Builder#httpTransport(HttpTransport)}.
+ * If no transport is set, then {@link KeepAliveHttpTransport} is used.
+ * <p>
+ * Note that this interface may change in the future. We can guarantee the API stability of
+ * public classes implementing this interface, but not the stability of interface itself.
+ */
+public interface HttpTransport {
+
+    /**
+     * Opens a new, not yet connected {@link HttpURLConnection} to the provided URL. The implementation
+     * should apply timeouts and TLS validation strategy from the client configuration. The method
+     * is called from other than UI thread and may block until the connection is available.
+     *
+     * @param url URL to connect to.
+     * @param configuration Client configuration.
+     * @return Prepared {@link HttpURLConnection} object.
+     * @throws IOException In case that connection cannot be acquired.
+     */
+    @NonNull HttpURLConnection openConnection(@NonNull URL url, @NonNull PowerAuthClientConfiguration configuration) throws IOException;
+
+    /**
+     * Releases connection previously acquired in {@link #openConnection(URL, PowerAuthClientConfiguration)}.
+     * The method is called exactly once for each opened connection, after the response stream is
+     * closed.
+     *
+     * @param connection Connection to release.
+     * @param reusable If {@code true}, then the response was fully consumed and the underlying
+     *                 socket can be kept alive for the next request.
+     */
+    void releaseConnection(@NonNull HttpURLConnection connection, boolean reusable);
+}
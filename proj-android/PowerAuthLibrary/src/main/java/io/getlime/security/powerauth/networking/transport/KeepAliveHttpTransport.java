@@ -0,0 +1,199 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.networking.transport;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+import io.getlime.security.powerauth.networking.ssl.HttpClientValidationStrategy;
+import io.getlime.security.powerauth.sdk.PowerAuthClientConfiguration;
+
+/**
+ * The {@code KeepAliveHttpTransport} is a default {@link HttpTransport} implementation that keeps
+ * connections to the PowerAuth Server alive between requests.
+ * <p>
+ * The transport never calls {@link HttpURLConnection#disconnect()} for requests whose response was
+ * fully consumed, so the underlying socket (and its TLS session) returns to the platform's keep-alive
+ * pool and is reused by the next request to the same host. The number of connections leased to one
+ * host at the same time is bounded by {@link #getMaxConnectionsPerHost()}. Also, the SSL socket factory
+ * and hostname verifier provided by {@link HttpClientValidationStrategy} are resolved only once, because
+ * the platform can reuse a pooled connection only when the same socket factory instance is used.
+ */
+public class KeepAliveHttpTransport implements HttpTransport {
+
+    /**
+     * Default maximum number of connections leased to one host at the same time.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+
+    /**
+     * Maximum number of connections leased to one host at the same time.
+     */
+    private final int maxConnectionsPerHost;
+
+    /**
+     * Map with permits for each host. The key is composed from the protocol, host and port.
+     */
+    private final Map<String, Semaphore> hostPermits = new HashMap<>();
+
+    /**
+     * Map with currently leased connections and their permits.
+     */
+    private final Map<HttpURLConnection, Semaphore> leasedConnections = new IdentityHashMap<>();
+
+    /**
+     * Validation strategy used to create {@link #sslSocketFactory} and {@link #hostnameVerifier}.
+     */
+    private HttpClientValidationStrategy resolvedValidationStrategy;
+    private SSLSocketFactory sslSocketFactory;
+    private HostnameVerifier hostnameVerifier;
+
+    /**
+     * Create transport with {@link #DEFAULT_MAX_CONNECTIONS_PER_HOST} connections per host.
+     */
+    public KeepAliveHttpTransport() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+    }
+
+    /**
+     * Create transport with custom maximum number of connections per host.
+     *
+     * @param maxConnectionsPerHost Maximum number of connections leased to one host at the same time.
+     */
+    public KeepAliveHttpTransport(int maxConnectionsPerHost) {
+        if (maxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerHost must be greater than 0");
+        }
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * @return Maximum number of connections leased to one host at the same time.
+     */
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    @NonNull
+    @Override
+    public HttpURLConnection openConnection(@NonNull URL url, @NonNull PowerAuthClientConfiguration configuration) throws IOException {
+        // Acquire permit for the host. We're waiting at most for the connection timeout.
+        final Semaphore permit = getHostPermit(url);
+        try {
+            if (!permit.tryAcquire(configuration.getConnectionTimeout(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out while waiting for connection to " + url.getHost());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for connection to " + url.getHost());
+        }
+
+        final HttpURLConnection connection;
+        try {
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(configuration.getConnectionTimeout());
+            connection.setReadTimeout(configuration.getReadTimeout());
+            connection.setRequestProperty("Connection", "keep-alive");
+            if (connection instanceof HttpsURLConnection) {
+                applyValidationStrategy((HttpsURLConnection) connection, configuration.getClientValidationStrategy());
+            }
+        } catch (IOException | RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+        synchronized (leasedConnections) {
+            leasedConnections.put(connection, permit);
+        }
+        return connection;
+    }
+
+    @Override
+    public void releaseConnection(@NonNull HttpURLConnection connection, boolean reusable) {
+        if (!reusable) {
+            // The response was not fully consumed, so the socket cannot be reused.
+            connection.disconnect();
+        }
+        final Semaphore permit;
+        synchronized (leasedConnections) {
+            permit = leasedConnections.remove(connection);
+        }
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    /**
+     * Get permits for host from provided URL.
+     *
+     * @param url URL to connect to.
+     * @return Semaphore with permits for the host.
+     */
+    private @NonNull Semaphore getHostPermit(@NonNull URL url) {
+        final int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        final String key = url.getProtocol() + "://" + url.getHost() + ":" + port;
+        synchronized (hostPermits) {
+            Semaphore permit = hostPermits.get(key);
+            if (permit == null) {
+                permit = new Semaphore(maxConnectionsPerHost, true);
+                hostPermits.put(key, permit);
+            }
+            return permit;
+        }
+    }
+
+    /**
+     * Apply TLS validation strategy to the connection. The socket factory and hostname verifier are
+     * acquired from the strategy only once, so the pooled connections can be reused.
+     *
+     * @param connection Connection to setup.
+     * @param strategy Optional validation strategy.
+     */
+    private void applyValidationStrategy(@NonNull HttpsURLConnection connection, HttpClientValidationStrategy strategy) {
+        if (strategy == null) {
+            return;
+        }
+        final SSLSocketFactory socketFactory;
+        final HostnameVerifier verifier;
+        synchronized (this) {
+            if (resolvedValidationStrategy != strategy) {
+                sslSocketFactory = strategy.getSSLSocketFactory();
+                hostnameVerifier = strategy.getHostnameVerifier();
+                resolvedValidationStrategy = strategy;
+            }
+            socketFactory = sslSocketFactory;
+            verifier = hostnameVerifier;
+        }
+        if (socketFactory != null) {
+            connection.setSSLSocketFactory(socketFactory);
+        }
+        if (verifier != null) {
+            connection.setHostnameVerifier(verifier);
+        }
+    }
+}
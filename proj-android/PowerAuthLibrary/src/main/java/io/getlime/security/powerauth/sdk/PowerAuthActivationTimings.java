@@ -0,0 +1,57 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.sdk;
+
+/**
+ * The {@code PowerAuthActivationTimings} class contains durations measured during the activation
+ * creation. You can use the values to evaluate the benefit of {@link PowerAuthSDK#prepareActivation()}.
+ * All durations are in milliseconds.
+ */
+public class PowerAuthActivationTimings {
+
+    /**
+     * Contains true if the activation used cryptographic material prepared in advance.
+     */
+    public final boolean usedPreparedActivation;
+    /**
+     * Time spent in the background preparation, or -1 if the prepared material was not used.
+     */
+    public final long preparationDuration;
+    /**
+     * Time spent on the calling thread, from the {@code createActivation()} call to the moment
+     * when the HTTP request was sent.
+     */
+    public final long startDuration;
+    /**
+     * Time from the {@code createActivation()} call to the moment when the response from the
+     * server was processed, or -1 if the activation was not completed.
+     */
+    public final long completeDuration;
+
+    /**
+     * @param usedPreparedActivation true if the activation used material prepared in advance
+     * @param preparationDuration time spent in the background preparation, or -1
+     * @param startDuration time spent on the calling thread before the HTTP request was sent
+     * @param completeDuration time until the response from the server was processed, or -1
+     */
+    public PowerAuthActivationTimings(boolean usedPreparedActivation, long preparationDuration, long startDuration, long completeDuration) {
+        this.usedPreparedActivation = usedPreparedActivation;
+        this.preparationDuration = preparationDuration;
+        this.startDuration = startDuration;
+        this.completeDuration = completeDuration;
+    }
+}
@@ -43,4 +43,23 @@ public class PowerAuthAuthentication {
      * (optional) If 'usePossession' is set to YES, this value may specify possession key data. If no custom data is specified, default possession key is used.
      */
     public byte[] overridenPossessionKey;
+
+    /**
+     * (optional) Time in milliseconds, for which the signature keys unlocked during the signature
+     * calculation can be kept in the memory. If this value is greater than zero and {@link #signatureKeysCacheMaxUseCount}
+     * is greater than one, then the subsequent signatures calculated with the same factors and the same password or keys
+     * don't need to unlock the keys again. This is useful when you need to sign several requests in a row
+     * with the knowledge factor, because each password based unlock requires an expensive key derivation.
+     * <p>
+     * The default value is 0, so the unlocked keys are not kept in the memory.
+     */
+    public int signatureKeysCacheTimeToLive;
+
+    /**
+     * (optional) Maximum number of signatures, including the first one, that can be calculated with
+     * the signature keys unlocked once. The value must be greater than one to keep the unlocked keys
+     * in the memory. The default value is 0, so the unlocked keys are not kept in the memory. Check
+     * {@link #signatureKeysCacheTimeToLive} for details.
+     */
+    public int signatureKeysCacheMaxUseCount;
 }
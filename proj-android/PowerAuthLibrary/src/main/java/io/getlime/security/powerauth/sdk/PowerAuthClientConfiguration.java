@@ -25,6 +25,8 @@ import java.util.List;
 
 import io.getlime.security.powerauth.networking.interceptors.HttpRequestInterceptor;
 import io.getlime.security.powerauth.networking.ssl.HttpClientValidationStrategy;
+import io.getlime.security.powerauth.networking.transport.HttpTransport;
+import io.getlime.security.powerauth.networking.transport.KeepAliveHttpTransport;
 import io.getlime.security.powerauth.system.PowerAuthLog;
 
 /**
@@ -47,6 +49,11 @@ public class PowerAuthClientConfiguration {
      */
     public static final boolean DEFAULT_ALLOW_UNSECURED_CONNECTION = false;
 
+    /**
+     * Default value for maximum size of HTTP response body (in bytes)
+     */
+    public static final int DEFAULT_MAX_RESPONSE_SIZE = 1024 * 1024;
+
     /**
      * Property that specifies the default HTTP client connection timeout. The default value is 20.0 (seconds).
      */
@@ -74,6 +81,16 @@ public class PowerAuthClientConfiguration {
      */
     private final List<HttpRequestInterceptor> requestInterceptors;
 
+    /**
+     * Property that specifies the transport providing HTTP connections to the client.
+     */
+    private final @NonNull HttpTransport httpTransport;
+
+    /**
+     * Property that specifies the maximum size of HTTP response body the client accepts. The default value is 1 MiB.
+     */
+    private final int maxResponseSize;
+
     /**
      * @return connection timeout in milliseconds
      */
@@ -107,6 +124,20 @@ public class PowerAuthClientConfiguration {
         return requestInterceptors;
     }
 
+    /**
+     * @return {@link HttpTransport} object providing HTTP connections to the client.
+     */
+    public @NonNull HttpTransport getHttpTransport() {
+        return httpTransport;
+    }
+
+    /**
+     * @return maximum size of HTTP response body in bytes
+     */
+    public int getMaxResponseSize() {
+        return maxResponseSize;
+    }
+
     /**
      * Default private constructor. Use {@link Builder} to create a new instance of this class.
      *
@@ -115,18 +146,24 @@ public class PowerAuthClientConfiguration {
      * @param allowUnsecuredConnection Defines whether unsecured connection is allowed.
      * @param clientValidationStrategy {@link HttpClientValidationStrategy} object that implements TLS validation strategy.
      * @param requestInterceptors Array of {@link HttpRequestInterceptor} objects or {@code null} if there's none.
+     * @param httpTransport {@link HttpTransport} object providing HTTP connections.
+     * @param maxResponseSize Maximum size of HTTP response body in bytes.
      */
     private PowerAuthClientConfiguration(
             int connectionTimeout,
             int readTimeout,
             boolean allowUnsecuredConnection,
             HttpClientValidationStrategy clientValidationStrategy,
-            List<HttpRequestInterceptor> requestInterceptors) {
+            List<HttpRequestInterceptor> requestInterceptors,
+            @NonNull HttpTransport httpTransport,
+            int maxResponseSize) {
         this.connectionTimeout = connectionTimeout;
         this.readTimeout = readTimeout;
         this.allowUnsecuredConnection = allowUnsecuredConnection;
         this.clientValidationStrategy = clientValidationStrategy;
         this.requestInterceptors = requestInterceptors;
+        this.httpTransport = httpTransport;
+        this.maxResponseSize = maxResponseSize;
     }
 
     /**
@@ -138,6 +175,8 @@ public class PowerAuthClientConfiguration {
         private boolean allowUnsecuredConnection = DEFAULT_ALLOW_UNSECURED_CONNECTION;
         private HttpClientValidationStrategy clientValidationStrategy;
         private ArrayList<HttpRequestInterceptor> requestInterceptors;
+        private HttpTransport httpTransport;
+        private int maxResponseSize = DEFAULT_MAX_RESPONSE_SIZE;
 
         /**
          * Creates a builder for {@link PowerAuthClientConfiguration}.
@@ -197,6 +236,31 @@ public class PowerAuthClientConfiguration {
             return this;
         }
 
+        /**
+         * Sets custom HTTP transport to the future configuration. If not set, then
+         * {@link KeepAliveHttpTransport} is used.
+         *
+         * @param httpTransport transport to be set
+         * @return The same {@link Builder} object instance
+         */
+        public Builder httpTransport(@NonNull HttpTransport httpTransport) {
+            this.httpTransport = httpTransport;
+            return this;
+        }
+
+        /**
+         * Sets maximum size of HTTP response body to the future configuration. If the server
+         * returns a larger response, then the request fails with
+         * {@link io.getlime.security.powerauth.exception.PowerAuthErrorCodes#NETWORK_ERROR}.
+         *
+         * @param maxResponseSize maximum size of response body in bytes
+         * @return The same {@link Builder} object instance
+         */
+        public Builder maxResponseSize(int maxResponseSize) {
+            this.maxResponseSize = maxResponseSize;
+            return this;
+        }
+
         /**
          * Build a final configuration.
          *
@@ -208,7 +272,9 @@ public class PowerAuthClientConfiguration {
                     readTimeout,
                     allowUnsecuredConnection,
                     clientValidationStrategy,
-                    requestInterceptors != null ? Collections.unmodifiableList(requestInterceptors) : null);
+                    requestInterceptors != null ? Collections.unmodifiableList(requestInterceptors) : null,
+                    httpTransport != null ? httpTransport : new KeepAliveHttpTransport(),
+                    maxResponseSize);
         }
     }
 }
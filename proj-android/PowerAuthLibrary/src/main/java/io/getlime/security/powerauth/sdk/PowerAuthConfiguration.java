@@ -37,6 +37,8 @@ public class PowerAuthConfiguration {
     private final @Nullable byte[] externalEncryptionKey;
     private final @NonNull IFetchKeysStrategy fetchKeysStrategy;
     private final boolean disableAutomaticProtocolUpgrade;
+    private final int eciesEphemeralKeyPoolDepth;
+    private final int eciesEphemeralKeyPoolRefillThreshold;
 
     /**
      * Constant for default PowerAuthSDK instance identifier.
@@ -102,6 +104,20 @@ public class PowerAuthConfiguration {
         return disableAutomaticProtocolUpgrade;
     }
 
+    /**
+     * @return Number of ephemeral keys pre-computed for each ECIES encryptor, or 0 if the pool is disabled.
+     */
+    public int getEciesEphemeralKeyPoolDepth() {
+        return eciesEphemeralKeyPoolDepth;
+    }
+
+    /**
+     * @return Number of available ephemeral keys that triggers the background refill of the pool.
+     */
+    public int getEciesEphemeralKeyPoolRefillThreshold() {
+        return eciesEphemeralKeyPoolRefillThreshold;
+    }
+
     /**
      * Validate the configuration. Be aware that the method performs just a formal validation, so it cannot detect if you
      * provide a wrong cryptographic keys or secrets.
@@ -114,6 +130,14 @@ public class PowerAuthConfiguration {
                 return false;
             }
         }
+        if (eciesEphemeralKeyPoolDepth < 0) {
+            return false;
+        }
+        if (eciesEphemeralKeyPoolDepth > 0) {
+            if (eciesEphemeralKeyPoolRefillThreshold < 0 || eciesEphemeralKeyPoolRefillThreshold >= eciesEphemeralKeyPoolDepth) {
+                return false;
+            }
+        }
         return true;
     }
 
@@ -128,6 +152,8 @@ public class PowerAuthConfiguration {
      * @param externalEncryptionKey Encryption key provided by an external context, used to encrypt possession and biometry related factor keys under the hood.
      * @param fetchKeysStrategy {@link IFetchKeysStrategy} interface for key providing strategy.
      * @param disableAutomaticProtocolUpgrade If set to {@code true}, then PowerAuthSDK will not automatically upgrade activation to a newer protocol version.
+     * @param eciesEphemeralKeyPoolDepth Number of ephemeral keys pre-computed for each ECIES encryptor, or 0 to disable the pool.
+     * @param eciesEphemeralKeyPoolRefillThreshold Number of available ephemeral keys that triggers the background refill of the pool.
      */
     private PowerAuthConfiguration(
             @NonNull String instanceId,
@@ -137,7 +163,9 @@ public class PowerAuthConfiguration {
             @NonNull String masterServerPublicKey,
             @Nullable byte[] externalEncryptionKey,
             @NonNull IFetchKeysStrategy fetchKeysStrategy,
-            boolean disableAutomaticProtocolUpgrade) {
+            boolean disableAutomaticProtocolUpgrade,
+            int eciesEphemeralKeyPoolDepth,
+            int eciesEphemeralKeyPoolRefillThreshold) {
         this.instanceId = instanceId;
         this.baseEndpointUrl = baseEndpointUrl;
         this.appKey = appKey;
@@ -146,6 +174,8 @@ public class PowerAuthConfiguration {
         this.externalEncryptionKey = externalEncryptionKey;
         this.fetchKeysStrategy = fetchKeysStrategy;
         this.disableAutomaticProtocolUpgrade = disableAutomaticProtocolUpgrade;
+        this.eciesEphemeralKeyPoolDepth = eciesEphemeralKeyPoolDepth;
+        this.eciesEphemeralKeyPoolRefillThreshold = eciesEphemeralKeyPoolRefillThreshold;
     }
 
     /**
@@ -162,6 +192,8 @@ public class PowerAuthConfiguration {
         private IFetchKeysStrategy fetchKeysStrategy = null;
         private byte[] externalEncryptionKey = null;
         private boolean disableAutomaticProtocolUpgrade = false;
+        private int eciesEphemeralKeyPoolDepth = 0;
+        private int eciesEphemeralKeyPoolRefillThreshold = 0;
 
         /**
          * Creates a builder for {@link PowerAuthConfiguration}.
@@ -223,6 +255,19 @@ public class PowerAuthConfiguration {
             return this;
         }
 
+        /**
+         * Enable pool of ephemeral keys pre-computed on a background thread for each ECIES encryptor. The pool
+         * moves the expensive EC key pair generation and ECDH key agreement out of the request encryption.
+         * @param depth Maximum number of pre-computed keys for each encryptor. If zero, then the pool is disabled.
+         * @param refillThreshold Number of available keys that triggers the background refill. The value must be lower than {@code depth}.
+         * @return {@link Builder}
+         */
+        public @NonNull Builder eciesEphemeralKeyPool(int depth, int refillThreshold) {
+            this.eciesEphemeralKeyPoolDepth = depth;
+            this.eciesEphemeralKeyPoolRefillThreshold = refillThreshold;
+            return this;
+        }
+
         /**
          * Build a final {@link PowerAuthConfiguration} instance.
          * @return New instance of {@link PowerAuthConfiguration}.
@@ -236,7 +281,9 @@ public class PowerAuthConfiguration {
                     masterServerPublicKey,
                     externalEncryptionKey != null ? Arrays.copyOf(externalEncryptionKey, externalEncryptionKey.length) : null,
                     fetchKeysStrategy != null ? fetchKeysStrategy : new DefaultFetchKeysStrategy(),
-                    disableAutomaticProtocolUpgrade);
+                    disableAutomaticProtocolUpgrade,
+                    eciesEphemeralKeyPoolDepth,
+                    eciesEphemeralKeyPoolRefillThreshold);
         }
     }
 }
@@ -18,6 +18,8 @@ package io.getlime.security.powerauth.sdk;
 
 import android.content.Context;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import androidx.annotation.CheckResult;
 import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
@@ -31,6 +33,8 @@ import com.google.gson.reflect.TypeToken;
 
 import java.util.Map;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.getlime.security.powerauth.biometry.BiometricAuthentication;
 import io.getlime.security.powerauth.biometry.BiometricAuthenticationRequest;
@@ -57,7 +61,6 @@ import io.getlime.security.powerauth.core.SignatureRequest;
 import io.getlime.security.powerauth.core.SignatureResult;
 import io.getlime.security.powerauth.core.SignatureUnlockKeys;
 import io.getlime.security.powerauth.core.SignedData;
-import io.getlime.security.powerauth.ecies.EciesEncryptorFactory;
 import io.getlime.security.powerauth.ecies.EciesEncryptorId;
 import io.getlime.security.powerauth.exception.PowerAuthErrorCodes;
 import io.getlime.security.powerauth.exception.PowerAuthErrorException;
@@ -94,15 +97,22 @@ import io.getlime.security.powerauth.networking.response.ICreateActivationListen
 import io.getlime.security.powerauth.networking.response.IDataSignatureListener;
 import io.getlime.security.powerauth.networking.response.IFetchEncryptionKeyListener;
 import io.getlime.security.powerauth.networking.response.IGetRecoveryDataListener;
+import io.getlime.security.powerauth.networking.response.IOfflineSignatureListener;
+import io.getlime.security.powerauth.networking.response.IRequestSignatureListener;
 import io.getlime.security.powerauth.networking.response.IValidatePasswordListener;
+import io.getlime.security.powerauth.sdk.impl.CancelableTask;
 import io.getlime.security.powerauth.sdk.impl.CompositeCancelableTask;
 import io.getlime.security.powerauth.sdk.impl.DefaultExecutorProvider;
 import io.getlime.security.powerauth.sdk.impl.DefaultSavePowerAuthStateListener;
 import io.getlime.security.powerauth.sdk.impl.DummyCancelable;
 import io.getlime.security.powerauth.sdk.impl.FragmentHelper;
+import io.getlime.security.powerauth.sdk.impl.EciesEncryptorCache;
 import io.getlime.security.powerauth.sdk.impl.GetActivationStatusTask;
 import io.getlime.security.powerauth.sdk.impl.ICallbackDispatcher;
+import io.getlime.security.powerauth.sdk.impl.PossessionUnlockKeyCache;
+import io.getlime.security.powerauth.sdk.impl.SessionStatePersistence;
 import io.getlime.security.powerauth.sdk.impl.IPrivateCryptoHelper;
+import io.getlime.security.powerauth.sdk.impl.ISavePowerAuthCounterStateListener;
 import io.getlime.security.powerauth.sdk.impl.ISavePowerAuthStateListener;
 import io.getlime.security.powerauth.sdk.impl.MainThreadExecutor;
 import io.getlime.security.powerauth.sdk.impl.VaultUnlockReason;
@@ -125,7 +135,14 @@ public class PowerAuthSDK {
     private final @NonNull Keychain mBiometryKeychain;
     private final @NonNull Keychain mTokenStoreKeychain;
     private final @NonNull ICallbackDispatcher mCallbackDispatcher;
+    private final @NonNull PossessionUnlockKeyCache mPossessionUnlockKeyCache;
+    private final @NonNull EciesEncryptorCache mEciesEncryptorCache;
+    private final @NonNull SessionStatePersistence mStatePersistence;
+    private final @NonNull Handler mSignatureKeysPurgeHandler = new Handler(Looper.getMainLooper());
     private PowerAuthTokenStore mTokenStore;
+    private volatile long mActivationPreparationDuration = -1;
+    private final @NonNull AtomicBoolean mActivationPreparationInProgress = new AtomicBoolean();
+    private volatile PowerAuthActivationTimings mLastActivationTimings;
 
     /**
      * A builder that collects configurations and arguments for {@link PowerAuthSDK}.
@@ -228,7 +245,7 @@ public class PowerAuthSDK {
 
             // Prepare HTTP client
             final IExecutorProvider executorProvider = new DefaultExecutorProvider();
-            final HttpClient httpClient = new HttpClient(mClientConfiguration, mConfiguration.getBaseEndpointUrl(), executorProvider);
+            final HttpClient httpClient = new HttpClient(mClientConfiguration, mConfiguration.getBaseEndpointUrl(), executorProvider, mCallbackDispatcher);
 
             // Prepare keychains
             final @KeychainProtection int minRequiredKeychainProtection = mKeychainConfiguration.getMinimalRequiredKeychainProtection();
@@ -299,6 +316,21 @@ public class PowerAuthSDK {
         this.mBiometryKeychain = biometryKeychain;
         this.mTokenStoreKeychain = tokenStoreKeychain;
         this.mCallbackDispatcher = callbackDispatcher;
+        this.mPossessionUnlockKeyCache = new PossessionUnlockKeyCache(session, configuration.getFetchKeysStrategy());
+        this.mEciesEncryptorCache = new EciesEncryptorCache(session, configuration.getEciesEphemeralKeyPoolDepth(), configuration.getEciesEphemeralKeyPoolRefillThreshold());
+        this.mStatePersistence = new SessionStatePersistence(configuration.getInstanceId(), new SessionStatePersistence.IStateProvider() {
+            @Nullable
+            @Override
+            public byte[] serializedState() {
+                return mSession.serializedState();
+            }
+
+            @Nullable
+            @Override
+            public byte[] serializedCounterState() {
+                return mSession.serializedCounterState();
+            }
+        }, stateListener, executorProvider.getConcurrentExecutor());
     }
 
     /**
@@ -313,8 +345,7 @@ public class PowerAuthSDK {
             @Override
             public EciesEncryptor getEciesEncryptor(@NonNull EciesEncryptorId identifier) throws PowerAuthErrorException {
                 final byte[] deviceRelatedKey = context == null ? null : deviceRelatedKey(context);
-                EciesEncryptorFactory factory = new EciesEncryptorFactory(mSession, deviceRelatedKey);
-                return factory.getEncryptor(identifier);
+                return mEciesEncryptorCache.getEncryptor(identifier, deviceRelatedKey);
             }
 
             @NonNull
@@ -355,11 +386,12 @@ public class PowerAuthSDK {
 
     /**
      * Return a default device related key used for computing the possession factor encryption key.
+     * The key is calculated only once and then is kept in {@link PossessionUnlockKeyCache}.
      * @param context Context.
      * @return Default device related key.
      */
     private byte[] deviceRelatedKey(@NonNull Context context) {
-        return mSession.normalizeSignatureUnlockKeyFromData(mConfiguration.getFetchKeysStrategy().getPossessionUnlockKey(context).getBytes());
+        return mPossessionUnlockKeyCache.getPossessionUnlockKey(context);
     }
 
     /**
@@ -392,7 +424,7 @@ public class PowerAuthSDK {
         }
 
         // Prepare signature unlock keys structure
-        return new SignatureUnlockKeys(possessionKey, biometryKey, knowledgeKey);
+        return new SignatureUnlockKeys(possessionKey, biometryKey, knowledgeKey, authentication.signatureKeysCacheTimeToLive, authentication.signatureKeysCacheMaxUseCount);
     }
 
     /**
@@ -540,21 +572,77 @@ public class PowerAuthSDK {
      * The method is used for saving serialized state of Session, for example after password change method called directly via Session instance. See {@link PowerAuthSDK#getSession()} method.
      */
     public void saveSerializedState() {
-        final byte[] state = mSession.serializedState();
-        mStateListener.onPowerAuthStateChanged(mConfiguration.getInstanceId(), state);
+        mStatePersistence.markChanged();
+        mStatePersistence.commit();
     }
 
     /**
-     * Restores previously saved PA state.
+     * @return Counters describing how many state changes were persisted by how many writes
+     *         to {@link ISavePowerAuthStateListener}.
+     */
+    public @NonNull PowerAuthStatePersistenceMetrics getStatePersistenceMetrics() {
+        return new PowerAuthStatePersistenceMetrics(
+                mStatePersistence.getChangeCount(),
+                mStatePersistence.getCommitCount(),
+                mStatePersistence.getFullStateCommitCount(),
+                mStatePersistence.getBytesWritten());
+    }
+
+    /**
+     * Clear signature keys kept in the memory after a signature calculated with
+     * {@link PowerAuthAuthentication#signatureKeysCacheTimeToLive} set. You can call this method
+     * once your batch of signatures is finished. The keys are also cleared automatically when they
+     * expire, when the activation is removed, or when this instance is destroyed.
+     *
+     * @throws PowerAuthMissingConfigException thrown in case configuration is not present.
+     */
+    public void clearSignatureKeysCache() {
+        checkForValidSetup();
+        mSession.clearCachedSignatureKeys();
+    }
+
+    /**
+     * Restores previously saved PA state. If the state listener keeps the signature counter
+     * separately from the full state, then the counter is restored from such record.
      *
      * @param state saved PA state.
      * @return TRUE when state restored successfully, otherwise FALSE.
      */
     @CheckResult
     public boolean restoreState(byte[] state) {
+        mEciesEncryptorCache.invalidate();
         mSession.resetSession();
         final int result = mSession.deserializeState(state);
-        return result == ErrorCode.OK;
+        if (result != ErrorCode.OK) {
+            return false;
+        }
+        restoreCounterState();
+        return true;
+    }
+
+    /**
+     * Restores the signature counter saved separately from the full state, if the state listener
+     * supports such record. If the record is not available, for example, if the state was saved by
+     * an older version of SDK, then the counter from the full state is used. If the full state was
+     * saved by an older version of SDK, then it's saved again, so the counter records saved later
+     * can be compared with the full state.
+     */
+    private void restoreCounterState() {
+        if (!(mStateListener instanceof ISavePowerAuthCounterStateListener) || !mSession.hasValidActivation()) {
+            return;
+        }
+        final byte[] counterState = ((ISavePowerAuthCounterStateListener) mStateListener).serializedCounterState(mConfiguration.getInstanceId());
+        if (counterState != null) {
+            final int result = mSession.deserializeCounterState(counterState);
+            if (result != ErrorCode.OK) {
+                PowerAuthLog.e("restoreCounterState: Ignoring counter record, error code " + result);
+            }
+        }
+        if (mSession.hasOutdatedSerializedState()) {
+            // The full state must contain the counter sequence before the next counter record is saved.
+            mStatePersistence.markChanged();
+            mStatePersistence.commit();
+        }
     }
 
     /**
@@ -610,11 +698,94 @@ public class PowerAuthSDK {
      * can't be more used after this call.
      */
     public void destroy() {
+        // Wipe the cached possession key and encryptors.
+        mPossessionUnlockKeyCache.invalidate();
+        mEciesEncryptorCache.invalidate();
+        mSignatureKeysPurgeHandler.removeCallbacksAndMessages(null);
         // After this call, Session.hasValidSetup() no longer return true, because handle is
         // no longer set to a valid C++ Session instance.
         mSession.destroy();
     }
 
+    /**
+     * Prepare cryptographic material for the next activation on a background thread. You can call this
+     * method when the user enters the activation screen, so the subsequent {@code createActivation()}
+     * doesn't need to generate the device's key pair and prepare the encryptor on the calling thread.
+     * <p>
+     * The prepared material is used only once. If the user leaves the activation screen without
+     * creating the activation, then call {@link #discardPreparedActivation()}. The method does nothing
+     * if the activation cannot be started, if the material is already prepared, or if the preparation
+     * is in progress. If the SDK's executor cannot accept the task, then the material is simply not
+     * prepared and the activation is created as usual.
+     *
+     * @throws PowerAuthMissingConfigException thrown in case configuration is not present.
+     */
+    public void prepareActivation() {
+        checkForValidSetup();
+        if (!mSession.canStartActivation() || mSession.hasPreparedActivation()) {
+            return;
+        }
+        if (!mActivationPreparationInProgress.compareAndSet(false, true)) {
+            // Another thread is already preparing the activation.
+            return;
+        }
+        try {
+            mExecutorProvider.getConcurrentExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        prepareActivationMaterial();
+                    } finally {
+                        mActivationPreparationInProgress.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mActivationPreparationInProgress.set(false);
+            PowerAuthLog.e("prepareActivation: Failed to schedule preparation: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prepare cryptographic material for the next activation in the calling thread.
+     */
+    private void prepareActivationMaterial() {
+        if (mSession.hasPreparedActivation()) {
+            return;
+        }
+        final long startTime = System.nanoTime();
+        final int result = mSession.prepareActivation();
+        if (result != ErrorCode.OK) {
+            PowerAuthLog.e("prepareActivation: Failed with error code " + result);
+            return;
+        }
+        try {
+            // Warm up the encryptor for the activation payload.
+            getCryptoHelper(null).getEciesEncryptor(EciesEncryptorId.ACTIVATION_PAYLOAD).destroy();
+        } catch (PowerAuthErrorException e) {
+            PowerAuthLog.e("prepareActivation: Failed to prepare encryptor: " + e.getMessage());
+        }
+        mActivationPreparationDuration = (System.nanoTime() - startTime) / 1000000;
+    }
+
+    /**
+     * Discard cryptographic material prepared in {@link #prepareActivation()}.
+     *
+     * @throws PowerAuthMissingConfigException thrown in case configuration is not present.
+     */
+    public void discardPreparedActivation() {
+        checkForValidSetup();
+        mSession.discardPreparedActivation();
+        mActivationPreparationDuration = -1;
+    }
+
+    /**
+     * @return Durations measured during the last activation creation, or null if no activation was created yet.
+     */
+    public @Nullable PowerAuthActivationTimings getLastActivationTimings() {
+        return mLastActivationTimings;
+    }
+
     /**
      * Create a new activation by calling a PowerAuth Standard RESTful API.
      *
@@ -639,6 +810,11 @@ public class PowerAuthSDK {
             return null;
         }
 
+        final long startTime = System.nanoTime();
+        final boolean usedPreparedActivation = mSession.hasPreparedActivation();
+        final long preparationDuration = usedPreparedActivation ? mActivationPreparationDuration : -1;
+        mActivationPreparationDuration = -1;
+
         final IPrivateCryptoHelper cryptoHelper = getCryptoHelper(null);
         final JsonSerialization serialization = new JsonSerialization();
         final EciesEncryptor encryptor;
@@ -689,6 +865,8 @@ public class PowerAuthSDK {
             request.setActivationData(serialization.encryptObjectToRequest(privateData, encryptor));
 
             // Fire HTTP request
+            final long startDuration = (System.nanoTime() - startTime) / 1000000;
+            mLastActivationTimings = new PowerAuthActivationTimings(usedPreparedActivation, preparationDuration, startDuration, -1);
             return mClient.post(
                     request,
                     new CreateActivationEndpoint(),
@@ -713,6 +891,8 @@ public class PowerAuthSDK {
                                 final ActivationStep2Result step2Result = mSession.validateActivationResponse(step2Param);
                                 //
                                 if (step2Result.errorCode == ErrorCode.OK) {
+                                    final long completeDuration = (System.nanoTime() - startTime) / 1000000;
+                                    mLastActivationTimings = new PowerAuthActivationTimings(usedPreparedActivation, preparationDuration, startDuration, completeDuration);
                                     final CreateActivationResult result = new CreateActivationResult(step2Result.activationFingerprint, response.getCustomAttributes(), recoveryData);
                                     listener.onActivationCreateSucceed(result);
                                     return;
@@ -1297,6 +1477,9 @@ public class PowerAuthSDK {
         if (context != null) {
             this.getTokenStore().removeAllLocalTokens(context);
         }
+        // Wipe the cached possession key and encryptors
+        mPossessionUnlockKeyCache.invalidate();
+        mEciesEncryptorCache.invalidate();
         // Reset C++ session
         mSession.resetSession();
         // Serialize will notify state listener
@@ -1377,6 +1560,205 @@ public class PowerAuthSDK {
         }
     }
 
+    /**
+     * Compute the HTTP signature header for given GET request, URI identifier and query parameters using provided
+     * authentication information. The signature is calculated on the SDK's serial executor, so the calling
+     * thread is not blocked by the key derivation and by the state serialization.
+     *
+     * @param context        Context.
+     * @param authentication An authentication instance specifying what factors should be used to sign the request.
+     * @param uriId          URI identifier.
+     * @param params         GET request query parameters
+     * @param listener       The callback method with the HTTP header or with an error.
+     * @return {@link ICancelable} object associated with the running task.
+     * @throws PowerAuthMissingConfigException thrown in case configuration is not present.
+     */
+    public @NonNull ICancelable requestGetSignatureWithAuthentication(@NonNull Context context, @NonNull PowerAuthAuthentication authentication, String uriId, Map<String, String> params, @NonNull IRequestSignatureListener listener) {
+        byte[] body = this.mSession.prepareKeyValueDictionaryForDataSigning(params);
+        return requestSignatureWithAuthentication(context, authentication, "GET", uriId, body, listener);
+    }
+
+    /**
+     * Compute the HTTP signature header for given HTTP method, URI identifier and HTTP request body using provided
+     * authentication information. The signature is calculated on the SDK's serial executor, so the calling
+     * thread is not blocked by the key derivation and by the state serialization. The signatures are calculated
+     * in the same order as this method is called.
+     *
+     * @param context        Context.
+     * @param authentication An authentication instance specifying what factors should be used to sign the request.
+     * @param method         HTTP method used for the signature computation.
+     * @param uriId          URI identifier.
+     * @param body           HTTP request body.
+     * @param listener       The callback method with the HTTP header or with an error.
+     * @return {@link ICancelable} object associated with the running task.
+     * @throws PowerAuthMissingConfigException thrown in case configuration is not present.
+     */
+    public @NonNull ICancelable requestSignatureWithAuthentication(@NonNull Context context, @NonNull PowerAuthAuthentication authentication, String method, String uriId, byte[] body, @NonNull final IRequestSignatureListener listener) {
+
+        checkForValidSetup();
+
+        final SignatureRequest signatureRequest = new SignatureRequest(body, method, uriId, null);
+        return calculatePowerAuthSignatureAsync(context, signatureRequest, authentication, new ISignatureResultListener() {
+            @Override
+            public void onSignatureResult(@NonNull SignatureResult result) {
+                final PowerAuthAuthorizationHttpHeader header = PowerAuthAuthorizationHttpHeader.createAuthorizationHeader(result.getAuthHeaderValue());
+                listener.onRequestSignatureSucceeded(header);
+            }
+
+            @Override
+            public void onSignatureError(@NonNull Throwable t) {
+                listener.onRequestSignatureFailed(t);
+            }
+        });
+    }
+
+    /**
+     * Compute the offline signature for given HTTP method, URI identifier and HTTP request body using provided
+     * authentication information. The signature is calculated on the SDK's serial executor, so the calling
+     * thread is not blocked by the key derivation and by the state serialization.
+     *
+     * @param context        Context.
+     * @param authentication An authentication instance specifying what factors should be used to sign the request.
+     * @param uriId          URI identifier.
+     * @param body           HTTP request body.
+     * @param nonce          NONCE in Base64 format
+     * @param listener       The callback method with the calculated signature or with an error.
+     * @return {@link ICancelable} object associated with the running task.
+     * @throws PowerAuthMissingConfigException thrown in case configuration is not present.
+     */
+    public @NonNull ICancelable offlineSignatureWithAuthentication(@NonNull Context context, @NonNull PowerAuthAuthentication authentication, String uriId, byte[] body, String nonce, @NonNull final IOfflineSignatureListener listener) {
+
+        checkForValidSetup();
+
+        if (nonce == null) {
+            dispatchCallback(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onOfflineSignatureFailed(new PowerAuthErrorException(PowerAuthErrorCodes.WRONG_PARAMETER, "'nonce' parameter is required."));
+                }
+            });
+            return new DummyCancelable();
+        }
+
+        final SignatureRequest signatureRequest = new SignatureRequest(body, "POST", uriId, nonce);
+        return calculatePowerAuthSignatureAsync(context, signatureRequest, authentication, new ISignatureResultListener() {
+            @Override
+            public void onSignatureResult(@NonNull SignatureResult result) {
+                listener.onOfflineSignatureSucceeded(result.signatureCode);
+            }
+
+            @Override
+            public void onSignatureError(@NonNull Throwable t) {
+                listener.onOfflineSignatureFailed(t);
+            }
+        });
+    }
+
+    /**
+     * Internal listener for {@link #calculatePowerAuthSignatureAsync(Context, SignatureRequest, PowerAuthAuthentication, ISignatureResultListener)}.
+     * Both methods are called on the thread provided by the callback dispatcher.
+     */
+    private interface ISignatureResultListener {
+        void onSignatureResult(@NonNull SignatureResult result);
+        void onSignatureError(@NonNull Throwable t);
+    }
+
+    /**
+     * Compute PowerAuth signature on the serial executor and report the result to the listener via
+     * the callback dispatcher. The serial executor guarantees that the signatures are calculated
+     * in the same order as they were requested, so the counter values are assigned in that order.
+     * If the returned task is canceled before the calculation begins, then the signature is not
+     * calculated at all and the counter is not moved. If it's canceled later, then the result
+     * is not reported to the listener.
+     *
+     * @param context android context object
+     * @param signatureRequest data for signature calculation
+     * @param authentication authentication object
+     * @param listener listener to be notified with the result
+     * @return {@link ICancelable} object associated with the running task.
+     */
+    private @NonNull ICancelable calculatePowerAuthSignatureAsync(@NonNull final Context context, @NonNull final SignatureRequest signatureRequest, @NonNull final PowerAuthAuthentication authentication, @NonNull final ISignatureResultListener listener) {
+        final CancelableTask task = new CancelableTask();
+        try {
+            mExecutorProvider.getSerialExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (task.isCancelled()) {
+                        return;
+                    }
+                    final SignatureResult signatureResult;
+                    try {
+                        signatureResult = calculatePowerAuthSignatureWithoutCommit(context, signatureRequest, authentication, false);
+                    } catch (final PowerAuthErrorException e) {
+                        dispatchSignatureResult(task, null, e, listener);
+                        return;
+                    } catch (final RuntimeException e) {
+                        dispatchSignatureResult(task, null, wrapUnexpectedSignatureFailure(e), listener);
+                        return;
+                    }
+                    // Signature is reported once the state with the moved counter is persistent. This allows
+                    // the next signature to be calculated while the state is being written.
+                    mStatePersistence.commitAsync(new SessionStatePersistence.ICommitListener() {
+                        @Override
+                        public void onCommitSucceeded() {
+                            try {
+                                dispatchSignatureResult(task, validateSignatureResult(signatureResult), null, listener);
+                            } catch (PowerAuthErrorException e) {
+                                dispatchSignatureResult(task, null, e, listener);
+                            } catch (RuntimeException e) {
+                                dispatchSignatureResult(task, null, wrapUnexpectedSignatureFailure(e), listener);
+                            }
+                        }
+
+                        @Override
+                        public void onCommitFailed(@NonNull Throwable t) {
+                            dispatchSignatureResult(task, null, t, listener);
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            dispatchSignatureResult(task, null, wrapUnexpectedSignatureFailure(e), listener);
+        }
+        return task;
+    }
+
+    /**
+     * Wrap an unexpected exception thrown during the asynchronous signature calculation, so it can be
+     * reported to the listener.
+     *
+     * @param e exception to be wrapped
+     * @return {@link PowerAuthErrorException} with {@link PowerAuthErrorCodes#SIGNATURE_ERROR} code.
+     */
+    private static @NonNull PowerAuthErrorException wrapUnexpectedSignatureFailure(@NonNull RuntimeException e) {
+        return new PowerAuthErrorException(PowerAuthErrorCodes.SIGNATURE_ERROR, "Signature calculation failed: " + e.getMessage(), e);
+    }
+
+    /**
+     * Report result of {@link #calculatePowerAuthSignatureAsync(Context, SignatureRequest, PowerAuthAuthentication, ISignatureResultListener)}
+     * to the listener, via the callback dispatcher.
+     *
+     * @param task task associated with the operation
+     * @param signatureResult result of the calculation, or null in case of failure
+     * @param failure failure reason, if result is not available
+     * @param listener listener to be notified with the result
+     */
+    private void dispatchSignatureResult(@NonNull final CancelableTask task, @Nullable final SignatureResult signatureResult, @Nullable final Throwable failure, @NonNull final ISignatureResultListener listener) {
+        dispatchCallback(new Runnable() {
+            @Override
+            public void run() {
+                if (task.isCancelled()) {
+                    return;
+                }
+                if (signatureResult != null) {
+                    listener.onSignatureResult(signatureResult);
+                } else if (failure != null) {
+                    listener.onSignatureError(failure);
+                }
+            }
+        });
+    }
+
     /**
      * Compute PowerAuth signature for given signature request object and authentication.
      * <p>
@@ -1393,6 +1775,26 @@ public class PowerAuthSDK {
      * @throws PowerAuthErrorException if calculation fails.
      */
     private @NonNull SignatureResult calculatePowerAuthSignature(@NonNull Context context, @NonNull SignatureRequest signatureRequest, @NonNull PowerAuthAuthentication authentication, boolean allowInUpgrade) throws PowerAuthErrorException {
+        final SignatureResult signatureResult = calculatePowerAuthSignatureWithoutCommit(context, signatureRequest, authentication, allowInUpgrade);
+        // Update state after each calculation. The state must be persistent before the signature
+        // leaves the SDK, but the write may be shared with other threads calculating signatures.
+        mStatePersistence.commit();
+        return validateSignatureResult(signatureResult);
+    }
+
+    /**
+     * Compute PowerAuth signature for given signature request object and authentication, but do not
+     * wait for the persistence of the changed state. The caller must commit the state and then validate
+     * the result with {@link #validateSignatureResult(SignatureResult)}, before the signature is used.
+     *
+     * @param context android context object
+     * @param signatureRequest data for signature calculation
+     * @param authentication authentication object
+     * @param allowInUpgrade if true, then the signature calculation can be performed during the protocol upgrade.
+     * @return {@link SignatureResult} that may contain an error code.
+     * @throws PowerAuthErrorException if calculation fails.
+     */
+    private @NonNull SignatureResult calculatePowerAuthSignatureWithoutCommit(@NonNull Context context, @NonNull SignatureRequest signatureRequest, @NonNull PowerAuthAuthentication authentication, boolean allowInUpgrade) throws PowerAuthErrorException {
 
         // Check if there is an activation present
         if (!mSession.hasValidActivation()) {
@@ -1422,14 +1824,60 @@ public class PowerAuthSDK {
             throw new PowerAuthErrorException(PowerAuthErrorCodes.INVALID_ACTIVATION_STATE, "Session is no longer valid.");
         }
 
-        // Update state after each successful calculation
-        saveSerializedState();
+        // Only the signature counter has been changed
+        mStatePersistence.markCounterChanged();
+
+        if (keys.isCacheEnabled()) {
+            scheduleSignatureKeysPurge(keys.cacheTimeToLive);
+        }
+
+        return signatureResult;
+    }
+
+    /**
+     * Schedule removal of the signature keys cached in the session, once their time to live elapses.
+     * The session itself never uses the expired keys, so this only clears them from the memory earlier.
+     *
+     * @param timeToLive time in milliseconds after which the keys expire
+     */
+    private void scheduleSignatureKeysPurge(int timeToLive) {
+        final Executor executor = mExecutorProvider.getConcurrentExecutor();
+        mSignatureKeysPurgeHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                // The session may be locked by the signature calculation, so don't block the main thread.
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            mSession.purgeExpiredSignatureKeys();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // The executor's queue is full, so try it later.
+                    scheduleSignatureKeysPurge(SIGNATURE_KEYS_PURGE_RETRY_DELAY);
+                }
+            }
+        }, timeToLive);
+    }
 
-        // Check the result
+    /**
+     * Delay in milliseconds before the purge of expired signature keys is retried, if the executor
+     * rejects the purge task.
+     */
+    private static final int SIGNATURE_KEYS_PURGE_RETRY_DELAY = 1000;
+
+    /**
+     * Check whether the signature result contains a valid signature.
+     *
+     * @param signatureResult result to validate
+     * @return the same {@link SignatureResult} object
+     * @throws PowerAuthErrorException if signature calculation failed.
+     */
+    private static @NonNull SignatureResult validateSignatureResult(@NonNull SignatureResult signatureResult) throws PowerAuthErrorException {
         if (signatureResult.errorCode != ErrorCode.OK) {
             throw new PowerAuthErrorException(PowerAuthErrorCodes.SIGNATURE_ERROR, "Signature calculation failed on error " +  signatureResult.errorCode);
         }
-
         return signatureResult;
     }
 
@@ -2059,6 +2507,13 @@ public class PowerAuthSDK {
         mCallbackDispatcher.dispatchCallback(runnable);
     }
 
+    /**
+     * @return {@link ICallbackDispatcher} used for dispatching callbacks from this SDK instance.
+     */
+    @NonNull ICallbackDispatcher getCallbackDispatcher() {
+        return mCallbackDispatcher;
+    }
+
 
     // Recovery codes
 
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.sdk;
+
+/**
+ * The {@code PowerAuthStatePersistenceMetrics} class contains counters collected by the persistence
+ * of the activation state. Each calculated signature changes the state, but if more signatures are
+ * calculated at the same time, then one write can persist all of them.
+ */
+public class PowerAuthStatePersistenceMetrics {
+
+    /**
+     * Number of state changes, including calculated signatures, since the SDK object was created.
+     */
+    public final long stateChanges;
+    /**
+     * Number of writes of the serialized state since the SDK object was created.
+     */
+    public final long commits;
+    /**
+     * Number of writes that stored the full state. Other writes stored only the small record with
+     * the signature counter.
+     */
+    public final long fullStateCommits;
+    /**
+     * Number of bytes passed to the state listener since the SDK object was created.
+     */
+    public final long bytesWritten;
+
+    /**
+     * @param stateChanges number of state changes
+     * @param commits number of writes of the serialized state
+     * @param fullStateCommits number of writes that stored the full state
+     * @param bytesWritten number of bytes passed to the state listener
+     */
+    public PowerAuthStatePersistenceMetrics(long stateChanges, long commits, long fullStateCommits, long bytesWritten) {
+        this.stateChanges = stateChanges;
+        this.commits = commits;
+        this.fullStateCommits = fullStateCommits;
+        this.bytesWritten = bytesWritten;
+    }
+
+    /**
+     * @return Average number of writes per one state change, or 0 if there was no change yet.
+     */
+    public double getCommitsPerChange() {
+        return stateChanges > 0 ? (double) commits / stateChanges : 0;
+    }
+}
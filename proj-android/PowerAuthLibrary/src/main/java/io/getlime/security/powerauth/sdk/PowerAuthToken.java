@@ -49,6 +49,13 @@ public class PowerAuthToken {
         this.tokenData = tokenData;
     }
 
+    /**
+     * @return Token's private data. The method is available only for {@link PowerAuthTokenStore}.
+     */
+    @NonNull PowerAuthPrivateTokenData getTokenData() {
+        return tokenData;
+    }
+
     /**
      * Return true if this token object contains a valid token data.
      * @return true if token has valid data.
@@ -113,7 +120,11 @@ public class PowerAuthToken {
         @PowerAuthErrorCodes int errorCode;
         if (this.isValid()) {
             if (tokenStore.canRequestForAccessToken()) {
-                String headerValue = TokenCalculator.calculateTokenValue(tokenData);
+                String headerValue = tokenData.getHeaderGenerator().generateHeaderValue();
+                if (headerValue == null) {
+                    // Fallback to native implementation
+                    headerValue = TokenCalculator.calculateTokenValue(tokenData);
+                }
                 if (headerValue != null) {
                     return PowerAuthAuthorizationHttpHeader.createTokenHeader(headerValue);
                 } else {
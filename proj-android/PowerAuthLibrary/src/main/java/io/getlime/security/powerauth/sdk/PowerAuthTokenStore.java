@@ -19,33 +19,44 @@ package io.getlime.security.powerauth.sdk;
 import android.content.Context;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import android.text.TextUtils;
 import android.util.Base64;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import io.getlime.security.powerauth.exception.PowerAuthErrorCodes;
 import io.getlime.security.powerauth.exception.PowerAuthErrorException;
 import io.getlime.security.powerauth.keychain.Keychain;
+import io.getlime.security.powerauth.keychain.KeychainFactory;
+import io.getlime.security.powerauth.keychain.KeychainTransaction;
 import io.getlime.security.powerauth.networking.client.HttpClient;
-import io.getlime.security.powerauth.networking.endpoints.CreateTokenEndpoint;
 import io.getlime.security.powerauth.networking.endpoints.RemoveTokenEndpoint;
 import io.getlime.security.powerauth.networking.interfaces.ICancelable;
 import io.getlime.security.powerauth.networking.interfaces.INetworkResponseListener;
-import io.getlime.security.powerauth.networking.model.entity.TokenResponsePayload;
 import io.getlime.security.powerauth.networking.model.request.TokenRemoveRequest;
 import io.getlime.security.powerauth.networking.response.IGetTokenListener;
 import io.getlime.security.powerauth.networking.response.IRemoveTokenListener;
+import io.getlime.security.powerauth.sdk.impl.GetAccessTokenTask;
 import io.getlime.security.powerauth.sdk.impl.PowerAuthPrivateTokenData;
+import io.getlime.security.powerauth.sdk.impl.TokensIndex;
+import io.getlime.security.powerauth.system.PowerAuthLog;
 
 /**
  * The {@code PowerAuthTokenStore} provides interface for managing access tokens.
  * The class is using {@link Keychain} as underlying storage for received data.
  *
- * Note that the whole store's interface is thread safe, but it's not recommended to
- * query for the same token in overlapping asynchronous requests. This usage may lead
- * to leaking tokens on the PowerAuth server.
+ * Note that the whole store's interface is thread safe. The overlapping asynchronous requests
+ * for the same token are coalesced into one request to the PowerAuth server.
  */
 public class PowerAuthTokenStore {
 
@@ -62,14 +73,34 @@ public class PowerAuthTokenStore {
      */
     private final HttpClient httpClient;
     /**
-     * A dictionary mapping token's name to private token's data. This is the in-memory cache
-     * which speeds up querying for tokens.
+     * A dictionary mapping token's local identifier to a future providing private token's data.
+     * This is the in-memory cache which speeds up querying for tokens. The future is completed
+     * with null if token doesn't exist in the keychain. The tokens are loaded under the shared
+     * read lock from {@link #tokensLock}, so a slow keychain read for one token doesn't block
+     * reads of other tokens. The already loaded tokens are read without any lock.
      */
-    private final HashMap<String, PowerAuthPrivateTokenData> localTokens;
+    private final ConcurrentHashMap<String, FutureTask<PowerAuthPrivateTokenData>> localTokens;
+    /**
+     * Lock that guards consistency between the keychain and {@link #localTokens}. Loading tokens
+     * acquire the read lock. Changes are committed to the keychain and then applied to the
+     * dictionary under the write lock, so a concurrent load cannot put a stale token back
+     * to the dictionary.
+     */
+    private final ReadWriteLock tokensLock;
+    /**
+     * A dictionary mapping token's name to pending {@link GetAccessTokenTask}. The tasks allow
+     * coalescing of overlapping requests for the same token.
+     */
+    private final HashMap<String, GetAccessTokenTask> pendingTokenTasks;
     /**
      * A prefix for all data stored to the keychain.
      */
     private final String keychainKeyPrefix;
+    /**
+     * The tokens index is keeping all token identifiers in separate keychain entry. The store needs
+     * this entry for correct {@code removeAllLocalTokens()} method implementation.
+     */
+    private final TokensIndex tokensIndex;
 
 
     /**
@@ -87,31 +118,38 @@ public class PowerAuthTokenStore {
         this.sdk = sdk;
         this.keychain = keychain;
         this.httpClient = httpClient;
-        this.localTokens = new HashMap<>();
+        this.localTokens = new ConcurrentHashMap<>();
+        this.tokensLock = new ReentrantReadWriteLock();
+        this.pendingTokenTasks = new HashMap<>();
         this.keychainKeyPrefix = TOKENS_KEY_PREFIX + "__" + sdk.getConfiguration().getInstanceId() + "__";
+        this.tokensIndex = new TokensIndex(keychain, keychainKeyPrefix + TOKENS_INDEX_ENTRY, keychainKeyPrefix);
+        this.schedulePreloadTokens();
     }
 
     /**
      * @return true if this instance can provide {@link PowerAuthToken} objects.
      */
-    public synchronized boolean canRequestForAccessToken() {
+    public boolean canRequestForAccessToken() {
         return sdk != null && sdk.hasValidActivation();
     }
 
     /**
      * Create a new access token with given name for requested signature factors.
      * <p>
-     * Note that the method is thread safe, but it's not recommended to request for the same token
-     * name in parallel when the token is not created yet. If the method returns an asynchronous task,
-     * then the pending HTTP request to the server has been issued, so you should not ask for
-     * the same token while the task is in processing. You can use {@code PowerAuthTokenStore.hasLocalToken()} method
-     * to check, whether the token is already in the local database.
+     * Note that the method is thread safe and the overlapping requests for the same token name
+     * are coalesced into one HTTP request. If there's already a pending request for the token with
+     * the same name, then the listener is attached to that request and receives the same token.
+     * In this case, the provided authentication is not used. You can use {@code PowerAuthTokenStore.hasLocalToken()}
+     * method to check, whether the token is already in the local database.
+     * <p>
+     * Canceling the returned object only detaches the provided listener. The pending HTTP request is not
+     * canceled, so the token created on the server is still stored to the local database.
      *
      * @param context Context
      * @param tokenName Name of requested token.
      * @param authentication An authentication instance specifying what factors should be used for token creation.
      * @param listener Listener with callbacks to receive a token.
-     * @return {@link ICancelable} object associated with the running HTTP request or null if request has been processed synchronously.
+     * @return {@link ICancelable} object associated with the listener waiting for the running HTTP request or null if request has been processed synchronously.
      */
     public @Nullable
     ICancelable requestAccessToken(@NonNull final Context context, @NonNull final String tokenName, @NonNull PowerAuthAuthentication authentication, @NonNull final IGetTokenListener listener) {
@@ -119,9 +157,43 @@ public class PowerAuthTokenStore {
         Throwable error = null;
         PowerAuthPrivateTokenData tokenData = null;
 
+        if (this.canRequestForAccessToken()) {
+            // Lock-free lookup, the token is usually available in the local database.
+            tokenData = this.getTokenData(context, tokenName);
+        }
+
         synchronized (this) {
             if (this.canRequestForAccessToken()) {
-                tokenData = this.getTokenData(context, tokenName);
+                if (tokenData == null) {
+                    // Test the local database once again, the pending task might just store the token.
+                    tokenData = this.getTokenData(context, tokenName);
+                }
+                if (tokenData == null) {
+                    // There's no token in the local database, so attach to the pending task, or create a new one.
+                    ICancelable task = null;
+                    final GetAccessTokenTask pendingTask = this.pendingTokenTasks.get(tokenName);
+                    if (pendingTask != null) {
+                        task = pendingTask.addGetTokenListener(listener);
+                    }
+                    if (task == null) {
+                        final GetAccessTokenTask newTask = new GetAccessTokenTask(this, tokenName, httpClient, sdk.getCryptoHelper(context), authentication,
+                                sdk.getCallbackDispatcher(), new GetAccessTokenTask.ICompletionListener() {
+                                    @Override
+                                    public void onSuccess(@NonNull GetAccessTokenTask task, @NonNull PowerAuthPrivateTokenData tokenData) {
+                                        completeGetAccessTokenTask(context, task, tokenData);
+                                    }
+
+                                    @Override
+                                    public void onFailure(@NonNull GetAccessTokenTask task) {
+                                        completeGetAccessTokenTask(context, task, null);
+                                    }
+                                });
+                        this.pendingTokenTasks.put(tokenName, newTask);
+                        task = newTask.addGetTokenListener(listener);
+                        newTask.execute();
+                    }
+                    return task;
+                }
             } else {
                 error = new PowerAuthErrorException(PowerAuthErrorCodes.MISSING_ACTIVATION);
             }
@@ -136,8 +208,7 @@ public class PowerAuthTokenStore {
                     listener.onGetTokenFailed(err);
                 }
             });
-            return null;
-        } else if (tokenData != null) {
+        } else {
             final PowerAuthToken token = new PowerAuthToken(this, tokenData);
             sdk.dispatchCallback(new Runnable() {
                 @Override
@@ -145,41 +216,25 @@ public class PowerAuthTokenStore {
                     listener.onGetTokenSucceeded(token);
                 }
             });
-            return null;
         }
+        return null;
+    }
 
-        // Execute HTTP request
-        return httpClient.post(
-                null,
-                new CreateTokenEndpoint(),
-                sdk.getCryptoHelper(context),
-                authentication,
-                new INetworkResponseListener<TokenResponsePayload>() {
-                    @Override
-                    public void onNetworkResponse(TokenResponsePayload response) {
-                        // Success, try to construct a new PowerAuthPrivateTokenData object.
-                        final byte[] tokenSecretBytes = Base64.decode(response.getTokenSecret(), Base64.NO_WRAP);
-                        final PowerAuthPrivateTokenData newTokenData = new PowerAuthPrivateTokenData(tokenName, response.getTokenId(), tokenSecretBytes);
-                        if (newTokenData.hasValidData()) {
-                            // Store token data & report to listener
-                            storeTokenData(context, newTokenData);
-                            listener.onGetTokenSucceeded(new PowerAuthToken(PowerAuthTokenStore.this, newTokenData));
-                        } else {
-                            // Report encryption error
-                            listener.onGetTokenFailed(new PowerAuthErrorException(PowerAuthErrorCodes.ENCRYPTION_ERROR));
-                        }
-                    }
-
-                    @Override
-                    public void onNetworkError(Throwable t) {
-                        listener.onGetTokenFailed(t);
-                    }
-
-                    @Override
-                    public void onCancel() {
-                    }
-                });
-
+    /**
+     * Complete pending {@link GetAccessTokenTask}. The method stores received token data and
+     * safely removes the task from the list of pending tasks.
+     *
+     * @param context Context
+     * @param task Task to be completed.
+     * @param tokenData Received token data, or null in case of failure.
+     */
+    private synchronized void completeGetAccessTokenTask(@NonNull final Context context, @NonNull GetAccessTokenTask task, @Nullable PowerAuthPrivateTokenData tokenData) {
+        if (tokenData != null) {
+            storeTokenData(context, tokenData);
+        }
+        if (this.pendingTokenTasks.get(task.getTokenName()) == task) {
+            this.pendingTokenTasks.remove(task.getTokenName());
+        }
     }
 
     /**
@@ -198,13 +253,9 @@ public class PowerAuthTokenStore {
     ICancelable removeAccessToken(@NonNull final Context context, @NonNull final String tokenName, @NonNull final IRemoveTokenListener listener) {
 
         Throwable error = null;
-        PowerAuthPrivateTokenData tokenData;
-
-        synchronized (this) {
-            tokenData = getTokenData(context, tokenName);
-            if (tokenData == null) {
-                error = new PowerAuthErrorException(PowerAuthErrorCodes.INVALID_TOKEN);
-            }
+        final PowerAuthPrivateTokenData tokenData = getTokenData(context, tokenName);
+        if (tokenData == null) {
+            error = new PowerAuthErrorException(PowerAuthErrorCodes.INVALID_TOKEN);
         }
 
         if (error != null) {
@@ -257,7 +308,7 @@ public class PowerAuthTokenStore {
      * @param tokenName Name of access token to be checked.
      * @return true if token exists in local database.
      */
-    public synchronized boolean hasLocalToken(@NonNull final Context context, @NonNull String tokenName) {
+    public boolean hasLocalToken(@NonNull final Context context, @NonNull String tokenName) {
         return this.getTokenData(context, tokenName) != null;
     }
 
@@ -268,7 +319,7 @@ public class PowerAuthTokenStore {
      * @param tokenName Name of access token to be returned
      * @return token object or null if token's not in the local database
      */
-    public synchronized @Nullable PowerAuthToken getLocalToken(@NonNull final Context context, @NonNull String tokenName) {
+    public @Nullable PowerAuthToken getLocalToken(@NonNull final Context context, @NonNull String tokenName) {
         PowerAuthPrivateTokenData tokenData = this.getTokenData(context, tokenName);
         if (tokenData != null) {
             return new PowerAuthToken(this, tokenData);
@@ -277,20 +328,70 @@ public class PowerAuthTokenStore {
     }
 
 
+    /**
+     * Store multiple tokens to local database at once. The tokens and the tokens index are written
+     * to the keychain in one keychain transaction, so storing many tokens costs only one keychain write.
+     * This method doesn't issue a HTTP request to the server. If there's no longer a valid activation,
+     * then the tokens are not stored.
+     *
+     * @param context Context
+     * @param tokens tokens to be stored. All tokens must be created by this token store.
+     * @throws IllegalArgumentException if some token is created by another token store.
+     */
+    public void storeLocalTokens(@NonNull final Context context, @NonNull Collection<PowerAuthToken> tokens) {
+        final ArrayList<PowerAuthPrivateTokenData> tokensData = new ArrayList<>(tokens.size());
+        for (PowerAuthToken token : tokens) {
+            if (token.tokenStore != this) {
+                throw new IllegalArgumentException("Token is created by another token store");
+            }
+            tokensData.add(token.getTokenData());
+        }
+        storeTokensData(context, tokensData);
+    }
+
+
     /**
      * Remove token from local database. This method doesn't issue a HTTP request to the server.
      *
      * @param context Context
      * @param tokenName token to be removed
      */
-    public synchronized void removeLocalToken(@NonNull final Context context, @NonNull String tokenName) {
-        String identifier = this.getLocalIdentifier(tokenName);
-        this.localTokens.remove(identifier);
-        this.keychain.remove(identifier);
+    public void removeLocalToken(@NonNull final Context context, @NonNull String tokenName) {
+        removeLocalTokens(context, Collections.singleton(tokenName));
+    }
+
+
+    /**
+     * Remove multiple tokens from local database. This method doesn't issue a HTTP request to the server.
+     * The tokens and the tokens index are removed from the keychain at once, in one keychain transaction.
+     *
+     * @param context Context
+     * @param tokenNames tokens to be removed
+     */
+    public synchronized void removeLocalTokens(@NonNull final Context context, @NonNull Collection<String> tokenNames) {
+        final KeychainTransaction transaction = KeychainFactory.beginTransaction(this.keychain);
+        final ArrayList<String> identifiers = new ArrayList<>(tokenNames.size());
+        for (String tokenName : tokenNames) {
+            final String identifier = this.getLocalIdentifier(tokenName);
+            transaction.remove(identifier);
+            identifiers.add(identifier);
+        }
         // Update index
-        HashSet<String> allIdentifiers = this.loadTokensIndex(context);
-        allIdentifiers.remove(identifier);
-        this.saveTokensIndex(context, allIdentifiers);
+        this.tokensIndex.removeAll(identifiers, transaction);
+        // Commit changes and then update local dictionary
+        this.tokensLock.writeLock().lock();
+        try {
+            final boolean committed = commitTransaction(transaction);
+            for (String identifier : identifiers) {
+                if (committed) {
+                    this.localTokens.put(identifier, createCompletedFuture(null));
+                } else {
+                    this.localTokens.remove(identifier);
+                }
+            }
+        } finally {
+            this.tokensLock.writeLock().unlock();
+        }
     }
 
 
@@ -300,141 +401,230 @@ public class PowerAuthTokenStore {
      * @param context Context
      */
     public synchronized void removeAllLocalTokens(@NonNull final Context context) {
-        this.clearTokensIndex(context);
-        this.localTokens.clear();
+        final KeychainTransaction transaction = KeychainFactory.beginTransaction(this.keychain);
+        for (String identifier : this.tokensIndex.getIdentifiers()) {
+            transaction.remove(identifier);
+        }
+        this.tokensIndex.clear(transaction);
+        // Commit changes and then clear local dictionary
+        this.tokensLock.writeLock().lock();
+        try {
+            commitTransaction(transaction);
+            this.localTokens.clear();
+        } finally {
+            this.tokensLock.writeLock().unlock();
+        }
     }
 
     /**
-     * Returns private token data for given token name. Note that this private method has to be
-     * called from the synchronized block.
+     * Returns private token data for given token name. The method doesn't acquire the store's lock.
+     * If the token is not loaded yet, then the token is loaded from the keychain in the calling thread,
+     * or the method waits for another thread that's already loading the same token.
      *
      * @param context Context
      * @param tokenName token to be requested
      * @return Private data object or null if token doesn't exist in local database.
      */
     private @Nullable PowerAuthPrivateTokenData getTokenData(@NonNull final Context context, @NonNull String tokenName) {
-        // Note, must be called from another synchronized method...
-        String identifier = this.getLocalIdentifier(tokenName);
-        PowerAuthPrivateTokenData tokenData = this.localTokens.get(identifier);
-        if (tokenData == null) {
-            byte[] tokenBytes = this.keychain.getData(identifier);
-            if (tokenBytes != null) {
-                tokenData = PowerAuthPrivateTokenData.deserializeWithData(tokenBytes);
-                if (tokenData != null) {
-                    this.localTokens.put(identifier, tokenData);
-                }
-            }
-        }
-        return tokenData;
+        return loadTokenData(this.getLocalIdentifier(tokenName));
     }
 
     /**
-     * Stores private token data to the local database.
+     * Returns private token data for given token's local identifier. If the token is already loaded,
+     * then the method doesn't acquire any lock. Otherwise the method acquires only the shared read lock,
+     * so it doesn't block other threads loading tokens.
      *
-     * @param context Context
-     * @param tokenData Private data to be stored
+     * @param identifier token's local identifier
+     * @return Private data object or null if token doesn't exist in local database.
      */
-    private synchronized void storeTokenData(@NonNull final Context context, @NonNull PowerAuthPrivateTokenData tokenData) {
-        // If parent SDK object has no longer a valid activation, then we should not store this token.
-        // Looks like that the activation has been removed during the token acquiring from the server.
-        if (!this.canRequestForAccessToken()) {
-            return;
+    private @Nullable PowerAuthPrivateTokenData loadTokenData(@NonNull String identifier) {
+        // Fast path: completed futures are replaced only as a whole, so they can be read without the lock.
+        final FutureTask<PowerAuthPrivateTokenData> loadedFuture = this.localTokens.get(identifier);
+        if (loadedFuture != null && loadedFuture.isDone()) {
+            return getFutureResult(loadedFuture);
+        }
+        this.tokensLock.readLock().lock();
+        try {
+            FutureTask<PowerAuthPrivateTokenData> future = this.localTokens.get(identifier);
+            if (future == null) {
+                future = this.getOrCreateLoadingFuture(identifier);
+            }
+            return getFutureResult(future);
+        } finally {
+            this.tokensLock.readLock().unlock();
         }
-        String identifier = this.getLocalIdentifier(tokenData.name);
-        // Store data into local dictionary
-        this.localTokens.put(identifier, tokenData);
-        // Store to keychain
-        this.keychain.putData(tokenData.getSerializedData(), identifier);
-
-        // And finally, update index
-        HashSet<String> index = loadTokensIndex(context);
-        index.add(identifier);
-        this.saveTokensIndex(context, index);
     }
 
     /**
-     * A prefix for all keys stored in the keychain.
-     * The final key for data is constructed as {@code TOKENS_KEY_PREFIX + "__" + instanceId + "__" + Base64(tokenName.getBytes())}
-     */
-    private final static String TOKENS_KEY_PREFIX = "powerAuthToken";
-    /**
-     * A constant for index entry stored in the keychain. The final key is constructed as {@code TOKENS_KEY_PREFIX + "__" + instanceId + "__" + TOKENS_INDEX_ENTRY}
+     * Returns future loading token with given identifier. If there's no such future in the
+     * local dictionary, then creates a new one. Note that the future is not executed.
+     *
+     * @param identifier token's local identifier
+     * @return Future loading the token.
      */
-    private final static String TOKENS_INDEX_ENTRY = "$$index$$";
+    private @NonNull FutureTask<PowerAuthPrivateTokenData> getOrCreateLoadingFuture(@NonNull final String identifier) {
+        final FutureTask<PowerAuthPrivateTokenData> newFuture = new FutureTask<>(new Callable<PowerAuthPrivateTokenData>() {
+            @Override
+            public PowerAuthPrivateTokenData call() {
+                final byte[] tokenBytes = keychain.getData(identifier);
+                if (tokenBytes != null) {
+                    return PowerAuthPrivateTokenData.deserializeWithData(tokenBytes);
+                }
+                return null;
+            }
+        });
+        final FutureTask<PowerAuthPrivateTokenData> existingFuture = this.localTokens.putIfAbsent(identifier, newFuture);
+        return existingFuture != null ? existingFuture : newFuture;
+    }
 
     /**
-     * Converts token name into token's local identifier.
+     * Returns result from the future. If the future is not executed yet, then executes it in the calling
+     * thread. If the future is executed in another thread, then waits for its completion.
      *
-     * @param tokenName symbolic name of token
-     * @return Unique local identifier for the token
+     * @param future Future providing private token data.
+     * @return Private data object or null if token doesn't exist in local database.
      */
-    private @NonNull String getLocalIdentifier(@NonNull String tokenName) {
-        return keychainKeyPrefix + Base64.encodeToString(tokenName.getBytes(), Base64.NO_WRAP);
+    private static @Nullable PowerAuthPrivateTokenData getFutureResult(@NonNull FutureTask<PowerAuthPrivateTokenData> future) {
+        // run() does nothing if future is already completed, or running in another thread.
+        future.run();
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    PowerAuthLog.e("PowerAuthTokenStore: Failed to load token: " + e.getMessage());
+                    return null;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     /**
-     * @return true if provided identifier is a valid key for this instance of store.
+     * Creates already completed future with provided token data.
+     *
+     * @param tokenData private token data or null
+     * @return Completed future.
      */
-    private boolean isValidLocalIdentifier(@NonNull String identifier) {
-        return identifier.startsWith(keychainKeyPrefix);
+    private static @NonNull FutureTask<PowerAuthPrivateTokenData> createCompletedFuture(@Nullable PowerAuthPrivateTokenData tokenData) {
+        final FutureTask<PowerAuthPrivateTokenData> future = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, tokenData);
+        future.run();
+        return future;
     }
 
-    //
-    // Tokens index
-    //
-    // The tokens index is keeping all token names in separate keychain entry. The token needs
-    // this entry for correct {code removeAllLocalTokens()} method implementation.
-    //
-
     /**
-     * @return String with key to keychain for store tokens index.
+     * Schedule loading of all tokens listed in the tokens index on the SDK's concurrent executor.
+     * The tokens requested before the preload are loaded in the requesting thread.
      */
-    private String getIndexKey() {
-        return keychainKeyPrefix + TOKENS_INDEX_ENTRY;
+    private void schedulePreloadTokens() {
+        try {
+            httpClient.getExecutorProvider().getConcurrentExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (String identifier : tokensIndex.getIdentifiers()) {
+                        loadTokenData(identifier);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The preload is only an optimization, tokens will be loaded on demand.
+            PowerAuthLog.e("PowerAuthTokenStore: Failed to schedule tokens preload: " + e.getMessage());
+        }
     }
 
     /**
-     * Saves index into the keychain.
+     * Stores private token data to the local database.
      *
-     * @param context Android Context object
-     * @param index full index for tokens
+     * @param context Context
+     * @param tokenData Private data to be stored
      */
-    private void saveTokensIndex(@NonNull final Context context, @NonNull HashSet<String> index) {
-
-        final String joinedIdentifiers = TextUtils.join("\n", index.toArray());
-        this.keychain.putString(joinedIdentifiers, this.getIndexKey());
+    private void storeTokenData(@NonNull final Context context, @NonNull PowerAuthPrivateTokenData tokenData) {
+        storeTokensData(context, Collections.singleton(tokenData));
     }
 
     /**
-     * Loads tokens index from the keychain.
+     * Stores multiple private token data objects to the local database. The tokens and the tokens
+     * index are written to the keychain at once, in one keychain transaction.
      *
-     * @return set of strings, loaded from index, stored in keychain.
+     * @param context Context
+     * @param tokensData Private data objects to be stored
      */
-    private HashSet<String> loadTokensIndex(@NonNull final Context context) {
-        HashSet<String> index = new HashSet<>();
-        final String joinedIdentifiers = this.keychain.getString(this.getIndexKey());
-        if (joinedIdentifiers != null) {
-            // Split previously joined identifiers
-            String[] tokenIdentifiers = joinedIdentifiers.split("\\n");
-            for (String identifier: tokenIdentifiers) {
-                if (this.isValidLocalIdentifier(identifier)) {
-                    index.add(identifier);
+    private synchronized void storeTokensData(@NonNull final Context context, @NonNull Collection<PowerAuthPrivateTokenData> tokensData) {
+        // If parent SDK object has no longer a valid activation, then we should not store this token.
+        // Looks like that the activation has been removed during the token acquiring from the server.
+        if (!this.canRequestForAccessToken()) {
+            return;
+        }
+        final KeychainTransaction transaction = KeychainFactory.beginTransaction(this.keychain);
+        final ArrayList<String> identifiers = new ArrayList<>(tokensData.size());
+        for (PowerAuthPrivateTokenData tokenData : tokensData) {
+            final String identifier = this.getLocalIdentifier(tokenData.name);
+            // Stage to keychain transaction
+            transaction.putData(tokenData.getSerializedData(), identifier);
+            identifiers.add(identifier);
+        }
+        // Update index
+        this.tokensIndex.addAll(identifiers, transaction);
+        // And finally, write everything to keychain and then store data into local dictionary
+        this.tokensLock.writeLock().lock();
+        try {
+            final boolean committed = commitTransaction(transaction);
+            for (PowerAuthPrivateTokenData tokenData : tokensData) {
+                final String identifier = this.getLocalIdentifier(tokenData.name);
+                if (committed) {
+                    this.localTokens.put(identifier, createCompletedFuture(tokenData));
+                } else {
+                    this.localTokens.remove(identifier);
                 }
             }
+        } finally {
+            this.tokensLock.writeLock().unlock();
         }
-        return index;
     }
 
     /**
-     * Removes all tokens from keychain, including token index data.
+     * Commit keychain transaction with tokens and tokens index. If the commit fails, then the in-memory
+     * copy of the tokens index is dropped and will be loaded from the keychain again.
      *
-     * @param context Android Context object
+     * @param transaction Transaction to commit.
+     * @return {@code true} if the transaction was committed.
      */
-    private void clearTokensIndex(@NonNull final Context context) {
-        HashSet<String> identifiers = loadTokensIndex(context);
-        for (String id: identifiers) {
-            this.keychain.remove(id);
+    private boolean commitTransaction(@NonNull KeychainTransaction transaction) {
+        if (!transaction.commit()) {
+            PowerAuthLog.e("PowerAuthTokenStore: Failed to store tokens to keychain.");
+            this.tokensIndex.invalidate();
+            return false;
         }
-        this.keychain.remove(this.getIndexKey());
+        return true;
+    }
+
+    /**
+     * A prefix for all keys stored in the keychain.
+     * The final key for data is constructed as {@code TOKENS_KEY_PREFIX + "__" + instanceId + "__" + Base64(tokenName.getBytes())}
+     */
+    private final static String TOKENS_KEY_PREFIX = "powerAuthToken";
+    /**
+     * A constant for index entry stored in the keychain. The final key is constructed as {@code TOKENS_KEY_PREFIX + "__" + instanceId + "__" + TOKENS_INDEX_ENTRY}
+     */
+    private final static String TOKENS_INDEX_ENTRY = "$$index$$";
+
+    /**
+     * Converts token name into token's local identifier.
+     *
+     * @param tokenName symbolic name of token
+     * @return Unique local identifier for the token
+     */
+    private @NonNull String getLocalIdentifier(@NonNull String tokenName) {
+        return keychainKeyPrefix + Base64.encodeToString(tokenName.getBytes(), Base64.NO_WRAP);
     }
 }
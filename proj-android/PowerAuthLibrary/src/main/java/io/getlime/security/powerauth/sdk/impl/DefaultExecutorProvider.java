@@ -17,11 +17,16 @@
 
 package io.getlime.security.powerauth.sdk.impl;
 
-import android.os.AsyncTask;
 import androidx.annotation.NonNull;
 
 import java.util.ArrayDeque;
 import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.getlime.security.powerauth.networking.interfaces.IExecutorProvider;
 
@@ -29,38 +34,132 @@ import io.getlime.security.powerauth.networking.interfaces.IExecutorProvider;
  * The {@code DefaultExecutorProvider} class implements {@link IExecutorProvider} interface.
  * The instance of this object is typically created internally in {@link io.getlime.security.powerauth.sdk.PowerAuthSDK}
  * object.
+ * <p>
+ * The provider owns its thread pools, so the SDK's requests don't compete with the application's
+ * background work. The serial executor has its own thread, so the signed requests are not starved
+ * by concurrent requests. The concurrent executor has a bounded queue and rejects new tasks with
+ * {@link RejectedExecutionException} when the queue is full. The serial executor is also available
+ * to the application via {@code PowerAuthSDK.getSerialExecutor()}, so its queue is not bounded and
+ * the submitted tasks are always queued, like in the previous versions of SDK.
  */
 public class DefaultExecutorProvider implements IExecutorProvider {
 
-    private Executor serialExecutor;
+    /**
+     * Default number of threads in the concurrent pool.
+     */
+    public static final int DEFAULT_CONCURRENT_POOL_SIZE = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+
+    /**
+     * Default maximum number of tasks waiting in the concurrent executor's queue.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 128;
+
+    /**
+     * Time in seconds after an idle thread is terminated.
+     */
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    private final int concurrentPoolSize;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor concurrentExecutor;
+    private final ThreadPoolExecutor serialThreadExecutor;
+    private final SerialExecutor serialExecutor;
 
+    /**
+     * Create provider with default pool size and queue capacity.
+     */
     public DefaultExecutorProvider() {
+        this(DEFAULT_CONCURRENT_POOL_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Create provider with custom pool size and queue capacity.
+     *
+     * @param concurrentPoolSize Number of threads in the concurrent pool.
+     * @param queueCapacity Maximum number of tasks waiting in the concurrent executor's queue.
+     */
+    public DefaultExecutorProvider(int concurrentPoolSize, int queueCapacity) {
+        if (concurrentPoolSize < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Pool size and queue capacity must be greater than 0");
+        }
+        this.concurrentPoolSize = concurrentPoolSize;
+        this.queueCapacity = queueCapacity;
+        this.concurrentExecutor = createThreadPool("PowerAuth-Concurrent", concurrentPoolSize, queueCapacity);
+        // The serial executor submits only one task at the time to its thread.
+        this.serialThreadExecutor = createThreadPool("PowerAuth-Serial", 1, 1);
+        this.serialExecutor = new SerialExecutor(serialThreadExecutor);
     }
 
     @NonNull
     @Override
     public Executor getSerialExecutor() {
-        if (serialExecutor == null) {
-            serialExecutor = new SerialExecutor();
-        }
         return serialExecutor;
     }
 
     @NonNull
     @Override
     public Executor getConcurrentExecutor() {
-        return AsyncTask.THREAD_POOL_EXECUTOR;
+        return concurrentExecutor;
+    }
+
+    /**
+     * @return Maximum number of tasks executed at the same time by the concurrent executor.
+     */
+    public int getConcurrentPoolSize() {
+        return concurrentPoolSize;
+    }
+
+    /**
+     * @return Maximum number of tasks waiting for execution in the concurrent executor. If the queue
+     *         is full, then the executor rejects the task with {@link RejectedExecutionException}.
+     *         The serial executor's queue is not bounded.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Create a thread pool with fixed number of threads and bounded queue. Idle threads are
+     * terminated after {@link #KEEP_ALIVE_SECONDS}.
+     *
+     * @param name Name prefix for threads.
+     * @param poolSize Number of threads.
+     * @param queueCapacity Capacity of the queue.
+     * @return New thread pool executor.
+     */
+    private static ThreadPoolExecutor createThreadPool(@NonNull final String name, int poolSize, int queueCapacity) {
+        final ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger(1);
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                final Thread thread = new Thread(r, name + " #" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueCapacity),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     /**
      * Implements serial executor which allows only one task to be executed at the same time.
      *
-     * Note that the implementation is grabbed from android's private {@link AsyncTask}'s SerialExecutor.
+     * Note that the implementation is based on android's private {@code AsyncTask}'s SerialExecutor.
      */
     private static class SerialExecutor implements Executor {
         final ArrayDeque<Runnable> mTasks = new ArrayDeque<Runnable>();
+        final Executor mExecutor;
         Runnable mActive;
 
+        SerialExecutor(Executor executor) {
+            mExecutor = executor;
+        }
+
         public synchronized void execute(final Runnable r) {
             mTasks.offer(new Runnable() {
                 public void run() {
@@ -78,7 +177,7 @@ public class DefaultExecutorProvider implements IExecutorProvider {
 
         protected synchronized void scheduleNext() {
             if ((mActive = mTasks.poll()) != null) {
-                AsyncTask.THREAD_POOL_EXECUTOR.execute(mActive);
+                mExecutor.execute(mActive);
             }
         }
     }
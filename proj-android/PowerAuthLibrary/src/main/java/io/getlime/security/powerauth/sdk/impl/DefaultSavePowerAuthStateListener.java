@@ -26,7 +26,12 @@ import io.getlime.security.powerauth.keychain.Keychain;
  *
  * @author Petr Dvorak, petr@wultra.com
  */
-public class DefaultSavePowerAuthStateListener implements ISavePowerAuthStateListener {
+public class DefaultSavePowerAuthStateListener implements ISavePowerAuthCounterStateListener {
+
+    /**
+     * Suffix appended to the instance identifier to create a key for the counter record.
+     */
+    private static final String COUNTER_KEY_SUFFIX = ".counter";
 
     private final Keychain keychain;
 
@@ -44,4 +49,18 @@ public class DefaultSavePowerAuthStateListener implements ISavePowerAuthStateLis
         keychain.putData(serializedState, instanceId);
     }
 
+    @Override
+    public @Nullable byte[] serializedCounterState(@NonNull String instanceId) {
+        return keychain.getData(instanceId + COUNTER_KEY_SUFFIX);
+    }
+
+    @Override
+    public void onPowerAuthCounterStateChanged(@NonNull String instanceId, @Nullable byte[] serializedCounterState) {
+        if (serializedCounterState != null) {
+            keychain.putData(serializedCounterState, instanceId + COUNTER_KEY_SUFFIX);
+        } else {
+            keychain.remove(instanceId + COUNTER_KEY_SUFFIX);
+        }
+    }
+
 }
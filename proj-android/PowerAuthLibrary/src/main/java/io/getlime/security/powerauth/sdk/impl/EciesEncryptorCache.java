@@ -0,0 +1,166 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.sdk.impl;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import io.getlime.security.powerauth.core.EciesEncryptor;
+import io.getlime.security.powerauth.core.EciesEncryptorScope;
+import io.getlime.security.powerauth.core.Session;
+import io.getlime.security.powerauth.ecies.EciesEncryptorFactory;
+import io.getlime.security.powerauth.ecies.EciesEncryptorId;
+import io.getlime.security.powerauth.exception.PowerAuthErrorCodes;
+import io.getlime.security.powerauth.exception.PowerAuthErrorException;
+
+/**
+ * The {@code EciesEncryptorCache} class keeps ECIES encryptors created by {@link EciesEncryptorFactory}
+ * as templates, so the server's public key and the shared info parameters are not prepared again
+ * in the low level {@link Session} for each encrypted request. Each call to
+ * {@link #getEncryptor(EciesEncryptorId, byte[])} returns a new copy of the template, suitable for
+ * one request-response round trip.
+ * <p>
+ * Templates for the activation scope are bound to the activation identifier and to the possession
+ * unlock key used for their creation. If the activation or the key changes, then such templates
+ * are created again. If the pool of ephemeral keys is enabled, then each template pre-computes
+ * ephemeral keys for its copies on a background thread. The whole interface is thread safe.
+ */
+public class EciesEncryptorCache {
+
+    private final Session session;
+    private final int ephemeralKeyPoolDepth;
+    private final int ephemeralKeyPoolRefillThreshold;
+
+    /**
+     * Templates for the application scope.
+     */
+    private final Map<EciesEncryptorId, EciesEncryptor> applicationScopeTemplates = new EnumMap<>(EciesEncryptorId.class);
+    /**
+     * Templates for the activation scope.
+     */
+    private final Map<EciesEncryptorId, EciesEncryptor> activationScopeTemplates = new EnumMap<>(EciesEncryptorId.class);
+    /**
+     * Activation identifier valid for the activation scope templates.
+     */
+    private String activationScopeActivationId;
+    /**
+     * Possession unlock key used for the activation scope templates creation.
+     */
+    private byte[] activationScopePossessionUnlockKey;
+
+    /**
+     * @param session low level {@link Session} object used for the encryptors creation
+     */
+    public EciesEncryptorCache(@NonNull Session session) {
+        this(session, 0, 0);
+    }
+
+    /**
+     * @param session low level {@link Session} object used for the encryptors creation
+     * @param ephemeralKeyPoolDepth number of ephemeral keys pre-computed for each template, or 0 to disable the pool
+     * @param ephemeralKeyPoolRefillThreshold number of available ephemeral keys that triggers the background refill
+     */
+    public EciesEncryptorCache(@NonNull Session session, int ephemeralKeyPoolDepth, int ephemeralKeyPoolRefillThreshold) {
+        this.session = session;
+        this.ephemeralKeyPoolDepth = ephemeralKeyPoolDepth;
+        this.ephemeralKeyPoolRefillThreshold = ephemeralKeyPoolRefillThreshold;
+    }
+
+    /**
+     * Return a new ECIES encryptor object for given identifier. If the encryptor is for
+     * an activation scope, then the internal {@link Session} must have a valid activation.
+     *
+     * @param identifier type of encryptor to be returned
+     * @param possessionUnlockKey key for decrypting the possession factor. If not provided, then
+     *                            activation scoped encryptors cannot be constructed.
+     * @return new instance of {@link EciesEncryptor} object.
+     * @throws PowerAuthErrorException if possession unlock key is required but not provided,
+     *                                 or if low level encryptor creation fails
+     */
+    public synchronized @NonNull EciesEncryptor getEncryptor(@NonNull EciesEncryptorId identifier, @Nullable byte[] possessionUnlockKey) throws PowerAuthErrorException {
+        final Map<EciesEncryptorId, EciesEncryptor> templates;
+        if (identifier != EciesEncryptorId.NONE && identifier.scope == EciesEncryptorScope.ACTIVATION) {
+            if (possessionUnlockKey == null) {
+                throw new PowerAuthErrorException(PowerAuthErrorCodes.WRONG_PARAMETER, "Device related key is missing for activation scoped encryptor.");
+            }
+            final String activationId = session.getActivationIdentifier();
+            if (activationId == null) {
+                // No activation, so the factory will report an appropriate error.
+                invalidateActivationScope();
+                return new EciesEncryptorFactory(session, possessionUnlockKey).getEncryptor(identifier);
+            }
+            if (!activationId.equals(activationScopeActivationId) || !Arrays.equals(possessionUnlockKey, activationScopePossessionUnlockKey)) {
+                invalidateActivationScope();
+                activationScopeActivationId = activationId;
+                activationScopePossessionUnlockKey = possessionUnlockKey.clone();
+            }
+            templates = activationScopeTemplates;
+        } else {
+            templates = applicationScopeTemplates;
+        }
+        EciesEncryptor template = templates.get(identifier);
+        if (template == null) {
+            template = new EciesEncryptorFactory(session, possessionUnlockKey).getEncryptor(identifier);
+            if (ephemeralKeyPoolDepth > 0) {
+                // Copies of the template share the same pool of pre-computed ephemeral keys.
+                template.setEphemeralKeyPool(ephemeralKeyPoolDepth, ephemeralKeyPoolRefillThreshold);
+            }
+            templates.put(identifier, template);
+        }
+        final EciesEncryptor encryptor = template.copyForEncryption();
+        if (encryptor == null) {
+            throw new PowerAuthErrorException(PowerAuthErrorCodes.ENCRYPTION_ERROR, "Failed to create ECIES encryptor.");
+        }
+        return encryptor;
+    }
+
+    /**
+     * Destroy all cached templates. The next call to {@link #getEncryptor(EciesEncryptorId, byte[])}
+     * will create templates again.
+     */
+    public synchronized void invalidate() {
+        destroyTemplates(applicationScopeTemplates);
+        invalidateActivationScope();
+    }
+
+    /**
+     * Destroy templates for the activation scope and wipe the associated possession unlock key.
+     */
+    private void invalidateActivationScope() {
+        destroyTemplates(activationScopeTemplates);
+        activationScopeActivationId = null;
+        if (activationScopePossessionUnlockKey != null) {
+            Arrays.fill(activationScopePossessionUnlockKey, (byte) 0);
+            activationScopePossessionUnlockKey = null;
+        }
+    }
+
+    /**
+     * Destroy all encryptors in given map and clear the map.
+     * @param templates map with templates to destroy
+     */
+    private static void destroyTemplates(@NonNull Map<EciesEncryptorId, EciesEncryptor> templates) {
+        for (EciesEncryptor template : templates.values()) {
+            template.destroy();
+        }
+        templates.clear();
+    }
+}
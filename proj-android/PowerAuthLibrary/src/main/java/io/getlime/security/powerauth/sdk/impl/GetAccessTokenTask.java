@@ -0,0 +1,326 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.sdk.impl;
+
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.getlime.security.powerauth.exception.PowerAuthErrorCodes;
+import io.getlime.security.powerauth.exception.PowerAuthErrorException;
+import io.getlime.security.powerauth.networking.client.HttpClient;
+import io.getlime.security.powerauth.networking.endpoints.CreateTokenEndpoint;
+import io.getlime.security.powerauth.networking.interfaces.ICancelable;
+import io.getlime.security.powerauth.networking.interfaces.INetworkResponseListener;
+import io.getlime.security.powerauth.networking.model.entity.TokenResponsePayload;
+import io.getlime.security.powerauth.networking.response.IGetTokenListener;
+import io.getlime.security.powerauth.sdk.PowerAuthAuthentication;
+import io.getlime.security.powerauth.sdk.PowerAuthToken;
+import io.getlime.security.powerauth.sdk.PowerAuthTokenStore;
+
+/**
+ * The {@code GetAccessTokenTask} class implements creating a new access token on the server.
+ * The task allows multiple listeners to wait for the same token, so the overlapping requests
+ * for the same token name are coalesced into one HTTP request.
+ */
+public class GetAccessTokenTask implements ICancelable {
+
+    public interface ICompletionListener {
+        void onSuccess(@NonNull GetAccessTokenTask task, @NonNull PowerAuthPrivateTokenData tokenData);
+        void onFailure(@NonNull GetAccessTokenTask task);
+    }
+
+    private final PowerAuthTokenStore tokenStore;
+    private final String tokenName;
+    private final HttpClient httpClient;
+    private final IPrivateCryptoHelper cryptoHelper;
+    private final PowerAuthAuthentication authentication;
+    private final ICompletionListener completionListener;
+    private final ICallbackDispatcher callbackDispatcher;
+
+    private final AtomicBoolean isExiting = new AtomicBoolean();
+    private final AtomicBoolean isCanceled = new AtomicBoolean();
+
+    private final ArrayList<ChildTask> childTasks = new ArrayList<>();
+
+    /**
+     * Contains true once the child tasks are collected for the completion. Guarded by {@code this}.
+     */
+    private boolean isCompleted = false;
+
+    /**
+     * Current pending operation.
+     */
+    private ICancelable pendingOperation;
+
+    /**
+     * @param tokenStore token store that owns this task
+     * @param tokenName name of requested token
+     * @param httpClient HTTP client
+     * @param cryptoHelper cryptographic helper
+     * @param authentication authentication used for the token creation
+     * @param callbackDispatcher callback dispatcher from parent SDK object
+     * @param completionListener final completion listener.
+     */
+    public GetAccessTokenTask(
+            @NonNull PowerAuthTokenStore tokenStore,
+            @NonNull String tokenName,
+            @NonNull HttpClient httpClient,
+            @NonNull IPrivateCryptoHelper cryptoHelper,
+            @NonNull PowerAuthAuthentication authentication,
+            @NonNull ICallbackDispatcher callbackDispatcher,
+            @NonNull ICompletionListener completionListener) {
+        this.tokenStore = tokenStore;
+        this.tokenName = tokenName;
+        this.httpClient = httpClient;
+        this.cryptoHelper = cryptoHelper;
+        this.authentication = authentication;
+        this.callbackDispatcher = callbackDispatcher;
+        this.completionListener = completionListener;
+        this.pendingOperation = null;
+    }
+
+    /**
+     * @return Name of token requested by this task.
+     */
+    public @NonNull String getTokenName() {
+        return tokenName;
+    }
+
+    /**
+     * true if execute() method has been called
+     */
+    private boolean isStarted = false;
+
+    /**
+     * Start this task.
+     */
+    public void execute() {
+        if (isStarted) {
+            return;
+        }
+        isStarted = true;
+        final ICancelable operation = httpClient.post(
+                null,
+                new CreateTokenEndpoint(),
+                cryptoHelper,
+                authentication,
+                new INetworkResponseListener<TokenResponsePayload>() {
+                    @Override
+                    public void onNetworkResponse(TokenResponsePayload response) {
+                        setPendingOperation(null);
+                        // Success, try to construct a new PowerAuthPrivateTokenData object.
+                        final byte[] tokenSecretBytes = Base64.decode(response.getTokenSecret(), Base64.NO_WRAP);
+                        final PowerAuthPrivateTokenData tokenData = new PowerAuthPrivateTokenData(tokenName, response.getTokenId(), tokenSecretBytes);
+                        if (tokenData.hasValidData()) {
+                            completeTask(tokenData, null);
+                        } else {
+                            // Report encryption error
+                            completeTask(null, new PowerAuthErrorException(PowerAuthErrorCodes.ENCRYPTION_ERROR));
+                        }
+                    }
+
+                    @Override
+                    public void onNetworkError(Throwable t) {
+                        setPendingOperation(null);
+                        completeTask(null, t);
+                    }
+
+                    @Override
+                    public void onCancel() {
+                        setPendingOperation(null);
+                        // The request was canceled from elsewhere, so complete the task. This also
+                        // removes the task from the token store, so no new listener can attach to it.
+                        completeTask(null, null);
+                    }
+                });
+        synchronized (this) {
+            if (!isExiting.get()) {
+                pendingOperation = operation;
+            }
+        }
+    }
+
+    /**
+     * Set or clear current pending operation.
+     *
+     * @param operation operation to be set.
+     */
+    private synchronized void setPendingOperation(@Nullable ICancelable operation) {
+        pendingOperation = operation;
+    }
+
+
+    //
+    // Cancelable
+    //
+
+    @Override
+    public void cancel() {
+        isCanceled.set(true);
+        synchronized (this) {
+            if (pendingOperation != null) {
+                pendingOperation.cancel();
+                pendingOperation = null;
+            }
+        }
+        // Report "cancel from elsewhere"
+        completeTask(null, null);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return isCanceled.get();
+    }
+
+
+    //
+    // Task completion
+    //
+
+    /**
+     * Complete the task with token data or with error. If both objects are not provided, then the
+     * {@link PowerAuthErrorCodes#OPERATION_CANCELED} exception is created.
+     *
+     * @param tokenData token data to be reported
+     * @param throwable error to be reported
+     */
+    private void completeTask(@Nullable PowerAuthPrivateTokenData tokenData, @Nullable Throwable throwable) {
+
+        if (isExiting.getAndSet(true)) {
+            // We're already exiting
+            return;
+        }
+
+        // If both parameters are null, then it's cancel from elsewhere.
+        if (tokenData == null && throwable == null) {
+            throwable = new PowerAuthErrorException(PowerAuthErrorCodes.OPERATION_CANCELED, "Operation was canceled from elsewhere.");
+        }
+
+        // At first, report to primary listener (e.g. to the PowerAuthTokenStore). The listener
+        // stores the token and forgets this task, so no other listener can be added after
+        // the child tasks are collected below.
+        if (tokenData != null) {
+            completionListener.onSuccess(this, tokenData);
+        } else {
+            completionListener.onFailure(this);
+        }
+
+        final ArrayList<ChildTask> tasksToReport;
+        synchronized (this) {
+            isCompleted = true;
+            tasksToReport = new ArrayList<>(childTasks);
+            childTasks.clear();
+        }
+
+        // Now report to all child tasks
+        final PowerAuthToken token = tokenData != null ? new PowerAuthToken(tokenStore, tokenData) : null;
+        for (ChildTask task : tasksToReport) {
+            task.complete(token, throwable);
+        }
+    }
+
+
+    //
+    // Child task
+    //
+
+    /**
+     * Add a listener into the list of listeners for later completion. The method returns {@link ICancelable}
+     * object capturing the listener provided to the function. The application can cancel the returned
+     * object. After that, the listener will never be completed, but the token creation continues
+     * for the other listeners.
+     *
+     * @param listener {@link IGetTokenListener} to be added to the list of completion listeners
+     * @return {@link ICancelable} object capturing the listener or null if this task is already completed.
+     */
+    public @Nullable ICancelable addGetTokenListener(@NonNull IGetTokenListener listener) {
+        synchronized (this) {
+            if (!isCompleted) {
+                final ChildTask task = new ChildTask(listener);
+                childTasks.add(task);
+                return task;
+            }
+            return null;
+        }
+    }
+
+
+    /**
+     * Remove one particular child task from list of child tasks. The method should be used
+     * only from {@link ChildTask#cancel()} method.
+     *
+     * @param task child task to be removed
+     */
+    private void removeGetTokenListener(@NonNull ChildTask task) {
+        synchronized (this) {
+            childTasks.remove(task);
+        }
+    }
+
+
+    /**
+     * The {@code ChildTask} class wraps one {@link IGetTokenListener} listener into
+     * cancelable object. The application can then cancel its previously created request for
+     * the access token.
+     */
+    private class ChildTask implements ICancelable {
+
+        private final IGetTokenListener listener;
+        private final AtomicBoolean isCanceled = new AtomicBoolean();
+
+        ChildTask(@NonNull IGetTokenListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void cancel() {
+            isCanceled.set(true);
+            removeGetTokenListener(this);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return isCanceled.get();
+        }
+
+        /**
+         * Notify listener about the result.
+         *
+         * @param token if not null, then the {@link IGetTokenListener#onGetTokenSucceeded(PowerAuthToken)} will be called
+         * @param throwable if not null, then the {@link IGetTokenListener#onGetTokenFailed(Throwable)} will be called
+         */
+        public void complete(final @Nullable PowerAuthToken token, final @Nullable Throwable throwable) {
+            if (!isCanceled.getAndSet(true)) {
+                callbackDispatcher.dispatchCallback(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (token != null) {
+                            listener.onGetTokenSucceeded(token);
+                        } else {
+                            listener.onGetTokenFailed(throwable);
+                        }
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.sdk.impl;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The {@code ISavePowerAuthCounterStateListener} interface extends {@link ISavePowerAuthStateListener}
+ * with a separate record for the signature counter. If the state listener implements this interface,
+ * then only the small counter record is saved after each calculated signature, and the full state
+ * is saved only when other data, like keys or protocol version, change.
+ * <p>
+ * The counter record is always saved before the full state, so the restored record is never older
+ * than the counter stored in the full state.
+ */
+public interface ISavePowerAuthCounterStateListener extends ISavePowerAuthStateListener {
+
+    /**
+     * Returns previously saved counter record of {@code PowerAuthSDK} object.
+     *
+     * @param instanceId {@code PowerAuthSDK} instance identifier
+     * @return bytes with serialized counter or {@code null} if counter was not previously
+     *         serialized.
+     */
+    @Nullable byte[] serializedCounterState(@NonNull String instanceId);
+
+    /**
+     * Notifies listener about change of the signature counter. The listener should save the record
+     * to the persistent storage.
+     *
+     * @param instanceId {@code PowerAuthSDK} instance identifier
+     * @param serializedCounterState serialized counter, or {@code null} if there's no activation and
+     *                               the previously saved record should be removed.
+     */
+    void onPowerAuthCounterStateChanged(@NonNull String instanceId, @Nullable byte[] serializedCounterState);
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.sdk.impl;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+import io.getlime.security.powerauth.core.Session;
+import io.getlime.security.powerauth.networking.response.IFetchKeysStrategy;
+import io.getlime.security.powerauth.networking.response.IVersionedFetchKeysStrategy;
+
+/**
+ * The {@code PossessionUnlockKeyCache} class keeps the normalized possession unlock key
+ * in memory. The key is calculated from the value provided by {@link IFetchKeysStrategy}
+ * only once, so the possible IPC call in the strategy and the JNI call to the key normalization
+ * are not repeated for each signature calculation.
+ * <p>
+ * The cached key is wiped from the memory when the cache is invalidated, or when the strategy
+ * implementing {@link IVersionedFetchKeysStrategy} reports a different key version.
+ * The whole interface is thread safe.
+ */
+public class PossessionUnlockKeyCache {
+
+    private final Session session;
+    private final IFetchKeysStrategy fetchKeysStrategy;
+
+    /**
+     * Cached normalized key, or null if key is not calculated yet.
+     */
+    private byte[] cachedKey;
+    /**
+     * Version of key reported by the strategy, at the time the key was calculated.
+     */
+    private long cachedKeyVersion;
+
+    /**
+     * @param session low level {@link Session} object used for the key normalization
+     * @param fetchKeysStrategy strategy providing the possession unlock key
+     */
+    public PossessionUnlockKeyCache(@NonNull Session session, @NonNull IFetchKeysStrategy fetchKeysStrategy) {
+        this.session = session;
+        this.fetchKeysStrategy = fetchKeysStrategy;
+    }
+
+    /**
+     * Return normalized possession unlock key. If the key is not cached yet, then calculates it.
+     *
+     * @param context Android context
+     * @return Copy of normalized possession unlock key.
+     */
+    public synchronized @NonNull byte[] getPossessionUnlockKey(@NonNull Context context) {
+        final long version = getStrategyKeyVersion();
+        if (cachedKey != null && cachedKeyVersion != version) {
+            invalidate();
+        }
+        if (cachedKey == null) {
+            cachedKey = session.normalizeSignatureUnlockKeyFromData(fetchKeysStrategy.getPossessionUnlockKey(context).getBytes());
+            cachedKeyVersion = version;
+        }
+        // Return a copy, so the cached key can be safely wiped later.
+        return cachedKey.clone();
+    }
+
+    /**
+     * Wipe the cached key. The next call to {@link #getPossessionUnlockKey(Context)} will calculate
+     * the key again.
+     */
+    public synchronized void invalidate() {
+        if (cachedKey != null) {
+            Arrays.fill(cachedKey, (byte) 0);
+            cachedKey = null;
+        }
+    }
+
+    /**
+     * @return Version of key reported by the strategy, or 0 if strategy doesn't support versioning.
+     */
+    private long getStrategyKeyVersion() {
+        if (fetchKeysStrategy instanceof IVersionedFetchKeysStrategy) {
+            return ((IVersionedFetchKeysStrategy) fetchKeysStrategy).getPossessionUnlockKeyVersion();
+        }
+        return 0;
+    }
+}
@@ -44,6 +44,11 @@ public class PowerAuthPrivateTokenData {
 
     private static final int SECRET_LENGTH = 16;
 
+    /**
+     * Lazily created header generator.
+     */
+    private volatile TokenHeaderGenerator headerGenerator;
+
     public PowerAuthPrivateTokenData(@NonNull String name, @NonNull String identifier, @NonNull byte[] secret) {
         this.name = name;
         this.identifier = identifier;
@@ -59,6 +64,19 @@ public class PowerAuthPrivateTokenData {
         return false;
     }
 
+    /**
+     * @return {@link TokenHeaderGenerator} for this token. The generator is created on demand
+     *         and then is reused for all subsequent calls.
+     */
+    public @NonNull TokenHeaderGenerator getHeaderGenerator() {
+        TokenHeaderGenerator generator = headerGenerator;
+        if (generator == null) {
+            generator = new TokenHeaderGenerator(this);
+            headerGenerator = generator;
+        }
+        return generator;
+    }
+
     public boolean equals(Object anObject) {
         if (this == anObject) {
             return true;
@@ -0,0 +1,446 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.sdk.impl;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The {@code SessionStatePersistence} class implements a group commit of the serialized session
+ * state. Each modification of the session is first announced by {@link #markChanged()} and later
+ * made persistent by {@link #commit()} or {@link #commitAsync(ICommitListener)}. If more changes
+ * are waiting for the persistence at the same time, then one write to {@link ISavePowerAuthStateListener}
+ * covers all of them.
+ * <p>
+ * The class guarantees that once the commit is reported as finished, then the persistent storage
+ * contains a state that includes all changes marked before the commit was requested. The state is
+ * always written by one thread at the time and the written states never go back in time.
+ * <p>
+ * If the state listener implements {@link ISavePowerAuthCounterStateListener}, then changes marked
+ * by {@link #markCounterChanged()} are persisted by writing only the small counter record. The full
+ * state is written only if some change was marked by {@link #markChanged()}. In this case, the counter
+ * record is written first, so it's never older than the counter stored in the full state.
+ */
+public class SessionStatePersistence {
+
+    /**
+     * Provides the current serialized state.
+     */
+    public interface IStateProvider {
+        /**
+         * @return Current serialized state or {@code null} if state is no longer available.
+         */
+        @Nullable byte[] serializedState();
+
+        /**
+         * @return Current serialized counter or {@code null} if there's no activation.
+         */
+        @Nullable byte[] serializedCounterState();
+    }
+
+    /**
+     * Listener for {@link #commitAsync(ICommitListener)}. Methods are called on a background thread,
+     * in the same order as the asynchronous commits were requested. The listener is called after
+     * the commit is released, so it can safely request another commit.
+     */
+    public interface ICommitListener {
+        /**
+         * Called when the state covering the requested changes is persistent.
+         */
+        void onCommitSucceeded();
+
+        /**
+         * Called when the state cannot be persisted.
+         * @param t Failure reason.
+         */
+        void onCommitFailed(@NonNull Throwable t);
+    }
+
+    /**
+     * Asynchronous commit waiting for the persistence.
+     */
+    private static class PendingCommit {
+        final long version;
+        final ICommitListener listener;
+        /**
+         * Failure reason, set when the commit is completed with failure.
+         */
+        RuntimeException failure;
+
+        PendingCommit(long version, ICommitListener listener) {
+            this.version = version;
+            this.listener = listener;
+        }
+    }
+
+    private final String instanceId;
+    private final IStateProvider stateProvider;
+    private final ISavePowerAuthStateListener stateListener;
+    private final ISavePowerAuthCounterStateListener counterStateListener;
+    private final Executor executor;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<PendingCommit> pendingCommits = new ArrayDeque<>();
+    /**
+     * Completed asynchronous commits waiting for the listener notification.
+     */
+    private final ArrayDeque<PendingCommit> completedCommits = new ArrayDeque<>();
+    /**
+     * Version of the latest marked change.
+     */
+    private long changedVersion;
+    /**
+     * Version of the latest change that requires the full state to be written.
+     */
+    private long fullStateChangedVersion;
+    /**
+     * Version of the latest persisted change.
+     */
+    private long committedVersion;
+    /**
+     * Contains true while some thread writes the state.
+     */
+    private boolean commitInProgress;
+    /**
+     * Contains true if task processing asynchronous commits is scheduled on the executor.
+     */
+    private boolean drainScheduled;
+    /**
+     * Contains true while some thread notifies listeners of completed commits.
+     */
+    private boolean notifyInProgress;
+    /**
+     * Number of writes to the state listener.
+     */
+    private long commitCount;
+    /**
+     * Number of writes of the full state.
+     */
+    private long fullStateCommitCount;
+    /**
+     * Number of bytes passed to the state listener.
+     */
+    private long bytesWritten;
+
+    /**
+     * @param instanceId {@code PowerAuthSDK} instance identifier
+     * @param stateProvider Provider of the serialized state.
+     * @param stateListener Listener that saves the state to the persistent storage.
+     * @param executor Executor for the asynchronous commits.
+     */
+    public SessionStatePersistence(
+            @NonNull String instanceId,
+            @NonNull IStateProvider stateProvider,
+            @NonNull ISavePowerAuthStateListener stateListener,
+            @NonNull Executor executor) {
+        this.instanceId = instanceId;
+        this.stateProvider = stateProvider;
+        this.stateListener = stateListener;
+        this.counterStateListener = stateListener instanceof ISavePowerAuthCounterStateListener ? (ISavePowerAuthCounterStateListener) stateListener : null;
+        this.executor = executor;
+    }
+
+    /**
+     * Announce that the state has been changed. The method must be called after the change,
+     * so the state serialized later includes it.
+     */
+    public void markChanged() {
+        synchronized (lock) {
+            changedVersion++;
+            fullStateChangedVersion = changedVersion;
+        }
+    }
+
+    /**
+     * Announce that only the signature counter has been changed. The method must be called after
+     * the change, so the counter serialized later includes it.
+     */
+    public void markCounterChanged() {
+        synchronized (lock) {
+            changedVersion++;
+        }
+    }
+
+    /**
+     * Make all changes marked so far persistent. The method blocks the calling thread until
+     * the state is written, but may return without writing if another thread just persisted
+     * the state covering all such changes.
+     *
+     * @throws RuntimeException Exception thrown from the state listener.
+     */
+    public void commit() {
+        final long version;
+        synchronized (lock) {
+            version = changedVersion;
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                synchronized (lock) {
+                    if (committedVersion >= version) {
+                        return;
+                    }
+                    if (commitInProgress) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                        continue;
+                    }
+                    commitInProgress = true;
+                }
+                performCommit();
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Make all changes marked so far persistent on the background thread. The listener is notified
+     * once the state is written.
+     *
+     * @param listener Listener to be notified about the result.
+     */
+    public void commitAsync(@NonNull ICommitListener listener) {
+        final boolean scheduleDrain;
+        synchronized (lock) {
+            pendingCommits.add(new PendingCommit(changedVersion, listener));
+            scheduleDrain = !commitInProgress && !drainScheduled;
+            if (scheduleDrain) {
+                drainScheduled = true;
+            }
+        }
+        if (scheduleDrain) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * @return Number of changes marked so far.
+     */
+    public long getChangeCount() {
+        synchronized (lock) {
+            return changedVersion;
+        }
+    }
+
+    /**
+     * @return Number of commits written to the state listener so far.
+     */
+    public long getCommitCount() {
+        synchronized (lock) {
+            return commitCount;
+        }
+    }
+
+    /**
+     * @return Number of commits that wrote the full state so far.
+     */
+    public long getFullStateCommitCount() {
+        synchronized (lock) {
+            return fullStateCommitCount;
+        }
+    }
+
+    /**
+     * @return Number of bytes passed to the state listener so far.
+     */
+    public long getBytesWritten() {
+        synchronized (lock) {
+            return bytesWritten;
+        }
+    }
+
+    /**
+     * Write the latest state and complete all pending asynchronous commits covered by the write.
+     * The calling thread must set {@link #commitInProgress} to true before the call.
+     *
+     * @throws RuntimeException Exception thrown from the state listener.
+     */
+    private void performCommit() {
+        final long targetVersion;
+        final boolean writeRequired;
+        final boolean fullStateRequired;
+        synchronized (lock) {
+            targetVersion = changedVersion;
+            writeRequired = targetVersion > committedVersion;
+            fullStateRequired = counterStateListener == null || fullStateChangedVersion > committedVersion;
+        }
+        RuntimeException failure = null;
+        long written = 0;
+        if (writeRequired) {
+            try {
+                written = writeState(fullStateRequired);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        final boolean scheduleDrain;
+        synchronized (lock) {
+            if (failure == null && writeRequired) {
+                committedVersion = targetVersion;
+                commitCount++;
+                if (fullStateRequired) {
+                    fullStateCommitCount++;
+                }
+                bytesWritten += written;
+            }
+            while (!pendingCommits.isEmpty() && pendingCommits.peek().version <= targetVersion) {
+                final PendingCommit pendingCommit = pendingCommits.poll();
+                pendingCommit.failure = failure;
+                completedCommits.add(pendingCommit);
+            }
+            // Release the commit before listeners are notified. The listener may be called on the thread
+            // that requests another commit, for example when the callback dispatcher runs it inline.
+            commitInProgress = false;
+            lock.notifyAll();
+            scheduleDrain = !pendingCommits.isEmpty() && !drainScheduled;
+            if (scheduleDrain) {
+                drainScheduled = true;
+            }
+        }
+        if (scheduleDrain) {
+            scheduleDrain();
+        }
+        notifyCompletedCommits();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Notify listeners of all completed asynchronous commits. Only one thread notifies listeners
+     * at the time, so the listeners are called in the same order as the commits were completed.
+     * If another thread, or the same thread in the nested call from a listener, is already
+     * notifying, then the method returns immediately and that thread notifies also the commits
+     * completed in the meantime.
+     */
+    private void notifyCompletedCommits() {
+        synchronized (lock) {
+            if (notifyInProgress) {
+                return;
+            }
+            notifyInProgress = true;
+        }
+        boolean finished = false;
+        try {
+            while (true) {
+                final PendingCommit completedCommit;
+                synchronized (lock) {
+                    completedCommit = completedCommits.poll();
+                    if (completedCommit == null) {
+                        notifyInProgress = false;
+                        finished = true;
+                        return;
+                    }
+                }
+                if (completedCommit.failure == null) {
+                    completedCommit.listener.onCommitSucceeded();
+                } else {
+                    completedCommit.listener.onCommitFailed(completedCommit.failure);
+                }
+            }
+        } finally {
+            if (!finished) {
+                synchronized (lock) {
+                    notifyInProgress = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the counter record, if supported by the state listener, and then the full state, if required.
+     * <p>
+     * If the counter moves between both serializations, then the full state contains a newer counter than
+     * the record. That's safe, because the signature with such counter is released only after the next
+     * commit, which writes the record again.
+     *
+     * @param fullStateRequired if true, then the full state must be written
+     * @return Number of bytes passed to the state listener.
+     * @throws RuntimeException Exception thrown from the state listener, or if state is no longer available.
+     */
+    private long writeState(boolean fullStateRequired) {
+        long written = 0;
+        if (counterStateListener != null) {
+            final byte[] counterState = stateProvider.serializedCounterState();
+            if (counterState == null && !fullStateRequired) {
+                throw new IllegalStateException("Session state is no longer available.");
+            }
+            counterStateListener.onPowerAuthCounterStateChanged(instanceId, counterState);
+            if (counterState != null) {
+                written += counterState.length;
+            }
+        }
+        if (fullStateRequired) {
+            final byte[] state = stateProvider.serializedState();
+            if (state == null) {
+                throw new IllegalStateException("Session state is no longer available.");
+            }
+            stateListener.onPowerAuthStateChanged(instanceId, state);
+            written += state.length;
+        }
+        return written;
+    }
+
+    /**
+     * Schedule processing of pending asynchronous commits. If the executor rejects the task, then
+     * the commits are processed on the calling thread.
+     */
+    private void scheduleDrain() {
+        final Runnable drainTask = new Runnable() {
+            @Override
+            public void run() {
+                drainPendingCommits();
+            }
+        };
+        try {
+            executor.execute(drainTask);
+        } catch (RejectedExecutionException e) {
+            drainTask.run();
+        }
+    }
+
+    /**
+     * Process pending asynchronous commits until the queue is empty. If another thread writes
+     * the state in the meantime, then that thread takes over the processing.
+     */
+    private void drainPendingCommits() {
+        while (true) {
+            synchronized (lock) {
+                if (commitInProgress || pendingCommits.isEmpty()) {
+                    drainScheduled = false;
+                    return;
+                }
+                commitInProgress = true;
+            }
+            try {
+                performCommit();
+            } catch (RuntimeException e) {
+                // Failure is already reported to the affected listeners.
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.sdk.impl;
+
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.getlime.security.powerauth.system.PowerAuthLog;
+
+/**
+ * The {@code TokenHeaderGenerator} class calculates value for token based authorization header
+ * without calling the native code. The produced value has the same format as the value produced by
+ * {@link io.getlime.security.powerauth.core.TokenCalculator}:
+ * <pre>
+ * PowerAuth version="3.1", token_id="...", token_digest="...", nonce="...", timestamp="..."
+ * </pre>
+ * The token digest is calculated as {@code HMAC-SHA256(nonce + "&amp;" + timestamp, secret)}.
+ * <p>
+ * The generator keeps the token's secret key and the constant part of the header, so it's
+ * recommended to keep one generator per token. Each thread uses its own HMAC instance, so
+ * the whole interface is thread safe.
+ */
+public class TokenHeaderGenerator {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int NONCE_LENGTH = 16;
+    private static final int DIGEST_LENGTH = 32;
+    /**
+     * Maximum number of decimal digits in a positive long value.
+     */
+    private static final int MAX_TIMESTAMP_LENGTH = 19;
+
+    /**
+     * Random number generator shared between all generators.
+     */
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    /**
+     * Per-thread state with HMAC instance and pre-allocated buffers.
+     */
+    private static final ThreadLocal<ThreadState> threadState = new ThreadLocal<ThreadState>() {
+        @Override
+        protected ThreadState initialValue() {
+            return new ThreadState();
+        }
+    };
+
+    private final SecretKeySpec secretKey;
+    private final String headerPrefix;
+
+    /**
+     * @param tokenData token's private data
+     */
+    public TokenHeaderGenerator(@NonNull PowerAuthPrivateTokenData tokenData) {
+        this.secretKey = new SecretKeySpec(tokenData.secret, HMAC_ALGORITHM);
+        this.headerPrefix = "PowerAuth version=\"3.1\", token_id=\"" + tokenData.identifier + "\", token_digest=\"";
+    }
+
+    /**
+     * Calculate a new value for token based authorization header, with random nonce and current time.
+     *
+     * @return calculated header value or null in case of error.
+     */
+    public @Nullable String generateHeaderValue() {
+        final ThreadState state = threadState.get();
+        secureRandom.nextBytes(state.nonce);
+        return calculateHeaderValue(state, state.nonce, System.currentTimeMillis());
+    }
+
+    /**
+     * Calculate value for token based authorization header with provided nonce and timestamp.
+     *
+     * @param nonce 16 bytes long nonce
+     * @param timestamp timestamp in milliseconds since 1970
+     * @return calculated header value or null in case of error.
+     */
+    @Nullable String calculateHeaderValue(@NonNull byte[] nonce, long timestamp) {
+        return calculateHeaderValue(threadState.get(), nonce, timestamp);
+    }
+
+    /**
+     * Calculate value for token based authorization header with provided nonce and timestamp.
+     *
+     * @param state state for the current thread
+     * @param nonce 16 bytes long nonce
+     * @param timestamp timestamp in milliseconds since 1970
+     * @return calculated header value or null in case of error.
+     */
+    private @Nullable String calculateHeaderValue(@NonNull ThreadState state, @NonNull byte[] nonce, long timestamp) {
+        if (nonce.length != NONCE_LENGTH || timestamp < 0) {
+            return null;
+        }
+        try {
+            final Mac mac = state.getMac(secretKey);
+            // Calculate HMAC for "nonce & timestamp"
+            final byte[] data = state.data;
+            System.arraycopy(nonce, 0, data, 0, NONCE_LENGTH);
+            data[NONCE_LENGTH] = '&';
+            final int dataLength = NONCE_LENGTH + 1 + writeDecimal(timestamp, data, NONCE_LENGTH + 1);
+            mac.update(data, 0, dataLength);
+            mac.doFinal(state.digest, 0);
+        } catch (GeneralSecurityException | IllegalStateException e) {
+            PowerAuthLog.e("TokenHeaderGenerator: Failed to calculate digest: " + e.getMessage());
+            state.reset();
+            return null;
+        }
+        // Construct header
+        final StringBuilder header = state.header;
+        header.setLength(0);
+        header.append(headerPrefix)
+                .append(Base64.encodeToString(state.digest, Base64.NO_WRAP))
+                .append("\", nonce=\"")
+                .append(Base64.encodeToString(nonce, Base64.NO_WRAP))
+                .append("\", timestamp=\"")
+                .append(timestamp)
+                .append('"');
+        return header.toString();
+    }
+
+    /**
+     * Write decimal representation of positive number into the buffer, as ASCII characters.
+     *
+     * @param value value to write
+     * @param buffer buffer to write to
+     * @param offset offset to the buffer
+     * @return number of written characters.
+     */
+    private static int writeDecimal(long value, @NonNull byte[] buffer, int offset) {
+        int length = 1;
+        for (long v = value / 10; v != 0; v /= 10) {
+            length++;
+        }
+        for (int i = offset + length - 1; i >= offset; i--) {
+            buffer[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        return length;
+    }
+
+    /**
+     * The {@code ThreadState} class keeps HMAC instance and buffers used by one thread.
+     */
+    private static class ThreadState {
+
+        final byte[] nonce = new byte[NONCE_LENGTH];
+        final byte[] data = new byte[NONCE_LENGTH + 1 + MAX_TIMESTAMP_LENGTH];
+        final byte[] digest = new byte[DIGEST_LENGTH];
+        final StringBuilder header = new StringBuilder(200);
+
+        private Mac mac;
+        private SecretKeySpec macKey;
+
+        /**
+         * Return HMAC instance initialized with provided key. If the instance was used with the same
+         * key in the previous call, then the initialization is skipped.
+         *
+         * @param key key for HMAC
+         * @return Initialized {@link Mac} instance.
+         * @throws GeneralSecurityException In case that HMAC is not available.
+         */
+        @NonNull Mac getMac(@NonNull SecretKeySpec key) throws GeneralSecurityException {
+            if (mac == null) {
+                mac = Mac.getInstance(HMAC_ALGORITHM);
+            }
+            if (macKey != key) {
+                macKey = null;
+                mac.init(key);
+                macKey = key;
+            }
+            return mac;
+        }
+
+        /**
+         * Reset HMAC state after failure.
+         */
+        void reset() {
+            mac = null;
+            macKey = null;
+        }
+    }
+}
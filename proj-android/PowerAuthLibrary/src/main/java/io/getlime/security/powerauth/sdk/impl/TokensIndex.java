@@ -0,0 +1,269 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.getlime.security.powerauth.sdk.impl;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import io.getlime.security.powerauth.keychain.Keychain;
+import io.getlime.security.powerauth.keychain.KeychainFactory;
+import io.getlime.security.powerauth.keychain.KeychainTransaction;
+import io.getlime.security.powerauth.system.PowerAuthLog;
+
+/**
+ * The {@code TokensIndex} class keeps identifiers of all tokens stored in the keychain.
+ * The index is loaded from the keychain only once and then is kept in memory, so adding
+ * or removing an identifier doesn't require parsing the whole index again. The index is
+ * persisted only when its content is changed. The bulk operations persist the index only
+ * once, regardless of the number of changed identifiers. The bulk operations can also stage
+ * the index change to {@link KeychainTransaction}, so the index is written to the keychain
+ * together with another data.
+ * <p>
+ * The index is persisted in the same format as in the previous versions of SDK, where all
+ * identifiers are joined with the new line character and stored as one string, so the
+ * application can be downgraded without losing its tokens. Note that the persisted index is
+ * not incremental. Each change writes the whole list of identifiers to the keychain, because
+ * {@link Keychain} doesn't allow to enumerate its keys and the store needs the complete list
+ * of tokens to remove all of them. The cost of the write is therefore amortized only by the
+ * bulk operations.
+ * <p>
+ * The whole interface is thread safe.
+ */
+public class TokensIndex {
+
+    /**
+     * Keychain for index persistence.
+     */
+    private final Keychain keychain;
+    /**
+     * Key for index stored in the keychain.
+     */
+    private final String indexKey;
+    /**
+     * Prefix for all valid identifiers.
+     */
+    private final String identifierPrefix;
+    /**
+     * In-memory copy of index, or null if index is not loaded yet.
+     */
+    private HashSet<String> identifiers;
+
+    /**
+     * @param keychain keychain for index persistence
+     * @param indexKey key for index stored in the keychain
+     * @param identifierPrefix prefix for all valid identifiers
+     */
+    public TokensIndex(
+            @NonNull Keychain keychain,
+            @NonNull String indexKey,
+            @NonNull String identifierPrefix) {
+        this.keychain = keychain;
+        this.indexKey = indexKey;
+        this.identifierPrefix = identifierPrefix;
+    }
+
+    /**
+     * @return Copy of all identifiers stored in the index.
+     */
+    public synchronized @NonNull Set<String> getIdentifiers() {
+        return new HashSet<>(getLoadedIdentifiers());
+    }
+
+    /**
+     * @param identifier identifier to test
+     * @return true if identifier is stored in the index.
+     */
+    public synchronized boolean contains(@NonNull String identifier) {
+        return getLoadedIdentifiers().contains(identifier);
+    }
+
+    /**
+     * Add identifier to the index.
+     *
+     * @param identifier identifier to be added
+     */
+    public void add(@NonNull String identifier) {
+        addAll(Collections.singleton(identifier));
+    }
+
+    /**
+     * Add multiple identifiers to the index. The index is persisted only once.
+     *
+     * @param identifiersToAdd identifiers to be added
+     */
+    public synchronized void addAll(@NonNull Collection<String> identifiersToAdd) {
+        final KeychainTransaction transaction = KeychainFactory.beginTransaction(keychain);
+        addAll(identifiersToAdd, transaction);
+        commit(transaction);
+    }
+
+    /**
+     * Add multiple identifiers to the index and stage the index change to the provided transaction.
+     * The caller is responsible for committing the transaction. If the commit fails, then the caller
+     * should call {@link #invalidate()}.
+     *
+     * @param identifiersToAdd identifiers to be added
+     * @param transaction keychain transaction where the index change is staged
+     */
+    public synchronized void addAll(@NonNull Collection<String> identifiersToAdd, @NonNull KeychainTransaction transaction) {
+        boolean changed = false;
+        final HashSet<String> loadedIdentifiers = getLoadedIdentifiers();
+        for (String identifier : identifiersToAdd) {
+            if (isValidIdentifier(identifier)) {
+                changed |= loadedIdentifiers.add(identifier);
+            }
+        }
+        if (changed) {
+            save(transaction);
+        }
+    }
+
+    /**
+     * Remove identifier from the index.
+     *
+     * @param identifier identifier to be removed
+     */
+    public void remove(@NonNull String identifier) {
+        removeAll(Collections.singleton(identifier));
+    }
+
+    /**
+     * Remove multiple identifiers from the index. The index is persisted only once.
+     *
+     * @param identifiersToRemove identifiers to be removed
+     */
+    public synchronized void removeAll(@NonNull Collection<String> identifiersToRemove) {
+        final KeychainTransaction transaction = KeychainFactory.beginTransaction(keychain);
+        removeAll(identifiersToRemove, transaction);
+        commit(transaction);
+    }
+
+    /**
+     * Remove multiple identifiers from the index and stage the index change to the provided transaction.
+     * The caller is responsible for committing the transaction. If the commit fails, then the caller
+     * should call {@link #invalidate()}.
+     *
+     * @param identifiersToRemove identifiers to be removed
+     * @param transaction keychain transaction where the index change is staged
+     */
+    public synchronized void removeAll(@NonNull Collection<String> identifiersToRemove, @NonNull KeychainTransaction transaction) {
+        if (getLoadedIdentifiers().removeAll(identifiersToRemove)) {
+            save(transaction);
+        }
+    }
+
+    /**
+     * Remove all identifiers and remove the index from the keychain.
+     */
+    public synchronized void clear() {
+        final KeychainTransaction transaction = KeychainFactory.beginTransaction(keychain);
+        clear(transaction);
+        commit(transaction);
+    }
+
+    /**
+     * Remove all identifiers and stage the index removal to the provided transaction.
+     * The caller is responsible for committing the transaction. If the commit fails, then the caller
+     * should call {@link #invalidate()}.
+     *
+     * @param transaction keychain transaction where the index removal is staged
+     */
+    public synchronized void clear(@NonNull KeychainTransaction transaction) {
+        identifiers = new HashSet<>();
+        transaction.remove(indexKey);
+    }
+
+    /**
+     * Drop the in-memory copy of index, so the index is loaded from the keychain again on next access.
+     */
+    public synchronized void invalidate() {
+        identifiers = null;
+    }
+
+    /**
+     * @return In-memory copy of index. If index is not loaded yet, then loads it from the keychain.
+     */
+    private @NonNull HashSet<String> getLoadedIdentifiers() {
+        if (identifiers == null) {
+            identifiers = load();
+        }
+        return identifiers;
+    }
+
+    /**
+     * Load index from the keychain.
+     *
+     * @return Set of loaded identifiers.
+     */
+    private @NonNull HashSet<String> load() {
+        final HashSet<String> result = new HashSet<>();
+        final String joinedIdentifiers = keychain.getString(indexKey);
+        if (joinedIdentifiers != null) {
+            for (String identifier : joinedIdentifiers.split("\\n")) {
+                if (isValidIdentifier(identifier)) {
+                    result.add(identifier);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stage in-memory copy of index to the keychain transaction.
+     *
+     * @param transaction keychain transaction where the index is staged
+     */
+    private void save(@NonNull KeychainTransaction transaction) {
+        if (identifiers.isEmpty()) {
+            transaction.remove(indexKey);
+        } else {
+            final StringBuilder joinedIdentifiers = new StringBuilder();
+            for (String identifier : identifiers) {
+                if (joinedIdentifiers.length() > 0) {
+                    joinedIdentifiers.append('\n');
+                }
+                joinedIdentifiers.append(identifier);
+            }
+            transaction.putString(joinedIdentifiers.toString(), indexKey);
+        }
+    }
+
+    /**
+     * Commit the keychain transaction. If the commit fails, then the in-memory copy of index is dropped,
+     * so it doesn't differ from the content of the keychain.
+     *
+     * @param transaction keychain transaction to commit
+     */
+    private void commit(@NonNull KeychainTransaction transaction) {
+        if (!transaction.commit()) {
+            PowerAuthLog.e("TokensIndex: Failed to save index.");
+            identifiers = null;
+        }
+    }
+
+    /**
+     * @param identifier identifier to test
+     * @return true if provided identifier is a valid identifier for this index.
+     */
+    private boolean isValidIdentifier(@NonNull String identifier) {
+        return identifier.startsWith(identifierPrefix);
+    }
+}
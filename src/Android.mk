@@ -139,6 +139,7 @@ LOCAL_C_INCLUDES := \
 
 # JNI sources
 LOCAL_SRC_FILES := \
+	PowerAuth/jni/JniCache.cpp \
 	PowerAuth/jni/SessionJNI.cpp \
 	PowerAuth/jni/PasswordJNI.cpp \
 	PowerAuth/jni/ActivationCodeUtilJNI.cpp \
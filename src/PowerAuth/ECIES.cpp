@@ -74,80 +74,211 @@ namespace powerAuth
 	}
 	
 	ECIESEnvelopeKey ECIESEnvelopeKey::fromPublicKey(const cc7::ByteRange & public_key, const cc7::ByteRange & shared_info1, cc7::ByteArray & out_ephemeral_key)
+	{
+		ECIESEphemeralKey ephemeral_key;
+		if (!ECIESEphemeralKeyPool::calculateKey(public_key, ephemeral_key)) {
+			return ECIESEnvelopeKey();
+		}
+		out_ephemeral_key = ephemeral_key.publicKey;
+		auto ek = fromSharedSecret(ephemeral_key.sharedSecret, ephemeral_key.publicKey, shared_info1);
+		ephemeral_key.sharedSecret.secureClear();
+		return ek;
+	}
+	
+	ECIESEnvelopeKey ECIESEnvelopeKey::fromSharedSecret(const cc7::ByteRange & shared_secret, const cc7::ByteRange & ephemeral_key, const cc7::ByteRange & shared_info1)
+	{
+		ECIESEnvelopeKey ek;
+		if (shared_secret.empty() || ephemeral_key.empty()) {
+			return ek;
+		}
+		// Concat shared_info1 + ephemeral key.
+		cc7::ByteArray info1_data;
+		info1_data.reserve(shared_info1.size() + ephemeral_key.size());
+		info1_data.assign(shared_info1);
+		info1_data.append(ephemeral_key);
+		// Derive shared secret
+		ek._key = crypto::ECDH_KDF_X9_63_SHA256(shared_secret, info1_data, EnvelopeKeySize);
+		return ek;
+	}
+	
+	ECIESEnvelopeKey ECIESEnvelopeKey::fromPrivateKey(const cc7::ByteArray & private_key, const cc7::ByteRange & ephemeral_key, const cc7::ByteRange & shared_info1)
 	{
 		crypto::BNContext ctx;
-		EC_KEY *pubk = nullptr, *ephemeral = nullptr;
+		EC_KEY *privk = nullptr, *ephemeral = nullptr;
 		ECIESEnvelopeKey ek;
+		
 		do {
-			pubk = crypto::ECC_ImportPublicKey(nullptr, public_key, ctx);
-			if (!pubk) {
+			privk = crypto::ECC_ImportPrivateKey(nullptr, private_key);
+			if (!privk) {
 				break;
 			}
-			ephemeral = crypto::ECC_GenerateKeyPair();
+			ephemeral = crypto::ECC_ImportPublicKey(nullptr, ephemeral_key);
 			if (!ephemeral) {
 				break;
 			}
-			auto sharedSecret = crypto::ECDH_SharedSecret(pubk, ephemeral);
+			auto sharedSecret = crypto::ECDH_SharedSecret(ephemeral, privk);
 			if (sharedSecret.empty()) {
 				break;
 			}
-			out_ephemeral_key = crypto::ECC_ExportPublicKey(ephemeral, ctx);
-			if (out_ephemeral_key.empty()) {
-				break;
-			}
 			// Concat shared_info1 + ephemeral key.
 			cc7::ByteArray info1_data;
-			info1_data.reserve(shared_info1.size() + out_ephemeral_key.size());
+			info1_data.reserve(shared_info1.size() + ephemeral_key.size());
 			info1_data.assign(shared_info1);
-			info1_data.append(out_ephemeral_key);
+			info1_data.append(ephemeral_key);
 			// Derive shared secret
 			ek._key = crypto::ECDH_KDF_X9_63_SHA256(sharedSecret, info1_data, EnvelopeKeySize);
 			
 		} while (false);
 		
 		// Releace OpenSSL resources
-		EC_KEY_free(pubk);
+		EC_KEY_free(privk);
 		EC_KEY_free(ephemeral);
 		
 		return ek;
 	}
+
+	// ----------------------------------------------------------------------------------------------
+	// MARK: - Ephemeral key pool -
+	//
 	
-	ECIESEnvelopeKey ECIESEnvelopeKey::fromPrivateKey(const cc7::ByteArray & private_key, const cc7::ByteRange & ephemeral_key, const cc7::ByteRange & shared_info1)
+	ECIESEphemeralKeyPool::ECIESEphemeralKeyPool(const cc7::ByteRange & public_key, const ECIESEphemeralKeyPoolConfig & config) :
+		_public_key(public_key),
+		_config(config),
+		_refill_requested(config.depth > 0),
+		_failed(false),
+		_stopped(false)
+	{
+		if (_config.depth > 0) {
+			_thread = std::thread(&ECIESEphemeralKeyPool::refillLoop, this);
+		}
+	}
+	
+	ECIESEphemeralKeyPool::~ECIESEphemeralKeyPool()
+	{
+		{
+			std::lock_guard<std::mutex> lock(_lock);
+			_stopped = true;
+		}
+		_refill_condition.notify_all();
+		_filled_condition.notify_all();
+		if (_thread.joinable()) {
+			_thread.join();
+		}
+		for (auto & key : _keys) {
+			key.sharedSecret.secureClear();
+		}
+	}
+	
+	const cc7::ByteArray & ECIESEphemeralKeyPool::publicKey() const
+	{
+		return _public_key;
+	}
+	
+	const ECIESEphemeralKeyPoolConfig & ECIESEphemeralKeyPool::config() const
+	{
+		return _config;
+	}
+	
+	size_t ECIESEphemeralKeyPool::availableKeys() const
+	{
+		std::lock_guard<std::mutex> lock(_lock);
+		return _keys.size();
+	}
+	
+	bool ECIESEphemeralKeyPool::acquireKey(ECIESEphemeralKey & out_key)
+	{
+		bool result = false;
+		bool wake_up = false;
+		{
+			std::lock_guard<std::mutex> lock(_lock);
+			if (!_keys.empty()) {
+				// Move the key out of the pool, so it can't be acquired again.
+				out_key = std::move(_keys.front());
+				_keys.pop_front();
+				result = true;
+			}
+			if (!_stopped && !_refill_requested && _keys.size() <= _config.refillThreshold) {
+				_refill_requested = true;
+				_failed = false;
+				wake_up = true;
+			}
+		}
+		if (wake_up) {
+			_refill_condition.notify_one();
+		}
+		return result;
+	}
+	
+	bool ECIESEphemeralKeyPool::waitUntilFilled()
+	{
+		std::unique_lock<std::mutex> lock(_lock);
+		_filled_condition.wait(lock, [this] {
+			return _stopped || _failed || !_refill_requested;
+		});
+		return _keys.size() >= _config.depth;
+	}
+	
+	bool ECIESEphemeralKeyPool::calculateKey(const cc7::ByteRange & public_key, ECIESEphemeralKey & out_key)
 	{
 		crypto::BNContext ctx;
-		EC_KEY *privk = nullptr, *ephemeral = nullptr;
-		ECIESEnvelopeKey ek;
-		
+		EC_KEY *pubk = nullptr, *ephemeral = nullptr;
+		bool result = false;
 		do {
-			privk = crypto::ECC_ImportPrivateKey(nullptr, private_key);
-			if (!privk) {
+			pubk = crypto::ECC_ImportPublicKey(nullptr, public_key, ctx);
+			if (!pubk) {
 				break;
 			}
-			ephemeral = crypto::ECC_ImportPublicKey(nullptr, ephemeral_key);
+			ephemeral = crypto::ECC_GenerateKeyPair();
 			if (!ephemeral) {
 				break;
 			}
-			auto sharedSecret = crypto::ECDH_SharedSecret(ephemeral, privk);
-			if (sharedSecret.empty()) {
+			out_key.sharedSecret = crypto::ECDH_SharedSecret(pubk, ephemeral);
+			if (out_key.sharedSecret.empty()) {
 				break;
 			}
-			// Concat shared_info1 + ephemeral key.
-			cc7::ByteArray info1_data;
-			info1_data.reserve(shared_info1.size() + ephemeral_key.size());
-			info1_data.assign(shared_info1);
-			info1_data.append(ephemeral_key);
-			// Derive shared secret
-			ek._key = crypto::ECDH_KDF_X9_63_SHA256(sharedSecret, info1_data, EnvelopeKeySize);
+			out_key.publicKey = crypto::ECC_ExportPublicKey(ephemeral, ctx);
+			if (out_key.publicKey.empty()) {
+				break;
+			}
+			result = true;
 			
 		} while (false);
 		
 		// Releace OpenSSL resources
-		EC_KEY_free(privk);
+		EC_KEY_free(pubk);
 		EC_KEY_free(ephemeral);
 		
-		return ek;
+		return result;
 	}
-
+	
+	void ECIESEphemeralKeyPool::refillLoop()
+	{
+		std::unique_lock<std::mutex> lock(_lock);
+		while (true) {
+			_refill_condition.wait(lock, [this] {
+				return _stopped || _refill_requested;
+			});
+			if (_stopped) {
+				break;
+			}
+			while (!_stopped && _keys.size() < _config.depth) {
+				// Calculate the key outside of the lock, so acquireKey() is not blocked.
+				lock.unlock();
+				ECIESEphemeralKey key;
+				bool success = calculateKey(_public_key, key);
+				lock.lock();
+				if (!success) {
+					CC7_LOG("ECIESEphemeralKeyPool %p: Failed to calculate ephemeral key.", this);
+					_failed = true;
+					break;
+				}
+				_keys.push_back(std::move(key));
+			}
+			_refill_requested = false;
+			_filled_condition.notify_all();
+		}
+	}
+	
 	// ----------------------------------------------------------------------------------------------
 	// MARK: - Private encryption / decryption -
 	//
@@ -248,6 +379,16 @@ namespace powerAuth
 		return _iv_for_decryption;
 	}
 	
+	const std::shared_ptr<ECIESEphemeralKeyPool> & ECIESEncryptor::ephemeralKeyPool() const
+	{
+		return _ephemeral_key_pool;
+	}
+	
+	void ECIESEncryptor::setEphemeralKeyPool(const std::shared_ptr<ECIESEphemeralKeyPool> & pool)
+	{
+		_ephemeral_key_pool = pool;
+	}
+	
 	bool ECIESEncryptor::canEncryptRequest() const
 	{
 		return !_public_key.empty();
@@ -264,7 +405,15 @@ namespace powerAuth
 	ErrorCode ECIESEncryptor::encryptRequest(const cc7::ByteRange & data, ECIESCryptogram & out_cryptogram)
 	{
 		if (canEncryptRequest()) {
-			_envelope_key = ECIESEnvelopeKey::fromPublicKey(_public_key, _shared_info1, out_cryptogram.key);
+			ECIESEphemeralKey ephemeral_key;
+			if (_ephemeral_key_pool && _ephemeral_key_pool->publicKey() == _public_key && _ephemeral_key_pool->acquireKey(ephemeral_key)) {
+				// Use pre-computed key from the pool
+				out_cryptogram.key = ephemeral_key.publicKey;
+				_envelope_key = ECIESEnvelopeKey::fromSharedSecret(ephemeral_key.sharedSecret, ephemeral_key.publicKey, _shared_info1);
+				ephemeral_key.sharedSecret.secureClear();
+			} else {
+				_envelope_key = ECIESEnvelopeKey::fromPublicKey(_public_key, _shared_info1, out_cryptogram.key);
+			}
 			if (_envelope_key.isValid()) {
 				out_cryptogram.nonce = crypto::GetRandomData(ECIESEnvelopeKey::NonceSize);
 				_iv_for_decryption = _envelope_key.deriveIvForNonce(out_cryptogram.nonce);
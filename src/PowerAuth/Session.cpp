@@ -44,7 +44,9 @@ namespace powerAuth
 		_state(SS_Empty),
 		_setup(setup),
 		_pd(nullptr),
-		_ad(nullptr)
+		_ad(nullptr),
+		_prepared_ad(nullptr),
+		_cached_keys(nullptr)
 	{
 		if (protocol::ValidateSessionSetup(_setup, false)) {
 			CC7_LOG("Session %p, %d: Object created.", this, sessionIdentifier());
@@ -58,6 +60,8 @@ namespace powerAuth
 	{
 		delete _pd;
 		delete _ad;
+		delete _prepared_ad;
+		delete _cached_keys;
 		
 		CC7_LOG("Session %p, %d: Object destroyed.", this, sessionIdentifier());
 	}
@@ -65,6 +69,7 @@ namespace powerAuth
 	void Session::resetSession()
 	{
 		LOCK_GUARD();
+		discardPreparedActivation();
 		commitNewPersistentState(nullptr, SS_Empty);
 	}
 	
@@ -172,6 +177,10 @@ namespace powerAuth
 		
 		if (flags & HAS_PERSISTENT_DATA) {
 			protocol::SerializePersistentData(*_pd, writer);
+			if (_pd->isV3()) {
+				// The serialized data now contains the counter sequence.
+				_pd->hasCounterSequence = true;
+			}
 		}
 		writer.closeVersion();
 		
@@ -206,6 +215,41 @@ namespace powerAuth
 		return result ? EC_Ok : EC_WrongParam;
 	}
 	
+	cc7::ByteArray Session::saveCounterState() const
+	{
+		LOCK_GUARD();
+		if (!hasValidActivation()) {
+			return cc7::ByteArray();
+		}
+		utils::DataWriter writer;
+		protocol::SerializeCounterData(*_pd, writer);
+		return writer.serializedData();
+	}
+	
+	ErrorCode Session::loadCounterState(const cc7::ByteRange & counter_state)
+	{
+		LOCK_GUARD();
+		if (!hasValidActivation()) {
+			CC7_LOG("Session %p, %d: LoadCounter: There's no valid activation.", this, sessionIdentifier());
+			return EC_WrongState;
+		}
+		utils::DataReader reader(counter_state);
+		if (!protocol::DeserializeCounterData(*_pd, reader)) {
+			CC7_LOG("Session %p, %d: LoadCounter: Counter data is invalid or doesn't match the activation.", this, sessionIdentifier());
+			return EC_WrongParam;
+		}
+		return EC_Ok;
+	}
+	
+	bool Session::hasOutdatedSessionState() const
+	{
+		LOCK_GUARD();
+		if (hasValidActivation()) {
+			return _pd->isV3() && !_pd->hasCounterSequence;
+		}
+		return false;
+	}
+	
 	
 	
 	// MARK: - Activation -
@@ -261,50 +305,41 @@ namespace powerAuth
 		}
 		
 		auto error_code = EC_Encryption;
-		auto ad = new protocol::ActivationData();
+		// Use activation data prepared in advance, if available. The prepared data is always
+		// removed from the session, so it can't be used for another activation.
+		auto ad = _prepared_ad;
+		bool ad_is_prepared = ad != nullptr;
+		_prepared_ad = nullptr;
+		if (ad == nullptr) {
+			ad = new protocol::ActivationData();
+			error_code = prepareActivationData(_setup.masterServerPublicKey, ad);
+		} else {
+			CC7_LOG("Session %p, %d: Step 1: Using prepared activation data.", this, sessionIdentifier());
+			error_code = EC_Ok;
+		}
 		
-		do {
-			crypto::BNContext ctx;
-			
-			// Import master server public key & try to validate OTP+ShortID signature
-			ad->masterServerPublicKey = crypto::ECC_ImportPublicKeyFromB64(nullptr, _setup.masterServerPublicKey, ctx);
-			if (nullptr == ad->masterServerPublicKey) {
-				CC7_LOG("Session %p, %d: Step 1: Master server public key is invalid.", this, sessionIdentifier());
-				break;
-			}
-			if (!protocol::ValidateActivationCodeSignature(param.activationCode, param.activationSignature, ad->masterServerPublicKey)) {
+		if (error_code == EC_Ok) {
+			error_code = EC_Encryption;
+			// Try to validate OTP+ShortID signature
+			if (protocol::ValidateActivationCodeSignature(param.activationCode, param.activationSignature, ad->masterServerPublicKey)) {
+				// V3 activation is much simpler than V2. We need to just store device's public key
+				// in Base64 format. The data encryption & protection is achieved by the ECIES.
+				result.devicePublicKey = ad->devicePublicKeyData.base64String();
+				
+				// Finally, everything is OK
+				error_code = EC_Ok;
+			} else {
 				CC7_LOG("Session %p, %d: Step 1: Invalid OTP+ShortID signature.", this, sessionIdentifier());
-				break;
 			}
-			
-			// Re-seed OpenSSL's PRNG.
-			crypto::ReseedPRNG();
-			
-			// Generate device's private & public key pair
-			ad->devicePrivateKey = crypto::ECC_GenerateKeyPair();
-			if (nullptr == ad->devicePrivateKey) {
-				CC7_LOG("Session %p, %d: Step 1: Private key pair generator failed.", this, sessionIdentifier());
-				break;
-			}
-			ad->devicePublicKeyData = crypto::ECC_ExportPublicKey(ad->devicePrivateKey, ctx);
-			if (ad->devicePublicKeyData.empty()) {
-				CC7_LOG("Session %p, %d: Step 1: Unable to export public key.", this, sessionIdentifier());
-				break;
-			}
-			
-			// V3 activation is much simpler than V2. We need to just store device's public key
-			// in Base64 format. The data encryption & protection is achieved by the ECIES.
-			result.devicePublicKey = ad->devicePublicKeyData.base64String();
-			
-			// Finally, everything is OK
-			error_code = EC_Ok;
-			
-		} while (false);
+		}
 		
 		if (error_code == EC_Ok) {
 			// Keep activation data for other steps
 			_ad = ad;
 			changeState(SS_Activation1);
+		} else if (ad_is_prepared) {
+			// Device's public key was not revealed, so the prepared data can be used for the next attempt.
+			_prepared_ad = ad;
 		} else {
 			// Activation failed, delete AD structure
 			delete ad;
@@ -312,6 +347,82 @@ namespace powerAuth
 		return error_code;
 	}
 	
+	ErrorCode Session::prepareActivation()
+	{
+		std::string master_server_public_key;
+		{
+			LOCK_GUARD();
+			if (!hasValidSetup()) {
+				CC7_LOG("Session %p, %d: Prepare: Session has no valid setup.", this, sessionIdentifier());
+				return EC_WrongState;
+			}
+			if (!canStartActivation()) {
+				CC7_LOG("Session %p, %d: Prepare: Called in wrong state.", this, sessionIdentifier());
+				return EC_WrongState;
+			}
+			if (_prepared_ad != nullptr) {
+				return EC_Ok;
+			}
+			master_server_public_key = _setup.masterServerPublicKey;
+		}
+		// Key pair generation is performed without holding the lock, so the session is not blocked.
+		auto ad = new protocol::ActivationData();
+		auto error_code = prepareActivationData(master_server_public_key, ad);
+		if (error_code == EC_Ok) {
+			LOCK_GUARD();
+			if (_prepared_ad == nullptr && canStartActivation()) {
+				// Keep the data for the next activation. If there's already prepared data
+				// from another thread, or the activation has been started in the meantime,
+				// then the new data is simply deleted.
+				_prepared_ad = ad;
+				ad = nullptr;
+			}
+		}
+		delete ad;
+		return error_code;
+	}
+	
+	bool Session::hasPreparedActivation() const
+	{
+		LOCK_GUARD();
+		return _prepared_ad != nullptr;
+	}
+	
+	void Session::discardPreparedActivation()
+	{
+		LOCK_GUARD();
+		delete _prepared_ad;
+		_prepared_ad = nullptr;
+	}
+	
+	ErrorCode Session::prepareActivationData(const std::string & master_server_public_key, protocol::ActivationData * ad) const
+	{
+		crypto::BNContext ctx;
+		
+		// Import master server public key
+		ad->masterServerPublicKey = crypto::ECC_ImportPublicKeyFromB64(nullptr, master_server_public_key, ctx);
+		if (nullptr == ad->masterServerPublicKey) {
+			CC7_LOG("Session %p, %d: Step 1: Master server public key is invalid.", this, sessionIdentifier());
+			return EC_Encryption;
+		}
+		
+		// Re-seed OpenSSL's PRNG.
+		crypto::ReseedPRNG();
+		
+		// Generate device's private & public key pair
+		ad->devicePrivateKey = crypto::ECC_GenerateKeyPair();
+		if (nullptr == ad->devicePrivateKey) {
+			CC7_LOG("Session %p, %d: Step 1: Private key pair generator failed.", this, sessionIdentifier());
+			return EC_Encryption;
+		}
+		ad->devicePublicKeyData = crypto::ECC_ExportPublicKey(ad->devicePrivateKey, ctx);
+		if (ad->devicePublicKeyData.empty()) {
+			CC7_LOG("Session %p, %d: Step 1: Unable to export public key.", this, sessionIdentifier());
+			return EC_Encryption;
+		}
+		return EC_Ok;
+	}
+	
 	ErrorCode Session::validateActivationResponse(const ActivationStep2Param & param, ActivationStep2Result & result)
 	{
 		LOCK_GUARD();
@@ -522,6 +633,7 @@ namespace powerAuth
 				// Everything's OK, keep received byte in persistent data and suggest save the session's state.
 				_pd->flags.hasSignatureCounterByte = 1;
 				_pd->signatureCounterByte = status.ctrByte;
+				_pd->counterSequence += 1;
 				return ActivationStatus::Counter_Updated;
 			}
 			// Otherwise it's not possible to determine whether the counter's OK. We have to wait to sync counters
@@ -556,6 +668,7 @@ namespace powerAuth
 			// We have last matched CTR_DATA value in local_ctr_data variable.
 			_pd->signatureCounterData = local_ctr_data;
 			_pd->signatureCounterByte = status.ctrByte;
+			_pd->counterSequence += 1;
 			// Report that persistent data should be saved now.
 			return ActivationStatus::Counter_Updated;
 		}
@@ -639,8 +752,7 @@ namespace powerAuth
 		
 		// Unlock keys. This also validates whether the provided unlock keys are present or not.
 		protocol::SignatureKeys plain_keys;
-		protocol::SignatureUnlockKeysReq unlock_request(signature_factor, &keys, eek(), &_pd->passwordSalt, _pd->passwordIterations);
-		if (!protocol::UnlockSignatureKeys(plain_keys, _pd->sk, unlock_request)) {
+		if (!unlockSignatureKeysForSigning(plain_keys, keys, signature_factor)) {
 			CC7_LOG("Session %p, %d: Sign: Unable to unlock signature keys.", this, sessionIdentifier());
 			return EC_Encryption;
 		}
@@ -667,6 +779,57 @@ namespace powerAuth
 		return EC_Ok;
 	}
 	
+	bool Session::unlockSignatureKeysForSigning(protocol::SignatureKeys & out_keys, const SignatureUnlockKeys & keys, SignatureFactor signature_factor)
+	{
+		purgeExpiredSignatureKeys();
+		const bool use_cache = keys.isCacheEnabled();
+		if (use_cache && _cached_keys && _cached_keys->factor == signature_factor) {
+			if (_cached_keys->fingerprint == protocol::CalculateUnlockKeysFingerprint(keys, _cached_keys->fingerprintKey)) {
+				out_keys = _cached_keys->keys;
+				_cached_keys->remainingUseCount--;
+				purgeExpiredSignatureKeys();
+				return true;
+			}
+		}
+		protocol::SignatureUnlockKeysReq unlock_request(signature_factor, &keys, eek(), &_pd->passwordSalt, _pd->passwordIterations);
+		if (!protocol::UnlockSignatureKeys(out_keys, _pd->sk, unlock_request)) {
+			return false;
+		}
+		if (use_cache) {
+			// Keep only the last unlocked keys. The current use is not counted in the remaining uses.
+			clearCachedSignatureKeys();
+			_cached_keys = new protocol::UnlockedSignatureKeys();
+			_cached_keys->keys = out_keys;
+			_cached_keys->factor = signature_factor;
+			_cached_keys->fingerprintKey = crypto::GetRandomData(protocol::SIGNATURE_KEY_SIZE, true);
+			_cached_keys->fingerprint = protocol::CalculateUnlockKeysFingerprint(keys, _cached_keys->fingerprintKey);
+			_cached_keys->expiration = std::chrono::steady_clock::now() + std::chrono::milliseconds(keys.cacheTimeToLive);
+			_cached_keys->remainingUseCount = keys.cacheMaxUseCount - 1;
+		}
+		return true;
+	}
+	
+	bool Session::hasCachedSignatureKeys() const
+	{
+		LOCK_GUARD();
+		return _cached_keys != nullptr && !_cached_keys->isExpired();
+	}
+	
+	void Session::purgeExpiredSignatureKeys()
+	{
+		LOCK_GUARD();
+		if (_cached_keys && _cached_keys->isExpired()) {
+			clearCachedSignatureKeys();
+		}
+	}
+	
+	void Session::clearCachedSignatureKeys()
+	{
+		LOCK_GUARD();
+		delete _cached_keys;
+		_cached_keys = nullptr;
+	}
+	
 	const std::string & Session::httpAuthHeaderName() const
 	{
 		return protocol::PA_AUTH_HEADER_NAME;
@@ -747,6 +910,7 @@ namespace powerAuth
 		}
 
 		// Store change to the PD and return success
+		clearCachedSignatureKeys();
 		_pd->sk.knowledgeKey    = encrypted_keys.knowledgeKey;
 		_pd->passwordSalt       = new_salt;
 		_pd->passwordIterations = new_iterations_count;
@@ -808,6 +972,7 @@ namespace powerAuth
 				break;
 			}
 			// Everything looks fine
+			clearCachedSignatureKeys();
 			code = EC_Ok;
 
 		} while (false);
@@ -842,6 +1007,7 @@ namespace powerAuth
 		}
 
 		// Clear encrypted biometry key and reset waiting for vault flag.
+		clearCachedSignatureKeys();
 		_pd->sk.biometryKey.clear();
 		return EC_Ok;
 	}
@@ -1013,6 +1179,7 @@ namespace powerAuth
 		if (!protocol::ProtectSignatureKeysWithEEK(_pd->sk, eek, true)) {
 			return EC_Encryption;
 		}
+		clearCachedSignatureKeys();
 		_setup.externalEncryptionKey = eek;
 		_pd->flags.usesExternalKey = true;
 		return EC_Ok;
@@ -1037,6 +1204,7 @@ namespace powerAuth
 		if (!protocol::ProtectSignatureKeysWithEEK(_pd->sk, _setup.externalEncryptionKey, false)) {
 			return EC_Encryption;
 		}
+		clearCachedSignatureKeys();
 		_setup.externalEncryptionKey.clear();
 		_pd->flags.usesExternalKey = false;
 		return EC_Ok;
@@ -1154,6 +1322,7 @@ namespace powerAuth
 				// Everything looks fine, we can commit new data.
 				_pd->signatureCounterData = ctr_data;
 				_pd->signatureCounter = 0;
+				_pd->counterSequence += 1;
 				_pd->flags.waitingForVaultUnlock = 0;
 				// V3.1: Despite the fact that we still have a local counter, it might be still out of the sync.
 				//       So, mark the counter byte as invalid, just like we do for migration from V3 to V3.1.
@@ -1254,6 +1423,9 @@ namespace powerAuth
 	 */
 	void Session::commitNewPersistentState(protocol::PersistentData *new_pd, Session::State new_state)
 	{
+		// Keys unlocked from the previous persistent data must not survive the change.
+		clearCachedSignatureKeys();
+		
 		// At first, delete possible activation data. In all cases, commit must clear
 		// any instance of activation data.
 		delete _ad;
@@ -18,7 +18,11 @@
 #include "Hash.h"
 #include <openssl/evp.h>
 #include <openssl/ecdh.h>
+#include <openssl/sha.h>
+#include <openssl/crypto.h>
 #include <cc7/Endian.h>
+#include <algorithm>
+#include <string.h>
 
 namespace io
 {
@@ -33,24 +37,112 @@ namespace crypto
 	// MARK: - PBKDF2 -
 	//
 	
-	cc7::ByteArray PBKDF2_HMAC_SHA1(const cc7::ByteRange & pass, const cc7::ByteRange & salt, cc7::U32 iterations, size_t output_bytes)
+	/*
+	 The PBKDF2 implementation below produces the same output as OpenSSL's PKCS5_PBKDF2_HMAC(), but
+	 it's tuned for a high number of iterations. The HMAC inner and outer pad states are calculated
+	 only once per password and each iteration then only copies the prepared hash contexts on the stack.
+	 There's no memory allocation and no EVP dispatch in the iteration loop.
+	 */
+	
+	struct _SHA1_Traits
+	{
+		typedef SHA_CTX Context;
+		enum { BlockSize = SHA_CBLOCK, DigestSize = SHA_DIGEST_LENGTH };
+		static void Init(Context * ctx)										{ SHA1_Init(ctx); }
+		static void Update(Context * ctx, const void * data, size_t size)	{ SHA1_Update(ctx, data, size); }
+		static void Final(cc7::byte * md, Context * ctx)					{ SHA1_Final(md, ctx); }
+	};
+	
+	struct _SHA256_Traits
+	{
+		typedef SHA256_CTX Context;
+		enum { BlockSize = SHA256_CBLOCK, DigestSize = SHA256_DIGEST_LENGTH };
+		static void Init(Context * ctx)										{ SHA256_Init(ctx); }
+		static void Update(Context * ctx, const void * data, size_t size)	{ SHA256_Update(ctx, data, size); }
+		static void Final(cc7::byte * md, Context * ctx)					{ SHA256_Final(md, ctx); }
+	};
+	
+	template <typename H>
+	static cc7::ByteArray _PBKDF2_HMAC(const cc7::ByteRange & pass, const cc7::ByteRange & salt, cc7::U32 iterations, size_t output_bytes)
 	{
+		typedef typename H::Context Context;
+		
+		// HMAC key is the password, or its hash if the password is longer than the block.
+		cc7::byte key[H::BlockSize];
+		memset(key, 0, sizeof(key));
+		Context ctx;
+		if (pass.size() > H::BlockSize) {
+			H::Init(&ctx);
+			H::Update(&ctx, pass.data(), pass.size());
+			H::Final(key, &ctx);
+		} else if (!pass.empty()) {
+			memcpy(key, pass.data(), pass.size());
+		}
+		
+		// Precompute inner and outer pad states.
+		cc7::byte pad[H::BlockSize];
+		Context inner, outer;
+		for (size_t i = 0; i < H::BlockSize; i++) {
+			pad[i] = key[i] ^ 0x36;
+		}
+		H::Init(&inner);
+		H::Update(&inner, pad, sizeof(pad));
+		for (size_t i = 0; i < H::BlockSize; i++) {
+			pad[i] = key[i] ^ 0x5c;
+		}
+		H::Init(&outer);
+		H::Update(&outer, pad, sizeof(pad));
+		
 		cc7::ByteArray result(output_bytes, 0);
-		if (1 != PKCS5_PBKDF2_HMAC((const char*)pass.data(), (int)pass.size(), salt.data(), (int)salt.size(), (int)iterations, EVP_sha1(), (int)output_bytes, result.data())) {
-			CC7_LOG("PKCS5_PBKDF2_HMAC has failed!");
-			result.clear();
+		cc7::byte u[H::DigestSize];
+		cc7::byte t[H::DigestSize];
+		cc7::U32 block_index = 1;
+		for (size_t offset = 0; offset < output_bytes; offset += H::DigestSize, block_index++) {
+			// U1 = HMAC(pass, salt || INT(block_index))
+			const cc7::U32 be_block_index = cc7::ToBigEndian(block_index);
+			ctx = inner;
+			H::Update(&ctx, salt.data(), salt.size());
+			H::Update(&ctx, &be_block_index, sizeof(be_block_index));
+			H::Final(u, &ctx);
+			ctx = outer;
+			H::Update(&ctx, u, sizeof(u));
+			H::Final(u, &ctx);
+			memcpy(t, u, sizeof(t));
+			// Uj = HMAC(pass, Uj-1), T = U1 ^ U2 ^ ... ^ Uc
+			for (cc7::U32 j = 1; j < iterations; j++) {
+				ctx = inner;
+				H::Update(&ctx, u, sizeof(u));
+				H::Final(u, &ctx);
+				ctx = outer;
+				H::Update(&ctx, u, sizeof(u));
+				H::Final(u, &ctx);
+				for (size_t k = 0; k < H::DigestSize; k++) {
+					t[k] ^= u[k];
+				}
+			}
+			const size_t copy_size = std::min(output_bytes - offset, (size_t)H::DigestSize);
+			memcpy(result.data() + offset, t, copy_size);
 		}
+		
+		// Clear all sensitive data from the stack.
+		OPENSSL_cleanse(key, sizeof(key));
+		OPENSSL_cleanse(pad, sizeof(pad));
+		OPENSSL_cleanse(u, sizeof(u));
+		OPENSSL_cleanse(t, sizeof(t));
+		OPENSSL_cleanse(&ctx, sizeof(ctx));
+		OPENSSL_cleanse(&inner, sizeof(inner));
+		OPENSSL_cleanse(&outer, sizeof(outer));
 		return result;
 	}
+	
+	cc7::ByteArray PBKDF2_HMAC_SHA1(const cc7::ByteRange & pass, const cc7::ByteRange & salt, cc7::U32 iterations, size_t output_bytes)
+	{
+		return _PBKDF2_HMAC<_SHA1_Traits>(pass, salt, iterations, output_bytes);
+	}
 
 	cc7::ByteArray PBKDF2_HMAC_SHA256(const cc7::ByteRange & pass, const cc7::ByteRange & salt, cc7::U32 iterations, size_t output_bytes)
 	{
-		cc7::ByteArray result(output_bytes, 0);
-		if (1 != PKCS5_PBKDF2_HMAC((const char*)pass.data(), (int)pass.size(), salt.data(), (int)salt.size(), (int)iterations, EVP_sha256(), (int)output_bytes, result.data())) {
-			CC7_LOG("PKCS5_PBKDF2_HMAC has failed!");
-			result.clear();
-		}
-		return result;
+		return _PBKDF2_HMAC<_SHA256_Traits>(pass, salt, iterations, output_bytes);
 	}
 	
 	
@@ -16,6 +16,7 @@
 
 #include <PowerAuth/OtpUtil.h>
 #include <cc7/jni/JniHelper.h>
+#include "JniCache.h"
 
 // Package: io.getlime.security.powerauth.sdk
 #define CC7_JNI_CLASS_PATH	    	"io/getlime/security/powerauth/core"
@@ -46,10 +47,10 @@ CC7_JNI_METHOD_PARAMS(jobject, parseFromActivationCode, jstring activationCode)
 		return NULL;
 	}
 	// Copy cppResult into java result object
-	jclass  resultClazz  = CC7_JNI_MODULE_FIND_CLASS("ActivationCode");
-	jobject resultObject = cc7::jni::CreateJavaObject(env, CC7_JNI_MODULE_CLASS_PATH("ActivationCode"), "()V");
-	CC7_JNI_SET_FIELD_STRING(resultObject, resultClazz, "activationCode",	cc7::jni::CopyToJavaString(env, cppComponents.activationCode));
-	CC7_JNI_SET_FIELD_STRING(resultObject, resultClazz, "activationSignature",	cc7::jni::CopyToNullableJavaString(env, cppComponents.activationSignature));
+	jclass  resultClazz  = PA_JNI_MODULE_FIND_CLASS("ActivationCode");
+	jobject resultObject = PA_JNI_MODULE_NEW_OBJECT("ActivationCode");
+	PA_JNI_SET_FIELD_STRING(resultObject, resultClazz, "activationCode",	cc7::jni::CopyToJavaString(env, cppComponents.activationCode));
+	PA_JNI_SET_FIELD_STRING(resultObject, resultClazz, "activationSignature",	cc7::jni::CopyToNullableJavaString(env, cppComponents.activationSignature));
 	return resultObject;
 }
 
@@ -64,9 +65,9 @@ CC7_JNI_METHOD_PARAMS(jobject, parseFromRecoveryCode, jstring activationCode)
 		return NULL;
 	}
 	// Copy cppResult into java result object
-	jclass  resultClazz  = CC7_JNI_MODULE_FIND_CLASS("ActivationCode");
-	jobject resultObject = cc7::jni::CreateJavaObject(env, CC7_JNI_MODULE_CLASS_PATH("ActivationCode"), "()V");
-	CC7_JNI_SET_FIELD_STRING(resultObject, resultClazz, "activationCode",	cc7::jni::CopyToJavaString(env, cppComponents.activationCode));
+	jclass  resultClazz  = PA_JNI_MODULE_FIND_CLASS("ActivationCode");
+	jobject resultObject = PA_JNI_MODULE_NEW_OBJECT("ActivationCode");
+	PA_JNI_SET_FIELD_STRING(resultObject, resultClazz, "activationCode",	cc7::jni::CopyToJavaString(env, cppComponents.activationCode));
 	return resultObject;
 }
 
@@ -15,6 +15,7 @@
  */
 
 #include "ECIESEncryptorJNI.h"
+#include "JniCache.h"
 #include <cc7/Base64.h>
 
 // Package: io.getlime.security.powerauth.core
@@ -39,26 +40,26 @@ jobject CreateJavaCryptogramFromCppObject(JNIEnv * env, const ECIESCryptogram &
 		return nullptr;
 	}
 	// Create EciesCryptogram java class instance
-	jclass  resultClazz  = CC7_JNI_MODULE_FIND_CLASS("EciesCryptogram");
-	jobject resultObject = cc7::jni::CreateJavaObject(env, CC7_JNI_MODULE_CLASS_PATH("EciesCryptogram"), "()V");
+	jclass  resultClazz  = PA_JNI_MODULE_FIND_CLASS("EciesCryptogram");
+	jobject resultObject = PA_JNI_MODULE_NEW_OBJECT("EciesCryptogram");
 	if (!resultObject) {
 		return nullptr;
 	}
 	// ...and setup fields
-	CC7_JNI_SET_FIELD_BYTEARRAY(resultObject, resultClazz, "body", cc7::jni::CopyToNullableJavaByteArray(env, cryptogram.body));
-	CC7_JNI_SET_FIELD_BYTEARRAY(resultObject, resultClazz, "mac",  cc7::jni::CopyToNullableJavaByteArray(env, cryptogram.mac));
-	CC7_JNI_SET_FIELD_BYTEARRAY(resultObject, resultClazz, "key",  cc7::jni::CopyToNullableJavaByteArray(env, cryptogram.key));
-	CC7_JNI_SET_FIELD_BYTEARRAY(resultObject, resultClazz, "nonce",  cc7::jni::CopyToNullableJavaByteArray(env, cryptogram.nonce));
+	PA_JNI_SET_FIELD_BYTEARRAY(resultObject, resultClazz, "body", cc7::jni::CopyToNullableJavaByteArray(env, cryptogram.body));
+	PA_JNI_SET_FIELD_BYTEARRAY(resultObject, resultClazz, "mac",  cc7::jni::CopyToNullableJavaByteArray(env, cryptogram.mac));
+	PA_JNI_SET_FIELD_BYTEARRAY(resultObject, resultClazz, "key",  cc7::jni::CopyToNullableJavaByteArray(env, cryptogram.key));
+	PA_JNI_SET_FIELD_BYTEARRAY(resultObject, resultClazz, "nonce",  cc7::jni::CopyToNullableJavaByteArray(env, cryptogram.nonce));
 	return resultObject;
 }
 
 void LoadCppCryptogramFromJavaObject(JNIEnv * env, jobject cryptogram, ECIESCryptogram & cppCryptogram)
 {
-	jclass clazz  = CC7_JNI_MODULE_FIND_CLASS("EciesCryptogram");
-	cppCryptogram.body	= cc7::jni::CopyFromJavaByteArray(env, CC7_JNI_GET_FIELD_BYTEARRAY(cryptogram, clazz, "body"));
-	cppCryptogram.mac	= cc7::jni::CopyFromJavaByteArray(env, CC7_JNI_GET_FIELD_BYTEARRAY(cryptogram, clazz, "mac"));
-	cppCryptogram.key	= cc7::jni::CopyFromJavaByteArray(env, CC7_JNI_GET_FIELD_BYTEARRAY(cryptogram, clazz, "key"));
-	cppCryptogram.nonce = cc7::jni::CopyFromJavaByteArray(env, CC7_JNI_GET_FIELD_BYTEARRAY(cryptogram, clazz, "nonce"));
+	jclass clazz  = PA_JNI_MODULE_FIND_CLASS("EciesCryptogram");
+	cppCryptogram.body	= cc7::jni::CopyFromJavaByteArray(env, PA_JNI_GET_FIELD_BYTEARRAY(cryptogram, clazz, "body"));
+	cppCryptogram.mac	= cc7::jni::CopyFromJavaByteArray(env, PA_JNI_GET_FIELD_BYTEARRAY(cryptogram, clazz, "mac"));
+	cppCryptogram.key	= cc7::jni::CopyFromJavaByteArray(env, PA_JNI_GET_FIELD_BYTEARRAY(cryptogram, clazz, "key"));
+	cppCryptogram.nonce = cc7::jni::CopyFromJavaByteArray(env, PA_JNI_GET_FIELD_BYTEARRAY(cryptogram, clazz, "nonce"));
 }
 
 jobject CreateJavaEncryptorFromCppObject(JNIEnv * env, const ECIESEncryptor & encryptor)
@@ -70,7 +71,8 @@ jobject CreateJavaEncryptorFromCppObject(JNIEnv * env, const ECIESEncryptor & en
 	// Create ECIESEncryptor java class instance
 	auto encryptor_copy = new ECIESEncryptor(encryptor);
 	auto encryptor_copy_long = reinterpret_cast<jlong>(encryptor_copy);
-	jobject resultObject = cc7::jni::CreateJavaObject(env, CC7_JNI_MODULE_CLASS_PATH("EciesEncryptor"), "(J)V", encryptor_copy_long);
+	jclass  encryptorClazz = PA_JNI_MODULE_FIND_CLASS("EciesEncryptor");
+	jobject resultObject = env->NewObject(encryptorClazz, PA_JNI_METHOD_ID(encryptorClazz, "<init>", "(J)V"), encryptor_copy_long);
 	if (nullptr == resultObject) {
 		// If java object was not constructed then we delete the encryptor's copy.
 		delete encryptor_copy;
@@ -125,6 +127,49 @@ CC7_JNI_METHOD(jlong, copyHandleForDecryption)
 	return reinterpret_cast<jlong>(decryptor);
 }
 
+//
+// private native long copyHandleForEncryption();
+//
+CC7_JNI_METHOD(jlong, copyHandleForEncryption)
+{
+	auto encryptor = CC7_THIS_OBJ();
+	if (!encryptor) {
+		CC7_ASSERT(false, "Missing internal handle.");
+		return 0;
+	}
+	if (!encryptor->canEncryptRequest()) {
+		CC7_ASSERT(false, "Encryptor can't be used for encryption.");
+		return 0;
+	}
+	auto copy = new ECIESEncryptor(encryptor->publicKey(), encryptor->sharedInfo1(), encryptor->sharedInfo2());
+	copy->setEphemeralKeyPool(encryptor->ephemeralKeyPool());
+	return reinterpret_cast<jlong>(copy);
+}
+
+//
+// public native boolean setEphemeralKeyPool(int depth, int refillThreshold);
+//
+CC7_JNI_METHOD_PARAMS(jboolean, setEphemeralKeyPool, jint depth, jint refillThreshold)
+{
+	auto encryptor = CC7_THIS_OBJ();
+	if (!encryptor) {
+		CC7_ASSERT(false, "Missing internal handle.");
+		return false;
+	}
+	if (depth <= 0) {
+		// Disable the pool
+		encryptor->setEphemeralKeyPool(nullptr);
+		return true;
+	}
+	if (!encryptor->canEncryptRequest() || refillThreshold < 0 || refillThreshold >= depth) {
+		CC7_ASSERT(false, "Encryptor can't use ephemeral key pool with given parameters.");
+		return false;
+	}
+	auto config = ECIESEphemeralKeyPoolConfig((size_t)depth, (size_t)refillThreshold);
+	encryptor->setEphemeralKeyPool(std::make_shared<ECIESEphemeralKeyPool>(encryptor->publicKey(), config));
+	return true;
+}
+
 
 // ----------------------------------------------------------------------------
 // Getters
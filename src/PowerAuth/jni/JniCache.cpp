@@ -0,0 +1,117 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "JniCache.h"
+#include <map>
+#include <mutex>
+#include <string>
+
+namespace io
+{
+namespace getlime
+{
+namespace powerAuth
+{
+namespace jni
+{
+	/**
+	 List of all classes used by the JNI layer.
+	 */
+	static const char * s_preloaded_classes[] = {
+		"io/getlime/security/powerauth/core/ActivationCode",
+		"io/getlime/security/powerauth/core/ActivationStatus",
+		"io/getlime/security/powerauth/core/ActivationStep1Param",
+		"io/getlime/security/powerauth/core/ActivationStep1Result",
+		"io/getlime/security/powerauth/core/ActivationStep2Param",
+		"io/getlime/security/powerauth/core/ActivationStep2Result",
+		"io/getlime/security/powerauth/core/EciesCryptogram",
+		"io/getlime/security/powerauth/core/EciesEncryptor",
+		"io/getlime/security/powerauth/core/EncryptedActivationStatus",
+		"io/getlime/security/powerauth/core/Password",
+		"io/getlime/security/powerauth/core/ProtocolUpgradeData",
+		"io/getlime/security/powerauth/core/ProtocolVersion",
+		"io/getlime/security/powerauth/core/RecoveryData",
+		"io/getlime/security/powerauth/core/SessionSetup",
+		"io/getlime/security/powerauth/core/SignatureRequest",
+		"io/getlime/security/powerauth/core/SignatureResult",
+		"io/getlime/security/powerauth/core/SignatureUnlockKeys",
+		"io/getlime/security/powerauth/core/SignedData",
+		"io/getlime/security/powerauth/sdk/impl/PowerAuthPrivateTokenData",
+		nullptr
+	};
+
+	static std::mutex s_lock;
+	static std::map<std::string, jclass> s_classes;
+
+	/**
+	 Loads class with |class_path| and returns its global reference. The lock must be acquired.
+	 */
+	static jclass _LoadClass(JNIEnv * env, const char * class_path)
+	{
+		auto it = s_classes.find(class_path);
+		if (it != s_classes.end()) {
+			return it->second;
+		}
+		jclass local_ref = env->FindClass(class_path);
+		if (!local_ref) {
+			CC7_LOG("JniCache: Class '%s' not found.", class_path);
+			return nullptr;
+		}
+		jclass global_ref = (jclass) env->NewGlobalRef(local_ref);
+		env->DeleteLocalRef(local_ref);
+		if (global_ref) {
+			s_classes[class_path] = global_ref;
+		}
+		return global_ref;
+	}
+
+	bool PreloadJavaClasses(JNIEnv * env)
+	{
+		std::lock_guard<std::mutex> guard(s_lock);
+		bool result = true;
+		for (const char ** class_path = s_preloaded_classes; *class_path != nullptr; class_path++) {
+			if (!_LoadClass(env, *class_path)) {
+				// Don't leave the exception pending in JNI_OnLoad. The failure will be reported
+				// again, once the class is really used.
+				env->ExceptionClear();
+				result = false;
+			}
+		}
+		return result;
+	}
+
+	jclass GetJavaClass(JNIEnv * env, const char * class_path)
+	{
+		std::lock_guard<std::mutex> guard(s_lock);
+		return _LoadClass(env, class_path);
+	}
+
+} // io::getlime::powerAuth::jni
+} // io::getlime::powerAuth
+} // io::getlime
+} // io
+
+extern "C" JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM * vm, void * reserved)
+{
+	JNIEnv * env = nullptr;
+	if (vm->GetEnv(reinterpret_cast<void**>(&env), JNI_VERSION_1_6) != JNI_OK) {
+		return JNI_ERR;
+	}
+	if (!io::getlime::powerAuth::jni::PreloadJavaClasses(env)) {
+		CC7_LOG("JniCache: Some classes were not preloaded.");
+	}
+	return JNI_VERSION_1_6;
+}
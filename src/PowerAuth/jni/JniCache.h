@@ -0,0 +1,90 @@
+/*
+ * Copyright 2021 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#pragma once
+
+#include <cc7/jni/JniHelper.h>
+
+/*
+ The JNI cache keeps global references to all Java classes used by the native code. The classes
+ are loaded in JNI_OnLoad, so they're always resolved with the library's class loader and the
+ lookup by name is not repeated in each native call.
+
+ The macros below also cache field and method identifiers. Each macro expansion keeps its own
+ identifier in a function-local static variable, so the identifier is looked up only once, on
+ the first use. The identifiers stay valid, because the cache never releases the classes.
+
+ The macros expect that the `env` variable is available in the current scope, which is true
+ for all functions declared with CC7_JNI_METHOD* macros.
+ */
+
+namespace io
+{
+namespace getlime
+{
+namespace powerAuth
+{
+namespace jni
+{
+	/**
+	 Loads all classes used by the JNI layer into the cache. The function is called from JNI_OnLoad.
+	 Returns false if some class cannot be loaded.
+	 */
+	bool PreloadJavaClasses(JNIEnv * env);
+
+	/**
+	 Returns global reference to Java class with |class_path|, for example "io/getlime/security/powerauth/core/Password".
+	 If the class is not in the cache yet, then it's loaded with using the |env|. Returns nullptr if
+	 no such class exists.
+	 */
+	jclass GetJavaClass(JNIEnv * env, const char * class_path);
+
+} // io::getlime::powerAuth::jni
+} // io::getlime::powerAuth
+} // io::getlime
+} // io
+
+// Classes
+
+#define PA_JNI_FIND_CLASS(class_path)						([&]() -> jclass { static const jclass _cached = io::getlime::powerAuth::jni::GetJavaClass(env, class_path); return _cached; }())
+#define PA_JNI_MODULE_FIND_CLASS(name)						PA_JNI_FIND_CLASS(CC7_JNI_MODULE_CLASS_PATH(name))
+
+// Field & method identifiers
+
+#define PA_JNI_FIELD_ID(clazz, name, sig)					([&]() -> jfieldID { static const jfieldID _cached = env->GetFieldID(clazz, name, sig); return _cached; }())
+#define PA_JNI_STATIC_FIELD_ID(clazz, name, sig)			([&]() -> jfieldID { static const jfieldID _cached = env->GetStaticFieldID(clazz, name, sig); return _cached; }())
+#define PA_JNI_METHOD_ID(clazz, name, sig)					([&]() -> jmethodID { static const jmethodID _cached = env->GetMethodID(clazz, name, sig); return _cached; }())
+
+// Object construction
+
+#define PA_JNI_MODULE_NEW_OBJECT(name)						PA_JNI_NEW_OBJECT(PA_JNI_MODULE_FIND_CLASS(name))
+#define PA_JNI_NEW_OBJECT(clazz)							env->NewObject(clazz, PA_JNI_METHOD_ID(clazz, "<init>", "()V"))
+
+// Field getters
+
+#define PA_JNI_GET_FIELD_STRING(obj, clazz, name)			(jstring) env->GetObjectField(obj, PA_JNI_FIELD_ID(clazz, name, "Ljava/lang/String;"))
+#define PA_JNI_GET_FIELD_BYTEARRAY(obj, clazz, name)		(jbyteArray) env->GetObjectField(obj, PA_JNI_FIELD_ID(clazz, name, "[B"))
+#define PA_JNI_GET_FIELD_OBJECT(obj, clazz, name, sig)		env->GetObjectField(obj, PA_JNI_FIELD_ID(clazz, name, sig))
+#define PA_JNI_GET_FIELD_INT(obj, clazz, name)				env->GetIntField(obj, PA_JNI_FIELD_ID(clazz, name, "I"))
+#define PA_JNI_GET_FIELD_BOOL(obj, clazz, name)				env->GetBooleanField(obj, PA_JNI_FIELD_ID(clazz, name, "Z"))
+
+// Field setters
+
+#define PA_JNI_SET_FIELD_STRING(obj, clazz, name, v)		env->SetObjectField(obj, PA_JNI_FIELD_ID(clazz, name, "Ljava/lang/String;"), v)
+#define PA_JNI_SET_FIELD_BYTEARRAY(obj, clazz, name, v)		env->SetObjectField(obj, PA_JNI_FIELD_ID(clazz, name, "[B"), v)
+#define PA_JNI_SET_FIELD_OBJECT(obj, clazz, name, sig, v)	env->SetObjectField(obj, PA_JNI_FIELD_ID(clazz, name, sig), v)
+#define PA_JNI_SET_FIELD_INT(obj, clazz, name, v)			env->SetIntField(obj, PA_JNI_FIELD_ID(clazz, name, "I"), v)
+#define PA_JNI_SET_FIELD_BOOL(obj, clazz, name, v)			env->SetBooleanField(obj, PA_JNI_FIELD_ID(clazz, name, "Z"), v)
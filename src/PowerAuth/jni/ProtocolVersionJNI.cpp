@@ -15,6 +15,7 @@
  */
 
 #include "ProtocolVersionJNI.h"
+#include "JniCache.h"
 
 // Package: io.getlime.security.powerauth.core
 #define CC7_JNI_CLASS_PATH	    	"io/getlime/security/powerauth/core"
@@ -33,23 +34,26 @@ jobject CreateJavaProtocolVersion(JNIEnv * env, int v)
 		CC7_ASSERT(false, "Missing required parameter or java environment is not valid.");
 		return NULL;
 	}
-	// Convert version to name of static field in ProtocolVersion java enum
+	// Find enum class
+	jclass versionClass	= PA_JNI_MODULE_FIND_CLASS("ProtocolVersion");
+	// Convert version to static field in ProtocolVersion java enum
+	const char * versionSig = CC7_JNI_MODULE_CLASS_SIGNATURE("ProtocolVersion");
 	const char * field_name;
+	jfieldID caseField;
 	switch (v) {
 		case io::getlime::powerAuth::Version_V2:
-			field_name = "V2"; 
+			field_name = "V2";
+			caseField = PA_JNI_STATIC_FIELD_ID(versionClass, "V2", versionSig);
 			break;
 		case io::getlime::powerAuth::Version_V3:
 			field_name = "V3";
-			 break;
+			caseField = PA_JNI_STATIC_FIELD_ID(versionClass, "V3", versionSig);
+			break;
 		default: 
 			field_name = "NA";
+			caseField = PA_JNI_STATIC_FIELD_ID(versionClass, "NA", versionSig);
 			break;
 	}
-	// Find enum class
-	jclass versionClass	= env->FindClass(CC7_JNI_MODULE_CLASS_PATH("ProtocolVersion"));
-	// Find static field for required case
-	jfieldID caseField 	= env->GetStaticFieldID(versionClass , field_name, CC7_JNI_MODULE_CLASS_SIGNATURE("ProtocolVersion"));
 	// Get object from static field
 	jobject caseObject  = env->GetStaticObjectField(versionClass, caseField);
 	CC7_ASSERT(caseObject != NULL, "Cannot convert version %d to java field '%s'", v, field_name);
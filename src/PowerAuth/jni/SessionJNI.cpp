@@ -17,6 +17,7 @@
 #include "PasswordJNI.h"
 #include "ECIESEncryptorJNI.h"
 #include "ProtocolVersionJNI.h"
+#include "JniCache.h"
 #include <PowerAuth/Session.h>
 #include <PowerAuth/Debug.h>
 #include <map>
@@ -42,10 +43,10 @@ static bool LoadSignatureUnlockKeys(SignatureUnlockKeys & out, JNIEnv * env, job
 		CC7_ASSERT(false, "SignatureUnlockKeys java object should not be null.");
 		return false;
 	}
-	jclass keysClazz  = CC7_JNI_MODULE_FIND_CLASS("SignatureUnlockKeys");
-	out.possessionUnlockKey	= cc7::jni::CopyFromJavaByteArray(env, CC7_JNI_GET_FIELD_BYTEARRAY(unlockKeys, keysClazz, "possessionUnlockKey"));
-	out.biometryUnlockKey	= cc7::jni::CopyFromJavaByteArray(env, CC7_JNI_GET_FIELD_BYTEARRAY(unlockKeys, keysClazz, "biometryUnlockKey"));
-	jobject userPasswordObject = CC7_JNI_GET_FIELD_OBJECT(unlockKeys, keysClazz, "userPassword", CC7_JNI_MODULE_CLASS_SIGNATURE("Password"));
+	jclass keysClazz  = PA_JNI_MODULE_FIND_CLASS("SignatureUnlockKeys");
+	out.possessionUnlockKey	= cc7::jni::CopyFromJavaByteArray(env, PA_JNI_GET_FIELD_BYTEARRAY(unlockKeys, keysClazz, "possessionUnlockKey"));
+	out.biometryUnlockKey	= cc7::jni::CopyFromJavaByteArray(env, PA_JNI_GET_FIELD_BYTEARRAY(unlockKeys, keysClazz, "biometryUnlockKey"));
+	jobject userPasswordObject = PA_JNI_GET_FIELD_OBJECT(unlockKeys, keysClazz, "userPassword", CC7_JNI_MODULE_CLASS_SIGNATURE("Password"));
 	if (userPasswordObject != NULL) {
 		auto cppPassword = GetCppPasswordFromJavaObject(env, userPasswordObject);
 		if (!cppPassword) {
@@ -53,6 +54,8 @@ static bool LoadSignatureUnlockKeys(SignatureUnlockKeys & out, JNIEnv * env, job
 		}
 		out.userPassword = cppPassword->passwordData();
 	}
+	out.cacheTimeToLive		= (cc7::U32) PA_JNI_GET_FIELD_INT(unlockKeys, keysClazz, "cacheTimeToLive");
+	out.cacheMaxUseCount	= (cc7::U32) PA_JNI_GET_FIELD_INT(unlockKeys, keysClazz, "cacheMaxUseCount");
 	return true;
 }
 
@@ -71,13 +74,13 @@ CC7_JNI_METHOD_PARAMS(jlong, init, jobject setup)
 		return 0;
 	}
 	// Copy data from java SessionSetup to backing C++ structure
-	jclass setupClazz  = CC7_JNI_MODULE_FIND_CLASS("SessionSetup");
+	jclass setupClazz  = PA_JNI_MODULE_FIND_CLASS("SessionSetup");
 	SessionSetup cppSetup;
-	cppSetup.applicationKey			= cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(setup, setupClazz, "applicationKey"));
-	cppSetup.applicationSecret		= cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(setup, setupClazz, "applicationSecret"));
-	cppSetup.masterServerPublicKey	= cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(setup, setupClazz, "masterServerPublicKey"));
-	cppSetup.sessionIdentifier		= CC7_JNI_GET_FIELD_INT(setup, setupClazz, "sessionIdentifier");
-	cppSetup.externalEncryptionKey	= cc7::jni::CopyFromJavaByteArray(env, CC7_JNI_GET_FIELD_BYTEARRAY(setup, setupClazz, "externalEncryptionKey"));
+	cppSetup.applicationKey			= cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(setup, setupClazz, "applicationKey"));
+	cppSetup.applicationSecret		= cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(setup, setupClazz, "applicationSecret"));
+	cppSetup.masterServerPublicKey	= cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(setup, setupClazz, "masterServerPublicKey"));
+	cppSetup.sessionIdentifier		= PA_JNI_GET_FIELD_INT(setup, setupClazz, "sessionIdentifier");
+	cppSetup.externalEncryptionKey	= cc7::jni::CopyFromJavaByteArray(env, PA_JNI_GET_FIELD_BYTEARRAY(setup, setupClazz, "externalEncryptionKey"));
 
 	auto session = new Session(cppSetup);
 	return (jlong)session;
@@ -111,14 +114,14 @@ CC7_JNI_METHOD(jobject, getSessionSetup)
 		return NULL;
 	}
 	// Copy cppResult into java result object
-	jclass  resultClazz  = CC7_JNI_MODULE_FIND_CLASS("SessionSetup");
-	jobject resultObject = cc7::jni::CreateJavaObject(env, CC7_JNI_MODULE_CLASS_PATH("SessionSetup"), "()V");
-	CC7_JNI_SET_FIELD_STRING(resultObject, resultClazz, "applicationKey",  			cc7::jni::CopyToJavaString(env, cppSetup->applicationKey));
-	CC7_JNI_SET_FIELD_STRING(resultObject, resultClazz, "applicationSecret", 		cc7::jni::CopyToJavaString(env, cppSetup->applicationSecret));
-	CC7_JNI_SET_FIELD_STRING(resultObject, resultClazz, "masterServerPublicKey",	cc7::jni::CopyToJavaString(env, cppSetup->masterServerPublicKey));
-	CC7_JNI_SET_FIELD_INT   (resultObject, resultClazz, "sessionIdentifier", 		cppSetup->sessionIdentifier);
+	jclass  resultClazz  = PA_JNI_MODULE_FIND_CLASS("SessionSetup");
+	jobject resultObject = PA_JNI_MODULE_NEW_OBJECT("SessionSetup");
+	PA_JNI_SET_FIELD_STRING(resultObject, resultClazz, "applicationKey",  			cc7::jni::CopyToJavaString(env, cppSetup->applicationKey));
+	PA_JNI_SET_FIELD_STRING(resultObject, resultClazz, "applicationSecret", 		cc7::jni::CopyToJavaString(env, cppSetup->applicationSecret));
+	PA_JNI_SET_FIELD_STRING(resultObject, resultClazz, "masterServerPublicKey",	cc7::jni::CopyToJavaString(env, cppSetup->masterServerPublicKey));
+	PA_JNI_SET_FIELD_INT   (resultObject, resultClazz, "sessionIdentifier", 		cppSetup->sessionIdentifier);
 	if (session->hasExternalEncryptionKey()) {
-		CC7_JNI_SET_FIELD_BYTEARRAY(resultObject, resultClazz, "externalEncryptionKey",	cc7::jni::CopyToJavaByteArray(env, cppSetup->externalEncryptionKey));
+		PA_JNI_SET_FIELD_BYTEARRAY(resultObject, resultClazz, "externalEncryptionKey",	cc7::jni::CopyToJavaByteArray(env, cppSetup->externalEncryptionKey));
 	}
 	return resultObject;
 }
@@ -190,6 +193,48 @@ CC7_JNI_METHOD_PARAMS(jint, deserializeState, jbyteArray state)
 	return session->loadSessionState(cppState);
 }
 
+//
+// public native byte[] serializedCounterState();
+//
+CC7_JNI_METHOD(jbyteArray, serializedCounterState)
+{
+	auto session = CC7_THIS_OBJ();
+	if (!session) {
+		return NULL;
+	}
+	cc7::ByteArray state = session->saveCounterState();
+	if (state.empty()) {
+		return NULL;
+	}
+	return cc7::jni::CopyToJavaByteArray(env, state);
+}
+
+//
+// public native int deserializeCounterState(byte[] state);
+//
+CC7_JNI_METHOD_PARAMS(jint, deserializeCounterState, jbyteArray state)
+{
+	auto session = CC7_THIS_OBJ();
+	if (!session || state == NULL) {
+		return EC_WrongParam;
+	}
+	cc7::ByteArray cppState = cc7::jni::CopyFromJavaByteArray(env, state);
+	return session->loadCounterState(cppState);
+}
+
+//
+// public native boolean hasOutdatedSerializedState();
+//
+CC7_JNI_METHOD(jboolean, hasOutdatedSerializedState)
+{
+	auto session = CC7_THIS_OBJ();
+	if (!session) {
+		CC7_ASSERT(false, "Missing internal handle.");
+		return false;
+	}
+	return (jboolean) session->hasOutdatedSessionState();
+}
+
 
 // ----------------------------------------------------------------------------
 // Activation
@@ -259,23 +304,56 @@ CC7_JNI_METHOD_PARAMS(jobject, startActivation, jobject param)
 	// Copy params to C++ struct
 	ActivationStep1Param cppParam;
 	if (param != NULL) {
-		jclass paramClazz  = CC7_JNI_MODULE_FIND_CLASS("ActivationStep1Param");
-		cppParam.activationCode		    = cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(param, paramClazz, "activationCode"));
-		cppParam.activationSignature    = cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(param, paramClazz, "activationSignature"));
+		jclass paramClazz  = PA_JNI_MODULE_FIND_CLASS("ActivationStep1Param");
+		cppParam.activationCode		    = cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(param, paramClazz, "activationCode"));
+		cppParam.activationSignature    = cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(param, paramClazz, "activationSignature"));
 	}
 	// Call session
 	ActivationStep1Result cppResult;
 	ErrorCode code = session->startActivation(cppParam, cppResult);
 	// Copy cppResult into java result object
-	jclass  resultClazz  = CC7_JNI_MODULE_FIND_CLASS("ActivationStep1Result");
-	jobject resultObject = cc7::jni::CreateJavaObject(env, CC7_JNI_MODULE_CLASS_PATH("ActivationStep1Result"), "()V");
-	CC7_JNI_SET_FIELD_INT(resultObject, resultClazz, "errorCode", code);
+	jclass  resultClazz  = PA_JNI_MODULE_FIND_CLASS("ActivationStep1Result");
+	jobject resultObject = PA_JNI_MODULE_NEW_OBJECT("ActivationStep1Result");
+	PA_JNI_SET_FIELD_INT(resultObject, resultClazz, "errorCode", code);
 	if (code == EC_Ok) {
-		CC7_JNI_SET_FIELD_STRING(resultObject, resultClazz, "devicePublicKey",  	cc7::jni::CopyToJavaString(env, cppResult.devicePublicKey));
+		PA_JNI_SET_FIELD_STRING(resultObject, resultClazz, "devicePublicKey",  	cc7::jni::CopyToJavaString(env, cppResult.devicePublicKey));
 	}
 	return resultObject;
 }
 
+//
+// public native int prepareActivation();
+//
+CC7_JNI_METHOD(jint, prepareActivation)
+{
+	auto session = CC7_THIS_OBJ();
+	if (!session) {
+		CC7_ASSERT(false, "Missing internal handle.");
+		return EC_WrongState;
+	}
+	return (jint) session->prepareActivation();
+}
+
+//
+// public native boolean hasPreparedActivation();
+//
+CC7_JNI_METHOD(jboolean, hasPreparedActivation)
+{
+	auto session = CC7_THIS_OBJ();
+	return session ? session->hasPreparedActivation() : false;
+}
+
+//
+// public native void discardPreparedActivation();
+//
+CC7_JNI_METHOD(void, discardPreparedActivation)
+{
+	auto session = CC7_THIS_OBJ();
+	if (session) {
+		session->discardPreparedActivation();
+	}
+}
+
 //
 // public native ActivationStep2Result validateActivationResponse(ActivationStep2Param param);
 //
@@ -288,26 +366,26 @@ CC7_JNI_METHOD_PARAMS(jobject, validateActivationResponse, jobject param)
 	}
 	// Copy data from param jobject into cppParam.
 	ActivationStep2Param cppParam;	
-	jclass paramClazz  = CC7_JNI_MODULE_FIND_CLASS("ActivationStep2Param");
-	cppParam.activationId       = cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(param, paramClazz, "activationId"));
-	cppParam.serverPublicKey	= cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(param, paramClazz, "serverPublicKey"));
-	cppParam.ctrData			= cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(param, paramClazz, "ctrData"));
+	jclass paramClazz  = PA_JNI_MODULE_FIND_CLASS("ActivationStep2Param");
+	cppParam.activationId       = cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(param, paramClazz, "activationId"));
+	cppParam.serverPublicKey	= cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(param, paramClazz, "serverPublicKey"));
+	cppParam.ctrData			= cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(param, paramClazz, "ctrData"));
 	// Copy optional recovery data
-	jobject recoveryData        = CC7_JNI_GET_FIELD_OBJECT(param, paramClazz, "activationRecovery", CC7_JNI_MODULE_CLASS_SIGNATURE("RecoveryData"));
+	jobject recoveryData        = PA_JNI_GET_FIELD_OBJECT(param, paramClazz, "activationRecovery", CC7_JNI_MODULE_CLASS_SIGNATURE("RecoveryData"));
 	if (recoveryData != NULL) {
-		jclass recoveryDataClazz = CC7_JNI_MODULE_FIND_CLASS("RecoveryData");
-		cppParam.activationRecovery.recoveryCode    = cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(recoveryData, recoveryDataClazz, "recoveryCode"));
-		cppParam.activationRecovery.puk             = cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(recoveryData, recoveryDataClazz, "puk"));
+		jclass recoveryDataClazz = PA_JNI_MODULE_FIND_CLASS("RecoveryData");
+		cppParam.activationRecovery.recoveryCode    = cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(recoveryData, recoveryDataClazz, "recoveryCode"));
+		cppParam.activationRecovery.puk             = cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(recoveryData, recoveryDataClazz, "puk"));
 	}
 	// Call C++ session
 	ActivationStep2Result cppResult;
 	ErrorCode code = session->validateActivationResponse(cppParam, cppResult);
 	// Copy cppResult into java result object
-	jclass  resultClazz  = CC7_JNI_MODULE_FIND_CLASS("ActivationStep2Result");
-	jobject resultObject = cc7::jni::CreateJavaObject(env, CC7_JNI_MODULE_CLASS_PATH("ActivationStep2Result"), "()V");
-	CC7_JNI_SET_FIELD_INT(resultObject, resultClazz, "errorCode", code);
+	jclass  resultClazz  = PA_JNI_MODULE_FIND_CLASS("ActivationStep2Result");
+	jobject resultObject = PA_JNI_MODULE_NEW_OBJECT("ActivationStep2Result");
+	PA_JNI_SET_FIELD_INT(resultObject, resultClazz, "errorCode", code);
 	if (code == EC_Ok) {
-		CC7_JNI_SET_FIELD_STRING(resultObject, resultClazz, "activationFingerprint",  cc7::jni::CopyToJavaString(env, cppResult.activationFingerprint));
+		PA_JNI_SET_FIELD_STRING(resultObject, resultClazz, "activationFingerprint",  cc7::jni::CopyToJavaString(env, cppResult.activationFingerprint));
 	}
 	return resultObject;
 }
@@ -349,10 +427,10 @@ CC7_JNI_METHOD_PARAMS(jobject, decodeActivationStatus, jobject encryptedStatus,
 	}
 	// Load parameters into C++ structures
 	EncryptedActivationStatus cppEncStatus;
-	jclass encStatusClazz = CC7_JNI_MODULE_FIND_CLASS("EncryptedActivationStatus");
-	cppEncStatus.challenge				= cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(encryptedStatus, encStatusClazz, "challenge"));
-	cppEncStatus.encryptedStatusBlob	= cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(encryptedStatus, encStatusClazz, "encryptedStatusBlob"));
-	cppEncStatus.nonce					= cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(encryptedStatus, encStatusClazz, "nonce"));
+	jclass encStatusClazz = PA_JNI_MODULE_FIND_CLASS("EncryptedActivationStatus");
+	cppEncStatus.challenge				= cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(encryptedStatus, encStatusClazz, "challenge"));
+	cppEncStatus.encryptedStatusBlob	= cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(encryptedStatus, encStatusClazz, "encryptedStatusBlob"));
+	cppEncStatus.nonce					= cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(encryptedStatus, encStatusClazz, "nonce"));
 	//
 	SignatureUnlockKeys cppUnlockKeys;
 	if (false == LoadSignatureUnlockKeys(cppUnlockKeys, env, unlockKeys)) {
@@ -362,21 +440,21 @@ CC7_JNI_METHOD_PARAMS(jobject, decodeActivationStatus, jobject encryptedStatus,
 	ActivationStatus cppStatus;
 	ErrorCode code = session->decodeActivationStatus(cppEncStatus, cppUnlockKeys, cppStatus);
 	// Copy result to java object
-	jclass  resultClazz  = CC7_JNI_MODULE_FIND_CLASS("ActivationStatus");
-	jobject resultObject = cc7::jni::CreateJavaObject(env, CC7_JNI_MODULE_CLASS_PATH("ActivationStatus"), "()V");
-	CC7_JNI_SET_FIELD_INT(resultObject, resultClazz, "errorCode", code);
+	jclass  resultClazz  = PA_JNI_MODULE_FIND_CLASS("ActivationStatus");
+	jobject resultObject = PA_JNI_MODULE_NEW_OBJECT("ActivationStatus");
+	PA_JNI_SET_FIELD_INT(resultObject, resultClazz, "errorCode", code);
 	if (code == EC_Ok) {
 		const char * versionSig = CC7_JNI_MODULE_CLASS_SIGNATURE("ProtocolVersion");
 		jobject currentVersionObject = CreateJavaProtocolVersion(env, cppStatus.currentVersion);
 		jobject upgradeVersionObject = CreateJavaProtocolVersion(env, cppStatus.upgradeVersion);
-		CC7_JNI_SET_FIELD_INT	(resultObject, resultClazz, "state", 	 			cppStatus.state);
-		CC7_JNI_SET_FIELD_INT	(resultObject, resultClazz, "failCount", 			cppStatus.failCount);
-		CC7_JNI_SET_FIELD_INT	(resultObject, resultClazz, "maxFailCount",			cppStatus.maxFailCount);
-		CC7_JNI_SET_FIELD_OBJECT(resultObject, resultClazz, "currentVersion", versionSig, currentVersionObject);
-		CC7_JNI_SET_FIELD_OBJECT(resultObject, resultClazz, "upgradeVersion", versionSig, upgradeVersionObject);
-		CC7_JNI_SET_FIELD_BOOL	(resultObject, resultClazz, "isUpgradeAvailable",					cppStatus.isProtocolUpgradeAvailable());
-		CC7_JNI_SET_FIELD_BOOL	(resultObject, resultClazz, "isSignatureCalculationRecommended",	cppStatus.isSignatureCalculationRecommended());
-		CC7_JNI_SET_FIELD_BOOL	(resultObject, resultClazz, "needsSerializeSessionState",			cppStatus.needsSerializeSessionState());
+		PA_JNI_SET_FIELD_INT	(resultObject, resultClazz, "state", 	 			cppStatus.state);
+		PA_JNI_SET_FIELD_INT	(resultObject, resultClazz, "failCount", 			cppStatus.failCount);
+		PA_JNI_SET_FIELD_INT	(resultObject, resultClazz, "maxFailCount",			cppStatus.maxFailCount);
+		PA_JNI_SET_FIELD_OBJECT(resultObject, resultClazz, "currentVersion", versionSig, currentVersionObject);
+		PA_JNI_SET_FIELD_OBJECT(resultObject, resultClazz, "upgradeVersion", versionSig, upgradeVersionObject);
+		PA_JNI_SET_FIELD_BOOL	(resultObject, resultClazz, "isUpgradeAvailable",					cppStatus.isProtocolUpgradeAvailable());
+		PA_JNI_SET_FIELD_BOOL	(resultObject, resultClazz, "isSignatureCalculationRecommended",	cppStatus.isSignatureCalculationRecommended());
+		PA_JNI_SET_FIELD_BOOL	(resultObject, resultClazz, "needsSerializeSessionState",			cppStatus.needsSerializeSessionState());
 	}
 	return resultObject;
 }
@@ -427,11 +505,11 @@ CC7_JNI_METHOD_PARAMS(jobject, signHTTPRequest, jobject request, jobject unlockK
 	}	
 	// Load parameters into C++ objects 
 	HTTPRequestData cppRequest;
-	jclass requestClazz		= CC7_JNI_MODULE_FIND_CLASS("SignatureRequest");
-	cppRequest.body			= cc7::jni::CopyFromJavaByteArray(env, CC7_JNI_GET_FIELD_BYTEARRAY(request, requestClazz, "body"));
-	cppRequest.method		= cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(request, requestClazz, "method"));
-	cppRequest.uri			= cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(request, requestClazz, "uriIdentifier"));
-	cppRequest.offlineNonce	= cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(request, requestClazz, "offlineNonce"));
+	jclass requestClazz		= PA_JNI_MODULE_FIND_CLASS("SignatureRequest");
+	cppRequest.body			= cc7::jni::CopyFromJavaByteArray(env, PA_JNI_GET_FIELD_BYTEARRAY(request, requestClazz, "body"));
+	cppRequest.method		= cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(request, requestClazz, "method"));
+	cppRequest.uri			= cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(request, requestClazz, "uriIdentifier"));
+	cppRequest.offlineNonce	= cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(request, requestClazz, "offlineNonce"));
 	SignatureFactor cppSignatureFactor = (SignatureFactor)signatureFactor;
 	SignatureUnlockKeys cppUnlockKeys;
 	if (false == LoadSignatureUnlockKeys(cppUnlockKeys, env, unlockKeys)) {
@@ -441,16 +519,47 @@ CC7_JNI_METHOD_PARAMS(jobject, signHTTPRequest, jobject request, jobject unlockK
 	HTTPRequestDataSignature cppSignature;
 	ErrorCode code = session->signHTTPRequestData(cppRequest, cppUnlockKeys, cppSignatureFactor, cppSignature);
 	// Copy result to java object
-	jclass  resultClazz  = CC7_JNI_MODULE_FIND_CLASS("SignatureResult");
-	jobject resultObject = cc7::jni::CreateJavaObject(env, CC7_JNI_MODULE_CLASS_PATH("SignatureResult"), "()V");
-	CC7_JNI_SET_FIELD_INT(resultObject, resultClazz, "errorCode", code);
+	jclass  resultClazz  = PA_JNI_MODULE_FIND_CLASS("SignatureResult");
+	jobject resultObject = PA_JNI_MODULE_NEW_OBJECT("SignatureResult");
+	PA_JNI_SET_FIELD_INT(resultObject, resultClazz, "errorCode", code);
 	if (code == EC_Ok) {
-		CC7_JNI_SET_FIELD_STRING(resultObject, resultClazz, "authHeaderValue",  cc7::jni::CopyToJavaString(env, cppSignature.buildAuthHeaderValue()));
-		CC7_JNI_SET_FIELD_STRING(resultObject, resultClazz, "signatureCode",  	cc7::jni::CopyToJavaString(env, cppSignature.signature));
+		PA_JNI_SET_FIELD_STRING(resultObject, resultClazz, "authHeaderValue",  cc7::jni::CopyToJavaString(env, cppSignature.buildAuthHeaderValue()));
+		PA_JNI_SET_FIELD_STRING(resultObject, resultClazz, "signatureCode",  	cc7::jni::CopyToJavaString(env, cppSignature.signature));
 	}
 	return resultObject;
 }
 
+//
+// public native boolean hasCachedSignatureKeys();
+//
+CC7_JNI_METHOD(jboolean, hasCachedSignatureKeys)
+{
+	auto session = CC7_THIS_OBJ();
+	return session ? session->hasCachedSignatureKeys() : false;
+}
+
+//
+// public native void purgeExpiredSignatureKeys();
+//
+CC7_JNI_METHOD(void, purgeExpiredSignatureKeys)
+{
+	auto session = CC7_THIS_OBJ();
+	if (session) {
+		session->purgeExpiredSignatureKeys();
+	}
+}
+
+//
+// public native void clearCachedSignatureKeys();
+//
+CC7_JNI_METHOD(void, clearCachedSignatureKeys)
+{
+	auto session = CC7_THIS_OBJ();
+	if (session) {
+		session->clearCachedSignatureKeys();
+	}
+}
+
 //
 // public native String getHttpAuthHeaderName();
 //
@@ -474,14 +583,14 @@ CC7_JNI_METHOD_PARAMS(jint, verifyServerSignedData, jobject signedData)
 		return EC_WrongParam;
 	}
 	// Load parameters into C++ objects
-	jclass requestClazz		    = CC7_JNI_MODULE_FIND_CLASS("SignedData");
+	jclass requestClazz		    = PA_JNI_MODULE_FIND_CLASS("SignedData");
 	// Get type of key
-	bool useMasterKey           = CC7_JNI_GET_FIELD_BOOL(signedData, requestClazz, "useMasterKey");
+	bool useMasterKey           = PA_JNI_GET_FIELD_BOOL(signedData, requestClazz, "useMasterKey");
 	// Prepare cpp structure
 	SignedData cppSignedData;
 	cppSignedData.signingKey    = useMasterKey ? SignedData::ECDSA_MasterServerKey : SignedData::ECDSA_PersonalizedKey;
-	cppSignedData.data		    = cc7::jni::CopyFromJavaByteArray(env, CC7_JNI_GET_FIELD_BYTEARRAY(signedData, requestClazz, "data"));
-	cppSignedData.signature	    = cc7::jni::CopyFromJavaByteArray(env, CC7_JNI_GET_FIELD_BYTEARRAY(signedData, requestClazz, "signature"));
+	cppSignedData.data		    = cc7::jni::CopyFromJavaByteArray(env, PA_JNI_GET_FIELD_BYTEARRAY(signedData, requestClazz, "data"));
+	cppSignedData.signature	    = cc7::jni::CopyFromJavaByteArray(env, PA_JNI_GET_FIELD_BYTEARRAY(signedData, requestClazz, "signature"));
 	return (jint) session->verifyServerSignedData(cppSignedData);
 }
 
@@ -810,13 +919,13 @@ CC7_JNI_METHOD_PARAMS(jint, applyProtocolUpgradeData, jobject md)
 	}
 	// Load parameters into C++ struct
 
-	jclass mdClazz = CC7_JNI_MODULE_FIND_CLASS("ProtocolUpgradeData");
-	auto cpp_version = (Version) CC7_JNI_GET_FIELD_INT(md, mdClazz, "toVersion");
+	jclass mdClazz = PA_JNI_MODULE_FIND_CLASS("ProtocolUpgradeData");
+	auto cpp_version = (Version) PA_JNI_GET_FIELD_INT(md, mdClazz, "toVersion");
 
 	ProtocolUpgradeData cpp_upd;
 	if (cpp_version == Version_V3) {
 		// Load V3 fields...
-		cpp_upd.toV3.ctrData = cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(md, mdClazz, "v3CtrData"));
+		cpp_upd.toV3.ctrData = cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(md, mdClazz, "v3CtrData"));
 	}
 	return (jint) session->applyProtocolUpgradeData(cpp_upd);
 }
@@ -882,10 +991,10 @@ CC7_JNI_METHOD_PARAMS(jobject , getActivationRecoveryData, jstring cVaultKey, jo
 		return NULL;
 	}
 	// Copy cppResult into java result object
-	jclass  resultClazz  = CC7_JNI_MODULE_FIND_CLASS("RecoveryData");
-	jobject resultObject = cc7::jni::CreateJavaObject(env, CC7_JNI_MODULE_CLASS_PATH("RecoveryData"), "()V");
-	CC7_JNI_SET_FIELD_STRING(resultObject, resultClazz, "recoveryCode", cc7::jni::CopyToJavaString(env, cppRecoveryData.recoveryCode));
-	CC7_JNI_SET_FIELD_STRING(resultObject, resultClazz, "puk",			cc7::jni::CopyToJavaString(env, cppRecoveryData.puk));
+	jclass  resultClazz  = PA_JNI_MODULE_FIND_CLASS("RecoveryData");
+	jobject resultObject = PA_JNI_MODULE_NEW_OBJECT("RecoveryData");
+	PA_JNI_SET_FIELD_STRING(resultObject, resultClazz, "recoveryCode", cc7::jni::CopyToJavaString(env, cppRecoveryData.recoveryCode));
+	PA_JNI_SET_FIELD_STRING(resultObject, resultClazz, "puk",			cc7::jni::CopyToJavaString(env, cppRecoveryData.puk));
 	return resultObject;
 }
 
@@ -15,6 +15,7 @@
  */
 
 #include <cc7/jni/JniHelper.h>
+#include "JniCache.h"
 #include "../crypto/CryptoUtils.h"
 #include "../protocol/Constants.h"
 #include <sys/time.h>
@@ -56,11 +57,11 @@ CC7_JNI_METHOD_PARAMS(jstring, calculateTokenValue, jobject privateData)
 		return NULL;
 	}
 	// Look for io.getlime.security.powerauth.sdk.impl.PowerAuthPrivateTokenData
-	jclass privateDataClazz = env->FindClass("io/getlime/security/powerauth/sdk/impl/PowerAuthPrivateTokenData");
+	jclass privateDataClazz = PA_JNI_FIND_CLASS("io/getlime/security/powerauth/sdk/impl/PowerAuthPrivateTokenData");
 
 	// Load parameters into C++ objects
-	auto cppTokenSecret = cc7::jni::CopyFromJavaByteArray(env, CC7_JNI_GET_FIELD_BYTEARRAY(privateData, privateDataClazz, "secret"));
-	auto cppTokenIdentifier = cc7::jni::CopyFromJavaString(env, CC7_JNI_GET_FIELD_STRING(privateData, privateDataClazz, "identifier"));
+	auto cppTokenSecret = cc7::jni::CopyFromJavaByteArray(env, PA_JNI_GET_FIELD_BYTEARRAY(privateData, privateDataClazz, "secret"));
+	auto cppTokenIdentifier = cc7::jni::CopyFromJavaString(env, PA_JNI_GET_FIELD_STRING(privateData, privateDataClazz, "identifier"));
 
 	if (cppTokenSecret.size() != 16 || cppTokenIdentifier.empty()) {
 		CC7_ASSERT(false, "PowerAuthPrivateTokenData is not valid.");
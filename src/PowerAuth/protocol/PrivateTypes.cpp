@@ -163,6 +163,7 @@ namespace protocol
 	const cc7::byte PD_VERSION_V3 = '4';	// + protocol V3
 	const cc7::byte PD_VERSION_V4 = '5';	// + recovery codes
 	const cc7::byte PD_VERSION_V5 = '6';	// + signature counter byte
+	const cc7::byte PD_VERSION_V6 = '7';	// + signature counter sequence
 
 	// WARNING: If you update PD_VERSION, then please update also routine
 	//          located in PA2SessionStatusDataReader.m in iOS extensions project.
@@ -172,7 +173,7 @@ namespace protocol
 	{
 		CC7_ASSERT(ValidatePersistentData(pd), "Invalid persistent data");
 		
-		writer.openVersion(PD_TAG, pd.isV3() ? PD_VERSION_V5 : PD_VERSION_V2);
+		writer.openVersion(PD_TAG, pd.isV3() ? PD_VERSION_V6 : PD_VERSION_V2);
 		
 		// Serialize hash data or counter, depending on data version
 		if (pd.isV3()) {
@@ -202,6 +203,9 @@ namespace protocol
 		// Counter byte (PD v5)
 		writer.writeByte	(pd.signatureCounterByte);
 		
+		// Counter sequence (PD v6)
+		writer.writeU64		(pd.counterSequence);
+		
 		writer.closeVersion();
 		return true;
 	}
@@ -253,6 +257,15 @@ namespace protocol
 			pd.signatureCounterByte = 0;
 		}
 		
+		// signature counter sequence (PD v6)
+		if (reader.currentVersion() >= PD_VERSION_V6) {
+			result = result && reader.readU64(pd.counterSequence);
+			pd.hasCounterSequence = true;
+		} else {
+			pd.counterSequence = 0;
+			pd.hasCounterSequence = false;
+		}
+		
 		// close versioned section & validate data
 		result = result && reader.closeVersion();
 		result = result && ValidatePersistentData(pd);
@@ -261,6 +274,97 @@ namespace protocol
 	}
 	
 	
+	//
+	// MARK: - Counter data serialization -
+	//
+	
+	const cc7::byte CD_TAG        = 'C';
+	const cc7::byte CD_VERSION_V1 = '1';
+	const cc7::byte CD_VERSION_V2 = '2';	// + signature counter sequence
+	
+	bool SerializeCounterData(const PersistentData & pd, utils::DataWriter & writer)
+	{
+		writer.openVersion(CD_TAG, CD_VERSION_V2);
+		writer.writeString	(pd.activationId);
+		writer.writeByte	(pd.isV3() ? 1 : 0);
+		if (pd.isV3()) {
+			writer.writeData(pd.signatureCounterData);
+		} else {
+			writer.writeU64	(pd.signatureCounter);
+		}
+		writer.writeByte	(pd.signatureCounterByte);
+		writer.writeU64		(pd.counterSequence);
+		writer.closeVersion();
+		return true;
+	}
+	
+	bool DeserializeCounterData(PersistentData & pd, utils::DataReader & reader)
+	{
+		std::string activation_id;
+		cc7::byte is_v3 = 0;
+		cc7::ByteArray counter_data;
+		cc7::U64 counter = 0;
+		cc7::byte counter_byte = 0;
+		cc7::U64 sequence = 0;
+		bool has_sequence = false;
+		
+		bool result = reader.openVersion(CD_TAG, CD_VERSION_V1);
+		result = result && reader.readString(activation_id);
+		result = result && reader.readByte(is_v3);
+		if (result) {
+			if (is_v3) {
+				result = reader.readData(counter_data, SIGNATURE_KEY_SIZE);
+			} else {
+				result = reader.readU64(counter);
+			}
+		}
+		result = result && reader.readByte(counter_byte);
+		if (result && reader.currentVersion() >= CD_VERSION_V2) {
+			result = reader.readU64(sequence);
+			has_sequence = true;
+		}
+		result = result && reader.closeVersion();
+		
+		// The record must belong to the same activation and to the same protocol version.
+		result = result && activation_id == pd.activationId;
+		result = result && (is_v3 != 0) == pd.isV3();
+		if (!result) {
+			return false;
+		}
+		// The record must not be older than the counter in the persistent data. For example,
+		// the record may be restored from backup, or the full state may be newer.
+		bool apply_record;
+		if (!is_v3) {
+			// V2 counter is a plain number, so it can be compared directly.
+			apply_record = counter >= pd.signatureCounter;
+		} else if (has_sequence && pd.hasCounterSequence) {
+			apply_record = sequence >= pd.counterSequence;
+		} else if (has_sequence) {
+			// The full state was saved by an older version of the library, after this record was
+			// saved. This happens after the downgrade and upgrade of the library, so the record is
+			// outdated. Make sure that the record is also older than the next saved full state.
+			apply_record = false;
+			pd.counterSequence = sequence + 1;
+		} else {
+			// Both record and full state were saved without the sequence. The record is always
+			// saved before the full state, so it's not older than the full state.
+			apply_record = !pd.hasCounterSequence;
+		}
+		if (apply_record) {
+			if (is_v3) {
+				pd.signatureCounterData = counter_data;
+			} else {
+				pd.signatureCounter = counter;
+			}
+			pd.signatureCounterByte = counter_byte;
+			if (has_sequence) {
+				pd.counterSequence = sequence;
+			}
+		}
+		return true;
+	}
+	
+	
 	//
 	// MARK: - Recovery codes -
 	//
@@ -369,6 +473,8 @@ namespace protocol
 
 	bool TryDeserializeOldPersistentData(PersistentData & pd, utils::DataReader & reader)
 	{
+		// The old format doesn't contain the signature counter sequence.
+		pd.hasCounterSequence = false;
 		enum OldDataTags
 		{
 			// magic & length of header
@@ -18,6 +18,7 @@
 
 #include <PowerAuth/PublicTypes.h>
 #include <openssl/ec.h>
+#include <chrono>
 
 // Forward declarations
 
@@ -124,6 +125,48 @@ namespace protocol
 		{
 		}
 	};
+
+	
+	/**
+	 The UnlockedSignatureKeys structure keeps signature keys unlocked during the previous
+	 signature calculation, so the next calculation with the same unlock keys can skip
+	 the unlocking. The entry is valid until the |expiration| time, or while |remainingUseCount|
+	 is greater than zero. The content of the structure is very sensitive and is cleared
+	 when the structure is destroyed.
+	 */
+	struct UnlockedSignatureKeys
+	{
+		SignatureKeys		keys;					// Unlocked keys for the signature factor
+		SignatureFactor		factor;					// Factor used for unlocking the keys
+		cc7::ByteArray		fingerprintKey;			// Random key for the unlock keys fingerprint
+		cc7::ByteArray		fingerprint;			// Fingerprint of the unlock keys
+		std::chrono::steady_clock::time_point expiration;
+		cc7::U32			remainingUseCount;
+		
+		UnlockedSignatureKeys() :
+			factor(0),
+			remainingUseCount(0)
+		{
+		}
+		
+		~UnlockedSignatureKeys()
+		{
+			keys.possessionKey.secureClear();
+			keys.knowledgeKey.secureClear();
+			keys.biometryKey.secureClear();
+			keys.transportKey.secureClear();
+			fingerprintKey.secureClear();
+			fingerprint.secureClear();
+		}
+		
+		/**
+		 Returns true if the entry can no longer be used.
+		 */
+		bool isExpired() const
+		{
+			return remainingUseCount == 0 || std::chrono::steady_clock::now() >= expiration;
+		}
+	};
 	
 	
 	/**
@@ -144,6 +187,18 @@ namespace protocol
 		 V3.1: Least significant byte from the signature counter
 		 */
 		cc7::byte		signatureCounterByte;
+		/**
+		 Sequence number of the signature counter, increased on each counter change.
+		 The number helps to determine whether the separately stored counter record
+		 is newer than the counter stored in this structure.
+		 */
+		cc7::U64		counterSequence;
+		/**
+		 True if `counterSequence` is valid. The value is not serialized. It's false
+		 when the structure was deserialized from data without the counter sequence,
+		 until the structure is serialized again.
+		 */
+		bool			hasCounterSequence;
 		/**
 		 ActivationId, that's our identity known on the server
 		 */
@@ -207,6 +262,8 @@ namespace protocol
 		
 		PersistentData() :
 			signatureCounter(0),
+			counterSequence(0),
+			hasCounterSequence(true),
 			passwordIterations(0),
 			flagsU32(0)
 		{
@@ -318,6 +375,25 @@ namespace protocol
 	 */
 	bool DeserializePersistentData(PersistentData & pd, utils::DataReader & reader);
 	
+	/**
+	 Serializes only the signature counter from |pd| structure into the provided |writer|.
+	 The counter record is bound to the activation identifier. The current implementation
+	 of the function always returns true.
+	 */
+	bool SerializeCounterData(const PersistentData & pd, utils::DataWriter & writer);
+	
+	/**
+	 Deserializes the signature counter from the |reader| and applies it to the |pd| reference.
+	 Returns false if the byte stream contains invalid data, or if the record doesn't belong
+	 to the activation or to the protocol version stored in |pd|. In this case, the |pd|
+	 structure is not modified.
+	 
+	 The counter is applied only if the record is not older than the counter stored in |pd|.
+	 The older record is ignored and the function returns true. If |pd| was deserialized from
+	 data without the counter sequence, then only the sequence is moved ahead of the record.
+	 */
+	bool DeserializeCounterData(PersistentData & pd, utils::DataReader & reader);
+	
 	/**
 	 Deserializes a persistent data in old format from the |reader| into the |pd| reference.
 	 Returns false if the byte stream contains invalid old data format.
@@ -349,6 +349,16 @@ namespace protocol
 		secret.usesExternalKey = protect;
 		return true;
 	}
+	
+	cc7::ByteArray CalculateUnlockKeysFingerprint(const SignatureUnlockKeys & keys, const cc7::ByteRange & fingerprint_key)
+	{
+		// Each key is processed separately, so the sensitive data is not copied to a temporary buffer
+		// and the boundaries between the keys are always preserved.
+		cc7::ByteArray fingerprint = crypto::HMAC_SHA256(keys.possessionUnlockKey, fingerprint_key);
+		fingerprint.append(crypto::HMAC_SHA256(keys.biometryUnlockKey, fingerprint_key));
+		fingerprint.append(crypto::HMAC_SHA256(keys.userPassword, fingerprint_key));
+		return fingerprint;
+	}
 
 	
 	cc7::ByteArray SignatureCounterToData(cc7::U64 counter)
@@ -378,6 +388,7 @@ namespace protocol
 			// Move old counter forward
 			pd.signatureCounter += 1;
 		}
+		pd.counterSequence += 1;
 	}
 	
 	
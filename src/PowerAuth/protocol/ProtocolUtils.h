@@ -87,6 +87,12 @@ namespace protocol
 	 */
 	bool ProtectSignatureKeysWithEEK(SignatureKeys & secret, const cc7::ByteRange & eek, bool protect);
 	
+	/**
+	 Calculates fingerprint of all unlock |keys| with using |fingerprint_key|. The fingerprint allows to
+	 compare unlock keys provided in different calls, without keeping the keys in the memory.
+	 */
+	cc7::ByteArray CalculateUnlockKeysFingerprint(const SignatureUnlockKeys & keys, const cc7::ByteRange & fingerprint_key);
+	
 	/**
 	 Converts V2 signature sequential |counter| byte array. The result can be then passed to `CalculateSignature`
 	 function to calculate V2 signature.
@@ -18,6 +18,8 @@
 #include <cc7/HexString.h>
 #include "crypto/CryptoUtils.h"
 #include "crypto/KDF.h"
+#include <openssl/evp.h>
+#include <chrono>
 
 using namespace cc7;
 using namespace cc7::tests;
@@ -36,6 +38,9 @@ namespace powerAuthTests
 		pa2CryptoECDHKDFTests()
 		{
 			CC7_REGISTER_TEST_METHOD(testECDH_KDF_SHA256)
+			CC7_REGISTER_TEST_METHOD(testPBKDF2_HMAC_SHA256)
+			CC7_REGISTER_TEST_METHOD(testPBKDF2_CompareWithOpenSSL)
+			CC7_REGISTER_TEST_METHOD(testPBKDF2_Benchmark)
 		}
 		
 		// unit tests
@@ -187,6 +192,126 @@ namespace powerAuthTests
 			}
 			
 		}
+		
+		struct PBKDF2TestData
+		{
+			const char * pass;
+			const char * salt;
+			cc7::U32 iterations;
+			const char * expected;
+		};
+		
+		void testPBKDF2_HMAC_SHA256()
+		{
+			//
+			// Source of test data: https://tools.ietf.org/html/rfc7914#section-11 and
+			// commonly used PBKDF2-HMAC-SHA256 vectors derived from RFC 6070
+			//
+			static const PBKDF2TestData s_tests[] = {
+				{
+					"70617373776f7264",		// "password"
+					"73616c74",				// "salt"
+					1,
+					"120fb6cffcf8b32c43e7225256c4f837a86548c92ccc35480805987cb70be17b"
+				},
+				{
+					"70617373776f7264",
+					"73616c74",
+					2,
+					"ae4d0c95af6b46d32d0adff928f06dd02a303f8ef3c251dfd6e2d85a95474c43"
+				},
+				{
+					"70617373776f7264",
+					"73616c74",
+					4096,
+					"c5e478d59288c841aa530db6845c4c8d962893a001ce4e11a4963873aa98134a"
+				},
+				{
+					"70617373776f726450415353574f524470617373776f7264",						// "passwordPASSWORDpassword"
+					"73616c7453414c5473616c7453414c5473616c7453414c5473616c7453414c5473616c74",	// "saltSALTsaltSALTsaltSALTsaltSALTsalt"
+					4096,
+					"348c89dbcbd32b2f32d814b8116e84cf2b17347ebc1800181c4e2a1fb8dd53e1c635518c7dac47e9"
+				},
+				{
+					"7061737300776f7264",	// "pass\0word"
+					"7361006c74",			// "sa\0lt"
+					4096,
+					"89b69d0516f829893c696226650a8687"
+				},
+				// End of table
+				{ NULL, NULL, 0, NULL }
+			};
+			
+			const PBKDF2TestData * td = s_tests;
+			while (td->pass != NULL) {
+				auto pass = cc7::FromHexString(td->pass);
+				auto salt = cc7::FromHexString(td->salt);
+				auto key_expected = cc7::FromHexString(td->expected);
+				auto key = crypto::PBKDF2_HMAC_SHA256(pass, salt, td->iterations, key_expected.size());
+				if (key != key_expected) {
+					ccstMessage("PBKDF2_HMAC_SHA256 derivation failed");
+					ccstMessage("  expected: %s", key_expected.hexString().c_str());
+					ccstMessage("  derived : %s", key.hexString().c_str());
+					ccstFailure();
+					break;
+				}
+				td++;
+			}
+			
+			// Password longer than the hash block, with the protocol's number of iterations.
+			cc7::ByteArray long_pass;
+			for (int i = 0; i < 20; i++) {
+				long_pass.append(cc7::MakeRange("nbusr123"));
+			}
+			auto key = crypto::PBKDF2_HMAC_SHA256(long_pass, cc7::MakeRange("0123456789abcdef"), 10000, 16);
+			ccstAssertEqual(key, cc7::FromHexString("04f3c712d0771cced22e9e8b1b8284c9"));
+		}
+		
+		void testPBKDF2_CompareWithOpenSSL()
+		{
+			// The tuned implementation must produce the same output as OpenSSL's PKCS5_PBKDF2_HMAC,
+			// for various lengths of password, salt and output.
+			for (int i = 0; i < 200; i++) {
+				auto pass = crypto::GetRandomData(i % 150);
+				auto salt = crypto::GetRandomData(i % 37);
+				auto iterations = 1 + (i % 33);
+				auto output_bytes = 1 + (i % 71);
+				
+				cc7::ByteArray expected_sha1(output_bytes, 0);
+				cc7::ByteArray expected_sha256(output_bytes, 0);
+				ccstAssertEqual(1, PKCS5_PBKDF2_HMAC((const char*)pass.data(), (int)pass.size(), salt.data(), (int)salt.size(), iterations, EVP_sha1(), (int)output_bytes, expected_sha1.data()));
+				ccstAssertEqual(1, PKCS5_PBKDF2_HMAC((const char*)pass.data(), (int)pass.size(), salt.data(), (int)salt.size(), iterations, EVP_sha256(), (int)output_bytes, expected_sha256.data()));
+				
+				ccstAssertEqual(crypto::PBKDF2_HMAC_SHA1(pass, salt, iterations, output_bytes), expected_sha1);
+				ccstAssertEqual(crypto::PBKDF2_HMAC_SHA256(pass, salt, iterations, output_bytes), expected_sha256);
+			}
+		}
+		
+		void testPBKDF2_Benchmark()
+		{
+			// Password derivation with the same parameters as the knowledge factor unlock.
+			const int rounds = 10;
+			const cc7::U32 iterations = 10000;
+			auto pass = cc7::MakeRange("nbusr123");
+			auto salt = crypto::GetRandomData(16);
+			cc7::ByteArray expected(16, 0);
+			
+			auto t0 = std::chrono::steady_clock::now();
+			for (int i = 0; i < rounds; i++) {
+				PKCS5_PBKDF2_HMAC((const char*)pass.data(), (int)pass.size(), salt.data(), (int)salt.size(), iterations, EVP_sha256(), (int)expected.size(), expected.data());
+			}
+			auto t1 = std::chrono::steady_clock::now();
+			cc7::ByteArray key;
+			for (int i = 0; i < rounds; i++) {
+				key = crypto::PBKDF2_HMAC_SHA256(pass, salt, iterations, 16);
+			}
+			auto t2 = std::chrono::steady_clock::now();
+			ccstAssertEqual(key, expected);
+			
+			auto openssl_ms = std::chrono::duration_cast<std::chrono::milliseconds>(t1 - t0).count();
+			auto tuned_ms = std::chrono::duration_cast<std::chrono::milliseconds>(t2 - t1).count();
+			ccstMessage("PBKDF2_HMAC_SHA256: %d x %d iterations, OpenSSL %d ms, tuned %d ms", rounds, (int)iterations, (int)openssl_ms, (int)tuned_ms);
+		}
 
 
 	};
@@ -19,6 +19,8 @@
 #include <PowerAuth/ECIES.h>
 #include <cc7/HexString.h>
 #include "../PowerAuth/crypto/CryptoUtils.h"
+#include <chrono>
+#include <set>
 
 using namespace cc7;
 using namespace cc7::tests;
@@ -47,6 +49,8 @@ namespace powerAuthTests
 		{
 			CC7_REGISTER_TEST_METHOD(testEncryptorDecryptor)
 			CC7_REGISTER_TEST_METHOD(testInvalidCurve)
+			CC7_REGISTER_TEST_METHOD(testEphemeralKeyPool)
+			CC7_REGISTER_TEST_METHOD(testEphemeralKeyPoolPerformance)
 		}
 		
 		void testEncryptorDecryptor()
@@ -185,6 +189,127 @@ namespace powerAuthTests
 			auto code = encryptor.encryptRequest(cc7::MakeRange("should not be encrypted"), cryptogram);
 			ccstAssertTrue(code == EC_Encryption);
 		}
+		
+		void testEphemeralKeyPool()
+		{
+			ErrorCode ec;
+			
+			EC_KEY * master_keypair = crypto::ECC_GenerateKeyPair();
+			cc7::ByteArray master_public_key = crypto::ECC_ExportPublicKey(master_keypair);
+			cc7::ByteArray master_private_key = crypto::ECC_ExportPrivateKey(master_keypair);
+			EC_KEY_free(master_keypair);
+			
+			auto pool = std::make_shared<ECIESEphemeralKeyPool>(master_public_key, ECIESEphemeralKeyPoolConfig(4, 1));
+			ccstAssertTrue(pool->waitUntilFilled());
+			ccstAssertTrue(pool->availableKeys() == 4);
+			
+			auto template_encryptor = ECIESEncryptor(master_public_key, cc7::MakeRange("shared-info-1"), cc7::MakeRange("shared-info-2"));
+			template_encryptor.setEphemeralKeyPool(pool);
+			auto server_decryptor = ECIESDecryptor(master_private_key, cc7::MakeRange("shared-info-1"), cc7::MakeRange("shared-info-2"));
+			
+			// Each request must use a different ephemeral key, no matter whether it was pre-computed or not.
+			std::set<std::string> used_keys;
+			for (int i = 0; i < 20; i++) {
+				auto client_encryptor = template_encryptor;
+				ccstAssertTrue(client_encryptor.ephemeralKeyPool() == pool);
+				auto request_data = cc7::MakeRange("request data");
+				ECIESCryptogram request;
+				ec = client_encryptor.encryptRequest(request_data, request);
+				ccstAssertEqual(ec, EC_Ok);
+				ccstAssertTrue(used_keys.insert(request.key.base64String()).second);
+				
+				cc7::ByteArray server_received_data;
+				ec = server_decryptor.decryptRequest(request, server_received_data);
+				ccstAssertEqual(ec, EC_Ok);
+				ccstAssertEqual(cc7::CopyToString(request_data), cc7::CopyToString(server_received_data));
+				
+				auto response_data = cc7::MakeRange("response data");
+				ECIESCryptogram response;
+				ec = server_decryptor.encryptResponse(response_data, response);
+				ccstAssertEqual(ec, EC_Ok);
+				cc7::ByteArray client_received_data;
+				ec = client_encryptor.decryptResponse(response, client_received_data);
+				ccstAssertEqual(ec, EC_Ok);
+				ccstAssertEqual(cc7::CopyToString(response_data), cc7::CopyToString(client_received_data));
+			}
+			
+			// Acquired keys are removed from the pool. The third key drops the pool to the refill threshold.
+			ccstAssertTrue(pool->waitUntilFilled());
+			ECIESEphemeralKey key1, key2, key3;
+			ccstAssertTrue(pool->acquireKey(key1));
+			ccstAssertTrue(pool->acquireKey(key2));
+			ccstAssertTrue(pool->availableKeys() == 2);
+			ccstAssertTrue(pool->acquireKey(key3));
+			ccstAssertTrue(key1.publicKey != key2.publicKey);
+			ccstAssertTrue(key1.sharedSecret != key2.sharedSecret);
+			ccstAssertTrue(key2.publicKey != key3.publicKey);
+			ccstAssertTrue(pool->waitUntilFilled());
+			ccstAssertTrue(pool->availableKeys() == 4);
+			
+			// Pool for a different public key is ignored
+			EC_KEY * other_keypair = crypto::ECC_GenerateKeyPair();
+			cc7::ByteArray other_public_key = crypto::ECC_ExportPublicKey(other_keypair);
+			EC_KEY_free(other_keypair);
+			auto other_encryptor = ECIESEncryptor(other_public_key, cc7::ByteRange(), cc7::ByteRange());
+			other_encryptor.setEphemeralKeyPool(pool);
+			ECIESCryptogram other_request;
+			ec = other_encryptor.encryptRequest(cc7::MakeRange("data"), other_request);
+			ccstAssertEqual(ec, EC_Ok);
+			ccstAssertTrue(pool->availableKeys() == 4);
+			
+			// Pool with invalid public key fails, but doesn't block the encryptor
+			auto invalid_public_key = cc7::FromHexString("02B70BF043C144935756F8F4578C369CF960EE510A5A0F90E93A373A21F0D1397F");
+			auto invalid_pool = std::make_shared<ECIESEphemeralKeyPool>(invalid_public_key, ECIESEphemeralKeyPoolConfig(2, 0));
+			ccstAssertFalse(invalid_pool->waitUntilFilled());
+			ccstAssertTrue(invalid_pool->availableKeys() == 0);
+			auto invalid_encryptor = ECIESEncryptor(invalid_public_key, cc7::ByteRange(), cc7::ByteRange());
+			invalid_encryptor.setEphemeralKeyPool(invalid_pool);
+			ECIESCryptogram invalid_request;
+			ccstAssertEqual(invalid_encryptor.encryptRequest(cc7::MakeRange("data"), invalid_request), EC_Encryption);
+		}
+		
+		void testEphemeralKeyPoolPerformance()
+		{
+			const int iterations = 200;
+			
+			EC_KEY * master_keypair = crypto::ECC_GenerateKeyPair();
+			cc7::ByteArray master_public_key = crypto::ECC_ExportPublicKey(master_keypair);
+			EC_KEY_free(master_keypair);
+			auto request_data = cc7::MakeRange("{\"data\":\"Some request data to be encrypted.\"}");
+			
+			// Unpooled encryption
+			auto unpooled_encryptor = ECIESEncryptor(master_public_key, cc7::ByteRange(), cc7::ByteRange());
+			auto unpooled_start = std::chrono::steady_clock::now();
+			for (int i = 0; i < iterations; i++) {
+				ECIESCryptogram request;
+				ccstAssertEqual(unpooled_encryptor.encryptRequest(request_data, request), EC_Ok);
+			}
+			auto unpooled_time = std::chrono::duration_cast<std::chrono::microseconds>(std::chrono::steady_clock::now() - unpooled_start).count();
+			
+			// Pooled encryption. Measure only the time spent in encryptRequest(), because we're interested
+			// in latency on the caller's thread, when the pool has enough keys prepared.
+			auto pool = std::make_shared<ECIESEphemeralKeyPool>(master_public_key, ECIESEphemeralKeyPoolConfig(iterations, 0));
+			ccstAssertTrue(pool->waitUntilFilled());
+			auto pooled_encryptor = ECIESEncryptor(master_public_key, cc7::ByteRange(), cc7::ByteRange());
+			pooled_encryptor.setEphemeralKeyPool(pool);
+			std::chrono::microseconds::rep pooled_time = 0;
+			std::set<std::string> used_keys;
+			for (int i = 0; i < iterations; i++) {
+				ECIESCryptogram request;
+				auto start = std::chrono::steady_clock::now();
+				ccstAssertEqual(pooled_encryptor.encryptRequest(request_data, request), EC_Ok);
+				pooled_time += std::chrono::duration_cast<std::chrono::microseconds>(std::chrono::steady_clock::now() - start).count();
+				// Each encryption must consume one pre-computed key and never reuse it. The background
+				// refill starts once the pool is empty, so the last iteration is not checked.
+				ccstAssertTrue(used_keys.insert(request.key.base64String()).second);
+				if (i < iterations - 1) {
+					ccstAssertTrue(pool->availableKeys() == (size_t)(iterations - i - 1));
+				}
+			}
+			
+			// Timing depends on the machine, so it's only reported.
+			ccstMessage("ECIES encryption, %d iterations: unpooled %d us, pooled %d us", iterations, (int)unpooled_time, (int)pooled_time);
+		}
 	};
 	
 	CC7_CREATE_UNIT_TEST(pa2ECIESTests, "pa2")
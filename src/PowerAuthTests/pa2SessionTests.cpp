@@ -23,10 +23,13 @@
 #include "protocol/ProtocolUtils.h"
 #include "protocol/Constants.h"
 #include "utils/DataReader.h"
+#include "utils/DataWriter.h"
 
 #include <PowerAuth/Session.h>
 #include <PowerAuth/ECIES.h>
 #include <map>
+#include <chrono>
+#include <thread>
 
 using namespace cc7;
 using namespace cc7::tests;
@@ -49,6 +52,7 @@ namespace powerAuthTests
 			CC7_REGISTER_TEST_METHOD(testKeyValueMapNormalization);
 			CC7_REGISTER_TEST_METHOD(testBeforeActivation);
 			CC7_REGISTER_TEST_METHOD(testActivationWithoutEEK);
+			CC7_REGISTER_TEST_METHOD(testPrepareActivation);
 			CC7_REGISTER_TEST_METHOD(testActivationWithEEKUsingSetup);
 			CC7_REGISTER_TEST_METHOD(testActivationWithEEKUsingSetter);
 			CC7_REGISTER_TEST_METHOD(testServerSignedData);
@@ -56,6 +60,8 @@ namespace powerAuthTests
 			CC7_REGISTER_TEST_METHOD(testPersistentDataUpgradeFromV2ToV5);
 			CC7_REGISTER_TEST_METHOD(testPersistentDataUpgradeFromV3ToV5);
 			CC7_REGISTER_TEST_METHOD(testPersistentDataUpgradeFromV4ToV5);
+			CC7_REGISTER_TEST_METHOD(testCounterState);
+			CC7_REGISTER_TEST_METHOD(testSignatureKeysCache);
 		}
 		
 		EC_KEY *	_masterServerPrivateKey;
@@ -189,6 +195,70 @@ namespace powerAuthTests
 		}
 		
 		
+		void testPrepareActivation()
+		{
+			ErrorCode ec;
+			_setup.externalEncryptionKey.clear();
+			Session s1(_setup);
+			
+			ActivationStep1Param param1;
+			param1.activationCode		= _activation_code;
+			param1.activationSignature	= T_calculateActivationSignature(_activation_code);
+			
+			// Prepare & discard
+			ccstAssertFalse(s1.hasPreparedActivation());
+			ec = s1.prepareActivation();
+			ccstAssertEqual(ec, EC_Ok);
+			ccstAssertTrue(s1.hasPreparedActivation());
+			s1.discardPreparedActivation();
+			ccstAssertFalse(s1.hasPreparedActivation());
+			
+			// Reset discards prepared data
+			ec = s1.prepareActivation();
+			ccstAssertEqual(ec, EC_Ok);
+			s1.resetSession();
+			ccstAssertFalse(s1.hasPreparedActivation());
+			
+			// Prepared data is kept when the activation code is not accepted
+			ec = s1.prepareActivation();
+			ccstAssertEqual(ec, EC_Ok);
+			ActivationStep1Param wrong_param;
+			wrong_param.activationCode		= _activation_code;
+			wrong_param.activationSignature	= T_calculateActivationSignature("AAAAA-AAAAA-AAAAA-AAAAA");
+			ActivationStep1Result wrong_result;
+			ec = s1.startActivation(wrong_param, wrong_result);
+			ccstAssertEqual(ec, EC_Encryption);
+			ccstAssertTrue(s1.hasPreparedActivation());
+			ccstAssertTrue(s1.canStartActivation());
+			
+			// Prepared data is consumed by the activation start
+			ActivationStep1Result result1;
+			auto start = std::chrono::steady_clock::now();
+			ec = s1.startActivation(param1, result1);
+			auto prepared_time = std::chrono::duration_cast<std::chrono::microseconds>(std::chrono::steady_clock::now() - start).count();
+			ccstAssertEqual(ec, EC_Ok);
+			ccstAssertFalse(result1.devicePublicKey.empty());
+			ccstAssertFalse(s1.hasPreparedActivation());
+			ccstAssertTrue(s1.hasPendingActivation());
+			
+			// Can't prepare during the pending activation
+			ec = s1.prepareActivation();
+			ccstAssertEqual(ec, EC_WrongState);
+			ccstAssertFalse(s1.hasPreparedActivation());
+			
+			// Each activation must use a different device key
+			s1.resetSession();
+			ActivationStep1Result result2;
+			start = std::chrono::steady_clock::now();
+			ec = s1.startActivation(param1, result2);
+			auto regular_time = std::chrono::duration_cast<std::chrono::microseconds>(std::chrono::steady_clock::now() - start).count();
+			ccstAssertEqual(ec, EC_Ok);
+			ccstAssertNotEqual(result1.devicePublicKey, result2.devicePublicKey);
+			
+			ccstMessage("startActivation: prepared %d us, regular %d us", (int)prepared_time, (int)regular_time);
+			s1.resetSession();
+		}
+		
 		void testActivationWithEEKUsingSetup()
 		{
 			cc7::ByteArray eek1 = Session::generateSignatureUnlockKey();
@@ -1255,6 +1325,263 @@ namespace powerAuthTests
 			ccstAssertEqual(pd.flags.hasSignatureCounterByte, 0);
 		}
 		
+		void testCounterState()
+		{
+			// constants
+			std::string master_server_public_key  = "AuCDGp3fAHL695yWxCP6d+jZEzwZleOdmCU+qFIImjBs";
+			
+			SessionSetup oldSetup;
+			oldSetup.applicationKey		= "MDEyMzQ1Njc4OUFCQ0RFRg==";
+			oldSetup.applicationSecret	= "QUJDREVGMDEyMzQ1Njc4OQ==";
+			oldSetup.masterServerPublicKey = master_server_public_key;
+			
+			Session s1(oldSetup);
+			
+			// No activation, no counter
+			ccstAssertTrue(s1.saveCounterState().empty());
+			ccstAssertEqual(s1.loadCounterState(cc7::ByteArray(10, 0)), EC_WrongState);
+			
+			// Load V3 data, without a separate counter record.
+			auto v4_data = cc7::FromBase64String("UEECUDUQcXKzF7KLEfVzcb6F7dQ2jhtGVUxMLUJVVC1GQUtFLUFDVElWQVRJT04tSUQAA"
+												 "CcQEFxD134A7jgrfXqjmzRSNEoQ+WilNdYscLQ/pbrYJqh9bhDqVVY8lLy2ZvMAtpwZwG"
+												 "rtEGAsKs9Rh8mZL1u+aQ3kdsgQKe2HE5aMUP+3mc0Zgzo1XSEC+N8Q8lTW59BH/5x6H+e"
+												 "ahxi9n7A4ajzLgtaC3tTJhD8AMA3jUBawHBE2zowK9ThJL4kCPJPfzZVEcZhh6v1+IrQy"
+												 "bj5WeD2HhFLwEJr1nHvmSQAAAAAA");
+			auto ec = s1.loadSessionState(v4_data);
+			ccstAssertEqual(ec, EC_Ok);
+			// Data without the counter sequence must be saved again.
+			ccstAssertTrue(s1.hasOutdatedSessionState());
+			auto full_state = s1.saveSessionState();
+			ccstAssertFalse(s1.hasOutdatedSessionState());
+			
+			protocol::PersistentData pd;
+			utils::DataReader data_reader(full_state);
+			data_reader.openVersion('P', 'A');	// Open version
+			data_reader.skipBytes(1);			// Skip byte with flags
+			ccstAssertTrue(protocol::DeserializePersistentData(pd, data_reader));
+			ccstAssertTrue(pd.hasCounterSequence);
+			ccstAssertEqual(pd.counterSequence, 0);
+			
+			// Counter record is much smaller than the full state.
+			auto counter_state = s1.saveCounterState();
+			ccstAssertFalse(counter_state.empty());
+			ccstAssertTrue(counter_state.size() < 64);
+			ccstAssertTrue(counter_state.size() * 4 < full_state.size());
+			ccstAssertEqual(s1.loadCounterState(counter_state), EC_Ok);
+			ccstAssertEqual(s1.saveSessionState(), full_state);
+			
+			// Move counter forward, like after signatures, and make a new record.
+			protocol::PersistentData moved_pd = pd;
+			for (int i = 0; i < 5; i++) {
+				protocol::CalculateNextCounterValue(moved_pd);
+			}
+			utils::DataWriter writer;
+			protocol::SerializeCounterData(moved_pd, writer);
+			auto moved_counter_state = writer.serializedData();
+			
+			// Round trip: full state + counter record must contain the moved counter.
+			s1.resetSession();
+			ccstAssertEqual(s1.loadSessionState(full_state), EC_Ok);
+			ccstAssertEqual(s1.loadCounterState(moved_counter_state), EC_Ok);
+			ccstAssertEqual(s1.saveCounterState(), moved_counter_state);
+			
+			protocol::PersistentData restored_pd;
+			auto restored_state = s1.saveSessionState();
+			utils::DataReader restored_reader(restored_state);
+			restored_reader.openVersion('P', 'A');
+			restored_reader.skipBytes(1);
+			ccstAssertTrue(protocol::DeserializePersistentData(restored_pd, restored_reader));
+			ccstAssertEqual(restored_pd.signatureCounterData, moved_pd.signatureCounterData);
+			ccstAssertEqual(restored_pd.signatureCounterByte, moved_pd.signatureCounterByte);
+			ccstAssertEqual(restored_pd.activationId, pd.activationId);
+			ccstAssertEqual(restored_pd.sk.possessionKey, pd.sk.possessionKey);
+			ccstAssertEqual(restored_pd.counterSequence, moved_pd.counterSequence);
+			
+			// Older record, for example restored from backup, must not move the counter backward.
+			s1.resetSession();
+			ccstAssertEqual(s1.loadSessionState(restored_state), EC_Ok);
+			ccstAssertFalse(s1.hasOutdatedSessionState());
+			ccstAssertEqual(s1.loadCounterState(counter_state), EC_Ok);
+			ccstAssertEqual(s1.saveCounterState(), moved_counter_state);
+			ccstAssertEqual(s1.saveSessionState(), restored_state);
+			
+			// Record for a different activation must be ignored.
+			protocol::PersistentData other_pd = moved_pd;
+			other_pd.activationId = "OTHER-FAKE-ACTIVATION-ID";
+			protocol::CalculateNextCounterValue(other_pd);
+			utils::DataWriter other_writer;
+			protocol::SerializeCounterData(other_pd, other_writer);
+			ccstAssertEqual(s1.loadCounterState(other_writer.serializedData()), EC_WrongParam);
+			ccstAssertEqual(s1.saveCounterState(), moved_counter_state);
+			
+			// Record for a different protocol version must be ignored.
+			protocol::PersistentData v2_pd = moved_pd;
+			v2_pd.signatureCounterData.clear();
+			v2_pd.signatureCounter = 522;
+			utils::DataWriter v2_writer;
+			protocol::SerializeCounterData(v2_pd, v2_writer);
+			ccstAssertFalse(v2_pd.isV3());
+			ccstAssertEqual(s1.loadCounterState(v2_writer.serializedData()), EC_WrongParam);
+			ccstAssertEqual(s1.saveCounterState(), moved_counter_state);
+			
+			// Invalid data
+			ccstAssertEqual(s1.loadCounterState(cc7::ByteArray()), EC_WrongParam);
+			ccstAssertEqual(s1.loadCounterState(full_state), EC_WrongParam);
+			auto truncated = moved_counter_state;
+			truncated.resize(truncated.size() - 2);
+			ccstAssertEqual(s1.loadCounterState(truncated), EC_WrongParam);
+			ccstAssertEqual(s1.saveCounterState(), moved_counter_state);
+			
+			// Full state saved by an older version of the library after the record, for example after
+			// the downgrade. The record is ignored and the next saved full state must be newer.
+			s1.resetSession();
+			ccstAssertEqual(s1.loadSessionState(v4_data), EC_Ok);
+			ccstAssertEqual(s1.loadCounterState(moved_counter_state), EC_Ok);
+			ccstAssertTrue(s1.hasOutdatedSessionState());
+			auto upgraded_state = s1.saveSessionState();
+			ccstAssertFalse(s1.hasOutdatedSessionState());
+			auto upgraded_pd = loadPersistentData(upgraded_state);
+			ccstAssertEqual(upgraded_pd.signatureCounterData, pd.signatureCounterData);
+			ccstAssertEqual(upgraded_pd.counterSequence, moved_pd.counterSequence + 1);
+			s1.resetSession();
+			ccstAssertEqual(s1.loadSessionState(upgraded_state), EC_Ok);
+			ccstAssertEqual(s1.loadCounterState(moved_counter_state), EC_Ok);
+			ccstAssertEqual(s1.saveSessionState(), upgraded_state);
+			
+			// Record saved without the sequence is applied only to the full state saved without the sequence.
+			utils::DataWriter v1_writer;
+			v1_writer.openVersion('C', '1');
+			v1_writer.writeString(moved_pd.activationId);
+			v1_writer.writeByte(1);
+			v1_writer.writeData(moved_pd.signatureCounterData);
+			v1_writer.writeByte(moved_pd.signatureCounterByte);
+			v1_writer.closeVersion();
+			auto v1_counter_state = v1_writer.serializedData();
+			ccstAssertEqual(s1.loadCounterState(v1_counter_state), EC_Ok);
+			ccstAssertEqual(s1.saveSessionState(), upgraded_state);
+			s1.resetSession();
+			ccstAssertEqual(s1.loadSessionState(v4_data), EC_Ok);
+			ccstAssertEqual(s1.loadCounterState(v1_counter_state), EC_Ok);
+			auto v1_restored_pd = loadPersistentData(s1.saveSessionState());
+			ccstAssertEqual(v1_restored_pd.signatureCounterData, moved_pd.signatureCounterData);
+		}
+		
+		void testSignatureKeysCache()
+		{
+			// constants
+			std::string master_server_public_key  = "AuCDGp3fAHL695yWxCP6d+jZEzwZleOdmCU+qFIImjBs";
+			
+			SessionSetup oldSetup;
+			oldSetup.applicationKey		= "MDEyMzQ1Njc4OUFCQ0RFRg==";
+			oldSetup.applicationSecret	= "QUJDREVGMDEyMzQ1Njc4OQ==";
+			oldSetup.masterServerPublicKey = master_server_public_key;
+			
+			auto v4_data = cc7::FromBase64String("UEECUDUQcXKzF7KLEfVzcb6F7dQ2jhtGVUxMLUJVVC1GQUtFLUFDVElWQVRJT04tSUQAA"
+												 "CcQEFxD134A7jgrfXqjmzRSNEoQ+WilNdYscLQ/pbrYJqh9bhDqVVY8lLy2ZvMAtpwZwG"
+												 "rtEGAsKs9Rh8mZL1u+aQ3kdsgQKe2HE5aMUP+3mc0Zgzo1XSEC+N8Q8lTW59BH/5x6H+e"
+												 "ahxi9n7A4ajzLgtaC3tTJhD8AMA3jUBawHBE2zowK9ThJL4kCPJPfzZVEcZhh6v1+IrQy"
+												 "bj5WeD2HhFLwEJr1nHvmSQAAAAAA");
+			
+			// s1 uses the cache, s2 always unlocks the keys. Both sessions start with the same counter,
+			// so the offline signatures must be equal, if the cached keys are correct.
+			Session s1(oldSetup);
+			Session s2(oldSetup);
+			ccstAssertEqual(s1.loadSessionState(v4_data), EC_Ok);
+			ccstAssertEqual(s2.loadSessionState(v4_data), EC_Ok);
+			ccstAssertFalse(s1.hasCachedSignatureKeys());
+			
+			// The content of the fake activation is not known, so any keys will do.
+			SignatureUnlockKeys keys;
+			keys.possessionUnlockKey = Session::normalizeSignatureUnlockKeyFromData(cc7::MakeRange("possession"));
+			keys.userPassword = cc7::MakeRange("nbusr123");
+			SignatureUnlockKeys cached_keys = keys;
+			cached_keys.cacheTimeToLive = 60000;
+			cached_keys.cacheMaxUseCount = 3;
+			
+			HTTPRequestData request(cc7::MakeRange("Batch payment"), "POST", "/pa/signature/validate", cc7::ByteArray(16, 0x11).base64String());
+			HTTPRequestDataSignature sig1, sig2;
+			
+			// Max use count
+			for (int i = 0; i < 3; i++) {
+				ccstAssertEqual(s1.signHTTPRequestData(request, cached_keys, SF_Possession_Knowledge, sig1), EC_Ok);
+				ccstAssertEqual(s2.signHTTPRequestData(request, keys, SF_Possession_Knowledge, sig2), EC_Ok);
+				ccstAssertEqual(sig1.signature, sig2.signature);
+				ccstAssertEqual(s1.hasCachedSignatureKeys(), i < 2);
+			}
+			// Default keys don't use the cache
+			ccstAssertEqual(s1.signHTTPRequestData(request, keys, SF_Possession_Knowledge, sig1), EC_Ok);
+			ccstAssertEqual(s2.signHTTPRequestData(request, keys, SF_Possession_Knowledge, sig2), EC_Ok);
+			ccstAssertEqual(sig1.signature, sig2.signature);
+			ccstAssertFalse(s1.hasCachedSignatureKeys());
+			
+			// Different password or factor must not use the cached keys.
+			ccstAssertEqual(s1.signHTTPRequestData(request, cached_keys, SF_Possession_Knowledge, sig1), EC_Ok);
+			ccstAssertEqual(s2.signHTTPRequestData(request, keys, SF_Possession_Knowledge, sig2), EC_Ok);
+			ccstAssertEqual(sig1.signature, sig2.signature);
+			ccstAssertTrue(s1.hasCachedSignatureKeys());
+			SignatureUnlockKeys other_cached_keys = cached_keys;
+			other_cached_keys.userPassword = cc7::MakeRange("nbusr321");
+			SignatureUnlockKeys other_keys = keys;
+			other_keys.userPassword = other_cached_keys.userPassword;
+			ccstAssertEqual(s1.signHTTPRequestData(request, other_cached_keys, SF_Possession_Knowledge, sig1), EC_Ok);
+			ccstAssertEqual(s2.signHTTPRequestData(request, other_keys, SF_Possession_Knowledge, sig2), EC_Ok);
+			ccstAssertEqual(sig1.signature, sig2.signature);
+			ccstAssertEqual(s1.signHTTPRequestData(request, other_cached_keys, SF_Possession, sig1), EC_Ok);
+			ccstAssertEqual(s2.signHTTPRequestData(request, other_keys, SF_Possession, sig2), EC_Ok);
+			ccstAssertEqual(sig1.signature, sig2.signature);
+			ccstAssertTrue(s1.hasCachedSignatureKeys());
+			
+			// Time to live
+			SignatureUnlockKeys short_keys = keys;
+			short_keys.cacheTimeToLive = 50;
+			short_keys.cacheMaxUseCount = 100;
+			ccstAssertEqual(s1.signHTTPRequestData(request, short_keys, SF_Possession_Knowledge, sig1), EC_Ok);
+			ccstAssertEqual(s2.signHTTPRequestData(request, keys, SF_Possession_Knowledge, sig2), EC_Ok);
+			ccstAssertTrue(s1.hasCachedSignatureKeys());
+			std::this_thread::sleep_for(std::chrono::milliseconds(100));
+			ccstAssertFalse(s1.hasCachedSignatureKeys());
+			s1.purgeExpiredSignatureKeys();
+			ccstAssertFalse(s1.hasCachedSignatureKeys());
+			ccstAssertEqual(s1.signHTTPRequestData(request, short_keys, SF_Possession_Knowledge, sig1), EC_Ok);
+			ccstAssertEqual(s2.signHTTPRequestData(request, keys, SF_Possession_Knowledge, sig2), EC_Ok);
+			ccstAssertEqual(sig1.signature, sig2.signature);
+			
+			// Explicit clear, password change and reset
+			ccstAssertEqual(s1.signHTTPRequestData(request, cached_keys, SF_Possession_Knowledge, sig1), EC_Ok);
+			ccstAssertTrue(s1.hasCachedSignatureKeys());
+			s1.clearCachedSignatureKeys();
+			ccstAssertFalse(s1.hasCachedSignatureKeys());
+			ccstAssertEqual(s1.signHTTPRequestData(request, cached_keys, SF_Possession_Knowledge, sig1), EC_Ok);
+			ccstAssertTrue(s1.hasCachedSignatureKeys());
+			ccstAssertEqual(s1.changeUserPassword(keys.userPassword, other_keys.userPassword), EC_Ok);
+			ccstAssertFalse(s1.hasCachedSignatureKeys());
+			ccstAssertEqual(s1.signHTTPRequestData(request, other_cached_keys, SF_Possession_Knowledge, sig1), EC_Ok);
+			ccstAssertTrue(s1.hasCachedSignatureKeys());
+			s1.resetSession();
+			ccstAssertFalse(s1.hasCachedSignatureKeys());
+			
+			// Benchmark, signatures with knowledge factor in a row.
+			ccstAssertEqual(s1.loadSessionState(v4_data), EC_Ok);
+			const int batch_size = 5;
+			auto t0 = std::chrono::steady_clock::now();
+			for (int i = 0; i < batch_size; i++) {
+				ccstAssertEqual(s1.signHTTPRequestData(request, keys, SF_Possession_Knowledge, sig1), EC_Ok);
+			}
+			auto t1 = std::chrono::steady_clock::now();
+			cached_keys.cacheMaxUseCount = batch_size;
+			for (int i = 0; i < batch_size; i++) {
+				ccstAssertEqual(s1.signHTTPRequestData(request, cached_keys, SF_Possession_Knowledge, sig1), EC_Ok);
+				// Keys unlocked by the first signature are reused until the use count is exhausted.
+				ccstAssertEqual(s1.hasCachedSignatureKeys(), i < batch_size - 1);
+			}
+			auto t2 = std::chrono::steady_clock::now();
+			ccstAssertFalse(s1.hasCachedSignatureKeys());
+			// Timing depends on the machine, so it's only reported.
+			auto uncached_ms = std::chrono::duration_cast<std::chrono::milliseconds>(t1 - t0).count();
+			auto cached_ms = std::chrono::duration_cast<std::chrono::milliseconds>(t2 - t1).count();
+			ccstMessage("Signature keys cache: %d signatures in %d ms without cache, %d ms with cache", batch_size, (int)uncached_ms, (int)cached_ms);
+		}
+		
 		
 		// Helper methods
 		
@@ -1283,6 +1610,18 @@ namespace powerAuthTests
 			return signature;
 		}
 		
+		protocol::PersistentData loadPersistentData(const cc7::ByteRange & state)
+		{
+			protocol::PersistentData pd;
+			utils::DataReader reader(state);
+			reader.openVersion('P', 'A');	// Open version
+			reader.skipBytes(1);			// Skip byte with flags
+			if (!protocol::DeserializePersistentData(pd, reader)) {
+				ccstFailure("Failed to deserialize persistent data");
+			}
+			return pd;
+		}
+		
 		cc7::ByteArray prepareCounterData(const cc7::ByteRange & base_ctr_data, cc7::U64 counter)
 		{
 			if (base_ctr_data.empty()) {